@@ -164,7 +164,11 @@ public class ActivityInvoker {
 		return results;
 	}
 
-	private static ReferenceService createReferenceService() {
+	/**
+	 * Create an in-memory reference service with the converters, value
+	 * builders and translators found on the classpath
+	 */
+	public static ReferenceService createReferenceService() {
 		SimpleT2ReferenceGenerator referenceGenerator = new SimpleT2ReferenceGenerator();
 		ReferenceSetAugmentorImpl referenceSetAugmentor = new ReferenceSetAugmentorImpl();
 		referenceSetAugmentor.setBuilders((List<ExternalReferenceBuilderSPI<?>>) getBuilders());
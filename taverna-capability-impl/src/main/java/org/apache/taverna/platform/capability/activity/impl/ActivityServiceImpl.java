@@ -20,9 +20,16 @@
 package org.apache.taverna.platform.capability.activity.impl;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.taverna.workflowmodel.processor.activity.Activity;
 import org.apache.taverna.workflowmodel.processor.activity.ActivityFactory;
@@ -37,29 +44,56 @@ import org.apache.taverna.scufl2.api.port.OutputActivityPort;
 import com.fasterxml.jackson.databind.JsonNode;
 
 public class ActivityServiceImpl implements ActivityService {
+	private static final int MAX_CACHED_PORTS = 256;
+
 	private List<ActivityFactory> activityFactories;
+	/** Factories by activity type; <code>null</code> when it must be rebuilt */
+	private volatile Map<URI, ActivityFactory> factoryIndex;
+	private final AtomicLong factoryChanges = new AtomicLong();
+	private final Map<URI, JsonNode> schemas = new ConcurrentHashMap<>();
+	/** Ports derived by the factories, keyed by activity type and configuration */
+	private final Map<String, List<?>> ports = new LinkedHashMap<String, List<?>>(
+			16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, List<?>> eldest) {
+			return size() > MAX_CACHED_PORTS;
+		}
+	};
+	private final AtomicLong indexBuilds = new AtomicLong();
+	private final AtomicLong cacheHits = new AtomicLong();
+	private final AtomicLong cacheMisses = new AtomicLong();
 
 	@Override
 	public Set<URI> getActivityTypes() {
-		Set<URI> activityTypes = new HashSet<>();
-		for (ActivityFactory activityFactory : activityFactories)
-			activityTypes.add(activityFactory.getActivityType());
-		return activityTypes;
+		return new HashSet<>(getFactoryIndex().keySet());
 	}
 
 	@Override
 	public boolean activityExists(URI uri) {
-		for (ActivityFactory activityFactory : activityFactories)
-			if (activityFactory.getActivityType().equals(uri))
-				return true;
-		return false;
+		return findActivityFactory(uri) != null;
 	}
 
 	@Override
 	public JsonNode getActivityConfigurationSchema(URI activityType)
 			throws ActivityNotFoundException {
-		ActivityFactory factory = getActivityFactory(activityType);
-		return factory.getActivityConfigurationSchema();
+		JsonNode schema = schemas.get(activityType);
+		if (schema == null) {
+			cacheMisses.incrementAndGet();
+			long changes = factoryChanges.get();
+			schema = getActivityFactory(activityType)
+					.getActivityConfigurationSchema();
+			if (schema == null)
+				return null;
+			synchronized (this) {
+				if (factoryChanges.get() == changes)
+					schemas.put(activityType, schema);
+			}
+		} else
+			cacheHits.incrementAndGet();
+		// callers may modify the schema
+		return schema.deepCopy();
 	}
 
 	@Override
@@ -82,37 +116,54 @@ public class ActivityServiceImpl implements ActivityService {
 	public Set<InputActivityPort> getActivityInputPorts(URI activityType,
 			JsonNode configuration) throws ActivityNotFoundException,
 			ActivityConfigurationException {
-		Set<InputActivityPort> inputPorts = new HashSet<>();
-		try {
-			for (ActivityInputPort port : getActivityFactory(activityType)
-					.getInputPorts(configuration)) {
-				InputActivityPort inputActivityPort = new InputActivityPort();
-				inputActivityPort.setName(port.getName());
-				inputActivityPort.setDepth(port.getDepth());
-				inputPorts.add(inputActivityPort);
+		String key = "in " + activityType + " " + configuration;
+		@SuppressWarnings("unchecked")
+		List<ActivityInputPort> activityPorts = (List<ActivityInputPort>) getCachedPorts(key);
+		if (activityPorts == null) {
+			long changes = factoryChanges.get();
+			try {
+				activityPorts = new ArrayList<>(getActivityFactory(
+						activityType).getInputPorts(configuration));
+			} catch (org.apache.taverna.workflowmodel.processor.activity.ActivityConfigurationException e) {
+				throw new ActivityConfigurationException(e);
 			}
-			return inputPorts;
-		} catch (org.apache.taverna.workflowmodel.processor.activity.ActivityConfigurationException e) {
-			throw new ActivityConfigurationException(e);
+			cachePorts(key, activityPorts, changes);
 		}
+		// scufl2 ports are mutable beans, so hand out new ones every time
+		Set<InputActivityPort> inputPorts = new HashSet<>();
+		for (ActivityInputPort port : activityPorts) {
+			InputActivityPort inputActivityPort = new InputActivityPort();
+			inputActivityPort.setName(port.getName());
+			inputActivityPort.setDepth(port.getDepth());
+			inputPorts.add(inputActivityPort);
+		}
+		return inputPorts;
 	}
 
 	@Override
 	public Set<OutputActivityPort> getActivityOutputPorts(URI activityType,
 			JsonNode configuration) throws ActivityNotFoundException,
 			ActivityConfigurationException {
-		Set<OutputActivityPort> outputPorts = new HashSet<>();
-		try {
-			for (ActivityOutputPort port : getActivityFactory(activityType)
-					.getOutputPorts(configuration)) {
-				OutputActivityPort outputActivityPort = new OutputActivityPort();
-				outputActivityPort.setName(port.getName());
-				outputActivityPort.setDepth(port.getDepth());
-				outputActivityPort.setGranularDepth(port.getGranularDepth());
-				outputPorts.add(outputActivityPort);
+		String key = "out " + activityType + " " + configuration;
+		@SuppressWarnings("unchecked")
+		List<ActivityOutputPort> activityPorts = (List<ActivityOutputPort>) getCachedPorts(key);
+		if (activityPorts == null) {
+			long changes = factoryChanges.get();
+			try {
+				activityPorts = new ArrayList<>(getActivityFactory(
+						activityType).getOutputPorts(configuration));
+			} catch (org.apache.taverna.workflowmodel.processor.activity.ActivityConfigurationException e) {
+				throw new ActivityConfigurationException(e);
 			}
-		} catch (org.apache.taverna.workflowmodel.processor.activity.ActivityConfigurationException e) {
-			throw new ActivityConfigurationException(e);
+			cachePorts(key, activityPorts, changes);
+		}
+		Set<OutputActivityPort> outputPorts = new HashSet<>();
+		for (ActivityOutputPort port : activityPorts) {
+			OutputActivityPort outputActivityPort = new OutputActivityPort();
+			outputActivityPort.setName(port.getName());
+			outputActivityPort.setDepth(port.getDepth());
+			outputActivityPort.setGranularDepth(port.getGranularDepth());
+			outputPorts.add(outputActivityPort);
 		}
 		return outputPorts;
 	}
@@ -126,14 +177,105 @@ public class ActivityServiceImpl implements ActivityService {
 	 */
 	public void setActivityFactories(List<ActivityFactory> activityFactories) {
 		this.activityFactories = activityFactories;
+		activityFactoriesUpdated(null, null);
+	}
+
+	/**
+	 * Discards the activity type index and everything derived from the
+	 * factories. Called by Spring DM when an <code>ActivityFactory</code> is
+	 * bound or unbound.
+	 */
+	public void activityFactoriesUpdated(Object service, Map<?, ?> properties) {
+		synchronized (this) {
+			factoryChanges.incrementAndGet();
+			factoryIndex = null;
+			schemas.clear();
+		}
+		synchronized (ports) {
+			ports.clear();
+		}
+	}
+
+	/**
+	 * Returns the number of times the activity type index has been built.
+	 */
+	public long getIndexBuilds() {
+		return indexBuilds.get();
+	}
+
+	/**
+	 * Returns the number of schema and port queries answered without asking an
+	 * <code>ActivityFactory</code>.
+	 */
+	public long getCacheHits() {
+		return cacheHits.get();
+	}
+
+	/**
+	 * Returns the number of schema and port queries that had to ask an
+	 * <code>ActivityFactory</code>.
+	 */
+	public long getCacheMisses() {
+		return cacheMisses.get();
+	}
+
+	private List<?> getCachedPorts(String key) {
+		List<?> cached;
+		synchronized (ports) {
+			cached = ports.get(key);
+		}
+		(cached == null ? cacheMisses : cacheHits).incrementAndGet();
+		return cached;
+	}
+
+	private void cachePorts(String key, List<?> activityPorts, long changes) {
+		synchronized (ports) {
+			if (factoryChanges.get() == changes)
+				ports.put(key, Collections.unmodifiableList(activityPorts));
+		}
+	}
+
+	private Map<URI, ActivityFactory> getFactoryIndex() {
+		Map<URI, ActivityFactory> index = factoryIndex;
+		if (index == null) {
+			long changes = factoryChanges.get();
+			index = new HashMap<>();
+			if (activityFactories != null)
+				for (ActivityFactory activityFactory : activityFactories)
+					if (!index.containsKey(activityFactory.getActivityType()))
+						index.put(activityFactory.getActivityType(),
+								activityFactory);
+			index = Collections.unmodifiableMap(index);
+			indexBuilds.incrementAndGet();
+			synchronized (this) {
+				if (factoryChanges.get() == changes)
+					factoryIndex = index;
+			}
+		}
+		return index;
+	}
+
+	private ActivityFactory findActivityFactory(URI activityType) {
+		ActivityFactory factory = getFactoryIndex().get(activityType);
+		if (factory == null && activityFactories != null)
+			/*
+			 * The list may have changed without telling us (e.g. outside
+			 * Spring DM), so check it before giving up
+			 */
+			for (ActivityFactory activityFactory : activityFactories)
+				if (activityFactory.getActivityType().equals(activityType)) {
+					activityFactoriesUpdated(null, null);
+					return activityFactory;
+				}
+		return factory;
 	}
 
 	private ActivityFactory getActivityFactory(URI activityType)
 			throws ActivityNotFoundException {
-		for (ActivityFactory activityFactory : activityFactories)
-			if (activityFactory.getActivityType().equals(activityType))
-				return activityFactory;
-		throw new ActivityNotFoundException("Could not find an activity for "
-				+ activityType);
+		ActivityFactory factory = findActivityFactory(activityType);
+		if (factory == null)
+			throw new ActivityNotFoundException(
+					"Could not find an activity for " + activityType);
+		return factory;
 	}
 }
@@ -20,9 +20,13 @@
 package org.apache.taverna.platform.capability.dispatch.impl;
 
 import java.net.URI;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Logger;
 
 import org.apache.taverna.workflowmodel.processor.dispatch.DispatchLayer;
@@ -42,23 +46,19 @@ public class DispatchLayerServiceImpl implements DispatchLayerService {
 			.getLogger(DispatchLayerServiceImpl.class.getName());
 
 	private List<DispatchLayerFactory> dispatchLayerFactories;
+	/** Factories by dispatch layer type; <code>null</code> when it must be rebuilt */
+	private volatile Map<URI, DispatchLayerFactory> factoryIndex;
+	private final AtomicLong factoryChanges = new AtomicLong();
+	private final AtomicLong indexBuilds = new AtomicLong();
 
 	@Override
 	public Set<URI> getDispatchLayerTypes() {
-		Set<URI> dispatchLayerTypes = new HashSet<>();
-		for (DispatchLayerFactory dispatchLayerFactory : dispatchLayerFactories)
-			dispatchLayerTypes.addAll(dispatchLayerFactory
-					.getDispatchLayerTypes());
-		return dispatchLayerTypes;
+		return new HashSet<>(getFactoryIndex().keySet());
 	}
 
 	@Override
 	public boolean dispatchLayerExists(URI dispatchLayerType) {
-		for (DispatchLayerFactory dispatchLayerFactory : dispatchLayerFactories)
-			if (dispatchLayerFactory.getDispatchLayerTypes().contains(
-					dispatchLayerType))
-				return true;
-		return false;
+		return findDispatchLayerFactory(dispatchLayerType) != null;
 	}
 
 	@Override
@@ -97,15 +97,66 @@ public class DispatchLayerServiceImpl implements DispatchLayerService {
 	public void setDispatchLayerFactories(
 			List<DispatchLayerFactory> dispatchLayerFactories) {
 		this.dispatchLayerFactories = dispatchLayerFactories;
+		dispatchLayerFactoriesUpdated(null, null);
+	}
+
+	/**
+	 * Discards the dispatch layer type index. Called by Spring DM when a
+	 * <code>DispatchLayerFactory</code> is bound or unbound.
+	 */
+	public synchronized void dispatchLayerFactoriesUpdated(Object service,
+			Map<?, ?> properties) {
+		factoryChanges.incrementAndGet();
+		factoryIndex = null;
+	}
+
+	/**
+	 * Returns the number of times the dispatch layer type index has been
+	 * built.
+	 */
+	public long getIndexBuilds() {
+		return indexBuilds.get();
+	}
+
+	private Map<URI, DispatchLayerFactory> getFactoryIndex() {
+		Map<URI, DispatchLayerFactory> index = factoryIndex;
+		if (index == null) {
+			long changes = factoryChanges.get();
+			index = new HashMap<>();
+			if (dispatchLayerFactories != null)
+				for (DispatchLayerFactory dispatchLayerFactory : dispatchLayerFactories)
+					for (URI type : dispatchLayerFactory.getDispatchLayerTypes())
+						if (!index.containsKey(type))
+							index.put(type, dispatchLayerFactory);
+			index = Collections.unmodifiableMap(index);
+			indexBuilds.incrementAndGet();
+			synchronized (this) {
+				if (factoryChanges.get() == changes)
+					factoryIndex = index;
+			}
+		}
+		return index;
+	}
+
+	private DispatchLayerFactory findDispatchLayerFactory(URI dispatchLayerType) {
+		DispatchLayerFactory factory = getFactoryIndex().get(dispatchLayerType);
+		if (factory == null && dispatchLayerFactories != null)
+			// the list may have changed without a bind or unbind callback
+			for (DispatchLayerFactory dispatchLayerFactory : dispatchLayerFactories)
+				if (dispatchLayerFactory.getDispatchLayerTypes().contains(
+						dispatchLayerType)) {
+					dispatchLayerFactoriesUpdated(null, null);
+					return dispatchLayerFactory;
+				}
+		return factory;
 	}
 
 	private DispatchLayerFactory getDispatchLayerFactory(URI dispatchLayerType)
 			throws DispatchLayerNotFoundException {
-		for (DispatchLayerFactory dispatchLayerFactory : dispatchLayerFactories)
-			if (dispatchLayerFactory.getDispatchLayerTypes().contains(
-					dispatchLayerType))
-				return dispatchLayerFactory;
-		throw new DispatchLayerNotFoundException(
-				"Could not find a dispatch layer for " + dispatchLayerType);
+		DispatchLayerFactory factory = findDispatchLayerFactory(dispatchLayerType);
+		if (factory == null)
+			throw new DispatchLayerNotFoundException(
+					"Could not find a dispatch layer for " + dispatchLayerType);
+		return factory;
 	}
 }
@@ -0,0 +1,215 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.platform.capability.activity.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.taverna.platform.capability.api.ActivityNotFoundException;
+import org.apache.taverna.workflowmodel.processor.activity.Activity;
+import org.apache.taverna.workflowmodel.processor.activity.ActivityFactory;
+import org.apache.taverna.workflowmodel.processor.activity.ActivityInputPort;
+import org.apache.taverna.workflowmodel.processor.activity.ActivityOutputPort;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+public class ActivityServiceImplTest {
+	private static final URI TYPE_A = URI.create("http://example.com/activity/a");
+	private static final URI TYPE_B = URI.create("http://example.com/activity/b");
+
+	private ActivityServiceImpl activityService;
+	private List<ActivityFactory> factories;
+	private TestActivityFactory a, b;
+
+	private static class TestActivityFactory implements ActivityFactory {
+		private final URI type;
+		private final String title;
+		int schemaRequests, portRequests;
+
+		TestActivityFactory(URI type, String title) {
+			this.type = type;
+			this.title = title;
+		}
+
+		@Override
+		public Activity<?> createActivity() {
+			return null;
+		}
+
+		@Override
+		public URI getActivityType() {
+			return type;
+		}
+
+		@Override
+		public JsonNode getActivityConfigurationSchema() {
+			schemaRequests++;
+			return JsonNodeFactory.instance.objectNode().put("title", title);
+		}
+
+		@Override
+		public Set<ActivityInputPort> getInputPorts(JsonNode configuration) {
+			portRequests++;
+			return Collections.emptySet();
+		}
+
+		@Override
+		public Set<ActivityOutputPort> getOutputPorts(JsonNode configuration) {
+			portRequests++;
+			return Collections.emptySet();
+		}
+	}
+
+	@Before
+	public void createService() {
+		a = new TestActivityFactory(TYPE_A, "a");
+		b = new TestActivityFactory(TYPE_B, "b");
+		factories = new ArrayList<ActivityFactory>();
+		factories.add(a);
+		activityService = new ActivityServiceImpl();
+		activityService.setActivityFactories(factories);
+	}
+
+	@Test
+	public void findsRegisteredFactories() throws Exception {
+		assertEquals(Collections.singleton(TYPE_A),
+				activityService.getActivityTypes());
+		assertTrue(activityService.activityExists(TYPE_A));
+		assertFalse(activityService.activityExists(TYPE_B));
+	}
+
+	@Test
+	public void registeringAFactoryUpdatesLookups() throws Exception {
+		assertFalse(activityService.activityExists(TYPE_B));
+		factories.add(b);
+		activityService.activityFactoriesUpdated(b, null);
+		assertTrue(activityService.activityExists(TYPE_B));
+		assertEquals(new HashSet<>(Arrays.asList(TYPE_A, TYPE_B)),
+				activityService.getActivityTypes());
+		assertEquals("b", activityService
+				.getActivityConfigurationSchema(TYPE_B).get("title").asText());
+	}
+
+	@Test
+	public void unregisteringAFactoryUpdatesLookups() throws Exception {
+		factories.add(b);
+		activityService.activityFactoriesUpdated(b, null);
+		assertTrue(activityService.activityExists(TYPE_B));
+		activityService.getActivityConfigurationSchema(TYPE_B);
+		factories.remove(b);
+		activityService.activityFactoriesUpdated(b, null);
+		assertFalse(activityService.activityExists(TYPE_B));
+		assertEquals(Collections.singleton(TYPE_A),
+				activityService.getActivityTypes());
+		try {
+			activityService.getActivityConfigurationSchema(TYPE_B);
+			fail("Schema of an unregistered activity");
+		} catch (ActivityNotFoundException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void settingFactoriesReplacesThem() throws Exception {
+		activityService.setActivityFactories(Collections
+				.<ActivityFactory> singletonList(b));
+		assertFalse(activityService.activityExists(TYPE_A));
+		assertTrue(activityService.activityExists(TYPE_B));
+	}
+
+	@Test
+	public void factoryAddedWithoutCallbackIsFound() throws Exception {
+		assertFalse(activityService.activityExists(TYPE_B));
+		factories.add(b);
+		assertTrue(activityService.activityExists(TYPE_B));
+		assertTrue(activityService.getActivityTypes().contains(TYPE_B));
+	}
+
+	@Test
+	public void firstFactoryForATypeIsUsed() throws Exception {
+		factories.add(new TestActivityFactory(TYPE_A, "other"));
+		activityService.activityFactoriesUpdated(null, null);
+		assertEquals("a", activityService
+				.getActivityConfigurationSchema(TYPE_A).get("title").asText());
+	}
+
+	@Test
+	public void indexIsBuiltOncePerChange() throws Exception {
+		long builds = activityService.getIndexBuilds();
+		activityService.activityExists(TYPE_A);
+		activityService.getActivityTypes();
+		activityService.activityExists(TYPE_A);
+		assertEquals(builds + 1, activityService.getIndexBuilds());
+		activityService.activityFactoriesUpdated(null, null);
+		activityService.activityExists(TYPE_A);
+		assertEquals(builds + 2, activityService.getIndexBuilds());
+	}
+
+	@Test
+	public void schemaIsCachedUntilFactoriesChange() throws Exception {
+		activityService.getActivityConfigurationSchema(TYPE_A);
+		activityService.getActivityConfigurationSchema(TYPE_A);
+		assertEquals(1, a.schemaRequests);
+		assertEquals(1, activityService.getCacheHits());
+		activityService.activityFactoriesUpdated(null, null);
+		activityService.getActivityConfigurationSchema(TYPE_A);
+		assertEquals(2, a.schemaRequests);
+	}
+
+	@Test
+	public void replacedFactorySchemaIsUsed() throws Exception {
+		activityService.getActivityConfigurationSchema(TYPE_A);
+		factories.remove(a);
+		TestActivityFactory replacement = new TestActivityFactory(TYPE_A,
+				"replacement");
+		factories.add(replacement);
+		activityService.activityFactoriesUpdated(replacement, null);
+		assertEquals("replacement",
+				activityService.getActivityConfigurationSchema(TYPE_A)
+						.get("title").asText());
+	}
+
+	@Test
+	public void portsAreCachedUntilFactoriesChange() throws Exception {
+		JsonNode configuration = JsonNodeFactory.instance.objectNode().put(
+				"script", "x");
+		activityService.getActivityInputPorts(TYPE_A, configuration);
+		activityService.getActivityInputPorts(TYPE_A, configuration);
+		activityService.getActivityOutputPorts(TYPE_A, configuration);
+		activityService.getActivityOutputPorts(TYPE_A, configuration);
+		assertEquals(2, a.portRequests);
+		activityService.activityFactoriesUpdated(null, null);
+		activityService.getActivityInputPorts(TYPE_A, configuration);
+		assertEquals(3, a.portRequests);
+	}
+}
@@ -0,0 +1,186 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.platform.capability.dispatch.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.taverna.platform.capability.api.DispatchLayerNotFoundException;
+import org.apache.taverna.workflowmodel.processor.dispatch.AbstractDispatchLayer;
+import org.apache.taverna.workflowmodel.processor.dispatch.DispatchLayer;
+import org.apache.taverna.workflowmodel.processor.dispatch.DispatchLayerFactory;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
+public class DispatchLayerServiceImplTest {
+	private static final URI PARALLELIZE = URI
+			.create("http://example.com/dispatchlayer/Parallelize");
+	private static final URI RETRY = URI
+			.create("http://example.com/dispatchlayer/Retry");
+	private static final URI STOP = URI
+			.create("http://example.com/dispatchlayer/Stop");
+
+	private DispatchLayerServiceImpl dispatchLayerService;
+	private List<DispatchLayerFactory> factories;
+	private TestDispatchLayerFactory core, stop;
+
+	private static class TestDispatchLayer extends
+			AbstractDispatchLayer<JsonNode> {
+		final URI type;
+		JsonNode configuration;
+
+		TestDispatchLayer(URI type) {
+			this.type = type;
+		}
+
+		@Override
+		public void configure(JsonNode configuration) {
+			this.configuration = configuration;
+		}
+
+		@Override
+		public JsonNode getConfiguration() {
+			return configuration;
+		}
+	}
+
+	private static class TestDispatchLayerFactory implements
+			DispatchLayerFactory {
+		private final Set<URI> types;
+
+		TestDispatchLayerFactory(URI... types) {
+			this.types = new HashSet<>(Arrays.asList(types));
+		}
+
+		@Override
+		public DispatchLayer<?> createDispatchLayer(URI dispatchLayerType) {
+			return new TestDispatchLayer(dispatchLayerType);
+		}
+
+		@Override
+		public Set<URI> getDispatchLayerTypes() {
+			return types;
+		}
+
+		@Override
+		public JsonNode getDispatchLayerConfigurationSchema(
+				URI dispatchLayerType) {
+			return null;
+		}
+	}
+
+	@Before
+	public void createService() {
+		core = new TestDispatchLayerFactory(PARALLELIZE, RETRY);
+		stop = new TestDispatchLayerFactory(STOP);
+		factories = new ArrayList<DispatchLayerFactory>();
+		factories.add(core);
+		dispatchLayerService = new DispatchLayerServiceImpl();
+		dispatchLayerService.setDispatchLayerFactories(factories);
+	}
+
+	@Test
+	public void findsEveryTypeOfRegisteredFactories() throws Exception {
+		assertEquals(new HashSet<>(Arrays.asList(PARALLELIZE, RETRY)),
+				dispatchLayerService.getDispatchLayerTypes());
+		assertTrue(dispatchLayerService.dispatchLayerExists(RETRY));
+		assertFalse(dispatchLayerService.dispatchLayerExists(STOP));
+	}
+
+	@Test
+	public void registeringAFactoryUpdatesLookups() throws Exception {
+		assertFalse(dispatchLayerService.dispatchLayerExists(STOP));
+		factories.add(stop);
+		dispatchLayerService.dispatchLayerFactoriesUpdated(stop, null);
+		assertTrue(dispatchLayerService.dispatchLayerExists(STOP));
+		assertEquals(STOP, ((TestDispatchLayer) dispatchLayerService
+				.createDispatchLayer(STOP, null)).type);
+	}
+
+	@Test
+	public void unregisteringAFactoryUpdatesLookups() throws Exception {
+		factories.add(stop);
+		dispatchLayerService.dispatchLayerFactoriesUpdated(stop, null);
+		assertTrue(dispatchLayerService.dispatchLayerExists(STOP));
+		factories.remove(stop);
+		dispatchLayerService.dispatchLayerFactoriesUpdated(stop, null);
+		assertFalse(dispatchLayerService.dispatchLayerExists(STOP));
+		assertEquals(new HashSet<>(Arrays.asList(PARALLELIZE, RETRY)),
+				dispatchLayerService.getDispatchLayerTypes());
+	}
+
+	@Test(expected = DispatchLayerNotFoundException.class)
+	public void unregisteredTypeCannotBeCreated() throws Exception {
+		factories.remove(core);
+		dispatchLayerService.dispatchLayerFactoriesUpdated(core, null);
+		dispatchLayerService.createDispatchLayer(RETRY, null);
+	}
+
+	@Test
+	public void settingFactoriesReplacesThem() throws Exception {
+		dispatchLayerService.setDispatchLayerFactories(Collections
+				.<DispatchLayerFactory> singletonList(stop));
+		assertFalse(dispatchLayerService.dispatchLayerExists(PARALLELIZE));
+		assertTrue(dispatchLayerService.dispatchLayerExists(STOP));
+	}
+
+	@Test
+	public void factoryAddedWithoutCallbackIsFound() throws Exception {
+		assertFalse(dispatchLayerService.dispatchLayerExists(STOP));
+		factories.add(stop);
+		assertTrue(dispatchLayerService.dispatchLayerExists(STOP));
+		assertTrue(dispatchLayerService.getDispatchLayerTypes().contains(STOP));
+	}
+
+	@Test
+	public void indexIsBuiltOncePerChange() throws Exception {
+		long builds = dispatchLayerService.getIndexBuilds();
+		dispatchLayerService.dispatchLayerExists(RETRY);
+		dispatchLayerService.getDispatchLayerTypes();
+		dispatchLayerService.createDispatchLayer(PARALLELIZE, null);
+		assertEquals(builds + 1, dispatchLayerService.getIndexBuilds());
+		dispatchLayerService.dispatchLayerFactoriesUpdated(null, null);
+		dispatchLayerService.dispatchLayerExists(RETRY);
+		assertEquals(builds + 2, dispatchLayerService.getIndexBuilds());
+	}
+
+	@Test
+	public void createdLayerIsConfigured() throws Exception {
+		JsonNode configuration = JsonNodeFactory.instance.objectNode().put(
+				"maxJobs", 4);
+		TestDispatchLayer layer = (TestDispatchLayer) dispatchLayerService
+				.createDispatchLayer(PARALLELIZE, configuration);
+		assertEquals(PARALLELIZE, layer.type);
+		assertSame(configuration, layer.configuration);
+	}
+}
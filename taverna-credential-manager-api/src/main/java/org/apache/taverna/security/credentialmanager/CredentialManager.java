@@ -408,6 +408,22 @@ public interface CredentialManager {
 	 * @throws CMException
 	 */
 	SSLSocketFactory getTavernaSSLSocketFactory() throws CMException;
+
+	/**
+	 * Get an SSLSocketFactory backed by Credential Manager's Truststore that
+	 * always authenticates with the given key pair from the Keystore.
+	 * <p>
+	 * Factories are cached until the Keystore or Truststore changes, so
+	 * connections made with them can resume earlier SSL sessions.
+	 * 
+	 * @param keyPairAlias
+	 *            the Keystore alias of the key pair, as returned by
+	 *            {@link #addKeyPair(Key, Certificate[])}; <code>null</code>
+	 *            for {@link #getTavernaSSLSocketFactory()}
+	 * @throws CMException
+	 */
+	SSLSocketFactory getTavernaSSLSocketFactory(String keyPairAlias)
+			throws CMException;
         
         public Authenticator getAuthenticator();
 
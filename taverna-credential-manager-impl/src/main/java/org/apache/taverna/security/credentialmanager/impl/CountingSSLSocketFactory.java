@@ -0,0 +1,119 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.security.credentialmanager.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.HandshakeCompletedEvent;
+import javax.net.ssl.HandshakeCompletedListener;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * An SSLSocketFactory that counts the handshakes completed by its sockets, and
+ * how many of them needed a new session rather than resuming a cached one.
+ */
+class CountingSSLSocketFactory extends SSLSocketFactory {
+	private final SSLSocketFactory delegate;
+	private final AtomicLong handshakes;
+	private final AtomicLong newSessions;
+	private final Set<SSLSession> sessions = Collections
+			.newSetFromMap(new WeakHashMap<SSLSession, Boolean>());
+	private final HandshakeCompletedListener listener = new HandshakeCompletedListener() {
+		@Override
+		public void handshakeCompleted(HandshakeCompletedEvent event) {
+			handshakes.incrementAndGet();
+			synchronized (sessions) {
+				if (sessions.add(event.getSession()))
+					newSessions.incrementAndGet();
+			}
+		}
+	};
+
+	/**
+	 * @param handshakes
+	 *            incremented for every completed handshake
+	 * @param newSessions
+	 *            incremented for every handshake that created a session
+	 */
+	CountingSSLSocketFactory(SSLSocketFactory delegate, AtomicLong handshakes,
+			AtomicLong newSessions) {
+		this.delegate = delegate;
+		this.handshakes = handshakes;
+		this.newSessions = newSessions;
+	}
+
+	private Socket count(Socket socket) {
+		if (socket instanceof SSLSocket)
+			((SSLSocket) socket).addHandshakeCompletedListener(listener);
+		return socket;
+	}
+
+	@Override
+	public String[] getDefaultCipherSuites() {
+		return delegate.getDefaultCipherSuites();
+	}
+
+	@Override
+	public String[] getSupportedCipherSuites() {
+		return delegate.getSupportedCipherSuites();
+	}
+
+	@Override
+	public Socket createSocket() throws IOException {
+		return count(delegate.createSocket());
+	}
+
+	@Override
+	public Socket createSocket(Socket s, String host, int port,
+			boolean autoClose) throws IOException {
+		return count(delegate.createSocket(s, host, port, autoClose));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port) throws IOException {
+		return count(delegate.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(String host, int port, InetAddress localHost,
+			int localPort) throws IOException {
+		return count(delegate.createSocket(host, port, localHost, localPort));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress host, int port) throws IOException {
+		return count(delegate.createSocket(host, port));
+	}
+
+	@Override
+	public Socket createSocket(InetAddress address, int port,
+			InetAddress localAddress, int localPort) throws IOException {
+		return count(delegate.createSocket(address, port, localAddress,
+				localPort));
+	}
+}
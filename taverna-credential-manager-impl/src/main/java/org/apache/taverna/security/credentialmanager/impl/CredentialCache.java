@@ -0,0 +1,173 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.security.credentialmanager.impl;
+
+import static java.util.concurrent.TimeUnit.MINUTES;
+
+import java.net.URI;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.taverna.security.credentialmanager.UsernamePassword;
+
+/**
+ * Decrypted username and password pairs from the Keystore, keyed by the
+ * service URI they are stored under.
+ * <p>
+ * Reads do not lock. Entries expire after a time to live, and their passwords
+ * are zeroed when they expire, are evicted or the cache is cleared. Callers
+ * always get their own copy of a cached pair, which they may reset.
+ */
+class CredentialCache {
+	public static final long DEFAULT_TIME_TO_LIVE = MINUTES.toMillis(5);
+	public static final int DEFAULT_MAX_ENTRIES = 256;
+
+	private final Map<URI, Entry> entries = new ConcurrentHashMap<>();
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile long timeToLive = DEFAULT_TIME_TO_LIVE;
+	private volatile int maxEntries = DEFAULT_MAX_ENTRIES;
+
+	private static final class Entry {
+		private final UsernamePassword usernamePassword;
+		private final long expires;
+		private volatile boolean cleared;
+
+		Entry(UsernamePassword usernamePassword, long expires) {
+			this.usernamePassword = usernamePassword;
+			this.expires = expires;
+		}
+
+		/** Returns a copy of the pair, or <code>null</code> if it was cleared */
+		UsernamePassword copy() {
+			UsernamePassword copy = usernamePassword.clone();
+			/*
+			 * clear() sets the flag before zeroing, so if it is still unset
+			 * the password was copied intact
+			 */
+			if (cleared) {
+				copy.resetPassword();
+				return null;
+			}
+			return copy;
+		}
+
+		void clear() {
+			cleared = true;
+			usernamePassword.resetPassword();
+		}
+	}
+
+	/**
+	 * Returns a copy of the pair cached for <code>serviceURI</code>, or
+	 * <code>null</code> if there is none or it has expired.
+	 */
+	UsernamePassword get(URI serviceURI) {
+		Entry entry = entries.get(serviceURI);
+		if (entry != null) {
+			if (entry.expires > System.currentTimeMillis()) {
+				UsernamePassword copy = entry.copy();
+				if (copy != null) {
+					hits.incrementAndGet();
+					return copy;
+				}
+			} else if (entries.remove(serviceURI, entry))
+				entry.clear();
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Caches a copy of <code>usernamePassword</code> for
+	 * <code>serviceURI</code>.
+	 */
+	void put(URI serviceURI, UsernamePassword usernamePassword) {
+		long ttl = timeToLive;
+		if (ttl <= 0 || maxEntries <= 0)
+			return;
+		long now = System.currentTimeMillis();
+		if (entries.size() >= maxEntries)
+			evict(now);
+		Entry old = entries.put(serviceURI, new Entry(
+				usernamePassword.clone(), now + ttl));
+		if (old != null)
+			old.clear();
+	}
+
+	private void evict(long now) {
+		// expired entries first, then whatever comes first
+		for (Map.Entry<URI, Entry> e : entries.entrySet())
+			if (e.getValue().expires <= now
+					&& entries.remove(e.getKey(), e.getValue()))
+				e.getValue().clear();
+		for (Iterator<Map.Entry<URI, Entry>> i = entries.entrySet()
+				.iterator(); i.hasNext() && entries.size() >= maxEntries;) {
+			Map.Entry<URI, Entry> e = i.next();
+			if (entries.remove(e.getKey(), e.getValue()))
+				e.getValue().clear();
+		}
+	}
+
+	/**
+	 * Removes all pairs, zeroing their passwords.
+	 */
+	void clear() {
+		for (URI serviceURI : entries.keySet()) {
+			Entry entry = entries.remove(serviceURI);
+			if (entry != null)
+				entry.clear();
+		}
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	long getTimeToLive() {
+		return timeToLive;
+	}
+
+	/**
+	 * Sets how long pairs are cached for, in milliseconds; zero or less
+	 * disables the cache.
+	 */
+	void setTimeToLive(long timeToLive) {
+		this.timeToLive = timeToLive;
+		if (timeToLive <= 0)
+			clear();
+	}
+
+	void setMaxEntries(int maxEntries) {
+		this.maxEntries = maxEntries;
+		if (maxEntries <= 0)
+			clear();
+	}
+}
@@ -57,15 +57,20 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.crypto.spec.SecretKeySpec;
 import javax.net.ssl.HttpsURLConnection;
 import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import javax.net.ssl.SSLSocketFactory;
 import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
@@ -167,6 +172,28 @@ public class CredentialManagerImpl implements CredentialManager,
 	 */
 	private KeystoreChangedObserver keystoresChangedObserver = new KeystoreChangedObserver();
 
+	/**
+	 * Incremented whenever the SSL key or trust material is replaced, which
+	 * retires all SSLSocketFactories created so far.
+	 */
+	private final AtomicLong sslGeneration = new AtomicLong();
+
+	/**
+	 * Keystore aliases, other than passwords, that the current
+	 * SSLSocketFactory was created with; <code>null</code> if unknown.
+	 */
+	private volatile Set<String> sslKeystoreAliases = null;
+
+	/**
+	 * SSLSocketFactories that always authenticate with one key pair, keyed by
+	 * the SSL generation and the key pair's alias.
+	 */
+	private final Map<String, SSLSocketFactory> keyPairSSLSocketFactories = new ConcurrentHashMap<>();
+
+	private final AtomicLong sslContextsCreated = new AtomicLong();
+	private final AtomicLong sslHandshakes = new AtomicLong();
+	private final AtomicLong sslNewSessions = new AtomicLong();
+
 	/**
 	 * Cached list of all services that have a username/password entry in the
 	 * Keystore
@@ -180,7 +207,14 @@ public class CredentialManagerImpl implements CredentialManager,
 	 * we do not have to ask user for their username and password for every
 	 * service in the same realm.
 	 */
-	private HashMap<URI, URI> cachedServiceURIsMap = null;
+	private volatile Map<URI, URI> cachedServiceURIsMap = null;
+
+	/**
+	 * Decrypted username and password pairs, so that looking up credentials
+	 * does not have to wait for the Keystore. Cleared with the above on any
+	 * change to the Keystore.
+	 */
+	private final CredentialCache credentialCache = new CredentialCache();
 
 	// Observer that clears the above list and map on any change to the Keystore
 	private ClearCachedServiceURIsObserver clearCachedServiceURIsObserver = new ClearCachedServiceURIsObserver();
@@ -758,11 +792,24 @@ public class CredentialManagerImpl implements CredentialManager,
 		// as Credential Manager can be created but not initialized
 		initialize();
 
+		LinkedHashSet<URI> possibleServiceURIsToLookup = getPossibleServiceURIsToLookup(
+				serviceURI, usePathRecursion);
+		Map<URI, URI> allServiceURIs = getFragmentMappedURIsForAllUsernameAndPasswordPairs();
+		for (URI lookupURI : possibleServiceURIsToLookup) {
+			URI mappedURI = allServiceURIs.get(lookupURI);
+			if (mappedURI == null)
+				continue;
+			UsernamePassword usernamePassword = credentialCache.get(mappedURI);
+			if (usernamePassword != null)
+				return usernamePassword;
+			// Not cached, so decrypt it from the Keystore below
+			break;
+		}
+
 		synchronized (keystore) {
 			SecretKeySpec passwordKey = null;
-			LinkedHashSet<URI> possibleServiceURIsToLookup = getPossibleServiceURIsToLookup(
-					serviceURI, usePathRecursion);
-			Map<URI, URI> allServiceURIs = getFragmentMappedURIsForAllUsernameAndPasswordPairs();
+			// The Keystore may have changed while we were not holding the lock
+			allServiceURIs = getFragmentMappedURIsForAllUsernameAndPasswordPairs();
 
 			try {
 				for (URI lookupURI : possibleServiceURIsToLookup) {
@@ -804,6 +851,11 @@ public class CredentialManagerImpl implements CredentialManager,
 					UsernamePassword usernamePassword = new UsernamePassword();
 					usernamePassword.setUsername(username);
 					usernamePassword.setPassword(password.toCharArray());
+					/*
+					 * Cached while holding the Keystore lock, so a change to
+					 * the Keystore can't clear the cache before this is added
+					 */
+					credentialCache.put(mappedURI, usernamePassword);
 					return usernamePassword;
 				}
 
@@ -836,7 +888,10 @@ public class CredentialManagerImpl implements CredentialManager,
 
 	protected Map<URI, URI> getFragmentMappedURIsForAllUsernameAndPasswordPairs()
 			throws CMException {
-		synchronized (Security.class) {// FIXME synchonization on strange thing!
+		Map<URI, URI> cached = cachedServiceURIsMap;
+		if (cached != null)
+			return cached;
+		synchronized (keystore) {
 			if (cachedServiceURIsMap == null) {
 				HashMap<URI, URI> map = new HashMap<>();
 				// Get all service URIs that have username and password in the
@@ -1948,16 +2003,6 @@ public class CredentialManagerImpl implements CredentialManager,
 	 * needed for creating an HTTPS connection is invoked.
 	 */
 	private SSLSocketFactory createSSLSocketFactory() throws CMException {
-		SSLContext sc = null;
-		try {
-			sc = SSLContext.getInstance("SSLv3");
-		} catch (NoSuchAlgorithmException e1) {
-			throw new CMException(
-					"Failed to create SSL socket factory: "
-							+ "the SSL algorithm was not available from any crypto provider",
-					e1);
-		}
-
 		KeyManager[] keyManagers = null;
 		try {
 			// Create our own KeyManager with (possibly not yet initialised)
@@ -1968,6 +2013,41 @@ public class CredentialManagerImpl implements CredentialManager,
 					+ "could not initiate SSL Key Manager", e);
 		}
 
+		// Retire the factories made from the previous key and trust material
+		sslGeneration.incrementAndGet();
+		keyPairSSLSocketFactories.clear();
+		sslKeystoreAliases = getSSLKeystoreAliases();
+
+		SSLContext sc = createSSLContext(keyManagers);
+
+		/*
+		 * Set the default SSLContext to be used for subsequent SSL sockets from
+		 * Java
+		 */
+		SSLContext.setDefault(sc);
+
+		/*
+		 * Create SSL socket to be used for HTTPS connections from the JVM e.g.
+		 * REST activity that uses Apache HTTP client library
+		 */
+		tavernaSSLSocketFactory = new CountingSSLSocketFactory(
+				sc.getSocketFactory(), sslHandshakes, sslNewSessions);
+
+		return tavernaSSLSocketFactory;
+	}
+
+	private SSLContext createSSLContext(KeyManager[] keyManagers)
+			throws CMException {
+		SSLContext sc = null;
+		try {
+			sc = SSLContext.getInstance("SSLv3");
+		} catch (NoSuchAlgorithmException e1) {
+			throw new CMException(
+					"Failed to create SSL socket factory: "
+							+ "the SSL algorithm was not available from any crypto provider",
+					e1);
+		}
+
 		TrustManager[] trustManagers = null;
 		try {
 			// Create our own TrustManager with (possibly not yet initialised)
@@ -1984,20 +2064,32 @@ public class CredentialManagerImpl implements CredentialManager,
 			throw new CMException("Failed to initiate the SSL socet factory",
 					kmex);
 		}
+		sslContextsCreated.incrementAndGet();
+		return sc;
+	}
 
-		/*
-		 * Set the default SSLContext to be used for subsequent SSL sockets from
-		 * Java
-		 */
-		SSLContext.setDefault(sc);
-
-		/*
-		 * Create SSL socket to be used for HTTPS connections from the JVM e.g.
-		 * REST activity that uses Apache HTTP client library
-		 */
-		tavernaSSLSocketFactory = sc.getSocketFactory();
-
-		return tavernaSSLSocketFactory;
+	/**
+	 * Get the aliases of the Keystore entries that SSL authentication can use,
+	 * i.e. everything except username and password pairs, or
+	 * <code>null</code> if the Keystore has not been loaded yet.
+	 */
+	private Set<String> getSSLKeystoreAliases() throws CMException {
+		if (keystore == null)
+			return null;
+		Set<String> aliases = new HashSet<>();
+		synchronized (keystore) {
+			try {
+				for (Enumeration<String> e = keystore.aliases(); e
+						.hasMoreElements();) {
+					String alias = e.nextElement();
+					if (!alias.startsWith("password#"))
+						aliases.add(alias);
+				}
+			} catch (KeyStoreException e) {
+				throw new CMException("Failed to list the Keystore aliases", e);
+			}
+		}
+		return aliases;
 	}
 
 	@Override
@@ -2007,6 +2099,57 @@ public class CredentialManagerImpl implements CredentialManager,
 		return tavernaSSLSocketFactory;
 	}
 
+	@Override
+	public SSLSocketFactory getTavernaSSLSocketFactory(String keyPairAlias)
+			throws CMException {
+		if (keyPairAlias == null)
+			return getTavernaSSLSocketFactory();
+		String key = sslGeneration.get() + " " + keyPairAlias;
+		SSLSocketFactory factory = keyPairSSLSocketFactories.get(key);
+		if (factory == null) {
+			SSLContext sc = createSSLContext(new KeyManager[] { new KeyPairKeyManager(
+					keyPairAlias) });
+			factory = new CountingSSLSocketFactory(sc.getSocketFactory(),
+					sslHandshakes, sslNewSessions);
+			SSLSocketFactory existing = keyPairSSLSocketFactories.putIfAbsent(
+					key, factory);
+			if (existing != null)
+				factory = existing;
+		}
+		return factory;
+	}
+
+	/**
+	 * Get the number of SSLContexts created from the Keystore and Truststore.
+	 */
+	public long getSSLContextsCreated() {
+		return sslContextsCreated.get();
+	}
+
+	/**
+	 * Get the number of SSL handshakes completed by sockets from Taverna's
+	 * SSLSocketFactories.
+	 */
+	public long getSSLHandshakes() {
+		return sslHandshakes.get();
+	}
+
+	/**
+	 * Get the number of SSL handshakes that could not resume a cached session
+	 * and had to negotiate a new one.
+	 */
+	public long getSSLNewSessions() {
+		return sslNewSessions.get();
+	}
+
+	/**
+	 * Get the number of SSLSocketFactories currently cached for particular key
+	 * pairs.
+	 */
+	public int getKeyPairSSLSocketFactoryCount() {
+		return keyPairSSLSocketFactories.size();
+	}
+
         @Override
         public Authenticator getAuthenticator() {
             return new CredentialManagerAuthenticator(this);
@@ -2157,6 +2300,69 @@ public class CredentialManagerImpl implements CredentialManager,
 		}
 	}
 
+	/**
+	 * A Key Manager that always authenticates with the key pair it was created
+	 * for, rather than letting the default key manager choose one.
+	 */
+	private class KeyPairKeyManager extends X509ExtendedKeyManager {
+		private final TavernaKeyManager keyManager = new TavernaKeyManager();
+		private final String alias;
+
+		KeyPairKeyManager(String alias) {
+			this.alias = alias;
+		}
+
+		private String chooseAlias(String[] keyType) {
+			PrivateKey privateKey = keyManager.getPrivateKey(alias);
+			if (privateKey == null) {
+				logger.warn("No key pair with alias " + alias);
+				return null;
+			}
+			for (String type : keyType)
+				if (privateKey.getAlgorithm().equals(type))
+					return alias;
+			return null;
+		}
+
+		@Override
+		public String chooseClientAlias(String[] keyType, Principal[] issuers,
+				Socket socket) {
+			return chooseAlias(keyType);
+		}
+
+		@Override
+		public String chooseEngineClientAlias(String[] keyType,
+				Principal[] issuers, SSLEngine engine) {
+			return chooseAlias(keyType);
+		}
+
+		@Override
+		public String chooseServerAlias(String keyType, Principal[] issuers,
+				Socket socket) {
+			return null;
+		}
+
+		@Override
+		public X509Certificate[] getCertificateChain(String alias) {
+			return keyManager.getCertificateChain(alias);
+		}
+
+		@Override
+		public String[] getClientAliases(String keyType, Principal[] issuers) {
+			return keyManager.getClientAliases(keyType, issuers);
+		}
+
+		@Override
+		public PrivateKey getPrivateKey(String alias) {
+			return keyManager.getPrivateKey(alias);
+		}
+
+		@Override
+		public String[] getServerAliases(String keyType, Principal[] issuers) {
+			return null;
+		}
+	}
+
 	/**
 	 * Taverna's Trust Manager is a customised X509TrustManager that initilizes
 	 * Credential Manager only if certain methods on it are invoked, i.e. if
@@ -2536,6 +2742,7 @@ public class CredentialManagerImpl implements CredentialManager,
 				synchronized (keystore) {
 					cachedServiceURIsMap = null;
 					cachedServiceURIsList = null;
+					credentialCache.clear();
 				}
 		}
 	}
@@ -2550,6 +2757,16 @@ public class CredentialManagerImpl implements CredentialManager,
 		@Override
 		public void notify(Observable<KeystoreChangedEvent> sender,
 				KeystoreChangedEvent message) throws Exception {
+			/*
+			 * Saving or deleting a username and password does not change what
+			 * SSL can use, and a new SSLContext would throw away all the cached
+			 * SSL sessions, so only start again if the key pairs have changed
+			 */
+			if (message.keystoreType.equals(KEYSTORE)
+					&& tavernaSSLSocketFactory != null
+					&& sslKeystoreAliases != null
+					&& sslKeystoreAliases.equals(getSSLKeystoreAliases()))
+				return;
 			/*
 			 * Create the new SSLSocketFactory and set the default SSLContext
 			 * for HTTPS connetions in the JVM
@@ -2559,6 +2776,31 @@ public class CredentialManagerImpl implements CredentialManager,
 		}
 	}
 
+	/**
+	 * Set how long, in milliseconds, decrypted username and password pairs are
+	 * kept in memory after being read from the Keystore. Zero or less turns
+	 * the cache off. The default is five minutes.
+	 */
+	public void setCredentialCacheTimeToLive(long timeToLive) {
+		credentialCache.setTimeToLive(timeToLive);
+	}
+
+	/**
+	 * Get the number of username and password lookups answered from memory
+	 * rather than the Keystore.
+	 */
+	public long getCredentialCacheHits() {
+		return credentialCache.getHits();
+	}
+
+	/**
+	 * Get the number of username and password lookups that had to go to the
+	 * Keystore.
+	 */
+	public long getCredentialCacheMisses() {
+		return credentialCache.getMisses();
+	}
+
 	/**
 	 * Set the master password providers for providing the master password to
 	 * encrypt/decrypt the Credential Maager's Keystore and Truststore.
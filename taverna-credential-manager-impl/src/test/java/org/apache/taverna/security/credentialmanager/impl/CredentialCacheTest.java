@@ -0,0 +1,102 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.security.credentialmanager.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+import java.net.URI;
+
+import org.apache.taverna.security.credentialmanager.UsernamePassword;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CredentialCacheTest {
+	private static final URI SERVICE = URI.create("http://www.taverna.org.uk/");
+
+	private CredentialCache cache;
+
+	@Before
+	public void createCache() {
+		cache = new CredentialCache();
+	}
+
+	@Test
+	public void getReturnsCopies() {
+		UsernamePassword usernamePassword = new UsernamePassword("fred",
+				"secret");
+		cache.put(SERVICE, usernamePassword);
+		// the caller's pair is not shared with the cache
+		usernamePassword.resetPassword();
+
+		UsernamePassword first = cache.get(SERVICE);
+		assertEquals("fred", first.getUsername());
+		assertArrayEquals("secret".toCharArray(), first.getPassword());
+		first.resetPassword();
+
+		UsernamePassword second = cache.get(SERVICE);
+		assertNotSame(first, second);
+		assertArrayEquals("secret".toCharArray(), second.getPassword());
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void missing() {
+		assertNull(cache.get(SERVICE));
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void clear() {
+		cache.put(SERVICE, new UsernamePassword("fred", "secret"));
+		cache.clear();
+		assertNull(cache.get(SERVICE));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void expired() throws InterruptedException {
+		cache.setTimeToLive(1);
+		cache.put(SERVICE, new UsernamePassword("fred", "secret"));
+		Thread.sleep(10);
+		assertNull(cache.get(SERVICE));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void disabled() {
+		cache.setTimeToLive(0);
+		cache.put(SERVICE, new UsernamePassword("fred", "secret"));
+		assertNull(cache.get(SERVICE));
+	}
+
+	@Test
+	public void bounded() {
+		cache.setMaxEntries(2);
+		for (int i = 0; i < 5; i++)
+			cache.put(SERVICE.resolve("service" + i), new UsernamePassword(
+					"fred", "secret"));
+		assertEquals(2, cache.size());
+		assertArrayEquals("secret".toCharArray(),
+				cache.get(SERVICE.resolve("service4")).getPassword());
+	}
+}
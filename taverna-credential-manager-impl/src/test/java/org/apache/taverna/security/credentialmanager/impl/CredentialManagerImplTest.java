@@ -754,6 +754,29 @@ public class CredentialManagerImplTest {
 
 	}
 
+	/**
+	 * Test method for {@link org.apache.taverna.security.credentialmanager.impl.CredentialManagerImpl#getTavernaSSLSocketFactory(java.lang.String)}.
+	 * @throws CMException 
+	 */
+	@Test
+	public void testGetTavernaSSLSocketFactoryForKeyPair() throws CMException {
+		assertEquals(credentialManager.getTavernaSSLSocketFactory(), credentialManager.getTavernaSSLSocketFactory(null));
+
+		String alias = credentialManager.addKeyPair(privateKey, privateKeyCertChain);
+		SSLSocketFactory sslSocketFactory = credentialManager.getTavernaSSLSocketFactory(alias);
+		assertNotNull(sslSocketFactory);
+		// Cached while the Keystore does not change
+		assertEquals(sslSocketFactory, credentialManager.getTavernaSSLSocketFactory(alias));
+
+		// Saving a password does not affect SSL
+		credentialManager.addUsernameAndPasswordForService(new UsernamePassword("name", "password"), serviceURI);
+		assertEquals(sslSocketFactory, credentialManager.getTavernaSSLSocketFactory(alias));
+
+		// but removing the key pair does
+		credentialManager.deleteKeyPair(alias);
+		assertNotSame(sslSocketFactory, credentialManager.getTavernaSSLSocketFactory(alias));
+	}
+
 	/**
 	 * Test method for {@link net.sf.taverna.t2.security.credentialmanager.impl.CredentialManagerImpl#setMasterPasswordProviders(java.util.List)}.
 	 */
@@ -33,6 +33,7 @@ import org.apache.taverna.workflowmodel.Dataflow;
 import org.apache.taverna.workflowmodel.InvalidDataflowException;
 import org.apache.taverna.workflowmodel.processor.activity.AbstractAsynchronousActivity;
 import org.apache.taverna.workflowmodel.processor.activity.ActivityConfigurationException;
+import org.apache.taverna.workflowmodel.processor.activity.ActivityOutputPort;
 import org.apache.taverna.workflowmodel.processor.activity.AsynchronousActivityCallback;
 import org.apache.taverna.workflowmodel.processor.activity.NestedDataflow;
 
@@ -42,6 +43,15 @@ import com.fasterxml.jackson.databind.JsonNode;
 
 /**
  * An Activity providing nested Dataflow functionality.
+ * <p>
+ * If configured with <code>streamOutputs</code>, and the activity has a single
+ * output with a granular depth lower than its depth, each item of that depth
+ * is passed on as soon as the nested workflow produces it, so that downstream
+ * processors can start before the nested workflow has finished. Each item is
+ * sent once, and the stream is completed when the nested workflow finishes;
+ * see {@link StreamedOutput}. Activities with several outputs are not
+ * streamed, as the processor builds the lists of all outputs of an invocation
+ * from the same items.
  *
  * @author David Withers
  */
@@ -49,6 +59,9 @@ public class DataflowActivity extends AbstractAsynchronousActivity<JsonNode> imp
 
 	public static final String URI = "http://ns.taverna.org.uk/2010/activity/nested-workflow";
 
+	/** Configuration property to stream outputs of the nested workflow */
+	public static final String STREAM_OUTPUTS = "streamOutputs";
+
 	@SuppressWarnings("unused")
 	private static final Logger logger = Logger.getLogger(DataflowActivity.class);
 
@@ -72,6 +85,7 @@ public class DataflowActivity extends AbstractAsynchronousActivity<JsonNode> imp
 	@Override
 	public void executeAsynch(final Map<String, T2Reference> data,
 			final AsynchronousActivityCallback callback) {
+		final StreamedOutput streamedOutput = getStreamedOutput(callback);
 		callback.requestRun(new Runnable() {
 			
 			Map<String, T2Reference> outputData = new HashMap<String, T2Reference>();
@@ -91,9 +105,12 @@ public class DataflowActivity extends AbstractAsynchronousActivity<JsonNode> imp
 
 
 					public void resultTokenProduced(WorkflowDataToken dataToken, String port) {
-						if (dataToken.getIndex().length == 0) {
+						if (dataToken.getIndex().length == 0)
 							outputData.put(port, dataToken.getData());
-						}
+						else if (streamedOutput != null
+								&& streamedOutput.getPort().equals(port))
+							streamedOutput.itemProduced(dataToken.getData(),
+									dataToken.getIndex());
 					}
 				};
 				
@@ -111,7 +128,11 @@ public class DataflowActivity extends AbstractAsynchronousActivity<JsonNode> imp
 						if (newState == State.completed) {
 							facade.removeResultListener(rl);
 							facade.removeFacadeListener(this);
-							callback.receiveResult(outputData, new int[]{});
+							if (streamedOutput == null)
+								callback.receiveResult(outputData, new int[]{});
+							else
+								streamedOutput.complete(outputData
+										.get(streamedOutput.getPort()));
 						}
 					}
 					
@@ -138,6 +159,22 @@ public class DataflowActivity extends AbstractAsynchronousActivity<JsonNode> imp
 		});
 	}
 
+	/**
+	 * The output to stream, or <code>null</code> unless the configuration asks
+	 * for streaming and there is a single output that can be streamed
+	 */
+	private StreamedOutput getStreamedOutput(
+			AsynchronousActivityCallback callback) {
+		if (json == null || !json.path(STREAM_OUTPUTS).asBoolean(false)
+				|| getOutputPorts().size() != 1)
+			return null;
+		ActivityOutputPort port = getOutputPorts().iterator().next();
+		if (port.getGranularDepth() >= port.getDepth())
+			return null;
+		return new StreamedOutput(port.getName(), port.getGranularDepth(),
+				callback);
+	}
+
 //	private void buildInputPorts() throws ActivityConfigurationException {
 //		inputPorts.clear();
 //		for (DataflowInputPort dataflowInputPort : dataflow.getInputPorts()) {
@@ -0,0 +1,134 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.activities.dataflow;
+
+import static java.util.Collections.singletonMap;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.taverna.reference.IdentifiedList;
+import org.apache.taverna.reference.T2Reference;
+import org.apache.taverna.reference.T2ReferenceType;
+import org.apache.taverna.workflowmodel.processor.activity.AsynchronousActivityCallback;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Passes the items of one output of a nested workflow to the activity
+ * callback, each exactly once, and then completes the stream.
+ * <p>
+ * Items are sent as the nested workflow produces them. On completion the final
+ * value of the output is walked down to the granular depth and any items the
+ * nested workflow did not produce individually are sent then, before the
+ * stream is completed with an empty index. The final value itself is not sent,
+ * as the processor builds it from the items on completion.
+ */
+final class StreamedOutput {
+	private static final Logger logger = Logger.getLogger(StreamedOutput.class);
+
+	private final String port;
+	private final int granularDepth;
+	private final AsynchronousActivityCallback callback;
+	/** Indexes of the items sent, guarded by this */
+	private final Set<List<Integer>> sent = new HashSet<>();
+	/** Guarded by this */
+	private boolean completed = false;
+
+	StreamedOutput(String port, int granularDepth,
+			AsynchronousActivityCallback callback) {
+		this.port = port;
+		this.granularDepth = granularDepth;
+		this.callback = callback;
+	}
+
+	String getPort() {
+		return port;
+	}
+
+	/**
+	 * Send an item produced by the nested workflow, unless it is not at the
+	 * granular depth or has already been sent
+	 */
+	synchronized void itemProduced(T2Reference item, int[] index) {
+		if (completed || index.length == 0
+				|| item.getDepth() != granularDepth)
+			return;
+		send(item, index);
+	}
+
+	/**
+	 * Send the items of the final value that have not been sent yet, and
+	 * complete the stream
+	 */
+	synchronized void complete(T2Reference value) {
+		if (completed)
+			return;
+		completed = true;
+		if (value != null && !walk(value, new int[0]) && sent.isEmpty()) {
+			// Can't be split into items, so send it whole instead
+			callback.receiveResult(singletonMap(port, value), new int[0]);
+			return;
+		}
+		callback.receiveCompletion(new int[0]);
+	}
+
+	/**
+	 * @return <code>false</code> if the value at the index is neither an item
+	 *         nor a list of items
+	 */
+	private boolean walk(T2Reference value, int[] index) {
+		if (index.length > 0 && value.getDepth() == granularDepth) {
+			send(value, index);
+			return true;
+		}
+		if (value.getReferenceType() != T2ReferenceType.IdentifiedList) {
+			if (index.length == 0)
+				return false;
+			logger.warn("Sending " + value + " of depth " + value.getDepth()
+					+ " as an item of output " + port + " at index "
+					+ Arrays.toString(index));
+			send(value, index);
+			return true;
+		}
+		IdentifiedList<T2Reference> list = callback.getContext()
+				.getReferenceService().getListService().getList(value);
+		int[] itemIndex = Arrays.copyOf(index, index.length + 1);
+		for (int i = 0; i < list.size(); i++) {
+			itemIndex[index.length] = i;
+			walk(list.get(i), itemIndex.clone());
+		}
+		return true;
+	}
+
+	private void send(T2Reference item, int[] index) {
+		if (sent.add(asList(index)))
+			callback.receiveResult(singletonMap(port, item), index);
+	}
+
+	private static List<Integer> asList(int[] index) {
+		Integer[] boxed = new Integer[index.length];
+		for (int i = 0; i < index.length; i++)
+			boxed[i] = index[i];
+		return Arrays.asList(boxed);
+	}
+}
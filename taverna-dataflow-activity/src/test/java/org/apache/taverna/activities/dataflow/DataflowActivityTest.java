@@ -19,6 +19,9 @@
 
 package org.apache.taverna.activities.dataflow;
 
+import static java.util.Arrays.asList;
+import static java.util.Collections.singletonMap;
+import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -26,7 +29,10 @@ import static org.junit.Assert.assertTrue;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.taverna.activities.dataflow.StreamedOutputTest.RecordingCallback;
 import org.apache.taverna.activities.testutils.ActivityInvoker;
+import org.apache.taverna.reference.ReferenceService;
+import org.apache.taverna.reference.T2Reference;
 import org.apache.taverna.workflowmodel.Dataflow;
 import org.apache.taverna.workflowmodel.Datalink;
 import org.apache.taverna.workflowmodel.Edits;
@@ -37,6 +43,8 @@ import org.apache.taverna.workflowmodel.processor.activity.impl.ActivityOutputPo
 import org.junit.Before;
 import org.junit.Test;
 
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+
 /**
  * Dataflow Activity Tests
  *
@@ -88,6 +96,37 @@ public class DataflowActivityTest {
 		assertEquals("output should have the value aString", "aString", outputs.get("output"));
 	}
 
+	@Test
+	public void testStreamedOutputItemsArriveOnce() throws Exception {
+		Edits edits = new EditsImpl();
+		Dataflow listDataflow = edits.createDataflow();
+		edits.getCreateDataflowInputPortEdit(listDataflow, "input", 1, 1)
+				.doEdit();
+		edits.getCreateDataflowOutputPortEdit(listDataflow, "output").doEdit();
+		edits.getConnectDatalinkEdit(
+				edits.createDatalink(listDataflow.getInputPorts().get(0)
+						.getInternalOutputPort(), listDataflow.getOutputPorts()
+						.get(0).getInternalInputPort())).doEdit();
+		activity.setNestedDataflow(listDataflow);
+		edits.getAddActivityInputPortEdit(activity,
+				new ActivityInputPortImpl("input", 1)).doEdit();
+		edits.getAddActivityOutputPortEdit(activity,
+				new ActivityOutputPortImpl("output", 1, 0)).doEdit();
+		activity.configure(JsonNodeFactory.instance.objectNode().put(
+				DataflowActivity.STREAM_OUTPUTS, true));
+
+		ReferenceService referenceService = ActivityInvoker
+				.createReferenceService();
+		RecordingCallback callback = new RecordingCallback(referenceService);
+		T2Reference input = referenceService.register(
+				asList("a", "b", "c"), 1, true, callback.getContext());
+		activity.executeAsynch(singletonMap("input", input), callback);
+		assertTrue(callback.finished.await(ActivityInvoker.TIMEOUT, SECONDS));
+
+		assertEquals(asList("[0]a", "[1]b", "[2]c"), callback.results);
+		assertEquals(asList("[]"), callback.completions);
+	}
+
 	@Test
 	public void testGetConfiguration() {
 		assertNull("freshly created activity should not contain configuration",
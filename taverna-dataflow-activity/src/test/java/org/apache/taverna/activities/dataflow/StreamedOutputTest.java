@@ -0,0 +1,143 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.activities.dataflow;
+
+import static java.util.Arrays.asList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.taverna.activities.testutils.ActivityInvoker;
+import org.apache.taverna.activities.testutils.DummyCallback;
+import org.apache.taverna.reference.ReferenceService;
+import org.apache.taverna.reference.T2Reference;
+import org.junit.Before;
+import org.junit.Test;
+
+public class StreamedOutputTest {
+	private ReferenceService referenceService;
+	private RecordingCallback callback;
+
+	/**
+	 * Records the index and rendered value of each result, and the index of
+	 * each completion
+	 */
+	static class RecordingCallback extends DummyCallback {
+		final List<String> results = Collections
+				.synchronizedList(new ArrayList<String>());
+		final List<String> completions = Collections
+				.synchronizedList(new ArrayList<String>());
+		final CountDownLatch finished = new CountDownLatch(1);
+
+		RecordingCallback(ReferenceService referenceService) {
+			super(referenceService);
+		}
+
+		@Override
+		public void receiveResult(Map<String, T2Reference> data, int[] index) {
+			super.receiveResult(data, index);
+			for (T2Reference value : data.values())
+				results.add(Arrays.toString(index)
+						+ referenceService.renderIdentifier(value,
+								String.class, getContext()));
+			if (index.length == 0)
+				finished.countDown();
+		}
+
+		@Override
+		public void receiveCompletion(int[] completionIndex) {
+			completions.add(Arrays.toString(completionIndex));
+			if (completionIndex.length == 0)
+				finished.countDown();
+		}
+	}
+
+	@Before
+	public void setUp() {
+		referenceService = ActivityInvoker.createReferenceService();
+		callback = new RecordingCallback(referenceService);
+	}
+
+	private T2Reference register(Object value, int depth) {
+		return referenceService.register(value, depth, true,
+				callback.getContext());
+	}
+
+	private T2Reference item(T2Reference list, int index) {
+		return referenceService.getListService().getList(list).get(index);
+	}
+
+	@Test
+	public void itemsAreSentOnce() {
+		T2Reference list = register(asList("a", "b", "c"), 1);
+		StreamedOutput output = new StreamedOutput("out", 0, callback);
+		output.itemProduced(item(list, 0), new int[] { 0 });
+		output.itemProduced(item(list, 0), new int[] { 0 });
+		output.itemProduced(item(list, 1), new int[] { 1 });
+		output.complete(list);
+		assertEquals(asList("[0]a", "[1]b", "[2]c"), callback.results);
+		assertEquals(asList("[]"), callback.completions);
+	}
+
+	@Test
+	public void itemsOfOtherDepthsAreIgnored() {
+		T2Reference list = register(asList("a"), 1);
+		StreamedOutput output = new StreamedOutput("out", 0, callback);
+		output.itemProduced(list, new int[] { 0 });
+		output.itemProduced(item(list, 0), new int[0]);
+		assertTrue(callback.results.isEmpty());
+	}
+
+	@Test
+	public void nestedListsAreWalkedToGranularDepth() {
+		T2Reference lists = register(
+				asList(asList("a", "b"), asList("c")), 2);
+		StreamedOutput output = new StreamedOutput("out", 0, callback);
+		output.complete(lists);
+		assertEquals(asList("[0, 0]a", "[0, 1]b", "[1, 0]c"), callback.results);
+		assertEquals(asList("[]"), callback.completions);
+	}
+
+	@Test
+	public void emptyListOnlyCompletes() {
+		T2Reference empty = referenceService.getListService()
+				.registerEmptyList(1, callback.getContext()).getId();
+		StreamedOutput output = new StreamedOutput("out", 0, callback);
+		output.complete(empty);
+		output.complete(empty);
+		assertTrue(callback.results.isEmpty());
+		assertEquals(asList("[]"), callback.completions);
+	}
+
+	@Test
+	public void itemsAfterCompletionAreIgnored() {
+		T2Reference list = register(asList("a"), 1);
+		StreamedOutput output = new StreamedOutput("out", 0, callback);
+		output.complete(list);
+		output.itemProduced(item(list, 0), new int[] { 1 });
+		assertEquals(asList("[0]a"), callback.results);
+	}
+}
@@ -67,7 +67,17 @@ public abstract class AbstractExecutionService implements ExecutionService {
 	public String createExecution(ExecutionEnvironment executionEnvironment,
 			WorkflowBundle workflowBundle, Workflow workflow, Profile profile,
 			Bundle dataBundle) throws InvalidWorkflowException {
-		Execution execution = createExecutionImpl(workflowBundle, workflow, profile, dataBundle);
+		return createExecution(executionEnvironment, workflowBundle, workflow,
+				profile, dataBundle, IntermediatePersistence.ALWAYS);
+	}
+
+	@Override
+	public String createExecution(ExecutionEnvironment executionEnvironment,
+			WorkflowBundle workflowBundle, Workflow workflow, Profile profile,
+			Bundle dataBundle, IntermediatePersistence intermediatePersistence)
+			throws InvalidWorkflowException {
+		Execution execution = createExecutionImpl(workflowBundle, workflow,
+				profile, dataBundle, intermediatePersistence);
 		executionMap.put(execution.getID(), execution);
 		return execution.getID();
 	}
@@ -94,6 +104,37 @@ public abstract class AbstractExecutionService implements ExecutionService {
 			WorkflowBundle workflowBundle, Workflow workflow, Profile profile,
 			Bundle dataBundle) throws InvalidWorkflowException;
 
+	/**
+	 * Creates an implementation of an Execution that persists the specified
+	 * intermediate values.
+	 *
+	 * The default implementation ignores <code>intermediatePersistence</code>,
+	 * to be overridden by <code>ExecutionService</code>s that persist
+	 * intermediate values.
+	 *
+	 * @param workflowBundle
+	 *            the <code>WorkflowBundle</code> containing the <code>Workflow</code>s required for
+	 *            execution
+	 * @param workflow
+	 *            the <code>Workflow</code> to execute
+	 * @param profile
+	 *            the <code>Profile</code> to use when executing the <code>Workflow</code>
+	 * @param dataBundle
+	 *            the <code>Bundle</code> containing the data values for the <code>Workflow</code>
+	 * @param intermediatePersistence
+	 *            which intermediate values to persist in the <code>dataBundle</code>
+	 * @return a new Execution implementation
+	 * @throws InvalidWorkflowException
+	 *             if the specified workflow is invalid
+	 */
+	protected Execution createExecutionImpl(WorkflowBundle workflowBundle,
+			Workflow workflow, Profile profile, Bundle dataBundle,
+			IntermediatePersistence intermediatePersistence)
+			throws InvalidWorkflowException {
+		return createExecutionImpl(workflowBundle, workflow, profile,
+				dataBundle);
+	}
+
 	@Override
 	public WorkflowReport getWorkflowReport(String executionID)
 			throws InvalidExecutionIdException {
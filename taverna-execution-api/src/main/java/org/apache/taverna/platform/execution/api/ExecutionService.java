@@ -86,6 +86,30 @@ public interface ExecutionService {
 			Bundle dataBundle)
 			throws InvalidWorkflowException;
 
+	/**
+	 * Creates a workflow execution that persists the specified intermediate
+	 * values and returns its ID.
+	 *
+	 * @param executionEnvironment
+	 *            the {@link ExecutionEnvironment} used to execute the
+	 *            <code>Workflow</code>
+	 * @param workflowBundle
+	 *            the <code>WorkflowBundle</code> containing the workflows required for execution
+	 * @param workflow
+	 *            the workflow to execute
+	 * @param profile
+	 *            the profile to use when executing the workflow
+	 * @param dataBundle
+	 *            the <code>Bundle</code> containing the data values for the <code>Workflow</code>
+	 * @param intermediatePersistence
+	 *            which intermediate values to persist in the <code>dataBundle</code>
+	 * @return the ID of the created workflow execution
+	 * @throws InvalidWorkflowException
+	 */
+	public String createExecution(ExecutionEnvironment executionEnvironment, WorkflowBundle workflowBundle, Workflow workflow, Profile profile,
+			Bundle dataBundle, IntermediatePersistence intermediatePersistence)
+			throws InvalidWorkflowException;
+
 	/**
 	 * Returns the workflow report for the specified execution.
 	 *
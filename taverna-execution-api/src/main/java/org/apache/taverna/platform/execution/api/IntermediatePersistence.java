@@ -0,0 +1,45 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.platform.execution.api;
+
+/**
+ * Which intermediate values, the inputs and outputs of each invocation of a
+ * processor, an execution persists into the data bundle. Workflow inputs and
+ * outputs are always persisted.
+ */
+public enum IntermediatePersistence {
+	/** No intermediate values are persisted */
+	NEVER,
+	/**
+	 * Only the values of invocations that fail, or that produce an output
+	 * containing errors, are persisted
+	 */
+	ON_ERROR,
+	/**
+	 * The values of the first and then every {@link #SAMPLE_INTERVAL}th
+	 * invocation of each processor are persisted
+	 */
+	SAMPLED,
+	/** All intermediate values are persisted */
+	ALWAYS;
+
+	public static final int SAMPLE_INTERVAL = 10;
+}
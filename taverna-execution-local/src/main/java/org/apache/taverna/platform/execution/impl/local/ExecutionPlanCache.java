@@ -0,0 +1,337 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.platform.execution.impl.local;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.logging.Level.FINE;
+import static org.apache.taverna.platform.execution.impl.local.WorkflowToDataflowMapper.NESTED_WORKFLOW_URI;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+import org.apache.taverna.workflowmodel.Edits;
+import org.apache.taverna.platform.capability.api.ActivityService;
+import org.apache.taverna.platform.capability.api.DispatchLayerService;
+import org.apache.taverna.platform.execution.api.InvalidWorkflowException;
+import org.apache.taverna.scufl2.api.activity.Activity;
+import org.apache.taverna.scufl2.api.common.Scufl2Tools;
+import org.apache.taverna.scufl2.api.configurations.Configuration;
+import org.apache.taverna.scufl2.api.container.WorkflowBundle;
+import org.apache.taverna.scufl2.api.core.BlockingControlLink;
+import org.apache.taverna.scufl2.api.core.ControlLink;
+import org.apache.taverna.scufl2.api.core.DataLink;
+import org.apache.taverna.scufl2.api.core.Processor;
+import org.apache.taverna.scufl2.api.core.Workflow;
+import org.apache.taverna.scufl2.api.iterationstrategy.CrossProduct;
+import org.apache.taverna.scufl2.api.iterationstrategy.DotProduct;
+import org.apache.taverna.scufl2.api.iterationstrategy.IterationStrategyNode;
+import org.apache.taverna.scufl2.api.iterationstrategy.IterationStrategyTopNode;
+import org.apache.taverna.scufl2.api.iterationstrategy.PortNode;
+import org.apache.taverna.scufl2.api.port.InputActivityPort;
+import org.apache.taverna.scufl2.api.port.InputProcessorPort;
+import org.apache.taverna.scufl2.api.port.InputWorkflowPort;
+import org.apache.taverna.scufl2.api.port.OutputActivityPort;
+import org.apache.taverna.scufl2.api.port.OutputProcessorPort;
+import org.apache.taverna.scufl2.api.port.OutputWorkflowPort;
+import org.apache.taverna.scufl2.api.port.Port;
+import org.apache.taverna.scufl2.api.profiles.ProcessorBinding;
+import org.apache.taverna.scufl2.api.profiles.ProcessorInputPortBinding;
+import org.apache.taverna.scufl2.api.profiles.ProcessorOutputPortBinding;
+import org.apache.taverna.scufl2.api.profiles.Profile;
+
+/**
+ * A bounded cache of compiled workflows.
+ * <p>
+ * Plans are keyed by a digest of everything {@link WorkflowToDataflowMapper}
+ * reads when compiling a workflow, so a bundle that is edited after it has been
+ * run gets a new plan, while loading the same bundle again reuses the old one.
+ * The compiled {@link org.apache.taverna.workflowmodel.Dataflow Dataflow} is
+ * shared by every run of the plan; run state is held per owning process by the
+ * dataflow itself. Each plan compiles at most once, and different plans
+ * compile concurrently.
+ */
+class ExecutionPlanCache {
+	private static final Logger logger = Logger
+			.getLogger(ExecutionPlanCache.class.getName());
+	public static final int DEFAULT_MAX_PLANS = 16;
+
+	private final Scufl2Tools scufl2Tools = new Scufl2Tools();
+	private final Map<String, Plan> plans = new LinkedHashMap<String, Plan>(16,
+			0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
+			return size() > maxPlans;
+		}
+	};
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private volatile int maxPlans = DEFAULT_MAX_PLANS;
+
+	private static class Plan {
+		final WorkflowToDataflowMapper mapper;
+		final Workflow workflow;
+
+		Plan(WorkflowToDataflowMapper mapper, Workflow workflow) {
+			this.mapper = mapper;
+			this.workflow = workflow;
+		}
+	}
+
+	/**
+	 * Returns a mapper that has compiled <code>workflow</code>, reusing a
+	 * cached plan if one matches.
+	 */
+	WorkflowToDataflowMapper getMapper(WorkflowBundle workflowBundle,
+			Workflow workflow, Profile profile, Edits edits,
+			ActivityService activityService,
+			DispatchLayerService dispatchLayerService)
+			throws InvalidWorkflowException {
+		String key;
+		try {
+			key = profile.getName() + "/" + workflow.getName() + "/"
+					+ fingerprint(workflow, profile);
+		} catch (RuntimeException e) {
+			/*
+			 * Incomplete workflow; let the mapper report the problem as it
+			 * always has
+			 */
+			logger.log(FINE, "Not caching plan for " + workflow.getName(), e);
+			misses.incrementAndGet();
+			WorkflowToDataflowMapper mapper = new WorkflowToDataflowMapper(
+					workflowBundle, profile, edits, activityService,
+					dispatchLayerService);
+			mapper.getDataflow(workflow);
+			return mapper;
+		}
+
+		Plan plan;
+		boolean created = false;
+		synchronized (plans) {
+			plan = plans.get(key);
+			if (plan == null) {
+				plan = new Plan(new WorkflowToDataflowMapper(workflowBundle,
+						profile, edits, activityService, dispatchLayerService),
+						workflow);
+				plans.put(key, plan);
+				created = true;
+			}
+		}
+		(created ? misses : hits).incrementAndGet();
+
+		try {
+			if (plan.workflow == workflow) {
+				plan.mapper.getDataflow(workflow);
+				return plan.mapper;
+			}
+			return plan.mapper.bind(workflowBundle, profile, workflow,
+					plan.workflow);
+		} catch (InvalidWorkflowException e) {
+			remove(key, plan);
+			if (created)
+				throw e;
+			/*
+			 * The cached workflow has been edited since it was compiled, so it
+			 * no longer matches its key; compile this one afresh
+			 */
+			return getMapper(workflowBundle, workflow, profile, edits,
+					activityService, dispatchLayerService);
+		}
+	}
+
+	private void remove(String key, Plan plan) {
+		synchronized (plans) {
+			if (plans.get(key) == plan)
+				plans.remove(key);
+		}
+	}
+
+	/**
+	 * Sets the maximum number of compiled plans to keep; the least recently
+	 * used plans are discarded first.
+	 */
+	void setMaxPlans(int maxPlans) {
+		if (maxPlans < 0)
+			throw new IllegalArgumentException(
+					"maxPlans must not be negative");
+		synchronized (plans) {
+			this.maxPlans = maxPlans;
+			if (maxPlans == 0)
+				plans.clear();
+			else
+				while (plans.size() > maxPlans)
+					plans.remove(plans.keySet().iterator().next());
+		}
+	}
+
+	int getMaxPlans() {
+		return maxPlans;
+	}
+
+	int size() {
+		synchronized (plans) {
+			return plans.size();
+		}
+	}
+
+	long getHits() {
+		return hits.get();
+	}
+
+	long getMisses() {
+		return misses.get();
+	}
+
+	void clear() {
+		synchronized (plans) {
+			plans.clear();
+		}
+	}
+
+	String fingerprint(Workflow workflow, Profile profile) {
+		MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-1");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		digestWorkflow(digest, workflow, profile, new HashSet<Workflow>());
+		StringBuilder hex = new StringBuilder();
+		for (byte b : digest.digest())
+			hex.append(String.format("%02x", b));
+		return hex.toString();
+	}
+
+	private void digestWorkflow(MessageDigest digest, Workflow workflow,
+			Profile profile, Set<Workflow> visited) {
+		if (!visited.add(workflow)) {
+			update(digest, "seen", workflow.getName());
+			return;
+		}
+		update(digest, "workflow", workflow.getName());
+		for (InputWorkflowPort port : workflow.getInputPorts())
+			update(digest, "in", port.getName(), port.getDepth());
+		for (OutputWorkflowPort port : workflow.getOutputPorts())
+			update(digest, "out", port.getName());
+		for (Processor processor : workflow.getProcessors())
+			digestProcessor(digest, processor, profile, visited);
+		for (DataLink dataLink : workflow.getDataLinks())
+			update(digest, "link", portName(dataLink.getReceivesFrom()),
+					portName(dataLink.getSendsTo()),
+					dataLink.getMergePosition());
+		for (ControlLink controlLink : workflow.getControlLinks())
+			if (controlLink instanceof BlockingControlLink) {
+				BlockingControlLink link = (BlockingControlLink) controlLink;
+				update(digest, "block", link.getBlock().getName(), link
+						.getUntilFinished().getName());
+			}
+		update(digest, "end");
+	}
+
+	private void digestProcessor(MessageDigest digest, Processor processor,
+			Profile profile, Set<Workflow> visited) {
+		update(digest, "processor", processor.getName());
+		for (InputProcessorPort port : processor.getInputPorts())
+			update(digest, "in", port.getName(), port.getDepth());
+		for (OutputProcessorPort port : processor.getOutputPorts())
+			update(digest, "out", port.getName(), port.getDepth(),
+					port.getGranularDepth());
+		Configuration configuration = null;
+		try {
+			configuration = processor.getConfiguration(profile);
+		} catch (IndexOutOfBoundsException e) {
+			// no configuration for processor
+		}
+		update(digest, "config", configuration == null ? null
+				: configuration.getJson());
+		for (IterationStrategyTopNode node : processor
+				.getIterationStrategyStack())
+			digestIterationStrategyNode(digest, node);
+
+		for (ProcessorBinding binding : scufl2Tools
+				.processorBindingsForProcessor(processor, profile)) {
+			Activity activity = binding.getBoundActivity();
+			update(digest, "activity", activity.getName(), activity.getType(),
+					activity.getConfiguration().getJson());
+			for (InputActivityPort port : activity.getInputPorts())
+				update(digest, "in", port.getName(), port.getDepth());
+			for (OutputActivityPort port : activity.getOutputPorts())
+				update(digest, "out", port.getName(), port.getDepth(),
+						port.getGranularDepth());
+			for (ProcessorInputPortBinding portBinding : binding
+					.getInputPortBindings())
+				update(digest, "bind", portBinding.getBoundProcessorPort()
+						.getName(), portBinding.getBoundActivityPort()
+						.getName());
+			for (ProcessorOutputPortBinding portBinding : binding
+					.getOutputPortBindings())
+				update(digest, "bind", portBinding.getBoundProcessorPort()
+						.getName(), portBinding.getBoundActivityPort()
+						.getName());
+			if (activity.getType().equals(NESTED_WORKFLOW_URI))
+				digestWorkflow(digest, scufl2Tools.nestedWorkflowForProcessor(
+						processor, profile), profile, visited);
+		}
+	}
+
+	private void digestIterationStrategyNode(MessageDigest digest,
+			IterationStrategyNode node) {
+		if (node instanceof CrossProduct) {
+			update(digest, "cross");
+			for (IterationStrategyNode child : (CrossProduct) node)
+				digestIterationStrategyNode(digest, child);
+		} else if (node instanceof DotProduct) {
+			update(digest, "dot");
+			for (IterationStrategyNode child : (DotProduct) node)
+				digestIterationStrategyNode(digest, child);
+		} else if (node instanceof PortNode) {
+			PortNode portNode = (PortNode) node;
+			update(digest, "port", portNode.getInputProcessorPort().getName(),
+					portNode.getDesiredDepth());
+		} else
+			update(digest, node.getClass().getName());
+		update(digest, "end");
+	}
+
+	private String portName(Port port) {
+		if (port instanceof InputProcessorPort)
+			return ((InputProcessorPort) port).getParent().getName() + ":"
+					+ port.getName();
+		if (port instanceof OutputProcessorPort)
+			return ((OutputProcessorPort) port).getParent().getName() + ":"
+					+ port.getName();
+		return port.getName();
+	}
+
+	private void update(MessageDigest digest, Object... values) {
+		for (Object value : values) {
+			digest.update(String.valueOf(value).getBytes(UTF_8));
+			digest.update((byte) 0);
+		}
+		digest.update((byte) '\n');
+	}
+}
@@ -0,0 +1,160 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.platform.execution.impl.local;
+
+import static java.util.Collections.newSetFromMap;
+import static org.apache.taverna.platform.execution.api.IntermediatePersistence.SAMPLE_INTERVAL;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.taverna.platform.execution.api.IntermediatePersistence;
+
+/**
+ * Decides which intermediate values of the invocations of a run are persisted,
+ * following an {@link IntermediatePersistence} setting.
+ * <p>
+ * The inputs of an invocation are known before its outputs, so with
+ * {@link IntermediatePersistence#ON_ERROR} the job of each invocation is kept
+ * until the invocation finishes and handed back if its inputs are to be
+ * persisted then.
+ * 
+ * @param <I>
+ *            the type of invocations
+ * @param <J>
+ *            the type of jobs, holding the inputs of an invocation
+ */
+class IntermediatePolicy<I, J> {
+	private final IntermediatePersistence persistence;
+	/** Jobs of invocations whose inputs are persisted only on error */
+	private final Map<I, J> deferredJobs = new ConcurrentHashMap<>();
+	/** Invocations whose values are not persisted when sampling */
+	private final Set<I> unsampled = newSetFromMap(new ConcurrentHashMap<I, Boolean>());
+	private final Map<Object, AtomicInteger> invocationCounts = new ConcurrentHashMap<>();
+
+	IntermediatePolicy(IntermediatePersistence persistence) {
+		this.persistence = persistence;
+	}
+
+	IntermediatePersistence getPersistence() {
+		return persistence;
+	}
+
+	/**
+	 * Called when an invocation of a processor or activity starts.
+	 * 
+	 * @param report
+	 *            identifies the processor or activity, for sampling
+	 * @return whether the inputs of the invocation should be persisted now
+	 */
+	boolean invocationStarted(Object report, I invocation, J job) {
+		switch (persistence) {
+		case ON_ERROR:
+			deferredJobs.put(invocation, job);
+			return false;
+		case SAMPLED:
+			if (nextInvocationCount(report) % SAMPLE_INTERVAL != 0) {
+				unsampled.add(invocation);
+				return false;
+			}
+			return true;
+		case ALWAYS:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Called when an invocation produces its result.
+	 * 
+	 * @return whether the outputs of the invocation should be persisted
+	 */
+	boolean invocationCompleted(I invocation, boolean containsErrors) {
+		switch (persistence) {
+		case ON_ERROR:
+			return containsErrors;
+		case SAMPLED:
+			return !unsampled.remove(invocation);
+		case ALWAYS:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * Called when an invocation fails without producing a result.
+	 * 
+	 * @return the job whose inputs should now be persisted, or
+	 *         <code>null</code>
+	 */
+	J invocationFailed(I invocation) {
+		unsampled.remove(invocation);
+		return deferredJobs.remove(invocation);
+	}
+
+	/**
+	 * Forget the job kept for an invocation whose result has been seen.
+	 * 
+	 * @param persist
+	 *            whether the values of the invocation are being persisted
+	 * @return the job whose inputs should now be persisted, or
+	 *         <code>null</code>
+	 */
+	J releaseJob(I invocation, boolean persist) {
+		J job = deferredJobs.remove(invocation);
+		return persist ? job : null;
+	}
+
+	/**
+	 * @return whether an output of a nested workflow should be persisted
+	 */
+	boolean persistNestedOutput(boolean containsErrors) {
+		switch (persistence) {
+		case NEVER:
+			return false;
+		case ON_ERROR:
+			return containsErrors;
+		default:
+			return true;
+		}
+	}
+
+	/**
+	 * @return the number of invocations whose jobs or sampling state are kept
+	 */
+	int size() {
+		return deferredJobs.size() + unsampled.size();
+	}
+
+	private int nextInvocationCount(Object report) {
+		AtomicInteger count = invocationCounts.get(report);
+		if (count == null) {
+			AtomicInteger newCount = new AtomicInteger();
+			count = invocationCounts.putIfAbsent(report, newCount);
+			if (count == null)
+				count = newCount;
+		}
+		return count.getAndIncrement();
+	}
+}
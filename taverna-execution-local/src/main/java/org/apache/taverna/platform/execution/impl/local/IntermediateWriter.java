@@ -0,0 +1,183 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.platform.execution.impl.local;
+
+import static java.util.logging.Level.WARNING;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.logging.Logger;
+
+import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.reference.T2Reference;
+
+/**
+ * Writes intermediate values into the data bundle of a
+ * {@link LocalExecutionMonitor} on a background thread, so that monitor
+ * messages are not held up by the reference service or the bundle file
+ * system.
+ * <p>
+ * Values are queued by {@link #write(Path, T2Reference, InvocationContext)}
+ * and written in the order they were queued, in batches of whatever has been
+ * queued since the previous batch. Once the writer has been
+ * {@link #shutdown() shut down}, values are written on the calling thread
+ * instead, so that every value given to the writer is written.
+ */
+abstract class IntermediateWriter {
+	private static final Logger logger = Logger
+			.getLogger(IntermediateWriter.class.getName());
+	private static final int MAX_BATCH = 100;
+
+	private final BlockingQueue<PendingIntermediate> queue = new LinkedBlockingQueue<>();
+	private final Thread thread;
+	/** Queued to stop the writer thread */
+	private final PendingIntermediate STOP = new PendingIntermediate(null,
+			null, null);
+	/** Guarded by this */
+	private long queued = 0;
+	/** Guarded by this */
+	private long written = 0;
+	/** Guarded by this */
+	private boolean stopped = false;
+
+	IntermediateWriter(String name) {
+		thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeBatches();
+			}
+		}, "Intermediate values writer " + name);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Write the value of a reference to a path in the data bundle.
+	 */
+	abstract void convert(Path path, T2Reference reference,
+			InvocationContext context) throws IOException, URISyntaxException;
+
+	/**
+	 * Queue the value of a reference to be written to a path in the data
+	 * bundle, or write it straight away if the writer has been shut down
+	 */
+	void write(Path path, T2Reference reference, InvocationContext context) {
+		PendingIntermediate intermediate = new PendingIntermediate(path,
+				reference, context);
+		synchronized (this) {
+			if (!stopped) {
+				queued++;
+				queue.add(intermediate);
+				return;
+			}
+		}
+		intermediate.write();
+	}
+
+	/**
+	 * Wait until the values queued so far, and any values they refer to, have
+	 * been written
+	 */
+	void flush() throws InterruptedException {
+		synchronized (this) {
+			while (written < queued && thread.isAlive())
+				wait();
+		}
+	}
+
+	/**
+	 * Stop the writer thread once the values queued so far have been written
+	 */
+	void shutdown() {
+		synchronized (this) {
+			if (stopped)
+				return;
+			stopped = true;
+			queue.add(STOP);
+		}
+	}
+
+	synchronized boolean isShutdown() {
+		return stopped;
+	}
+
+	private void writeBatches() {
+		List<PendingIntermediate> batch = new ArrayList<>(MAX_BATCH);
+		boolean stopping = false;
+		try {
+			while (true) {
+				PendingIntermediate first = stopping ? queue.poll() : queue
+						.take();
+				if (first == null)
+					return;
+				batch.add(first);
+				queue.drainTo(batch, MAX_BATCH - 1);
+				int count = 0;
+				for (PendingIntermediate intermediate : batch)
+					if (intermediate == STOP)
+						// Values queued before the shutdown are ahead of STOP
+						stopping = true;
+					else {
+						intermediate.write();
+						count++;
+					}
+				synchronized (this) {
+					written += count;
+					notifyAll();
+				}
+				batch.clear();
+			}
+		} catch (InterruptedException e) {
+			logger.warning("Intermediate values writer interrupted");
+		} finally {
+			synchronized (this) {
+				notifyAll();
+			}
+		}
+	}
+
+	private final class PendingIntermediate {
+		private final Path path;
+		private final T2Reference reference;
+		private final InvocationContext context;
+
+		PendingIntermediate(Path path, T2Reference reference,
+				InvocationContext context) {
+			this.path = path;
+			this.reference = reference;
+			this.context = context;
+		}
+
+		void write() {
+			try {
+				convert(path, reference, context);
+			} catch (IOException | URISyntaxException | RuntimeException e) {
+				logger.log(WARNING, "Error saving intermediate value "
+						+ reference, e);
+			}
+		}
+	}
+}
@@ -52,6 +52,7 @@ import org.apache.taverna.databundle.DataBundles;
 import org.apache.taverna.platform.capability.api.ActivityService;
 import org.apache.taverna.platform.capability.api.DispatchLayerService;
 import org.apache.taverna.platform.execution.api.AbstractExecution;
+import org.apache.taverna.platform.execution.api.IntermediatePersistence;
 import org.apache.taverna.platform.execution.api.InvalidWorkflowException;
 import org.apache.taverna.platform.report.ActivityReport;
 import org.apache.taverna.platform.report.ProcessorReport;
@@ -108,18 +109,65 @@ public class LocalExecution extends AbstractExecution implements ResultListener
 			ActivityService activityService,
 			DispatchLayerService dispatchLayerService)
 			throws InvalidWorkflowException {
+		this(workflowBundle, workflow, profile, dataBundle, referenceService,
+				edits, activityService, dispatchLayerService,
+				IntermediatePersistence.ALWAYS);
+	}
+
+	/**
+	 * Constructs an Execution for executing Taverna workflows on a local
+	 * Taverna Dataflow Engine that persists the specified intermediate values.
+	 * 
+	 * @param intermediatePersistence
+	 *            which intermediate values to persist in the
+	 *            <code>dataBundle</code>
+	 * @throws InvalidWorkflowException
+	 *             if the specified workflow is invalid
+	 * @see #LocalExecution(WorkflowBundle, Workflow, Profile, Bundle,
+	 *      ReferenceService, Edits, ActivityService, DispatchLayerService)
+	 */
+	public LocalExecution(WorkflowBundle workflowBundle, Workflow workflow,
+			Profile profile, Bundle dataBundle,
+			ReferenceService referenceService, Edits edits,
+			ActivityService activityService,
+			DispatchLayerService dispatchLayerService,
+			IntermediatePersistence intermediatePersistence)
+			throws InvalidWorkflowException {
+		this(workflowBundle, workflow, profile, dataBundle, referenceService,
+				edits, new WorkflowToDataflowMapper(workflowBundle, profile,
+						edits, activityService, dispatchLayerService),
+				intermediatePersistence);
+	}
+
+	/**
+	 * Constructs an Execution that runs a workflow already compiled by
+	 * <code>mapping</code>. The compiled dataflow may be shared with other
+	 * executions.
+	 * 
+	 * @param mapping
+	 *            the mapper for <code>workflowBundle</code> and
+	 *            <code>profile</code>
+	 * @throws InvalidWorkflowException
+	 *             if the specified workflow is invalid
+	 */
+	LocalExecution(WorkflowBundle workflowBundle, Workflow workflow,
+			Profile profile, Bundle dataBundle,
+			ReferenceService referenceService, Edits edits,
+			WorkflowToDataflowMapper mapping,
+			IntermediatePersistence intermediatePersistence)
+			throws InvalidWorkflowException {
 		super(workflowBundle, workflow, profile, dataBundle);
 		this.referenceService = referenceService;
+		this.mapping = mapping;
 		try {
-			mapping = new WorkflowToDataflowMapper(workflowBundle, profile,
-					edits, activityService, dispatchLayerService);
 			Dataflow dataflow = mapping.getDataflow(workflow);
 			for (DataflowInputPort dataflowInputPort : dataflow.getInputPorts())
 				inputPorts.put(dataflowInputPort.getName(), dataflowInputPort);
 			facade = edits.createWorkflowInstanceFacade(dataflow,
 					createContext(), "");
 			executionMonitor = new LocalExecutionMonitor(getWorkflowReport(),
-					getDataBundle(), mapping, facade.getIdentifier());
+					getDataBundle(), mapping, facade.getIdentifier(),
+					intermediatePersistence);
 		} catch (InvalidDataflowException e) {
 			throw new InvalidWorkflowException(e);
 		}
@@ -182,6 +230,7 @@ public class LocalExecution extends AbstractExecution implements ResultListener
 		facade.cancelWorkflowRun();
 		facade.removeResultListener(this);
 		MonitorManager.getInstance().removeObserver(executionMonitor);
+		executionMonitor.close();
 	}
 
 	@Override
@@ -29,6 +29,7 @@ import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
@@ -36,6 +37,7 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 import org.apache.taverna.facade.ResultListener;
@@ -69,6 +71,7 @@ import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchResult
 import org.apache.taverna.robundle.Bundle;
 
 import org.apache.taverna.databundle.DataBundles;
+import org.apache.taverna.platform.execution.api.IntermediatePersistence;
 import org.apache.taverna.platform.execution.api.InvalidWorkflowException;
 import org.apache.taverna.platform.report.ActivityReport;
 import org.apache.taverna.platform.report.Invocation;
@@ -92,17 +95,36 @@ public class LocalExecutionMonitor implements Observer<MonitorMessage> {
 	private Map<T2Reference, Path> referenceToPath;
 	private final String facadeId;
 	private final Bundle dataBundle;
+	private final IntermediatePolicy<Invocation, DispatchJobEvent> intermediatePolicy;
+	private final IntermediateWriter intermediateWriter;
 
 	public LocalExecutionMonitor(WorkflowReport workflowReport,
 			Bundle dataBundle, WorkflowToDataflowMapper mapping, String facadeId)
 			throws InvalidWorkflowException {
+		this(workflowReport, dataBundle, mapping, facadeId,
+				IntermediatePersistence.ALWAYS);
+	}
+
+	public LocalExecutionMonitor(WorkflowReport workflowReport,
+			Bundle dataBundle, WorkflowToDataflowMapper mapping,
+			String facadeId, IntermediatePersistence intermediatePersistence)
+			throws InvalidWorkflowException {
 		this.dataBundle = dataBundle;
 		this.facadeId = facadeId;
+		intermediatePolicy = new IntermediatePolicy<>(intermediatePersistence);
 		reports = new HashMap<>();
 		invocations = new HashMap<>();
 		invocationToActivity = new HashMap<>();
-		referenceToPath = new HashMap<>();
+		referenceToPath = new ConcurrentHashMap<>();
 		mapReports("", workflowReport, mapping);
+		intermediateWriter = new IntermediateWriter(facadeId) {
+			@Override
+			void convert(Path path, T2Reference reference,
+					InvocationContext context) throws IOException,
+					URISyntaxException {
+				convertReferenceToPath(path, reference, context);
+			}
+		};
 	}
 
 	private void mapReports(String id, WorkflowReport workflowReport,
@@ -237,18 +259,9 @@ public class LocalExecutionMonitor implements Observer<MonitorMessage> {
 						+ indexToString(jobEvent.getIndex()), invocation);
 			}
 			// set the invocation inputs
-			try {
-				for (Entry<String, T2Reference> inputInfo : jobEvent.getData()
-						.entrySet()) {
-					invocation.setInput(
-							inputInfo.getKey(),
-							getIntermediate(inputInfo.getValue(),
-									jobEvent.getContext()));
-				}
-			} catch (IOException | URISyntaxException e) {
-				logger.log(WARNING, "Error saving intermediate inputs for "
-						+ jobEvent.getOwningProcess(), e);
-			}
+			if (intermediatePolicy.invocationStarted(report, invocation,
+					jobEvent))
+				setInputs(invocation, jobEvent);
 
 		} else if (dataflowObject instanceof DispatchResultEvent) {
 			DispatchResultEvent resultEvent = (DispatchResultEvent) dataflowObject;
@@ -268,18 +281,14 @@ public class LocalExecutionMonitor implements Observer<MonitorMessage> {
 			}
 
 			// set the invocation outputs
-			try {
-				for (Entry<String, T2Reference> outputInfo : resultEvent.getData()
-						.entrySet()) {
-					invocation.setOutput(
-							outputInfo.getKey(),
-							getIntermediate(outputInfo.getValue(),
-									resultEvent.getContext()));
-				}
-			} catch (IOException | URISyntaxException e) {
-				logger.log(WARNING, "Error saving intermediate outputs for "
-						+ resultEvent.getOwningProcess(), e);
-			}
+			boolean persist = intermediatePolicy.invocationCompleted(
+					invocation, containsErrors(resultEvent.getData().values()));
+			DispatchJobEvent jobEvent = intermediatePolicy.releaseJob(
+					invocation, persist);
+			if (jobEvent != null)
+				setInputs(invocation, jobEvent);
+			if (persist)
+				setOutputs(invocation, resultEvent);
 			invocation.setCompletedDate(new Date());
 		}
 	}
@@ -291,6 +300,9 @@ public class LocalExecutionMonitor implements Observer<MonitorMessage> {
 		} else if (report instanceof WorkflowReport) {
 			Invocation invocation = invocations
 					.remove(getInvocationId(owningProcess));
+			if (getParentInvocationId(owningProcess).isEmpty())
+				// Write the intermediate values before the run completes
+				close();
 			invocation.setCompletedDate(new Date());
 			report.setCompletedDate(new Date());
 		} else if (report instanceof LocalProcessorReport) {
@@ -301,6 +313,10 @@ public class LocalExecutionMonitor implements Observer<MonitorMessage> {
 			Invocation invocation = invocations
 					.remove(getInvocationId(owningProcess));
 			if (invocation != null) {
+				DispatchJobEvent jobEvent = intermediatePolicy
+						.invocationFailed(invocation);
+				if (jobEvent != null)
+					setInputs(invocation, jobEvent);
 				invocation.setCompletedDate(new Date());
 				report.setFailedDate(new Date());
 			} else
@@ -385,14 +401,70 @@ public class LocalExecutionMonitor implements Observer<MonitorMessage> {
 		return indexString.toString();
 	}
 
-	private Path getIntermediate(T2Reference t2Reference,
-			InvocationContext context) throws IOException, URISyntaxException {
-		if (referenceToPath.containsKey(t2Reference))
-			return referenceToPath.get(t2Reference);
+	/**
+	 * Write the queued intermediate values and stop the thread writing them.
+	 * Values seen after this are written on the thread that sees them.
+	 */
+	public void close() {
+		intermediateWriter.shutdown();
+		try {
+			intermediateWriter.flush();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			logger.warning("Interrupted while saving intermediate values");
+		}
+	}
+
+	private static boolean containsErrors(Collection<T2Reference> references) {
+		for (T2Reference reference : references)
+			if (reference.containsErrors())
+				return true;
+		return false;
+	}
+
+	private void setInputs(Invocation invocation, DispatchJobEvent jobEvent) {
+		try {
+			for (Entry<String, T2Reference> inputInfo : jobEvent.getData()
+					.entrySet())
+				invocation.setInput(inputInfo.getKey(),
+						getIntermediate(inputInfo.getValue(),
+								jobEvent.getContext()));
+		} catch (IOException e) {
+			logger.log(WARNING, "Error saving intermediate inputs for "
+					+ jobEvent.getOwningProcess(), e);
+		}
+	}
 
-		Path path = referencePath(t2Reference);
-		convertReferenceToPath(path, t2Reference, context);
-		referenceToPath.put(t2Reference, path);
+	private void setOutputs(Invocation invocation,
+			DispatchResultEvent resultEvent) {
+		try {
+			for (Entry<String, T2Reference> outputInfo : resultEvent.getData()
+					.entrySet())
+				invocation.setOutput(outputInfo.getKey(),
+						getIntermediate(outputInfo.getValue(),
+								resultEvent.getContext()));
+		} catch (IOException e) {
+			logger.log(WARNING, "Error saving intermediate outputs for "
+					+ resultEvent.getOwningProcess(), e);
+		}
+	}
+
+	/**
+	 * Returns the path of the intermediate value of a reference, queueing the
+	 * value to be written to the data bundle if this is the first time the
+	 * reference has been seen.
+	 */
+	private Path getIntermediate(T2Reference t2Reference,
+			InvocationContext context) throws IOException {
+		Path path = referenceToPath.get(t2Reference);
+		if (path != null)
+			return path;
+
+		path = referencePath(t2Reference);
+		Path existing = referenceToPath.putIfAbsent(t2Reference, path);
+		if (existing != null)
+			return existing;
+		intermediateWriter.write(path, t2Reference, context);
 		return path;
 	}
 
@@ -495,6 +567,9 @@ public class LocalExecutionMonitor implements Observer<MonitorMessage> {
 
 		@Override
 		public void resultTokenProduced(WorkflowDataToken token, String portName) {
+			if (!intermediatePolicy.persistNestedOutput(token.getData()
+					.containsErrors()))
+				return;
 			try {
 				if (token.isFinal())
 					invocation
@@ -502,7 +577,7 @@ public class LocalExecutionMonitor implements Observer<MonitorMessage> {
 									portName,
 									getIntermediate(token.getData(),
 											token.getContext()));
-			} catch (IOException | URISyntaxException e) {
+			} catch (IOException e) {
 				logger.log(SEVERE, "Unable to convert T2Reference", e);
 			}
 		}
@@ -19,10 +19,8 @@
 
 package org.apache.taverna.platform.execution.impl.local;
 
-import java.net.URI;
 import java.util.HashSet;
 import java.util.Set;
-import java.util.WeakHashMap;
 
 import org.apache.taverna.reference.ReferenceService;
 import org.apache.taverna.workflowmodel.Dataflow;
@@ -35,6 +33,7 @@ import org.apache.taverna.platform.capability.api.DispatchLayerService;
 import org.apache.taverna.platform.execution.api.AbstractExecutionService;
 import org.apache.taverna.platform.execution.api.Execution;
 import org.apache.taverna.platform.execution.api.ExecutionEnvironment;
+import org.apache.taverna.platform.execution.api.IntermediatePersistence;
 import org.apache.taverna.platform.execution.api.InvalidWorkflowException;
 import org.apache.taverna.platform.execution.api.WorkflowCompiler;
 import org.apache.taverna.scufl2.api.container.WorkflowBundle;
@@ -52,6 +51,7 @@ public class LocalExecutionService extends AbstractExecutionService implements
 	private ActivityService activityService;
 	private DispatchLayerService dispatchLayerService;
 	private ReferenceService referenceService;
+	private final ExecutionPlanCache planCache = new ExecutionPlanCache();
 
 	/**
 	 * Constructs an execution service that executes workflows using the T2
@@ -76,9 +76,18 @@ public class LocalExecutionService extends AbstractExecutionService implements
 	protected Execution createExecutionImpl(WorkflowBundle workflowBundle,
 			Workflow workflow, Profile profile, Bundle dataBundle)
 			throws InvalidWorkflowException {
+		return createExecutionImpl(workflowBundle, workflow, profile,
+				dataBundle, IntermediatePersistence.ALWAYS);
+	}
+
+	@Override
+	protected Execution createExecutionImpl(WorkflowBundle workflowBundle,
+			Workflow workflow, Profile profile, Bundle dataBundle,
+			IntermediatePersistence intermediatePersistence)
+			throws InvalidWorkflowException {
 		return new LocalExecution(workflowBundle, workflow, profile,
-				dataBundle, referenceService, edits, activityService,
-				dispatchLayerService);
+				dataBundle, referenceService, edits, getMapper(workflowBundle,
+						workflow, profile), intermediatePersistence);
 	}
 
 	/**
@@ -121,28 +130,72 @@ public class LocalExecutionService extends AbstractExecutionService implements
 		this.referenceService = referenceService;
 	}
 
-	private WeakHashMap<URI, WorkflowToDataflowMapper> cache = new WeakHashMap<>();
+	/**
+	 * Sets the maximum number of compiled workflows to keep for reuse by later
+	 * executions. The default is 16;
+	 * zero disables the cache.
+	 *
+	 * @param maxCompiledWorkflows
+	 *            the maximum number of compiled workflows to keep
+	 */
+	public void setMaxCompiledWorkflows(int maxCompiledWorkflows) {
+		planCache.setMaxPlans(maxCompiledWorkflows);
+	}
+
+	/**
+	 * Returns the maximum number of compiled workflows kept for reuse.
+	 *
+	 * @return the maximum number of compiled workflows kept for reuse
+	 */
+	public int getMaxCompiledWorkflows() {
+		return planCache.getMaxPlans();
+	}
+
+	/**
+	 * Returns the number of executions and compilation requests that reused a
+	 * compiled workflow.
+	 *
+	 * @return the number of compiled workflow cache hits
+	 */
+	public long getCompiledWorkflowHits() {
+		return planCache.getHits();
+	}
+
+	/**
+	 * Returns the number of executions and compilation requests that had to
+	 * compile their workflow.
+	 *
+	 * @return the number of compiled workflow cache misses
+	 */
+	public long getCompiledWorkflowMisses() {
+		return planCache.getMisses();
+	}
+
+	/**
+	 * Discards all compiled workflows, e.g. after activity or dispatch layer
+	 * implementations have changed.
+	 */
+	public void clearCompiledWorkflows() {
+		planCache.clear();
+	}
 
-	private synchronized WorkflowToDataflowMapper getMapper(
-			WorkflowBundle bundle) {
-		WorkflowToDataflowMapper m = cache.get(bundle.getIdentifier());
-		if (m == null) {
-			m = new WorkflowToDataflowMapper(bundle, bundle.getMainProfile(),
-					edits, activityService, dispatchLayerService);
-			cache.put(bundle.getIdentifier(), m);
-		}
-		return m;
+	private WorkflowToDataflowMapper getMapper(WorkflowBundle bundle,
+			Workflow workflow, Profile profile) throws InvalidWorkflowException {
+		return planCache.getMapper(bundle, workflow, profile, edits,
+				activityService, dispatchLayerService);
 	}
 
 	@Override
 	public Dataflow getDataflow(Workflow workflow)
 			throws InvalidWorkflowException {
-		return getMapper(workflow.getParent()).getDataflow(workflow);
+		WorkflowBundle bundle = workflow.getParent();
+		return getMapper(bundle, workflow, bundle.getMainProfile())
+				.getDataflow(workflow);
 	}
 
 	@Override
-	public synchronized Dataflow getDataflow(WorkflowBundle bundle)
+	public Dataflow getDataflow(WorkflowBundle bundle)
 			throws InvalidWorkflowException {
-		return getMapper(bundle).getDataflow(bundle.getMainWorkflow());
+		return getDataflow(bundle.getMainWorkflow());
 	}
 }
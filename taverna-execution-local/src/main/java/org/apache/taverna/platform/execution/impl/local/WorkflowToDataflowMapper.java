@@ -90,7 +90,7 @@ import com.fasterxml.jackson.databind.JsonNode;
  * @author David Withers
  */
 public class WorkflowToDataflowMapper {
-	private static final URI NESTED_WORKFLOW_URI = URI
+	static final URI NESTED_WORKFLOW_URI = URI
 			.create("http://ns.taverna.org.uk/2010/activity/nested-workflow");
 
 	private Edits edits;
@@ -133,7 +133,12 @@ public class WorkflowToDataflowMapper {
 		return dataflowToWorkflow.get(dataflow);
 	}
 
-	public Dataflow getDataflow(Workflow workflow)
+	/**
+	 * Returns the {@link Dataflow} for a workflow, compiling it the first time
+	 * it is requested. Concurrent callers wait for a compilation in progress
+	 * rather than compiling the workflow again.
+	 */
+	public synchronized Dataflow getDataflow(Workflow workflow)
 			throws InvalidWorkflowException {
 		if (!workflowToDataflow.containsKey(workflow)) {
 			try {
@@ -150,6 +155,73 @@ public class WorkflowToDataflowMapper {
 		return workflowToDataflow.get(workflow);
 	}
 
+	/**
+	 * Returns a mapper for <code>workflow</code> that shares the dataflows
+	 * already compiled by this mapper for <code>compiledWorkflow</code>.
+	 * <p>
+	 * The two workflows must be structurally identical, e.g. two copies of the
+	 * same workflow bundle; processors, activities and nested workflows are
+	 * matched by name. No activities or dispatch layers are created, so this
+	 * is much cheaper than compiling <code>workflow</code> again.
+	 *
+	 * @throws InvalidWorkflowException
+	 *             if <code>compiledWorkflow</code> can't be compiled or the
+	 *             workflows don't match
+	 */
+	public WorkflowToDataflowMapper bind(WorkflowBundle workflowBundle,
+			Profile profile, Workflow workflow, Workflow compiledWorkflow)
+			throws InvalidWorkflowException {
+		WorkflowToDataflowMapper mapper = new WorkflowToDataflowMapper(
+				workflowBundle, profile, edits, activityService,
+				dispatchLayerService);
+		synchronized (this) {
+			getDataflow(compiledWorkflow);
+			mapper.bindWorkflow(workflow, compiledWorkflow, this);
+		}
+		return mapper;
+	}
+
+	private void bindWorkflow(Workflow workflow, Workflow compiledWorkflow,
+			WorkflowToDataflowMapper source) throws InvalidWorkflowException {
+		if (workflowToDataflow.containsKey(workflow))
+			return;
+		Dataflow dataflow = source.workflowToDataflow.get(compiledWorkflow);
+		if (dataflow == null)
+			throw new InvalidWorkflowException("No dataflow for workflow "
+					+ compiledWorkflow.getName());
+		workflowToDataflow.put(workflow, dataflow);
+		dataflowToWorkflow.put(dataflow, workflow);
+		for (Processor processor : workflow.getProcessors()) {
+			Processor compiledProcessor = compiledWorkflow.getProcessors()
+					.getByName(processor.getName());
+			org.apache.taverna.workflowmodel.Processor dataflowProcessor = source.workflowToDataflowProcessors
+					.get(compiledProcessor);
+			if (dataflowProcessor == null)
+				throw new InvalidWorkflowException("No dataflow processor for "
+						+ processor.getName());
+			workflowToDataflowProcessors.put(processor, dataflowProcessor);
+			dataflowToWorkflowProcessors.put(dataflowProcessor, processor);
+			for (ProcessorBinding processorBinding : scufl2Tools
+					.processorBindingsForProcessor(processor, profile)) {
+				Activity scufl2Activity = processorBinding.getBoundActivity();
+				Activity compiledActivity = source.profile.getActivities()
+						.getByName(scufl2Activity.getName());
+				org.apache.taverna.workflowmodel.processor.activity.Activity<?> activity = source.workflowToDataflowActivities
+						.get(compiledActivity);
+				if (activity == null)
+					throw new InvalidWorkflowException("No dataflow activity for "
+							+ scufl2Activity.getName());
+				workflowToDataflowActivities.put(scufl2Activity, activity);
+				dataflowToWorkflowActivities.put(activity, scufl2Activity);
+				if (scufl2Activity.getType().equals(NESTED_WORKFLOW_URI))
+					bindWorkflow(scufl2Tools.nestedWorkflowForProcessor(
+							processor, profile),
+							scufl2Tools.nestedWorkflowForProcessor(
+									compiledProcessor, source.profile), source);
+			}
+		}
+	}
+
 	public Processor getWorkflowProcessor(
 			org.apache.taverna.workflowmodel.Processor dataflowProcessor) {
 		return dataflowToWorkflowProcessors.get(dataflowProcessor);
@@ -0,0 +1,262 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.platform.execution.impl.local;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.apache.taverna.platform.capability.api.DispatchLayerService;
+import org.apache.taverna.scufl2.api.configurations.Configuration;
+import org.apache.taverna.scufl2.api.container.WorkflowBundle;
+import org.apache.taverna.scufl2.api.core.DataLink;
+import org.apache.taverna.scufl2.api.core.Processor;
+import org.apache.taverna.scufl2.api.core.Workflow;
+import org.apache.taverna.scufl2.api.port.InputProcessorPort;
+import org.apache.taverna.scufl2.api.port.InputWorkflowPort;
+import org.apache.taverna.scufl2.api.port.OutputProcessorPort;
+import org.apache.taverna.scufl2.api.port.OutputWorkflowPort;
+import org.apache.taverna.scufl2.api.profiles.Profile;
+import org.apache.taverna.workflowmodel.Dataflow;
+import org.apache.taverna.workflowmodel.Edits;
+import org.apache.taverna.workflowmodel.impl.EditsImpl;
+import org.apache.taverna.workflowmodel.processor.dispatch.AbstractDispatchLayer;
+import org.apache.taverna.workflowmodel.processor.dispatch.DispatchLayer;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+public class ExecutionPlanCacheTest {
+	private ExecutionPlanCache cache;
+	private Edits edits;
+
+	/** Creates dispatch layers that do nothing, enough to compile workflows */
+	private final DispatchLayerService dispatchLayerService = new DispatchLayerService() {
+		@Override
+		public Set<URI> getDispatchLayerTypes() {
+			return Collections.emptySet();
+		}
+
+		@Override
+		public boolean dispatchLayerExists(URI dispatchLayerType) {
+			return true;
+		}
+
+		@Override
+		public JsonNode getDispatchLayerConfigurationSchema(
+				URI dispatchLayerType) {
+			return null;
+		}
+
+		@Override
+		public DispatchLayer<?> createDispatchLayer(URI uri,
+				JsonNode configuration) {
+			return new AbstractDispatchLayer<JsonNode>() {
+				@Override
+				public void configure(JsonNode config) {
+				}
+
+				@Override
+				public JsonNode getConfiguration() {
+					return null;
+				}
+			};
+		}
+	};
+
+	@Before
+	public void createCache() {
+		cache = new ExecutionPlanCache();
+		edits = new EditsImpl();
+	}
+
+	/**
+	 * Builds a bundle whose main workflow passes its input through a
+	 * processor to its output. Calling this twice with the same arguments
+	 * gives two bundles with the same content, as when a bundle is loaded
+	 * again.
+	 */
+	private WorkflowBundle createBundle(String name, int inputDepth,
+			int maxRetries) {
+		WorkflowBundle bundle = new WorkflowBundle();
+		Workflow workflow = new Workflow(name);
+		workflow.setParent(bundle);
+		bundle.setMainWorkflow(workflow);
+		Profile profile = new Profile("profile");
+		profile.setParent(bundle);
+		bundle.setMainProfile(profile);
+
+		InputWorkflowPort in = new InputWorkflowPort(workflow, "in");
+		in.setDepth(inputDepth);
+		OutputWorkflowPort out = new OutputWorkflowPort(workflow, "out");
+		Processor processor = new Processor(workflow, "processor");
+		InputProcessorPort x = new InputProcessorPort(processor, "x");
+		x.setDepth(inputDepth);
+		OutputProcessorPort y = new OutputProcessorPort(processor, "y");
+		y.setDepth(0);
+		y.setGranularDepth(0);
+		new DataLink(workflow, in, x);
+		new DataLink(workflow, y, out);
+
+		Configuration configuration = new Configuration("configuration");
+		configuration.setParent(profile);
+		configuration.setConfigures(processor);
+		ObjectNode json = JsonNodeFactory.instance.objectNode();
+		json.putObject("retry").put("maxRetries", maxRetries);
+		configuration.setJson(json);
+		return bundle;
+	}
+
+	private WorkflowToDataflowMapper getMapper(WorkflowBundle bundle)
+			throws Exception {
+		return cache.getMapper(bundle, bundle.getMainWorkflow(),
+				bundle.getMainProfile(), edits, null, dispatchLayerService);
+	}
+
+	private String fingerprint(WorkflowBundle bundle) {
+		return cache.fingerprint(bundle.getMainWorkflow(),
+				bundle.getMainProfile());
+	}
+
+	@Test
+	public void fingerprintDependsOnContentOnly() {
+		assertEquals(fingerprint(createBundle("wf", 0, 1)),
+				fingerprint(createBundle("wf", 0, 1)));
+	}
+
+	@Test
+	public void fingerprintChangesWithContent() {
+		String fingerprint = fingerprint(createBundle("wf", 0, 1));
+		assertNotEquals(fingerprint, fingerprint(createBundle("wf", 1, 1)));
+		assertNotEquals(fingerprint, fingerprint(createBundle("wf", 0, 2)));
+		assertNotEquals(fingerprint, fingerprint(createBundle("wf2", 0, 1)));
+
+		WorkflowBundle unlinked = createBundle("wf", 0, 1);
+		Iterator<DataLink> links = unlinked.getMainWorkflow().getDataLinks()
+				.iterator();
+		links.next();
+		links.remove();
+		assertNotEquals(fingerprint, fingerprint(unlinked));
+	}
+
+	@Test
+	public void sameContentSharesTheCompiledDataflow() throws Exception {
+		WorkflowBundle first = createBundle("wf", 0, 1);
+		WorkflowBundle second = createBundle("wf", 0, 1);
+		Dataflow dataflow = getMapper(first).getDataflow(
+				first.getMainWorkflow());
+		assertSame(dataflow,
+				getMapper(second).getDataflow(second.getMainWorkflow()));
+		assertEquals(1, cache.getMisses());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void boundMapperKeepsItsOwnWorkflow() throws Exception {
+		WorkflowBundle first = createBundle("wf", 0, 1);
+		WorkflowBundle second = createBundle("wf", 0, 1);
+		WorkflowToDataflowMapper firstMapper = getMapper(first);
+		WorkflowToDataflowMapper secondMapper = getMapper(second);
+		assertNotSame(firstMapper, secondMapper);
+
+		Dataflow dataflow = firstMapper.getDataflow(first.getMainWorkflow());
+		assertSame(first.getMainWorkflow(), firstMapper.getWorkflow(dataflow));
+		assertSame(second.getMainWorkflow(),
+				secondMapper.getWorkflow(dataflow));
+
+		Processor firstProcessor = first.getMainWorkflow().getProcessors()
+				.getByName("processor");
+		Processor secondProcessor = second.getMainWorkflow().getProcessors()
+				.getByName("processor");
+		org.apache.taverna.workflowmodel.Processor dataflowProcessor = firstMapper
+				.getDataflowProcessor(firstProcessor);
+		assertSame(dataflowProcessor,
+				secondMapper.getDataflowProcessor(secondProcessor));
+		assertSame(firstProcessor,
+				firstMapper.getWorkflowProcessor(dataflowProcessor));
+		assertSame(secondProcessor,
+				secondMapper.getWorkflowProcessor(dataflowProcessor));
+	}
+
+	@Test
+	public void editedWorkflowGetsANewPlan() throws Exception {
+		WorkflowBundle bundle = createBundle("wf", 0, 1);
+		Dataflow dataflow = getMapper(bundle).getDataflow(
+				bundle.getMainWorkflow());
+		bundle.getMainWorkflow().getInputPorts().getByName("in").setDepth(1);
+		assertNotSame(dataflow,
+				getMapper(bundle).getDataflow(bundle.getMainWorkflow()));
+		assertEquals(2, cache.getMisses());
+		assertEquals(0, cache.getHits());
+	}
+
+	@Test
+	public void leastRecentlyUsedPlanIsEvicted() throws Exception {
+		cache.setMaxPlans(2);
+		getMapper(createBundle("a", 0, 1));
+		getMapper(createBundle("b", 0, 1));
+		// Use a again, so b is now the least recently used
+		getMapper(createBundle("a", 0, 1));
+		getMapper(createBundle("c", 0, 1));
+		assertEquals(2, cache.size());
+		assertEquals(3, cache.getMisses());
+
+		getMapper(createBundle("a", 0, 1));
+		getMapper(createBundle("c", 0, 1));
+		assertEquals(3, cache.getHits());
+		getMapper(createBundle("b", 0, 1));
+		assertEquals(4, cache.getMisses());
+	}
+
+	@Test
+	public void loweringMaxPlansEvictsLeastRecentlyUsed() throws Exception {
+		getMapper(createBundle("a", 0, 1));
+		getMapper(createBundle("b", 0, 1));
+		getMapper(createBundle("a", 0, 1));
+		cache.setMaxPlans(1);
+		assertEquals(1, cache.size());
+		getMapper(createBundle("a", 0, 1));
+		assertEquals(2, cache.getHits());
+	}
+
+	@Test
+	public void noPlansAreKeptWithMaxPlansZero() throws Exception {
+		cache.setMaxPlans(0);
+		getMapper(createBundle("a", 0, 1));
+		getMapper(createBundle("a", 0, 1));
+		assertEquals(0, cache.size());
+		assertEquals(2, cache.getMisses());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeMaxPlansIsRejected() {
+		cache.setMaxPlans(-1);
+	}
+}
@@ -0,0 +1,123 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.platform.execution.impl.local;
+
+import static org.apache.taverna.platform.execution.api.IntermediatePersistence.ALWAYS;
+import static org.apache.taverna.platform.execution.api.IntermediatePersistence.NEVER;
+import static org.apache.taverna.platform.execution.api.IntermediatePersistence.ON_ERROR;
+import static org.apache.taverna.platform.execution.api.IntermediatePersistence.SAMPLED;
+import static org.apache.taverna.platform.execution.api.IntermediatePersistence.SAMPLE_INTERVAL;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class IntermediatePolicyTest {
+	private static final String PROCESSOR = "processor";
+
+	@Test
+	public void never() {
+		IntermediatePolicy<String, String> policy = new IntermediatePolicy<>(
+				NEVER);
+		assertFalse(policy.invocationStarted(PROCESSOR, "i1", "job1"));
+		assertFalse(policy.invocationCompleted("i1", true));
+		assertNull(policy.releaseJob("i1", false));
+		assertNull(policy.invocationFailed("i2"));
+		assertFalse(policy.persistNestedOutput(true));
+		assertEquals(0, policy.size());
+	}
+
+	@Test
+	public void always() {
+		IntermediatePolicy<String, String> policy = new IntermediatePolicy<>(
+				ALWAYS);
+		assertTrue(policy.invocationStarted(PROCESSOR, "i1", "job1"));
+		assertTrue(policy.invocationCompleted("i1", false));
+		assertNull(policy.releaseJob("i1", true));
+		assertTrue(policy.persistNestedOutput(false));
+		assertEquals(0, policy.size());
+	}
+
+	@Test
+	public void onErrorPersistsFailedResults() {
+		IntermediatePolicy<String, String> policy = new IntermediatePolicy<>(
+				ON_ERROR);
+		assertFalse(policy.invocationStarted(PROCESSOR, "i1", "job1"));
+		assertEquals(1, policy.size());
+		assertTrue(policy.invocationCompleted("i1", true));
+		assertEquals("job1", policy.releaseJob("i1", true));
+		assertEquals(0, policy.size());
+	}
+
+	@Test
+	public void onErrorDropsSuccessfulResults() {
+		IntermediatePolicy<String, String> policy = new IntermediatePolicy<>(
+				ON_ERROR);
+		assertFalse(policy.invocationStarted(PROCESSOR, "i1", "job1"));
+		assertFalse(policy.invocationCompleted("i1", false));
+		assertNull(policy.releaseJob("i1", false));
+		assertEquals(0, policy.size());
+		assertFalse(policy.persistNestedOutput(false));
+		assertTrue(policy.persistNestedOutput(true));
+	}
+
+	@Test
+	public void onErrorPersistsInputsOfFailedInvocations() {
+		IntermediatePolicy<String, String> policy = new IntermediatePolicy<>(
+				ON_ERROR);
+		policy.invocationStarted(PROCESSOR, "i1", "job1");
+		assertEquals("job1", policy.invocationFailed("i1"));
+		assertEquals(0, policy.size());
+	}
+
+	@Test
+	public void sampledPersistsEveryIntervalPerProcessor() {
+		IntermediatePolicy<String, String> policy = new IntermediatePolicy<>(
+				SAMPLED);
+		int persisted = 0;
+		for (int i = 0; i < 3 * SAMPLE_INTERVAL; i++) {
+			String invocation = "i" + i;
+			boolean inputs = policy.invocationStarted(PROCESSOR, invocation,
+					"job" + i);
+			assertEquals(i % SAMPLE_INTERVAL == 0, inputs);
+			assertEquals(inputs, policy.invocationCompleted(invocation, false));
+			if (inputs)
+				persisted++;
+		}
+		assertEquals(3, persisted);
+		assertEquals(0, policy.size());
+
+		// Each processor is sampled from its own first invocation
+		assertTrue(policy.invocationStarted("other", "o1", "job"));
+	}
+
+	@Test
+	public void sampledForgetsFailedInvocations() {
+		IntermediatePolicy<String, String> policy = new IntermediatePolicy<>(
+				SAMPLED);
+		policy.invocationStarted(PROCESSOR, "i0", "job0");
+		policy.invocationStarted(PROCESSOR, "i1", "job1");
+		assertEquals(1, policy.size());
+		assertNull(policy.invocationFailed("i1"));
+		assertEquals(0, policy.size());
+	}
+}
@@ -0,0 +1,160 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.platform.execution.impl.local;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.reference.T2Reference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class IntermediateWriterTest {
+	private List<Path> converted;
+	private List<Thread> threads;
+	private RecordingWriter writer;
+
+	private class RecordingWriter extends IntermediateWriter {
+		RecordingWriter() {
+			super("test");
+		}
+
+		@Override
+		void convert(Path path, T2Reference reference, InvocationContext context)
+				throws IOException, URISyntaxException {
+			converted.add(path);
+			threads.add(Thread.currentThread());
+		}
+	}
+
+	@Before
+	public void createLists() {
+		converted = Collections.synchronizedList(new ArrayList<Path>());
+		threads = Collections.synchronizedList(new ArrayList<Thread>());
+	}
+
+	@After
+	public void shutdownWriter() {
+		writer.shutdown();
+	}
+
+	@Test
+	public void writesInQueuedOrderOnWriterThread() throws Exception {
+		writer = new RecordingWriter();
+		writer.write(Paths.get("a"), null, null);
+		writer.write(Paths.get("b"), null, null);
+		writer.write(Paths.get("c"), null, null);
+		writer.flush();
+		assertEquals(
+				Arrays.asList(Paths.get("a"), Paths.get("b"), Paths.get("c")),
+				converted);
+		for (Thread thread : threads)
+			assertNotSame(Thread.currentThread(), thread);
+	}
+
+	@Test
+	public void writesQueuedValuesOnShutdown() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		writer = new RecordingWriter() {
+			@Override
+			void convert(Path path, T2Reference reference,
+					InvocationContext context) throws IOException,
+					URISyntaxException {
+				try {
+					release.await(5, SECONDS);
+				} catch (InterruptedException e) {
+				}
+				super.convert(path, reference, context);
+			}
+		};
+		for (int i = 0; i < 10; i++)
+			writer.write(Paths.get("value" + i), null, null);
+		writer.shutdown();
+		assertTrue(writer.isShutdown());
+		release.countDown();
+		writer.flush();
+		assertEquals(10, converted.size());
+	}
+
+	@Test
+	public void writesOnCallingThreadAfterShutdown() throws Exception {
+		writer = new RecordingWriter();
+		writer.shutdown();
+		writer.flush();
+		writer.write(Paths.get("late"), null, null);
+		assertEquals(Arrays.asList(Paths.get("late")), converted);
+		assertSame(Thread.currentThread(), threads.get(0));
+	}
+
+	@Test
+	public void writesValuesFoundWhileShuttingDown() throws Exception {
+		writer = new RecordingWriter() {
+			@Override
+			void convert(Path path, T2Reference reference,
+					InvocationContext context) throws IOException,
+					URISyntaxException {
+				super.convert(path, reference, context);
+				// Like the causes of an error document
+				if (path.equals(Paths.get("error")))
+					write(Paths.get("cause"), null, null);
+			}
+		};
+		writer.write(Paths.get("error"), null, null);
+		writer.shutdown();
+		writer.flush();
+		assertEquals(Arrays.asList(Paths.get("error"), Paths.get("cause")),
+				converted);
+	}
+
+	@Test
+	public void carriesOnAfterFailedWrite() throws Exception {
+		writer = new RecordingWriter() {
+			@Override
+			void convert(Path path, T2Reference reference,
+					InvocationContext context) throws IOException,
+					URISyntaxException {
+				if (path.equals(Paths.get("broken")))
+					throw new IOException("Broken value");
+				super.convert(path, reference, context);
+			}
+		};
+		writer.write(Paths.get("broken"), null, null);
+		writer.write(Paths.get("fine"), null, null);
+		writer.flush();
+		assertEquals(Arrays.asList(Paths.get("fine")), converted);
+		assertFalse(writer.isShutdown());
+	}
+}
@@ -0,0 +1,262 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.lang.observer;
+
+import static java.util.concurrent.TimeUnit.MICROSECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A {@link MultiCaster} which notifies its observers on background threads
+ * instead of the thread calling {@link #notify(Object)}.
+ * <p>
+ * Each observer has its own bounded lock-free queue of pending messages, so a
+ * slow observer only delays its own notifications. Messages are delivered to
+ * each observer in the order they were sent, in batches of up to the
+ * configured size; observers implementing {@link BatchObserver} receive each
+ * batch in a single call. When an observer's queue is full the
+ * {@link OverflowPolicy} decides whether the sender waits or the message is
+ * dropped for that observer.
+ * <p>
+ * Messages already queued for an observer are still delivered after it is
+ * removed.
+ * 
+ * @param <Message>
+ */
+public class AsynchronousMultiCaster<Message> extends MultiCaster<Message> {
+	/**
+	 * What to do when a message is sent while an observer's queue is full
+	 */
+	public enum OverflowPolicy {
+		/** Wait for the observer to catch up */
+		BLOCK,
+		/** Discard the message for that observer */
+		DROP
+	}
+
+	public static final int DEFAULT_CAPACITY = 4096;
+	public static final int DEFAULT_BATCH_SIZE = 64;
+	private static final long BLOCK_PARK_NANOS = MICROSECONDS.toNanos(50);
+
+	private static Logger logger = Logger
+			.getLogger(AsynchronousMultiCaster.class);
+
+	private final Observable<Message> observable;
+	private final int capacity;
+	private final int batchSize;
+	private final OverflowPolicy overflowPolicy;
+	private final Executor executor;
+	private final Map<Observer<Message>, ObserverQueue> queues = new ConcurrentHashMap<>();
+	private final AtomicLong dropped = new AtomicLong();
+
+	public AsynchronousMultiCaster(Observable<Message> observable) {
+		this(observable, DEFAULT_CAPACITY, DEFAULT_BATCH_SIZE,
+				OverflowPolicy.BLOCK);
+	}
+
+	/**
+	 * @param observable
+	 *            the class that changes are happening to
+	 * @param capacity
+	 *            the number of messages that can be queued for each observer
+	 * @param batchSize
+	 *            the maximum number of messages delivered to an observer at a
+	 *            time
+	 * @param overflowPolicy
+	 *            what to do when an observer's queue is full
+	 */
+	public AsynchronousMultiCaster(Observable<Message> observable,
+			int capacity, int batchSize, OverflowPolicy overflowPolicy) {
+		super(observable);
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be at least 1");
+		if (overflowPolicy == null)
+			throw new NullPointerException("Overflow policy can't be null");
+		this.observable = observable;
+		this.capacity = capacity;
+		this.batchSize = batchSize;
+		this.overflowPolicy = overflowPolicy;
+		this.executor = Executors.newCachedThreadPool(new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "Asynchronous notification "
+						+ count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Queue the message for each registered observer and return without
+	 * waiting for them to be notified, unless an observer's queue is full and
+	 * the overflow policy is {@link OverflowPolicy#BLOCK BLOCK}.
+	 */
+	@Override
+	public void notify(Message message) {
+		for (ObserverQueue queue : queues.values())
+			queue.offer(message);
+	}
+
+	@Override
+	public void addObserver(Observer<Message> observer) {
+		queues.put(observer, new ObserverQueue(observer));
+		super.addObserver(observer);
+	}
+
+	@Override
+	public void removeObserver(Observer<Message> observer) {
+		super.removeObserver(observer);
+		queues.remove(observer);
+	}
+
+	/**
+	 * Wait until all messages sent so far have been delivered to the current
+	 * observers. Must not be called by an observer while it is being
+	 * notified.
+	 */
+	public void flush() {
+		for (ObserverQueue queue : queues.values())
+			while (!queue.isIdle())
+				LockSupport.parkNanos(BLOCK_PARK_NANOS);
+	}
+
+	/**
+	 * The number of messages queued but not yet delivered, summed over all
+	 * observers
+	 */
+	public int getBacklog() {
+		int backlog = 0;
+		for (ObserverQueue queue : queues.values())
+			backlog += queue.buffer.size();
+		return backlog;
+	}
+
+	/**
+	 * The number of messages discarded because an observer's queue was full,
+	 * counting each observer separately
+	 */
+	public long getDroppedCount() {
+		return dropped.get();
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	/**
+	 * Pending messages for one observer, drained by at most one task at a
+	 * time so that the observer sees them in order.
+	 */
+	private class ObserverQueue implements Runnable {
+		private final Observer<Message> observer;
+		private final RingBuffer<Message> buffer;
+		private final AtomicBoolean scheduled = new AtomicBoolean();
+		private volatile Thread consumer;
+
+		ObserverQueue(Observer<Message> observer) {
+			this.observer = observer;
+			this.buffer = new RingBuffer<>(capacity);
+		}
+
+		void offer(Message message) {
+			if (!buffer.offer(message)) {
+				if (overflowPolicy == OverflowPolicy.DROP
+						|| consumer == Thread.currentThread()) {
+					/*
+					 * An observer sending to itself while its queue is full
+					 * would wait forever, so drop instead
+					 */
+					if (dropped.getAndIncrement() == 0)
+						logger.warn("Notification queue for " + observer
+								+ " is full, dropping messages");
+					return;
+				}
+				do {
+					schedule();
+					LockSupport.parkNanos(BLOCK_PARK_NANOS);
+				} while (!buffer.offer(message));
+			}
+			schedule();
+		}
+
+		private void schedule() {
+			if (scheduled.compareAndSet(false, true))
+				executor.execute(this);
+		}
+
+		boolean isIdle() {
+			return buffer.isEmpty() && !scheduled.get();
+		}
+
+		@Override
+		public void run() {
+			consumer = Thread.currentThread();
+			try {
+				List<Message> batch = new ArrayList<>(Math.min(batchSize,
+						buffer.capacity()));
+				if (buffer.drainTo(batch, batchSize) > 0)
+					deliver(batch);
+			} finally {
+				consumer = null;
+				scheduled.set(false);
+				// Pick up anything sent after draining but before unscheduling
+				if (!buffer.isEmpty())
+					schedule();
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		private void deliver(List<Message> batch) {
+			if (observer instanceof BatchObserver) {
+				try {
+					((BatchObserver<Message>) observer).notify(observable,
+							batch);
+				} catch (Exception ex) {
+					logger.warn("Could not notify " + observer, ex);
+				}
+				return;
+			}
+			for (Message message : batch)
+				try {
+					observer.notify(observable, message);
+				} catch (Exception ex) {
+					logger.warn("Could not notify " + observer, ex);
+				}
+		}
+	}
+}
@@ -0,0 +1,46 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.lang.observer;
+
+import java.util.List;
+
+/**
+ * An {@link Observer} which can accept several messages in one call. When
+ * registered with an {@link AsynchronousMultiCaster} the messages queued for
+ * it are delivered in batches through {@link #notify(Observable, List)}
+ * rather than one by one.
+ * 
+ * @param <Message>
+ */
+public interface BatchObserver<Message> extends Observer<Message> {
+	/**
+	 * Called by the {@link Observable} to notify the implementing class of a
+	 * sequence of changes, in the order they happened
+	 * 
+	 * @param sender
+	 *            the class where the changes have happened
+	 * @param messages
+	 *            what has changed
+	 * @throws Exception
+	 */
+	void notify(Observable<Message> sender, List<Message> messages)
+			throws Exception;
+}
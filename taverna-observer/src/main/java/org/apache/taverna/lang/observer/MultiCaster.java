@@ -21,6 +21,7 @@ package org.apache.taverna.lang.observer;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.log4j.Logger;
 
@@ -38,7 +39,11 @@ public class MultiCaster<Message> implements Observable<Message> {
 
 	private Observable<Message> observable;
 
-	protected List<Observer<Message>> observers = new ArrayList<Observer<Message>>();
+	/**
+	 * Copied on write, so notification can iterate it without locking or
+	 * copying even if observers are added or removed meanwhile
+	 */
+	protected List<Observer<Message>> observers = new CopyOnWriteArrayList<Observer<Message>>();
 
 	/**
 	 * Set the {@link #observable} ie. the class that changes are happening to
@@ -55,10 +60,8 @@ public class MultiCaster<Message> implements Observable<Message> {
 	 * 
 	 * @param message
 	 */
-	@SuppressWarnings("unchecked")
 	public void notify(Message message) {
-		// Use a copy that can be iterated even if register/remove is called
-		for (Observer<Message> observer : getObservers()) {
+		for (Observer<Message> observer : observers) {
 			try {
 				observer.notify(observable, message);
 			} catch (Exception ex) {
@@ -70,14 +73,14 @@ public class MultiCaster<Message> implements Observable<Message> {
 	/**
 	 * Register an observer ie. someone who wants informed about changes
 	 */
-	public synchronized void addObserver(Observer<Message> observer) {
+	public void addObserver(Observer<Message> observer) {
 		observers.add(observer);
 	}
 
 	/**
 	 * Remove the observer and no longer send out any notifications about it
 	 */
-	public synchronized void removeObserver(Observer<Message> observer) {
+	public void removeObserver(Observer<Message> observer) {
 		observers.remove(observer);
 	}
 
@@ -85,7 +88,7 @@ public class MultiCaster<Message> implements Observable<Message> {
 	 * A list of all the classes currently registered with this
 	 * {@link MultiCaster}
 	 */
-	public synchronized List<Observer<Message>> getObservers() {
+	public List<Observer<Message>> getObservers() {
 		return new ArrayList<Observer<Message>>(observers);
 	}
 
@@ -0,0 +1,124 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.lang.observer;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer.
+ * <p>
+ * Producers claim a slot by advancing the tail and then publish their element
+ * into it; the consumer treats an unpublished slot as the end of the queue,
+ * so elements are always taken in the order their slots were claimed.
+ * 
+ * @param <E>
+ */
+class RingBuffer<E> {
+	private final AtomicReferenceArray<E> slots;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong();
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * @param capacity
+	 *            the maximum number of elements held, rounded up to a power
+	 *            of two
+	 */
+	RingBuffer(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Capacity must be at least 1");
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		slots = new AtomicReferenceArray<>(size);
+		mask = size - 1;
+	}
+
+	int capacity() {
+		return mask + 1;
+	}
+
+	/**
+	 * Add an element if there is room. May be called from any thread.
+	 * 
+	 * @return <code>false</code> if the buffer is full
+	 */
+	boolean offer(E element) {
+		if (element == null)
+			throw new NullPointerException();
+		while (true) {
+			long t = tail.get();
+			if (t - head.get() > mask)
+				return false;
+			if (tail.compareAndSet(t, t + 1)) {
+				slots.lazySet((int) t & mask, element);
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Take the next element, only to be called from the consumer.
+	 * 
+	 * @return the element, or <code>null</code> if none is published yet
+	 */
+	E poll() {
+		long h = head.get();
+		int index = (int) h & mask;
+		E element = slots.get(index);
+		if (element == null)
+			return null;
+		slots.lazySet(index, null);
+		head.lazySet(h + 1);
+		return element;
+	}
+
+	/**
+	 * Move up to <code>max</code> published elements into the given list,
+	 * only to be called from the consumer.
+	 * 
+	 * @return the number of elements moved
+	 */
+	int drainTo(List<? super E> list, int max) {
+		int count = 0;
+		E element;
+		while (count < max && (element = poll()) != null) {
+			list.add(element);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Whether no elements are claimed or published. Elements being published
+	 * concurrently are counted, so this can be used to wait for the consumer
+	 * to catch up.
+	 */
+	boolean isEmpty() {
+		return head.get() == tail.get();
+	}
+
+	int size() {
+		return (int) Math.max(0, tail.get() - head.get());
+	}
+}
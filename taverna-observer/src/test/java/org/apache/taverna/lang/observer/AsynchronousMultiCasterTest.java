@@ -0,0 +1,192 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.lang.observer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.taverna.lang.observer.AsynchronousMultiCaster.OverflowPolicy;
+import org.junit.Test;
+
+public class AsynchronousMultiCasterTest {
+	private final Observable<Integer> observable = new Observable<Integer>() {
+		@Override
+		public void addObserver(Observer<Integer> observer) {
+		}
+
+		@Override
+		public List<Observer<Integer>> getObservers() {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void removeObserver(Observer<Integer> observer) {
+		}
+	};
+
+	@Test
+	public void deliversInOrderOffCallingThread() {
+		AsynchronousMultiCaster<Integer> caster = new AsynchronousMultiCaster<>(
+				observable, 8, 3, OverflowPolicy.BLOCK);
+		RecordingObserver observer = new RecordingObserver();
+		caster.addObserver(observer);
+		for (int i = 0; i < 1000; i++)
+			caster.notify(i);
+		caster.flush();
+		assertEquals(1000, observer.messages.size());
+		for (int i = 0; i < 1000; i++)
+			assertEquals(Integer.valueOf(i), observer.messages.get(i));
+		assertSame(observable, observer.sender);
+		assertNotSame(Thread.currentThread(), observer.thread);
+		assertEquals(0, caster.getBacklog());
+		assertEquals(0, caster.getDroppedCount());
+	}
+
+	@Test
+	public void concurrentSendersAreAllDelivered() throws Exception {
+		final AsynchronousMultiCaster<Integer> caster = new AsynchronousMultiCaster<>(
+				observable, 16, 4, OverflowPolicy.BLOCK);
+		RecordingObserver observer = new RecordingObserver();
+		caster.addObserver(observer);
+		List<Thread> senders = new ArrayList<>();
+		for (int t = 0; t < 4; t++) {
+			final int offset = t * 1000;
+			senders.add(new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < 1000; i++)
+						caster.notify(offset + i);
+				}
+			});
+		}
+		for (Thread sender : senders)
+			sender.start();
+		for (Thread sender : senders)
+			sender.join();
+		caster.flush();
+		assertEquals(4000, observer.messages.size());
+		// Each sender's messages arrive in the order sent
+		int[] last = { -1, -1, -1, -1 };
+		for (int message : observer.messages) {
+			assertTrue(message % 1000 > last[message / 1000]);
+			last[message / 1000] = message % 1000;
+		}
+	}
+
+	@Test
+	public void batchObserverGetsBatches() {
+		AsynchronousMultiCaster<Integer> caster = new AsynchronousMultiCaster<>(
+				observable, 64, 5, OverflowPolicy.BLOCK);
+		final List<List<Integer>> batches = Collections
+				.synchronizedList(new ArrayList<List<Integer>>());
+		caster.addObserver(new BatchObserver<Integer>() {
+			@Override
+			public void notify(Observable<Integer> sender, Integer message) {
+				throw new AssertionError("Expected batches only");
+			}
+
+			@Override
+			public void notify(Observable<Integer> sender,
+					List<Integer> messages) {
+				batches.add(new ArrayList<>(messages));
+			}
+		});
+		for (int i = 0; i < 23; i++)
+			caster.notify(i);
+		caster.flush();
+		int expected = 0;
+		for (List<Integer> batch : batches) {
+			assertTrue(batch.size() <= 5);
+			for (int message : batch)
+				assertEquals(expected++, message);
+		}
+		assertEquals(23, expected);
+	}
+
+	@Test
+	public void dropPolicyDoesNotWaitForSlowObserver() throws Exception {
+		AsynchronousMultiCaster<Integer> caster = new AsynchronousMultiCaster<>(
+				observable, 4, 1, OverflowPolicy.DROP);
+		final CountDownLatch release = new CountDownLatch(1);
+		RecordingObserver observer = new RecordingObserver() {
+			@Override
+			public void notify(Observable<Integer> sender, Integer message)
+					throws Exception {
+				release.await();
+				super.notify(sender, message);
+			}
+		};
+		caster.addObserver(observer);
+		for (int i = 0; i < 100; i++)
+			caster.notify(i);
+		release.countDown();
+		caster.flush();
+		assertTrue(caster.getDroppedCount() > 0);
+		assertEquals(100, observer.messages.size() + caster.getDroppedCount());
+		assertEquals(Integer.valueOf(0), observer.messages.get(0));
+	}
+
+	@Test
+	public void removedObserverStillGetsQueuedMessages() throws Exception {
+		AsynchronousMultiCaster<Integer> caster = new AsynchronousMultiCaster<>(
+				observable);
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch done = new CountDownLatch(3);
+		caster.addObserver(new Observer<Integer>() {
+			@Override
+			public void notify(Observable<Integer> sender, Integer message)
+					throws Exception {
+				release.await();
+				done.countDown();
+			}
+		});
+		Observer<Integer> observer = caster.getObservers().get(0);
+		for (int i = 0; i < 3; i++)
+			caster.notify(i);
+		caster.removeObserver(observer);
+		caster.notify(3);
+		assertTrue(caster.getObservers().isEmpty());
+		release.countDown();
+		done.await();
+	}
+
+	private static class RecordingObserver implements Observer<Integer> {
+		final List<Integer> messages = Collections
+				.synchronizedList(new ArrayList<Integer>());
+		volatile Observable<Integer> sender;
+		volatile Thread thread;
+
+		@Override
+		public void notify(Observable<Integer> sender, Integer message)
+				throws Exception {
+			this.sender = sender;
+			this.thread = Thread.currentThread();
+			messages.add(message);
+		}
+	}
+}
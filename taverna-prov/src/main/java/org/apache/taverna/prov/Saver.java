@@ -22,6 +22,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.net.ProtocolException;
 import java.net.URI;
@@ -29,15 +30,23 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.security.DigestOutputStream;
+import java.nio.file.StandardCopyOption;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.taverna.invocation.InvocationContext;
 import org.apache.taverna.provenance.api.ProvenanceAccess;
@@ -52,7 +61,6 @@ import org.apache.taverna.reference.config.DataManagementConfiguration;
 
 import org.apache.commons.beanutils.PropertyUtils;
 import org.apache.commons.codec.binary.Hex;
-import org.apache.commons.io.IOUtils;
 import org.apache.log4j.Logger;
 import org.apache.tika.Tika;
 import org.apache.tika.mime.MimeTypeException;
@@ -71,6 +79,23 @@ public class Saver {
 
     private static Logger logger = Logger.getLogger(Saver.class);
 
+    /** Number of values written to the bundle at once */
+    private static final int WRITER_THREADS = Math.max(2, Math.min(4, Runtime
+            .getRuntime().availableProcessors()));
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Comparator<ExternalReferenceSPI> BY_RESOLUTION_COST = new Comparator<ExternalReferenceSPI>() {
+        @Override
+        public int compare(ExternalReferenceSPI o1, ExternalReferenceSPI o2) {
+            return Float.compare(o1.getResolutionCost(),
+                    o2.getResolutionCost());
+        }
+    };
+
+    /** File extensions by media type, looking these up is not cheap */
+    private static final Map<String, String> extensions = new ConcurrentHashMap<>();
+
     /**
      * @param saveProvAction
      */
@@ -105,8 +130,16 @@ public class Saver {
 
     private Map<Path, T2Reference> fileToId = new HashMap<>();
 
-    private Map<Path, String> sha1sums = new HashMap<>();
-    private Map<Path, String> sha512sums = new HashMap<>();
+    private Map<Path, String> sha1sums = new ConcurrentHashMap<>();
+    private Map<Path, String> sha512sums = new ConcurrentHashMap<>();
+
+    /** Value files written, or being written, by reference */
+    private Map<T2Reference, Path> valueFiles = new HashMap<>();
+
+    /** Writes not yet known to have finished, by target file */
+    private Map<Path, Future<?>> pendingWrites = new LinkedHashMap<>();
+
+    private ExecutorService writers;
 
     private ReferenceService referenceService;
 
@@ -136,11 +169,64 @@ public class Saver {
         // folderName.length() - 1));
         // }
         setBundle(bundle);
-        saveToFolder(bundle.getRoot(), getChosenReferences(),
-                getReferenceService());
+        writers = Executors.newFixedThreadPool(WRITER_THREADS,
+                new ThreadFactory() {
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "Provenance value writer");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        try {
+            saveToFolder(bundle.getRoot(), getChosenReferences(),
+                    getReferenceService());
+            awaitWrites();
+        } finally {
+            writers.shutdownNow();
+            writers = null;
+        }
         DataBundles.closeAndSaveBundle(bundle, bundlePath);
     }
 
+    /**
+     * Wait for the values passed to {@link #saveReference(T2Reference, Path)}
+     * to be written, after which their files and checksums can be read.
+     * 
+     * @throws IOException
+     *             if any of the values could not be written
+     */
+    public void awaitWrites() throws IOException {
+        IOException failure = null;
+        try {
+            for (Future<?> write : pendingWrites.values()) {
+                try {
+                    write.get();
+                } catch (ExecutionException e) {
+                    IOException ex = asIOException(e.getCause());
+                    if (failure == null)
+                        failure = ex;
+                    else
+                        failure.addSuppressed(ex);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(
+                    "Interrupted while writing values");
+        } finally {
+            pendingWrites.clear();
+        }
+        if (failure != null)
+            throw failure;
+    }
+
+    private static IOException asIOException(Throwable cause) {
+        if (cause instanceof IOException)
+            return (IOException) cause;
+        return new IOException("Could not write value", cause);
+    }
+
     private void setBundle(Bundle bundle) {
         this.bundle = bundle;
     }
@@ -148,23 +234,28 @@ public class Saver {
     protected static Tika tika = new Tika();
 
     public Path saveReference(T2Reference t2Ref, Path file) throws IOException {
+        Path written = valueFiles.get(t2Ref);
+        if (written != null) {
+            // Same value saved again, e.g. as both an output and an
+            // intermediate value; copy it rather than resolve it again
+            Path targetFile = copyValue(written, file, getMediaTypes()
+                    .get(t2Ref));
+            getFileToId().put(targetFile, t2Ref);
+            return targetFile;
+        }
+
         ReferenceSetService refSet = getReferenceService()
                 .getReferenceSetService();
         ReferenceSet referenceSet = refSet.getReferenceSet(t2Ref);
         List<ExternalReferenceSPI> externalReferences = new ArrayList<ExternalReferenceSPI>(
                 referenceSet.getExternalReferences());
-        Collections.sort(externalReferences,
-                new Comparator<ExternalReferenceSPI>() {
-                    public int compare(ExternalReferenceSPI o1,
-                            ExternalReferenceSPI o2) {
-                        return (int) (o1.getResolutionCost() - o2
-                                .getResolutionCost());
-                    }
-                });
+        Collections.sort(externalReferences, BY_RESOLUTION_COST);
         String mimeType = findMimeType(externalReferences);
         getMediaTypes().put(t2Ref, mimeType);
 
         Path targetFile = writeIfLocal(externalReferences, file, mimeType);
+        if (targetFile != null)
+            valueFiles.put(t2Ref, targetFile);
         if (targetFile == null) {
             URI uri = referenceAsURI(externalReferences);
             if (uri != null) {
@@ -197,44 +288,109 @@ public class Saver {
             return null;
         }
 
-        String fileExtension;
-        try {
-            fileExtension = MimeTypes.getDefaultMimeTypes().forName(mimeType)
-                    .getExtension();
-        } catch (MimeTypeException e1) {
-            fileExtension = "";
-        }
-        Path targetFile = file.resolveSibling(file.getFileName()
-                + fileExtension);
+        final Path targetFile = file.resolveSibling(file.getFileName()
+                + fileExtension(mimeType));
+        final ValueCarryingExternalReference<?> value = valRef;
+        submitWrite(targetFile, new Callable<Void>() {
+            @Override
+            public Void call() throws IOException {
+                writeValue(value, targetFile);
+                return null;
+            }
+        });
+        return targetFile;
+    }
 
-        MessageDigest sha = null;
-        MessageDigest sha512 = null;
-        OutputStream output = Files.newOutputStream(targetFile);
-        try {
-            try {
-                sha = MessageDigest.getInstance("SHA");
-                output = new DigestOutputStream(output, sha);
+    private Path copyValue(final Path written, Path file, String mimeType)
+            throws IOException {
+        final Path targetFile = file.resolveSibling(file.getFileName()
+                + fileExtension(mimeType));
+        final Future<?> originalWrite = pendingWrites.get(written);
+        submitWrite(targetFile, new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                // Writes are started in order, so the original is either
+                // written or being written by another thread
+                if (originalWrite != null)
+                    originalWrite.get();
+                Files.copy(written, targetFile,
+                        StandardCopyOption.REPLACE_EXISTING);
+                Path source = written.toRealPath();
+                Path target = targetFile.toRealPath();
+                String sha1 = getSha1sums().get(source);
+                if (sha1 != null)
+                    getSha1sums().put(target, sha1);
+                String sha512 = getSha512sums().get(source);
+                if (sha512 != null)
+                    getSha512sums().put(target, sha512);
+                return null;
+            }
+        });
+        return targetFile;
+    }
 
-                sha512 = MessageDigest.getInstance("SHA-512");
-                output = new DigestOutputStream(output, sha512);
-            } catch (NoSuchAlgorithmException e) {
-                logger.info("Could not find digest", e);
+    private void submitWrite(Path targetFile, Callable<Void> write)
+            throws IOException {
+        if (writers == null) {
+            // Not within saveData(), write straight away
+            try {
+                write.call();
+            } catch (Exception e) {
+                throw asIOException(e);
             }
+            return;
+        }
+        pendingWrites.put(targetFile, writers.submit(write));
+    }
 
-            IOUtils.copyLarge(valRef.openStream(getContext()), output);
-        } finally {
-            output.close();
+    private static String fileExtension(String mimeType) {
+        if (mimeType == null)
+            return "";
+        String extension = extensions.get(mimeType);
+        if (extension == null) {
+            try {
+                extension = MimeTypes.getDefaultMimeTypes().forName(mimeType)
+                        .getExtension();
+            } catch (MimeTypeException e) {
+                extension = "";
+            }
+            extensions.put(mimeType, extension);
         }
+        return extension;
+    }
 
-        if (sha != null) {
-            getSha1sums().put(targetFile.toRealPath(), hexOfDigest(sha));
+    /**
+     * Copy the value to the file, computing both checksums on the way.
+     */
+    private void writeValue(ValueCarryingExternalReference<?> valRef,
+            Path targetFile) throws IOException {
+        MessageDigest sha = null;
+        MessageDigest sha512 = null;
+        try {
+            sha = MessageDigest.getInstance("SHA");
+            sha512 = MessageDigest.getInstance("SHA-512");
+        } catch (NoSuchAlgorithmException e) {
+            logger.info("Could not find digest", e);
         }
-        if (sha512 != null) {
-            sha512.digest();
-            getSha512sums().put(targetFile.toRealPath(), hexOfDigest(sha512));
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        try (InputStream input = valRef.openStream(getContext());
+                OutputStream output = Files.newOutputStream(targetFile)) {
+            int read;
+            while ((read = input.read(buffer)) != -1) {
+                output.write(buffer, 0, read);
+                if (sha != null)
+                    sha.update(buffer, 0, read);
+                if (sha512 != null)
+                    sha512.update(buffer, 0, read);
+            }
         }
 
-        return targetFile;
+        Path realPath = targetFile.toRealPath();
+        if (sha != null)
+            getSha1sums().put(realPath, hexOfDigest(sha));
+        if (sha512 != null)
+            getSha512sums().put(realPath, hexOfDigest(sha512));
     }
 
     private URI referenceAsURI(List<ExternalReferenceSPI> externalReferences) {
@@ -396,6 +396,9 @@ public class W3ProvenanceExport {
                     Direction.OUTPUTS, false);
         }
 
+        // Values are written in the background, their files and checksums
+        // are read back below
+        saver.awaitWrites();
         storeFileReferences();
 
         provModel.setEndedAtTime(storeProvenance, new GregorianCalendar());
@@ -0,0 +1,202 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.prov;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.commons.codec.binary.Hex;
+import org.apache.taverna.activities.testutils.ActivityInvoker;
+import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.invocation.impl.InvocationContextImpl;
+import org.apache.taverna.reference.ReferenceService;
+import org.apache.taverna.reference.T2Reference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SaverTest {
+
+    private ReferenceService referenceService;
+    private InvocationContext context;
+    private Path folder;
+
+    @Before
+    public void createReferenceService() throws IOException {
+        referenceService = ActivityInvoker.createReferenceService();
+        context = new InvocationContextImpl(referenceService, null);
+        folder = Files.createTempDirectory("savertest");
+    }
+
+    @After
+    public void deleteFolder() throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(folder)) {
+            for (Path file : files)
+                Files.delete(file);
+        }
+        Files.delete(folder);
+    }
+
+    /**
+     * Saves its chosen references in order from within
+     * {@link Saver#saveData(Path)}, then reads back what was written while the
+     * bundle is still open.
+     */
+    private class ValueSaver extends Saver {
+        final Map<String, Path> written = new LinkedHashMap<>();
+        final Map<String, String> contents = new HashMap<>();
+        final Map<String, String> sha1sums = new HashMap<>();
+        final Map<String, String> sha512sums = new HashMap<>();
+
+        ValueSaver(Map<String, T2Reference> values) {
+            super(referenceService, context, "run", values);
+        }
+
+        @Override
+        protected void prepareSesame() {
+        }
+
+        @Override
+        protected void saveToFolder(Path root,
+                Map<String, T2Reference> chosenReferences,
+                ReferenceService referenceService) throws IOException {
+            Path values = root.resolve("values");
+            Files.createDirectories(values);
+            for (Entry<String, T2Reference> value : chosenReferences
+                    .entrySet())
+                written.put(value.getKey(), saveReference(value.getValue(),
+                        values.resolve(value.getKey())));
+            awaitWrites();
+            for (Entry<String, Path> file : written.entrySet()) {
+                Path realPath = file.getValue().toRealPath();
+                contents.put(file.getKey(),
+                        new String(Files.readAllBytes(realPath), UTF_8));
+                sha1sums.put(file.getKey(), getSha1sums().get(realPath));
+                sha512sums.put(file.getKey(), getSha512sums().get(realPath));
+            }
+        }
+    }
+
+    private T2Reference register(String value) {
+        return referenceService.register(value, 0, true, context);
+    }
+
+    private static String digest(String algorithm, String value)
+            throws Exception {
+        MessageDigest digest = MessageDigest.getInstance(algorithm);
+        return new String(Hex.encodeHex(digest.digest(value.getBytes(UTF_8))));
+    }
+
+    private static String largeValue() {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            value.append("line ").append(i).append('\n');
+        return value.toString();
+    }
+
+    @Test
+    public void checksumsMatchTheWrittenValue() throws Exception {
+        ValueSaver saver = new ValueSaver(Collections.singletonMap("hello",
+                register("Hello, world")));
+        saver.saveData(folder.resolve("run.bundle.zip"));
+        assertEquals("Hello, world", saver.contents.get("hello"));
+        assertEquals(digest("SHA", "Hello, world"), saver.sha1sums.get("hello"));
+        assertEquals(digest("SHA-512", "Hello, world"),
+                saver.sha512sums.get("hello"));
+        assertNotEquals(digest("SHA-512", ""), saver.sha512sums.get("hello"));
+    }
+
+    @Test
+    public void everyValueIsWrittenToItsOwnFile() throws Exception {
+        Map<String, T2Reference> values = new LinkedHashMap<>();
+        for (int i = 0; i < 50; i++)
+            values.put("value" + i, register("Value " + i));
+        ValueSaver saver = new ValueSaver(values);
+        saver.saveData(folder.resolve("run.bundle.zip"));
+        assertEquals(50, saver.written.size());
+        for (int i = 0; i < 50; i++) {
+            assertEquals("Value " + i, saver.contents.get("value" + i));
+            assertEquals(digest("SHA", "Value " + i),
+                    saver.sha1sums.get("value" + i));
+        }
+    }
+
+    @Test
+    public void copiesWaitForTheFirstWrite() throws Exception {
+        String large = largeValue();
+        T2Reference reference = register(large);
+        Map<String, T2Reference> values = new LinkedHashMap<>();
+        values.put("original", reference);
+        values.put("copy1", reference);
+        values.put("copy2", reference);
+        ValueSaver saver = new ValueSaver(values);
+        saver.saveData(folder.resolve("run.bundle.zip"));
+        String sha1 = digest("SHA", large);
+        String sha512 = digest("SHA-512", large);
+        for (String name : values.keySet()) {
+            assertEquals(large, saver.contents.get(name));
+            assertEquals(sha1, saver.sha1sums.get(name));
+            assertEquals(sha512, saver.sha512sums.get(name));
+        }
+    }
+
+    @Test
+    public void alreadySavedValueIsCopied() throws Exception {
+        T2Reference reference = register("Saved twice");
+        Saver saver = new ValueSaver(Collections.<String, T2Reference> emptyMap());
+        // Outside saveData() values are written straight away
+        Path first = saver.saveReference(reference, folder.resolve("first"));
+        Path second = saver.saveReference(reference, folder.resolve("second"));
+        assertNotEquals(first, second);
+        assertEquals("Saved twice", new String(Files.readAllBytes(second), UTF_8));
+        assertEquals(1, saver.getMediaTypes().size());
+        assertSame(reference, saver.getFileToId().get(first));
+        assertSame(reference, saver.getFileToId().get(second));
+        Path firstReal = first.toRealPath();
+        Path secondReal = second.toRealPath();
+        assertEquals(digest("SHA", "Saved twice"),
+                saver.getSha1sums().get(secondReal));
+        assertEquals(saver.getSha1sums().get(firstReal), saver.getSha1sums()
+                .get(secondReal));
+        assertEquals(saver.getSha512sums().get(firstReal), saver
+                .getSha512sums().get(secondReal));
+    }
+
+    @Test(expected = IOException.class)
+    public void failedWriteIsReported() throws Exception {
+        Map<String, T2Reference> values = new LinkedHashMap<>();
+        values.put("written", register("Written"));
+        values.put("missing/folder", register("Not written"));
+        new ValueSaver(values).saveData(folder.resolve("run.bundle.zip"));
+    }
+}
@@ -18,16 +18,27 @@
  */
 package org.apache.taverna.provenance.connector;
 
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.Executors.newSingleThreadExecutor;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+import static net.sf.taverna.t2.provenance.vocabulary.SharedVocabulary.END_WORKFLOW_EVENT_TYPE;
+
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.List;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.taverna.invocation.InvocationContext;
+import net.sf.taverna.t2.provenance.item.DataflowRunComplete;
 import net.sf.taverna.t2.provenance.item.ProvenanceItem;
 import net.sf.taverna.t2.provenance.item.WorkflowProvenanceItem;
 import org.apache.taverna.provenance.lineageservice.EventProcessor;
@@ -47,6 +58,13 @@ import org.apache.taverna.configuration.database.DatabaseManager;
 /**
  * Collects {@link ProvenanceItem}s as it travels up and down the dispatch stack
  * inside the InvocationContext
+ * <p>
+ * Items are queued without locking and processed in order on the
+ * {@link #getExecutor() executor}, so the workflow threads reporting them only
+ * wait when the queue is full. The {@link ProvenanceWriter} batches the rows
+ * it can and is flushed whenever the queue empties and when the top level
+ * {@link DataflowRunComplete} has been processed; {@link #drain(long, TimeUnit)}
+ * waits for that to happen.
  *
  * @author Ian Dunlop
  * @author Stuart Owen
@@ -262,11 +280,31 @@ public abstract class AbstractProvenanceConnector implements ProvenanceReporter
 		}
 	}
 
+	/**
+	 * Default number of provenance items that may be waiting to be processed
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 8192;
+
 	private static Logger logger = Logger.getLogger(AbstractProvenanceConnector.class);
 	private String saveEvents;
 	private ProvenanceAnalysis provenanceAnalysis;
-	private ExecutorService executor = Executors.newSingleThreadExecutor();
-	private boolean finished = false;
+	private ExecutorService executor = newSingleThreadExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Provenance writer");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
+	private volatile boolean finished = false;
+	private final Queue<ProvenanceItem> pendingItems = new ConcurrentLinkedQueue<>();
+	private volatile Semaphore queueSpace = new Semaphore(DEFAULT_QUEUE_CAPACITY);
+	private final AtomicBoolean draining = new AtomicBoolean();
+	private final AtomicLong itemsAdded = new AtomicLong();
+	/** Only touched by the task draining {@link #pendingItems} */
+	private long itemsProcessed;
+	private final Object writtenLock = new Object();
+	private long itemsWritten;
 	private String sessionID;
 	private InvocationContext invocationContext;
 	private ReferenceService referenceService;
@@ -302,6 +340,8 @@ public abstract class AbstractProvenanceConnector implements ProvenanceReporter
 
 			setProvenanceAnalysis(new ProvenanceAnalysis(getQuery()));
 			setProvenance(new Provenance(getEventProcessor()));
+			if (getQuery() != null)
+				getQuery().setWriter(getWriter());
 		} catch (InstantiationException | IllegalAccessException
 				| ClassNotFoundException | SQLException e) {
 			logger.error("Problem with provenance initialisation: ", e);
@@ -343,33 +383,112 @@ public abstract class AbstractProvenanceConnector implements ProvenanceReporter
 	}
 
 	/**
-	 * Uses a {@link ScheduledThreadPoolExecutor} to process events in a Thread
-	 * safe manner
+	 * Queues the item to be processed on the {@link #getExecutor() executor},
+	 * waiting only if the queue is full
 	 */
 	@Override
-	public synchronized void addProvenanceItem(
-			final ProvenanceItem provenanceItem) {
-
-//		Runnable runnable = new Runnable() {
-//
-//			public void run() {
-				try {
-
-					getProvenance().acceptRawProvenanceEvent(
-							provenanceItem.getEventType(), provenanceItem);
-
-				} catch (SQLException e) {
-					logger.warn("Could not add provenance for " + provenanceItem.getEventType() + " " + provenanceItem.getIdentifier(), e);
-				} catch (IOException e) {
-					logger.error("Could not add provenance for " + provenanceItem.getEventType() + " " + provenanceItem.getIdentifier(), e);
-				} catch (RuntimeException e) {
-					logger.error("Could not add provenance for " + provenanceItem.getEventType() + " " + provenanceItem.getIdentifier(), e);
+	public void addProvenanceItem(final ProvenanceItem provenanceItem) {
+		queueSpace.acquireUninterruptibly();
+		itemsAdded.incrementAndGet();
+		pendingItems.add(provenanceItem);
+		scheduleDrain();
+	}
+
+	/**
+	 * Waits until every item added before this call has been processed and
+	 * written to the database.
+	 * 
+	 * @return <code>false</code> if the timeout elapsed first
+	 */
+	public boolean drain(long timeout, TimeUnit unit)
+			throws InterruptedException {
+		long target = itemsAdded.get();
+		long deadline = nanoTime() + unit.toNanos(timeout);
+		synchronized (writtenLock) {
+			while (itemsWritten < target) {
+				long remaining = deadline - nanoTime();
+				if (remaining <= 0)
+					return false;
+				NANOSECONDS.timedWait(writtenLock, remaining);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Sets how many items may be waiting to be processed before
+	 * {@link #addProvenanceItem(ProvenanceItem)} blocks. Must be called before
+	 * any items are added.
+	 */
+	public void setQueueCapacity(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("Queue capacity must be positive");
+		queueSpace = new Semaphore(capacity);
+	}
+
+	private void scheduleDrain() {
+		if (draining.compareAndSet(false, true))
+			getExecutor().execute(drainer);
+	}
+
+	private final Runnable drainer = new Runnable() {
+		@Override
+		public void run() {
+			try {
+				ProvenanceItem item;
+				while ((item = pendingItems.poll()) != null) {
+					queueSpace.release();
+					processItem(item);
+					itemsProcessed++;
+					if (isEndOfRun(item)) {
+						flushWriter();
+						setFinished(true);
+					}
 				}
-//
-//			}
-//		};
-//		getExecutor().execute(runnable);
+				flushWriter();
+			} finally {
+				draining.set(false);
+				// Catch items added after the last poll but before the reset
+				if (!pendingItems.isEmpty())
+					scheduleDrain();
+			}
+		}
+	};
+
+	private void processItem(ProvenanceItem provenanceItem) {
+		try {
+			getProvenance().acceptRawProvenanceEvent(
+					provenanceItem.getEventType(), provenanceItem);
+		} catch (SQLException e) {
+			logger.warn("Could not add provenance for " + provenanceItem.getEventType() + " " + provenanceItem.getIdentifier(), e);
+		} catch (IOException e) {
+			logger.error("Could not add provenance for " + provenanceItem.getEventType() + " " + provenanceItem.getIdentifier(), e);
+		} catch (RuntimeException e) {
+			logger.error("Could not add provenance for " + provenanceItem.getEventType() + " " + provenanceItem.getIdentifier(), e);
+		}
+	}
 
+	private static boolean isEndOfRun(ProvenanceItem provenanceItem) {
+		return provenanceItem.getEventType() == END_WORKFLOW_EVENT_TYPE
+				&& !provenanceItem.getProcessId().contains(":");
+	}
+
+	/**
+	 * Write out anything the writer is buffering and release
+	 * {@link #drain(long, TimeUnit) drain} calls waiting for the items
+	 * processed so far
+	 */
+	private void flushWriter() {
+		try {
+			if (getWriter() != null)
+				getWriter().flush();
+		} catch (SQLException e) {
+			logger.error("Could not write buffered provenance", e);
+		}
+		synchronized (writtenLock) {
+			itemsWritten = itemsProcessed;
+			writtenLock.notifyAll();
+		}
 	}
 
 	protected Connection getConnection() throws SQLException {
@@ -75,6 +75,7 @@ import org.apache.taverna.configuration.database.DatabaseManager;
 public abstract class ProvenanceQuery {
 	protected Logger logger = Logger.getLogger(ProvenanceQuery.class);
 	private final DatabaseManager databaseManager;
+	private ProvenanceWriter writer;
 
 	public ProvenanceQuery(DatabaseManager databaseManager) {
 		this.databaseManager = databaseManager;
@@ -82,9 +83,19 @@ public abstract class ProvenanceQuery {
 
 	public Connection getConnection() throws InstantiationException,
 			IllegalAccessException, ClassNotFoundException, SQLException {
+		if (writer != null)
+			writer.flush();
 		return databaseManager.getConnection();
 	}
 
+	/**
+	 * Connect this query to the writer filling the same database, so that rows
+	 * it is still buffering are written before each query runs
+	 */
+	public void setWriter(ProvenanceWriter writer) {
+		this.writer = writer;
+	}
+
 	private Q query(String baseQuery) {
 		return new Q(baseQuery);
 	}
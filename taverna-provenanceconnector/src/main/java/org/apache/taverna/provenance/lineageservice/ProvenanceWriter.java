@@ -18,16 +18,26 @@
  */
 package org.apache.taverna.provenance.lineageservice;
 
+import static java.lang.System.currentTimeMillis;
+import static java.sql.Statement.EXECUTE_FAILED;
+import static java.sql.Types.SMALLINT;
+import static java.sql.Types.TIMESTAMP;
+import static java.sql.Types.VARCHAR;
 import static org.apache.taverna.provenance.connector.AbstractProvenanceConnector.DataflowInvocationTable.DataflowInvocation;
 
+import java.sql.BatchUpdateException;
 import java.sql.Blob;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 
@@ -49,6 +59,14 @@ import org.apache.taverna.configuration.database.DatabaseManager;
  * Handles all the writing out of provenance items to the database layer. Uses
  * standard SQL so all specific instances of this class can extend this writer
  * to handle all of the db writes
+ * <p>
+ * Rows that are only ever appended (data bindings, processor enactments and
+ * dataflow invocations) are buffered and written with JDBC batch inserts once
+ * {@link #getBatchSize() enough rows} have accumulated or the oldest has been
+ * held for {@link #getFlushInterval() long enough}. Any other statement, and
+ * any query through a {@link ProvenanceQuery} connected to this writer,
+ * {@link #flush() flushes} the buffer first so statements still reach the
+ * database in the order they were issued.
  *
  * @author Paolo Missier
  * @author Ian Dunlop
@@ -57,19 +75,189 @@ import org.apache.taverna.configuration.database.DatabaseManager;
  */
 public class ProvenanceWriter {
 
+	/**
+	 * Default number of buffered rows that triggers a batch insert
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 256;
+	/**
+	 * Default longest time, in milliseconds, a row is buffered for
+	 */
+	public static final long DEFAULT_FLUSH_INTERVAL = 2000;
+
+	private static final int[] DATA_BINDING_TYPES = { VARCHAR, VARCHAR,
+			VARCHAR, VARCHAR };
+	private static final int[] DATAFLOW_INVOCATION_TYPES = { VARCHAR, VARCHAR,
+			TIMESTAMP, TIMESTAMP, VARCHAR, VARCHAR, VARCHAR, VARCHAR, SMALLINT };
+	private static final int[] PROCESSOR_ENACTMENT_TYPES = { VARCHAR, VARCHAR,
+			VARCHAR, VARCHAR, VARCHAR, VARCHAR, TIMESTAMP, TIMESTAMP, VARCHAR,
+			VARCHAR };
+
 	protected static Logger logger = Logger.getLogger(ProvenanceWriter.class);
 	protected int cnt; // counts number of calls to PortBinding
 	protected ProvenanceQuery pq = null;
 	private final DatabaseManager databaseManager;
+	private final Map<String, Batch> batches = new LinkedHashMap<>();
+	private int batchedRows;
+	private long oldestBatchedRow;
+	private volatile int batchSize = DEFAULT_BATCH_SIZE;
+	private volatile long flushInterval = DEFAULT_FLUSH_INTERVAL;
 
 	public ProvenanceWriter(DatabaseManager databaseManager) {
 		this.databaseManager = databaseManager;
 	}
 
+	/**
+	 * A connection for a single statement, after any buffered rows have been
+	 * written
+	 */
 	public Connection getConnection() throws SQLException {
+		flush();
 		return databaseManager.getConnection();
 	}
 
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Sets how many rows are buffered before they are written; 1 writes every
+	 * row as it is added
+	 */
+	public void setBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("Batch size must be positive");
+		this.batchSize = batchSize;
+	}
+
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	/**
+	 * Sets the longest time, in milliseconds, that a row is buffered for. The
+	 * interval is checked as rows are added, so an idle writer relies on its
+	 * owner calling {@link #flush()}.
+	 */
+	public void setFlushInterval(long flushInterval) {
+		this.flushInterval = flushInterval;
+	}
+
+	/**
+	 * Buffer one row of an insert, writing the buffer if it is full or old
+	 * enough
+	 */
+	protected synchronized void addToBatch(String sql, int[] types,
+			Object... row) throws SQLException {
+		Batch batch = batches.get(sql);
+		if (batch == null) {
+			batch = new Batch(sql, types);
+			batches.put(sql, batch);
+		}
+		batch.rows.add(row);
+		if (batchedRows++ == 0)
+			oldestBatchedRow = currentTimeMillis();
+		if (batchedRows >= batchSize
+				|| currentTimeMillis() - oldestBatchedRow >= flushInterval)
+			flush();
+	}
+
+	/**
+	 * Write all buffered rows to the database. A batch stays buffered until it
+	 * has been written, so if one fails the others are still written and the
+	 * failed one is tried again by the next flush.
+	 *
+	 * @throws SQLException
+	 *             the first failure, once every batch has been tried
+	 */
+	public synchronized void flush() throws SQLException {
+		if (batchedRows == 0)
+			return;
+		SQLException failure = null;
+		try (Connection connection = databaseManager.getConnection()) {
+			for (Iterator<Batch> i = batches.values().iterator(); i.hasNext();) {
+				Batch batch = i.next();
+				try {
+					batch.write(connection);
+				} catch (SQLException e) {
+					if (failure == null)
+						failure = e;
+					else
+						failure.addSuppressed(e);
+					continue;
+				}
+				i.remove();
+				batchedRows -= batch.rows.size();
+			}
+		}
+		if (failure != null)
+			throw failure;
+	}
+
+	/**
+	 * The number of rows buffered and not yet written
+	 */
+	public synchronized int getBatchedRows() {
+		return batchedRows;
+	}
+
+	/**
+	 * The buffered rows of one insert statement
+	 */
+	private static class Batch {
+		private final String sql;
+		private final int[] types;
+		private final List<Object[]> rows = new ArrayList<>();
+
+		Batch(String sql, int[] types) {
+			this.sql = sql;
+			this.types = types;
+		}
+
+		void write(Connection connection) throws SQLException {
+			int[] counts;
+			try (PreparedStatement ps = connection.prepareStatement(sql)) {
+				for (Object[] row : rows) {
+					bind(ps, row);
+					ps.addBatch();
+				}
+				ps.executeBatch();
+				return;
+			} catch (BatchUpdateException e) {
+				counts = e.getUpdateCounts();
+			}
+
+			/*
+			 * Drivers either stop at the first failing row or carry on and
+			 * mark it; either way, insert the rows that did not go in one at
+			 * a time so that only the bad ones are lost.
+			 */
+			try (PreparedStatement ps = connection.prepareStatement(sql)) {
+				for (int i = 0; i < rows.size(); i++) {
+					if (counts != null && i < counts.length
+							&& counts[i] != EXECUTE_FAILED)
+						continue;
+					bind(ps, rows.get(i));
+					try {
+						ps.executeUpdate();
+					} catch (SQLException e) {
+						logger.warn("Could not insert provenance row: " + sql, e);
+					}
+				}
+			}
+		}
+
+		private void bind(PreparedStatement ps, Object[] row)
+				throws SQLException {
+			for (int i = 0; i < row.length; i++)
+				if (row[i] instanceof Boolean)
+					ps.setBoolean(i + 1, (Boolean) row[i]);
+				else if (row[i] == null)
+					ps.setNull(i + 1, types[i]);
+				else
+					ps.setObject(i + 1, row[i], types[i]);
+		}
+	}
+
 	public void closeCurrentModel() {
 
 	}
@@ -122,20 +310,14 @@ public class ProvenanceWriter {
 				+ DataflowInvocation.workflowRunId + ","
 				+ DataflowInvocation.completed + ") "
 				+ " VALUES(?,?,?,?,?,?,?,?,?)";
-		try (Connection connection = getConnection();
-				PreparedStatement ps = connection.prepareStatement(sql);) {
-			ps.setString(1, invocation.getDataflowInvocationId());
-			ps.setString(2, invocation.getWorkflowId());
-			ps.setTimestamp(3, invocation.getInvocationStarted());
-			ps.setTimestamp(4, invocation.getInvocationEnded());
-			ps.setString(5, invocation.getInputsDataBindingId());
-			ps.setString(6, invocation.getOutputsDataBindingId());
-			ps.setString(7, invocation.getParentProcessorEnactmentId());
-			ps.setString(8, invocation.getWorkflowRunId());
-			ps.setBoolean(9, invocation.getCompleted());
-
-			ps.executeUpdate();
-		}
+		addToBatch(sql, DATAFLOW_INVOCATION_TYPES,
+				invocation.getDataflowInvocationId(),
+				invocation.getWorkflowId(), invocation.getInvocationStarted(),
+				invocation.getInvocationEnded(),
+				invocation.getInputsDataBindingId(),
+				invocation.getOutputsDataBindingId(),
+				invocation.getParentProcessorEnactmentId(),
+				invocation.getWorkflowRunId(), invocation.getCompleted());
 	}
 
 	/**
@@ -172,16 +354,11 @@ public class ProvenanceWriter {
 				+ DataBindingTable.dataBindingId + ","
 				+ DataBindingTable.portId + "," + DataBindingTable.t2Reference
 				+ "," + DataBindingTable.workflowRunId + ") VALUES(?,?,?,?)";
-		try (Connection connection = getConnection();
-				PreparedStatement ps = connection.prepareStatement(sql)) {
-			ps.setString(1, dataBinding.getDataBindingId());
-			ps.setString(2, dataBinding.getPort().getIdentifier());
-			ps.setString(3, dataBinding.getT2Reference());
-			ps.setString(4, dataBinding.getWorkflowRunId());
-			ps.executeUpdate();
-			if (logger.isDebugEnabled())
-				logger.debug("adding DataBinding:\n " + dataBinding);
-		}
+		addToBatch(sql, DATA_BINDING_TYPES, dataBinding.getDataBindingId(),
+				dataBinding.getPort().getIdentifier(),
+				dataBinding.getT2Reference(), dataBinding.getWorkflowRunId());
+		if (logger.isDebugEnabled())
+			logger.debug("adding DataBinding:\n " + dataBinding);
 	}
 
 	public void addWFId(String wfId) throws SQLException {
@@ -278,24 +455,16 @@ public class ProvenanceWriter {
 				+ ProcessorEnactmentTable.initialInputsDataBindingId + ","
 				+ ProcessorEnactmentTable.finalOutputsDataBindingId
 				+ ") VALUES(?,?,?,?,?,?,?,?,?,?)";
-		try (Connection connection = getConnection();
-				PreparedStatement ps = connection.prepareStatement(sql)) {
-			ps.setString(1, enactment.getProcessEnactmentId());
-			ps.setString(2, enactment.getWorkflowRunId());
-			ps.setString(3, enactment.getProcessorId());
-			ps.setString(4, enactment.getProcessIdentifier());
-			ps.setString(5, enactment.getIteration());
-			ps.setString(6, enactment.getParentProcessorEnactmentId());
-			ps.setTimestamp(7, enactment.getEnactmentStarted());
-			ps.setTimestamp(8, enactment.getEnactmentEnded());
-			ps.setString(9, enactment.getInitialInputsDataBindingId());
-			ps.setString(10, enactment.getFinalOutputsDataBindingId());
-			ps.executeUpdate();
-
-			if (logger.isDebugEnabled())
-				logger.debug("adding ProcessorEnactment binding:\n "
-						+ enactment);
-		}
+		addToBatch(sql, PROCESSOR_ENACTMENT_TYPES,
+				enactment.getProcessEnactmentId(),
+				enactment.getWorkflowRunId(), enactment.getProcessorId(),
+				enactment.getProcessIdentifier(), enactment.getIteration(),
+				enactment.getParentProcessorEnactmentId(),
+				enactment.getEnactmentStarted(), enactment.getEnactmentEnded(),
+				enactment.getInitialInputsDataBindingId(),
+				enactment.getFinalOutputsDataBindingId());
+		if (logger.isDebugEnabled())
+			logger.debug("adding ProcessorEnactment binding:\n " + enactment);
 	}
 
 	public String addCollection(String processorId, String collId,
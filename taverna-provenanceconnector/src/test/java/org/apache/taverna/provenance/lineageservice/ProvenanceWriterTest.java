@@ -0,0 +1,235 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.provenance.lineageservice;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.apache.taverna.configuration.database.DatabaseManager;
+import org.apache.taverna.provenance.lineageservice.utils.DataBinding;
+import org.apache.taverna.provenance.lineageservice.utils.DataflowInvocation;
+import org.apache.taverna.provenance.lineageservice.utils.Port;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ProvenanceWriterTest {
+	/** SQL of each batch executed, once per batch */
+	private List<String> executedBatches;
+	/** Number of rows in each batch executed */
+	private List<Integer> executedRows;
+	/** Batches with SQL containing this fail */
+	private String failing;
+	private int connections;
+	private ProvenanceWriter writer;
+
+	@Before
+	public void createWriter() {
+		executedBatches = new ArrayList<>();
+		executedRows = new ArrayList<>();
+		failing = null;
+		connections = 0;
+		writer = new ProvenanceWriter(new TestDatabaseManager());
+		writer.setFlushInterval(Long.MAX_VALUE);
+	}
+
+	@Test
+	public void queuesRowsUntilBatchSize() throws Exception {
+		writer.setBatchSize(3);
+		writer.addDataBinding(dataBinding("b1"));
+		writer.addDataBinding(dataBinding("b2"));
+		assertEquals(2, writer.getBatchedRows());
+		assertTrue(executedBatches.isEmpty());
+		writer.addDataBinding(dataBinding("b3"));
+		assertEquals(0, writer.getBatchedRows());
+		assertEquals(1, executedBatches.size());
+		assertEquals(3, (int) executedRows.get(0));
+	}
+
+	@Test
+	public void drainsWhenRowIsOldEnough() throws Exception {
+		writer.setFlushInterval(0);
+		writer.addDataBinding(dataBinding("b1"));
+		assertEquals(0, writer.getBatchedRows());
+		assertEquals(1, executedBatches.size());
+	}
+
+	@Test
+	public void flushWritesEachStatementInOrder() throws Exception {
+		writer.addDataBinding(dataBinding("b1"));
+		writer.addDataflowInvocation(dataflowInvocation("i1"));
+		writer.addDataBinding(dataBinding("b2"));
+		writer.flush();
+		assertEquals(2, executedBatches.size());
+		assertTrue(executedBatches.get(0).contains("INTO DataBinding"));
+		assertEquals(2, (int) executedRows.get(0));
+		assertTrue(executedBatches.get(1).contains("INTO DataflowInvocation"));
+		assertEquals(1, (int) executedRows.get(1));
+		assertEquals(1, connections);
+		assertEquals(0, writer.getBatchedRows());
+
+		writer.flush();
+		assertEquals(2, executedBatches.size());
+		assertEquals(1, connections);
+	}
+
+	@Test
+	public void getConnectionFlushesFirst() throws Exception {
+		writer.addDataBinding(dataBinding("b1"));
+		writer.getConnection().close();
+		assertEquals(1, executedBatches.size());
+		assertEquals(0, writer.getBatchedRows());
+	}
+
+	@Test
+	public void failedBatchIsKeptAndOthersWritten() throws Exception {
+		writer.addDataBinding(dataBinding("b1"));
+		writer.addDataflowInvocation(dataflowInvocation("i1"));
+		failing = "INTO DataBinding";
+		try {
+			writer.flush();
+			fail("Expected the failed batch to be reported");
+		} catch (SQLException e) {
+		}
+		assertEquals(1, executedBatches.size());
+		assertTrue(executedBatches.get(0).contains("INTO DataflowInvocation"));
+		assertEquals(1, writer.getBatchedRows());
+
+		failing = null;
+		writer.flush();
+		assertEquals(2, executedBatches.size());
+		assertTrue(executedBatches.get(1).contains("INTO DataBinding"));
+		assertEquals(0, writer.getBatchedRows());
+	}
+
+	@Test
+	public void rowsAreKeptIfNoConnection() throws Exception {
+		writer.addDataBinding(dataBinding("b1"));
+		failing = "";
+		try {
+			writer.flush();
+			fail("Expected the failed batch to be reported");
+		} catch (SQLException e) {
+		}
+		assertEquals(1, writer.getBatchedRows());
+		failing = null;
+		writer.flush();
+		assertEquals(1, executedBatches.size());
+	}
+
+	private static DataBinding dataBinding(String id) {
+		Port port = new Port();
+		port.setIdentifier("port");
+		DataBinding dataBinding = new DataBinding();
+		dataBinding.setDataBindingId(id);
+		dataBinding.setPort(port);
+		dataBinding.setT2Reference("t2:ref//" + id);
+		dataBinding.setWorkflowRunId("run");
+		return dataBinding;
+	}
+
+	private static DataflowInvocation dataflowInvocation(String id) {
+		DataflowInvocation invocation = new DataflowInvocation();
+		invocation.setDataflowInvocationId(id);
+		invocation.setWorkflowId("workflow");
+		invocation.setWorkflowRunId("run");
+		invocation.setInvocationStarted(new Timestamp(0));
+		invocation.setCompleted(false);
+		return invocation;
+	}
+
+	private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+		return type.cast(Proxy.newProxyInstance(
+				ProvenanceWriterTest.class.getClassLoader(),
+				new Class<?>[] { type }, handler));
+	}
+
+	private class TestDatabaseManager implements DatabaseManager {
+		@Override
+		public Connection getConnection() throws SQLException {
+			if ("".equals(failing))
+				throw new SQLException("No database");
+			connections++;
+			return proxy(Connection.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args) {
+					if (method.getName().equals("prepareStatement"))
+						return preparedStatement((String) args[0]);
+					return null;
+				}
+			});
+		}
+
+		private PreparedStatement preparedStatement(final String sql) {
+			final List<Object> rows = new ArrayList<>();
+			return proxy(PreparedStatement.class, new InvocationHandler() {
+				@Override
+				public Object invoke(Object proxy, Method method, Object[] args)
+						throws SQLException {
+					switch (method.getName()) {
+					case "addBatch":
+						rows.add(sql);
+						return null;
+					case "executeBatch":
+						if (failing != null && sql.contains(failing))
+							throw new SQLException("Failed " + sql);
+						executedBatches.add(sql);
+						executedRows.add(rows.size());
+						return new int[rows.size()];
+					case "executeUpdate":
+						return 1;
+					default:
+						return null;
+					}
+				}
+			});
+		}
+
+		@Override
+		public DataSource getDataSource() {
+			return null;
+		}
+
+		@Override
+		public void startDerbyNetworkServer() {
+		}
+
+		@Override
+		public void stopDerbyNetworkServer() {
+		}
+
+		@Override
+		public boolean isRunning() {
+			return true;
+		}
+	}
+}
@@ -22,6 +22,8 @@ package org.apache.taverna.reference;
 import static org.springframework.transaction.annotation.Propagation.REQUIRED;
 import static org.springframework.transaction.annotation.Propagation.SUPPORTS;
 
+import java.util.List;
+
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -57,6 +59,22 @@ public interface ListDao {
 	@Transactional(propagation = SUPPORTS, readOnly = true)
 	IdentifiedList<T2Reference> get(T2Reference reference) throws DaoException;
 
+	/**
+	 * Retrieves several lists at once, which implementations backed by a
+	 * database should do in as few queries as they can
+	 * 
+	 * @param references
+	 *            ids of the lists to retrieve
+	 * @return the lists in the same order as their ids, with
+	 *         <code>null</code> for any that weren't found
+	 * @throws DaoException
+	 *             if any exception is thrown when connecting to the underlying
+	 *             data store or when attempting retrieval of the lists
+	 */
+	@Transactional(propagation = SUPPORTS, readOnly = true)
+	List<IdentifiedList<T2Reference>> getAll(List<T2Reference> references)
+			throws DaoException;
+
 	@Transactional(propagation = SUPPORTS, readOnly = false)
 	boolean delete(IdentifiedList<T2Reference> theList) throws DaoException;
 
@@ -111,6 +111,21 @@ public interface ListService {
 	IdentifiedList<T2Reference> getList(T2Reference id)
 			throws ListServiceException;
 
+	/**
+	 * Retrieve several previously named lists at once, as
+	 * {@link #getList(T2Reference) getList} but with a single round trip to
+	 * the underlying store where it supports that
+	 * 
+	 * @param ids
+	 *            identifiers of the lists to retrieve
+	 * @return the lists in the same order as their identifiers, with
+	 *         <code>null</code> for any that weren't found
+	 * @throws ListServiceException
+	 *             if anything goes wrong with the retrieval process
+	 */
+	List<IdentifiedList<T2Reference>> getLists(List<T2Reference> ids)
+			throws ListServiceException;
+
 	/**
 	 * Functionality the same as {@link #getList(T2Reference) getList} but in
 	 * asynchronous mode, returning immediately and using the supplied callback
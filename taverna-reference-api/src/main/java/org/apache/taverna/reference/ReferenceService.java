@@ -228,6 +228,34 @@ public interface ReferenceService {
 	T2Reference register(Object o, int targetDepth, boolean useConverterSPI,
 			ReferenceContext context) throws ReferenceServiceException;
 
+	/**
+	 * Register a primitive array, or a collection of strings, numbers, booleans
+	 * and characters, as a list of depth 1 in a single operation. The values
+	 * are stored together in one packed reference set rather than one
+	 * reference set per item, but the returned reference resolves to an
+	 * IdentifiedList of depth 0 references exactly as if each item had been
+	 * registered through the value converters with
+	 * {@link #register(Object, int, boolean, ReferenceContext) register}.
+	 * <p>
+	 * Arrays of bytes are not accepted, these are registered as a single value
+	 * by {@link #register(Object, int, boolean, ReferenceContext) register}.
+	 * 
+	 * @param values
+	 *            the primitive array or collection to register
+	 * @param context
+	 *            ReferenceContext to use if required by component services.
+	 *            <br/>
+	 *            If null the implementation should insert a new empty context
+	 *            and proceed.
+	 * @return a T2Reference to the registered list
+	 * @throws ReferenceServiceException
+	 *             if the values can't be packed or if a problem occurs during
+	 *             registration.
+	 */
+	@Transactional(propagation = REQUIRED, readOnly = false)
+	T2Reference registerPacked(Object values, ReferenceContext context)
+			throws ReferenceServiceException;
+
 	/**
 	 * Given a string representation of a T2Reference create a new T2Reference
 	 * with the correct depth etc.
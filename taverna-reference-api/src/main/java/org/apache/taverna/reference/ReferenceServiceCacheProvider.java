@@ -48,4 +48,23 @@ public interface ReferenceServiceCacheProvider {
 	 *         if the cache does not contain that item
 	 */
 	Identified get(T2Reference id);
+
+	/**
+	 * Called after an {@link Identified} has been deleted from the backing
+	 * store
+	 * 
+	 * @param id
+	 *            the T2Reference of the deleted item
+	 */
+	void remove(T2Reference id);
+
+	/**
+	 * Called after all items belonging to a workflow run have been deleted
+	 * from the backing store, that is all items whose {@link T2Reference} has
+	 * the workflow run identifier as its namespace part
+	 * 
+	 * @param workflowRunId
+	 *            the identifier of the workflow run
+	 */
+	void removeForWorkflowRun(String workflowRunId);
 }
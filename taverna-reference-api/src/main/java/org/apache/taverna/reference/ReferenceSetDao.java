@@ -22,6 +22,8 @@ package org.apache.taverna.reference;
 import static org.springframework.transaction.annotation.Propagation.REQUIRED;
 import static org.springframework.transaction.annotation.Propagation.SUPPORTS;
 
+import java.util.List;
+
 import org.springframework.transaction.annotation.Transactional;
 
 /**
@@ -73,6 +75,21 @@ public interface ReferenceSetDao {
 	@Transactional(propagation = SUPPORTS, readOnly = true)
 	ReferenceSet get(T2Reference ref) throws DaoException;
 
+	/**
+	 * Fetch several reference sets at once, which implementations backed by a
+	 * database should do in as few queries as they can
+	 * 
+	 * @param refs
+	 *            the T2References to fetch
+	 * @return the reference sets in the same order as their ids, with
+	 *         <code>null</code> for any that weren't found
+	 * @throws DaoException
+	 *             if something goes wrong fetching the data or connecting to
+	 *             the database
+	 */
+	@Transactional(propagation = SUPPORTS, readOnly = true)
+	List<ReferenceSet> getAll(List<T2Reference> refs) throws DaoException;
+
 	@Transactional(propagation = SUPPORTS, readOnly = false)
 	boolean delete(ReferenceSet rs) throws DaoException;
 
@@ -22,6 +22,7 @@ package org.apache.taverna.reference;
 import static org.springframework.transaction.annotation.Propagation.REQUIRED;
 import static org.springframework.transaction.annotation.Propagation.SUPPORTS;
 
+import java.util.List;
 import java.util.Set;
 
 import org.springframework.transaction.annotation.Transactional;
@@ -74,6 +75,20 @@ public interface ReferenceSetService {
 	ReferenceSet getReferenceSet(T2Reference id)
 			throws ReferenceSetServiceException;
 
+	/**
+	 * Get several previously registered {@link ReferenceSet}s at once, as
+	 * {@link #getReferenceSet(T2Reference) getReferenceSet} but with a single
+	 * round trip to the underlying store where it supports that
+	 * 
+	 * @param ids
+	 *            {@link T2Reference}s identifying the reference sets to
+	 *            retrieve
+	 * @return the requested reference sets in the same order as their
+	 *         identifiers, with <code>null</code> for any that weren't found
+	 */
+	List<ReferenceSet> getReferenceSets(List<T2Reference> ids)
+			throws ReferenceSetServiceException;
+
 	/**
 	 * Functionality the same as {@link #getReferenceSet(T2Reference)
 	 * getReferenceSet} but in asynchronous mode, returning immediately and
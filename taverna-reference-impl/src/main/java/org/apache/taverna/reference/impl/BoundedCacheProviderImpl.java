@@ -0,0 +1,263 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.reference.impl;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.taverna.reference.Identified;
+import org.apache.taverna.reference.IdentifiedList;
+import org.apache.taverna.reference.ReferenceServiceCacheProvider;
+import org.apache.taverna.reference.ReferenceSet;
+import org.apache.taverna.reference.T2Reference;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Cache provider holding a bounded number of items, evicting the least
+ * recently used items when full.
+ * <p>
+ * Items are weighed by the number of external references or list elements
+ * they hold, and the cache is bounded by the total weight of its items. To
+ * allow concurrent access the cache is split into segments chosen by the hash
+ * of the {@link T2Reference}, each holding an equal share of the maximum
+ * weight and evicting independently.
+ * <p>
+ * Hit, miss and eviction counts are kept for monitoring.
+ */
+public class BoundedCacheProviderImpl implements ReferenceServiceCacheProvider {
+	public static final long DEFAULT_MAXIMUM_WEIGHT = 100000;
+	private static final int SEGMENTS = 16;
+
+	private final Logger log = Logger.getLogger(BoundedCacheProviderImpl.class);
+	private final Segment[] segments = new Segment[SEGMENTS];
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private volatile long maximumWeight;
+
+	public BoundedCacheProviderImpl() {
+		this(DEFAULT_MAXIMUM_WEIGHT);
+	}
+
+	public BoundedCacheProviderImpl(long maximumWeight) {
+		for (int i = 0; i < SEGMENTS; i++)
+			segments[i] = new Segment();
+		setMaximumWeight(maximumWeight);
+	}
+
+	/**
+	 * Set the total weight of items to hold before evicting, existing items
+	 * are evicted as needed when the cache is next written to.
+	 */
+	public void setMaximumWeight(long maximumWeight) {
+		if (maximumWeight < 1)
+			throw new IllegalArgumentException(
+					"Maximum weight must be positive, not " + maximumWeight);
+		this.maximumWeight = maximumWeight;
+	}
+
+	public long getMaximumWeight() {
+		return maximumWeight;
+	}
+
+	private long segmentMaximumWeight() {
+		return Math.max(1, (maximumWeight + SEGMENTS - 1) / SEGMENTS);
+	}
+
+	private Segment segmentFor(T2Reference id) {
+		int h = id.hashCode();
+		h ^= (h >>> 16);
+		return segments[h & (SEGMENTS - 1)];
+	}
+
+	/**
+	 * The weight of an item, one plus the number of external references of a
+	 * {@link ReferenceSet} or the number of elements of an
+	 * {@link IdentifiedList}.
+	 */
+	protected long weigh(Identified i) {
+		if (i instanceof ReferenceSet) {
+			ReferenceSet referenceSet = (ReferenceSet) i;
+			if (referenceSet.getExternalReferences() != null)
+				return 1 + referenceSet.getExternalReferences().size();
+		} else if (i instanceof IdentifiedList)
+			return 1 + ((IdentifiedList<?>) i).size();
+		return 1;
+	}
+
+	@Override
+	public Identified get(T2Reference id) {
+		Identified result = segmentFor(id).get(id);
+		if (result == null)
+			misses.incrementAndGet();
+		else
+			hits.incrementAndGet();
+		if (log.isDebugEnabled())
+			log.debug("Get " + id + " (" + (result != null) + ")");
+		return result;
+	}
+
+	@Override
+	public void put(Identified i) {
+		if (log.isDebugEnabled())
+			log.debug("Put " + i.getId());
+		segmentFor(i.getId()).put(i, weigh(i));
+	}
+
+	@Override
+	public void remove(T2Reference id) {
+		segmentFor(id).remove(id);
+	}
+
+	@Override
+	public void removeForWorkflowRun(String workflowRunId) {
+		for (Segment segment : segments)
+			segment.removeForWorkflowRun(workflowRunId);
+	}
+
+	/**
+	 * Remove all items from the cache, the statistics are kept
+	 */
+	public void clear() {
+		for (Segment segment : segments)
+			segment.clear();
+	}
+
+	/**
+	 * The number of calls to {@link #get(T2Reference)} that found the item
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of calls to {@link #get(T2Reference)} that did not find the
+	 * item
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * The number of items removed to stay within the maximum weight
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * The number of items currently cached
+	 */
+	public int getSize() {
+		int size = 0;
+		for (Segment segment : segments)
+			size += segment.size();
+		return size;
+	}
+
+	/**
+	 * The total weight of the items currently cached
+	 */
+	public long getWeight() {
+		long weight = 0;
+		for (Segment segment : segments)
+			weight += segment.weight();
+		return weight;
+	}
+
+	private static final class CachedItem {
+		final Identified item;
+		final long weight;
+
+		CachedItem(Identified item, long weight) {
+			this.item = item;
+			this.weight = weight;
+		}
+	}
+
+	/**
+	 * One independently locked part of the cache, an access ordered map from
+	 * reference to item.
+	 */
+	private final class Segment {
+		private final LinkedHashMap<T2Reference, CachedItem> map = new LinkedHashMap<>(
+				16, 0.75f, true);
+		private long weight = 0;
+
+		synchronized Identified get(T2Reference id) {
+			CachedItem entry = map.get(id);
+			return entry == null ? null : entry.item;
+		}
+
+		synchronized void put(Identified i, long itemWeight) {
+			CachedItem old = map.put(i.getId(), new CachedItem(i, itemWeight));
+			if (old != null)
+				weight -= old.weight;
+			weight += itemWeight;
+			long max = segmentMaximumWeight();
+			Iterator<CachedItem> eldest = map.values().iterator();
+			/*
+			 * Evict least recently used first, but never the item just added
+			 * which is last in the map
+			 */
+			while (weight > max && map.size() > 1) {
+				CachedItem evicted = eldest.next();
+				eldest.remove();
+				weight -= evicted.weight;
+				evictions.incrementAndGet();
+			}
+		}
+
+		synchronized void remove(T2Reference id) {
+			CachedItem old = map.remove(id);
+			if (old != null)
+				weight -= old.weight;
+		}
+
+		synchronized void removeForWorkflowRun(String workflowRunId) {
+			Iterator<Entry<T2Reference, CachedItem>> entries = map.entrySet()
+					.iterator();
+			while (entries.hasNext()) {
+				Entry<T2Reference, CachedItem> entry = entries.next();
+				if (workflowRunId.equals(entry.getKey().getNamespacePart())) {
+					weight -= entry.getValue().weight;
+					entries.remove();
+				}
+			}
+		}
+
+		synchronized void clear() {
+			map.clear();
+			weight = 0;
+		}
+
+		synchronized int size() {
+			return map.size();
+		}
+
+		synchronized long weight() {
+			return weight;
+		}
+	}
+}
@@ -123,4 +123,64 @@ public class CacheAspect {
 		if (storedObject != null && storedObject.getId() != null)
 			getCacheProvider().put(storedObject);
 	}
+
+	/**
+	 * Called around a delete operation on the backing store, removes the
+	 * deleted item from the cache after it has been removed from the backing
+	 * store
+	 * 
+	 * @param pjp
+	 *            join point representing the ongoing method invocation
+	 * @return the result of the dao method
+	 * @throws DaoException
+	 *             if anything goes wrong
+	 */
+	public final Object removeObject(final ProceedingJoinPoint pjp)
+			throws DaoException {
+		// Get the Identified being deleted by the method we're advising
+		Identified deletedObject = (Identified) pjp.getArgs()[0];
+
+		try {
+			return pjp.proceed();
+		} catch (DaoException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new DaoException("Unexpected exception type during aspect "
+					+ "based invocation", e);
+		} finally {
+			/*
+			 * Remove even if the delete failed part way, the cache will be
+			 * refilled from the backing store on the next get
+			 */
+			if (deletedObject != null && deletedObject.getId() != null)
+				getCacheProvider().remove(deletedObject.getId());
+		}
+	}
+
+	/**
+	 * Called around a 'delete for workflow run' operation on the backing
+	 * store, removes all items of the workflow run from the cache
+	 * 
+	 * @param pjp
+	 *            join point representing the ongoing method invocation, the
+	 *            first argument of which is the workflow run identifier
+	 * @throws DaoException
+	 *             if anything goes wrong
+	 */
+	public final void removeObjectsForWorkflowRun(final ProceedingJoinPoint pjp)
+			throws DaoException {
+		String workflowRunId = (String) pjp.getArgs()[0];
+
+		try {
+			pjp.proceed();
+		} catch (DaoException e) {
+			throw e;
+		} catch (Throwable e) {
+			throw new DaoException("Unexpected exception type during aspect "
+					+ "based invocation", e);
+		} finally {
+			if (workflowRunId != null)
+				getCacheProvider().removeForWorkflowRun(workflowRunId);
+		}
+	}
 }
@@ -19,6 +19,8 @@
 
 package org.apache.taverna.reference.impl;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -46,6 +48,16 @@ public class InMemoryListDao implements ListDao {
 		return store.get(reference);
 	}
 
+	@Override
+	public synchronized List<IdentifiedList<T2Reference>> getAll(
+			List<T2Reference> references) throws DaoException {
+		List<IdentifiedList<T2Reference>> result = new ArrayList<>(
+				references.size());
+		for (T2Reference reference : references)
+			result.add(store.get(reference));
+		return result;
+	}
+
 	@Override
 	public synchronized void store(IdentifiedList<T2Reference> theList)
 			throws DaoException {
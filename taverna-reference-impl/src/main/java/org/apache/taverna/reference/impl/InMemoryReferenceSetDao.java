@@ -19,6 +19,8 @@
 
 package org.apache.taverna.reference.impl;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -46,6 +48,15 @@ public class InMemoryReferenceSetDao implements ReferenceSetDao {
 		return store.get(reference);
 	}
 
+	@Override
+	public synchronized List<ReferenceSet> getAll(List<T2Reference> references)
+			throws DaoException {
+		List<ReferenceSet> result = new ArrayList<>(references.size());
+		for (T2Reference reference : references)
+			result.add(store.get(reference));
+		return result;
+	}
+
 	@Override
 	public synchronized void store(ReferenceSet refSet) throws DaoException {
 		store.put(refSet.getId(), refSet);
@@ -50,6 +50,17 @@ public class ListServiceImpl extends AbstractListServiceImpl implements
 		}
 	}
 
+	@Override
+	public List<IdentifiedList<T2Reference>> getLists(List<T2Reference> ids)
+			throws ListServiceException {
+		checkDao();
+		try {
+			return listDao.getAll(ids);
+		} catch (DaoException de) {
+			throw new ListServiceException(de);
+		}
+	}
+
 	@Override
 	public IdentifiedList<T2Reference> registerEmptyList(int depth,
 			ReferenceContext context) throws ListServiceException {
@@ -79,6 +90,8 @@ public class ListServiceImpl extends AbstractListServiceImpl implements
 			throw new ListServiceException(
 					"Can't register an empty list with this method,"
 							+ " use the registerEmptyList instead");
+		if (items instanceof PackedT2ReferenceList)
+			return registerPackedList((PackedT2ReferenceList) items, context);
 		/*
 		 * Track whether there are any items in the collection which are or
 		 * contain error documents.
@@ -116,6 +129,24 @@ public class ListServiceImpl extends AbstractListServiceImpl implements
 		}
 	}
 
+	/**
+	 * Packed lists hold only depth 0 references to values, which are never
+	 * errors, so can be named and stored as they are without copying or
+	 * checking each item.
+	 */
+	private IdentifiedList<T2Reference> registerPackedList(
+			PackedT2ReferenceList items, ReferenceContext context)
+			throws ListServiceException {
+		try {
+			items.setTypedId(getAsImpl(t2ReferenceGenerator.nextListReference(
+					false, 1, context)));
+			listDao.store(items);
+			return items;
+		} catch (Throwable t) {
+			throw new ListServiceException(t);
+		}
+	}
+
 	@Override
 	public boolean delete(T2Reference reference)
 			throws ReferenceServiceException {
@@ -0,0 +1,144 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.reference.impl;
+
+import static org.apache.taverna.reference.T2ReferenceType.ReferenceSet;
+
+import java.util.AbstractList;
+
+import org.apache.taverna.reference.IdentifiedList;
+import org.apache.taverna.reference.T2Reference;
+
+/**
+ * A list of depth 0 references to the values held in a single registered
+ * {@link PackedValuesReference}. Element references are built on demand rather
+ * than stored; each shares the namespace of the packed reference set and has
+ * a local part made of the packed set's local part, a
+ * {@link #ELEMENT_SEPARATOR} and the element index, which
+ * {@link ReferenceSetServiceImpl} recognises and resolves to a
+ * {@link PackedValueReference}.
+ * <p>
+ * The list is immutable, all modification operations fail with an
+ * UnsupportedOperationException.
+ */
+public class PackedT2ReferenceList extends AbstractList<T2Reference> implements
+		IdentifiedList<T2Reference> {
+	/**
+	 * Separates the packed reference set's local part from the element index;
+	 * chosen as it never occurs in generated local parts and is not split on
+	 * when parsing references from strings.
+	 */
+	public static final char ELEMENT_SEPARATOR = '!';
+
+	private final T2ReferenceImpl packedValuesId;
+	private final String elementPrefix;
+	private final int size;
+	private T2ReferenceImpl id;
+
+	/**
+	 * @param packedValuesId
+	 *            identifier of the registered reference set holding the
+	 *            {@link PackedValuesReference}
+	 * @param size
+	 *            the number of packed values
+	 */
+	public PackedT2ReferenceList(T2ReferenceImpl packedValuesId, int size) {
+		this.packedValuesId = packedValuesId;
+		this.elementPrefix = packedValuesId.getLocalPart() + ELEMENT_SEPARATOR;
+		this.size = size;
+	}
+
+	@Override
+	public T2Reference getId() {
+		return id;
+	}
+
+	public void setTypedId(T2ReferenceImpl newId) {
+		if (id != null)
+			throw new IllegalStateException("List has already been named");
+		id = newId;
+	}
+
+	public T2Reference getPackedValuesId() {
+		return packedValuesId;
+	}
+
+	@Override
+	public T2Reference get(int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("Index " + index
+					+ " out of range for list of size " + size);
+		T2ReferenceImpl element = new T2ReferenceImpl();
+		element.setNamespacePart(packedValuesId.getNamespacePart());
+		element.setLocalPart(elementPrefix + index);
+		element.setReferenceType(ReferenceSet);
+		element.setDepth(0);
+		element.setContainsErrors(false);
+		return element;
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Whether the given reference identifies an element of a packed list
+	 */
+	public static boolean isPackedElement(T2Reference reference) {
+		return reference.getReferenceType() == ReferenceSet
+				&& reference.getLocalPart().indexOf(ELEMENT_SEPARATOR) >= 0;
+	}
+
+	/**
+	 * The identifier of the reference set holding the packed values of which
+	 * the given element reference is a part
+	 */
+	public static T2ReferenceImpl getPackedValuesId(T2Reference element) {
+		String localPart = element.getLocalPart();
+		T2ReferenceImpl packed = new T2ReferenceImpl();
+		packed.setNamespacePart(element.getNamespacePart());
+		packed.setLocalPart(localPart.substring(0,
+				localPart.lastIndexOf(ELEMENT_SEPARATOR)));
+		packed.setReferenceType(ReferenceSet);
+		packed.setDepth(0);
+		packed.setContainsErrors(false);
+		return packed;
+	}
+
+	/**
+	 * The index within the packed values of the given element reference
+	 * 
+	 * @throws NumberFormatException
+	 *             if the reference is malformed
+	 */
+	public static int getElementIndex(T2Reference element) {
+		String localPart = element.getLocalPart();
+		return Integer.parseInt(localPart.substring(localPart
+				.lastIndexOf(ELEMENT_SEPARATOR) + 1));
+	}
+
+	@Override
+	public String toString() {
+		return getId() + " (" + size + " packed values in " + packedValuesId
+				+ ")";
+	}
+}
@@ -0,0 +1,93 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.reference.impl;
+
+import java.io.InputStream;
+
+import org.apache.taverna.reference.AbstractExternalReference;
+import org.apache.taverna.reference.ReferenceContext;
+import org.apache.taverna.reference.ReferencedDataNature;
+import org.apache.taverna.reference.ValueCarryingExternalReference;
+
+/**
+ * A single value within a {@link PackedValuesReference}, exposed as a string
+ * in the same way as an inline string reference. Instances are created on
+ * demand when an element of a packed list is resolved and are never stored.
+ */
+public class PackedValueReference extends AbstractExternalReference implements
+		ValueCarryingExternalReference<String> {
+	private final PackedValuesReference values;
+	private final int index;
+
+	public PackedValueReference(PackedValuesReference values, int index) {
+		if (index < 0 || index >= values.size())
+			throw new IndexOutOfBoundsException("Index " + index
+					+ " out of range for " + values.size() + " packed values");
+		this.values = values;
+		this.index = index;
+	}
+
+	@Override
+	public InputStream openStream(ReferenceContext context) {
+		return values.openStream(index);
+	}
+
+	/**
+	 * Data nature set to 'ReferencedDataNature.TEXT'
+	 */
+	@Override
+	public ReferencedDataNature getDataNature() {
+		return ReferencedDataNature.TEXT;
+	}
+
+	/**
+	 * Values are always packed as 'UTF-8'
+	 */
+	@Override
+	public String getCharset() {
+		return "UTF-8";
+	}
+
+	@Override
+	public Long getApproximateSizeInBytes() {
+		return values.getLength(index);
+	}
+
+	@Override
+	public String getValue() {
+		return values.getValue(index);
+	}
+
+	@Override
+	public Class<String> getValueType() {
+		return String.class;
+	}
+
+	@Override
+	public String toString() {
+		return "packed[" + index + "]{" + getValue() + "}";
+	}
+
+	@Override
+	public PackedValueReference clone() {
+		return new PackedValueReference(values, index);
+	}
+}
@@ -0,0 +1,267 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.reference.impl;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.apache.taverna.reference.AbstractExternalReference;
+import org.apache.taverna.reference.ReferenceContext;
+
+/**
+ * Holds the string forms of a list of simple values packed into a single UTF-8
+ * blob, with an array of offsets marking where each value starts. This lets a
+ * large primitive array or collection be registered as one reference set
+ * rather than one reference set per element; the elements are exposed through
+ * {@link PackedValueReference} views by {@link PackedT2ReferenceList}.
+ * <p>
+ * Values are rendered exactly as the string converters would render them
+ * individually, so <code>Double.toString(d)</code> for a double and so on.
+ */
+public class PackedValuesReference extends AbstractExternalReference {
+	private byte[] data;
+	/** Start of each value in {@link #data}, with a final entry for the end */
+	private int[] offsets;
+
+	/**
+	 * Default constructor, used when reconstructing this bean from a store.
+	 * Both {@link #setData(byte[])} and {@link #setOffsets(int[])} must be
+	 * called before use.
+	 */
+	public PackedValuesReference() {
+	}
+
+	PackedValuesReference(byte[] data, int[] offsets) {
+		this.data = data;
+		this.offsets = offsets;
+	}
+
+	/**
+	 * Whether {@link #pack(Object)} accepts the given object, that is whether
+	 * it is an array of a primitive type other than byte, or a collection
+	 * containing only strings, numbers, booleans and characters.
+	 */
+	public static boolean canPack(Object values) {
+		if (values instanceof Collection) {
+			for (Object value : (Collection<?>) values)
+				if (!isPackableValue(value))
+					return false;
+			return true;
+		}
+		if (values == null || !values.getClass().isArray())
+			return false;
+		Class<?> elementType = values.getClass().getComponentType();
+		return elementType.isPrimitive() && elementType != byte.class;
+	}
+
+	private static boolean isPackableValue(Object value) {
+		return value instanceof String || value instanceof Number
+				|| value instanceof Boolean || value instanceof Character;
+	}
+
+	/**
+	 * Pack the given primitive array or collection of simple values.
+	 * 
+	 * @throws IllegalArgumentException
+	 *             if {@link #canPack(Object)} would return false
+	 */
+	public static PackedValuesReference pack(Object values) {
+		if (!canPack(values))
+			throw new IllegalArgumentException("Can't pack values of type "
+					+ (values == null ? null : values.getClass().getName()));
+		Packer packer;
+		if (values instanceof Collection) {
+			Collection<?> c = (Collection<?>) values;
+			packer = new Packer(c.size());
+			for (Object value : c)
+				packer.add(value.toString());
+		} else if (values instanceof int[]) {
+			int[] a = (int[]) values;
+			packer = new Packer(a.length);
+			for (int value : a)
+				packer.add(Integer.toString(value));
+		} else if (values instanceof long[]) {
+			long[] a = (long[]) values;
+			packer = new Packer(a.length);
+			for (long value : a)
+				packer.add(Long.toString(value));
+		} else if (values instanceof double[]) {
+			double[] a = (double[]) values;
+			packer = new Packer(a.length);
+			for (double value : a)
+				packer.add(Double.toString(value));
+		} else if (values instanceof float[]) {
+			float[] a = (float[]) values;
+			packer = new Packer(a.length);
+			for (float value : a)
+				packer.add(Float.toString(value));
+		} else if (values instanceof short[]) {
+			short[] a = (short[]) values;
+			packer = new Packer(a.length);
+			for (short value : a)
+				packer.add(Short.toString(value));
+		} else if (values instanceof char[]) {
+			char[] a = (char[]) values;
+			packer = new Packer(a.length);
+			for (char value : a)
+				packer.add(String.valueOf(value));
+		} else {
+			boolean[] a = (boolean[]) values;
+			packer = new Packer(a.length);
+			for (boolean value : a)
+				packer.add(Boolean.toString(value));
+		}
+		return packer.toReference();
+	}
+
+	/**
+	 * Number of values held
+	 */
+	public int size() {
+		return offsets == null ? 0 : offsets.length - 1;
+	}
+
+	/**
+	 * The string form of the value at the given index
+	 */
+	public String getValue(int index) {
+		checkIndex(index);
+		return new String(data, offsets[index], offsets[index + 1]
+				- offsets[index], UTF_8);
+	}
+
+	/**
+	 * A stream over the UTF-8 bytes of the value at the given index
+	 */
+	public InputStream openStream(int index) {
+		checkIndex(index);
+		return new ByteArrayInputStream(data, offsets[index], offsets[index + 1]
+				- offsets[index]);
+	}
+
+	/**
+	 * Length in bytes of the UTF-8 form of the value at the given index
+	 */
+	public long getLength(int index) {
+		checkIndex(index);
+		return offsets[index + 1] - offsets[index];
+	}
+
+	private void checkIndex(int index) {
+		if (index < 0 || index >= size())
+			throw new IndexOutOfBoundsException("Index " + index
+					+ " out of range for " + size() + " packed values");
+	}
+
+	/**
+	 * Opens a stream over the whole packed blob, without separators between
+	 * values; use {@link #openStream(int)} to read a single value.
+	 */
+	@Override
+	public InputStream openStream(ReferenceContext context) {
+		return new ByteArrayInputStream(data);
+	}
+
+	@Override
+	public Long getApproximateSizeInBytes() {
+		return Long.valueOf(data.length + 4L * offsets.length);
+	}
+
+	public byte[] getData() {
+		return data;
+	}
+
+	public void setData(byte[] data) {
+		this.data = data;
+	}
+
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+	public void setOffsets(int[] offsets) {
+		this.offsets = offsets;
+	}
+
+	@Override
+	public String toString() {
+		return "packed{" + size() + " values, " + data.length + " bytes}";
+	}
+
+	/**
+	 * The packed arrays are never modified once built, so the clone shares
+	 * them.
+	 */
+	@Override
+	public PackedValuesReference clone() {
+		return new PackedValuesReference(data, offsets);
+	}
+
+	/**
+	 * Appends values to a growing byte buffer, encoding ASCII directly and
+	 * falling back to the charset encoder for anything else.
+	 */
+	private static class Packer {
+		private byte[] buffer;
+		private final int[] offsets;
+		private int count = 0;
+
+		Packer(int size) {
+			offsets = new int[size + 1];
+			buffer = new byte[Math.max(16, size * 8)];
+		}
+
+		void add(String value) {
+			int position = offsets[count];
+			int length = value.length();
+			ensureCapacity(position + length);
+			int i = 0;
+			for (; i < length; i++) {
+				char c = value.charAt(i);
+				if (c >= 0x80)
+					break;
+				buffer[position++] = (byte) c;
+			}
+			if (i < length) {
+				byte[] rest = value.substring(i).getBytes(UTF_8);
+				ensureCapacity(position + rest.length);
+				System.arraycopy(rest, 0, buffer, position, rest.length);
+				position += rest.length;
+			}
+			offsets[++count] = position;
+		}
+
+		private void ensureCapacity(int capacity) {
+			if (capacity > buffer.length)
+				buffer = Arrays.copyOf(buffer,
+						Math.max(capacity, buffer.length * 2));
+		}
+
+		PackedValuesReference toReference() {
+			return new PackedValuesReference(Arrays.copyOf(buffer,
+					offsets[count]), offsets);
+		}
+	}
+}
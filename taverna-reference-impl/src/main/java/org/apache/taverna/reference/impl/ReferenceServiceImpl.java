@@ -20,12 +20,16 @@
 package org.apache.taverna.reference.impl;
 
 import static java.lang.Float.MAX_VALUE;
+import static java.util.Collections.nCopies;
+import static java.util.Collections.singletonList;
+import static java.util.concurrent.Executors.newFixedThreadPool;
 import static org.apache.taverna.reference.T2ReferenceType.ErrorDocument;
 import static org.apache.taverna.reference.T2ReferenceType.IdentifiedList;
 import static org.apache.taverna.reference.T2ReferenceType.ReferenceSet;
 import static org.apache.taverna.reference.impl.T2ReferenceImpl.getAsImpl;
 
 import java.io.InputStream;
+import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
@@ -34,6 +38,11 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import org.apache.taverna.reference.ContextualizedT2Reference;
 import org.apache.taverna.reference.ErrorDocument;
@@ -66,7 +75,72 @@ import org.apache.log4j.Logger;
  */
 public class ReferenceServiceImpl extends AbstractReferenceServiceImpl
 		implements ReferenceService {
+	/**
+	 * Packing on registration is disabled by default, values are only packed
+	 * when registered with {@link #registerPacked(Object, ReferenceContext)}.
+	 */
+	public static final int DEFAULT_PACKED_COLLECTION_THRESHOLD = 0;
+
 	private final Logger log = Logger.getLogger(ReferenceServiceImpl.class);
+	private int packedCollectionThreshold = DEFAULT_PACKED_COLLECTION_THRESHOLD;
+	private int renderingThreads = 1;
+	private ExecutorService renderingExecutor;
+
+	public int getPackedCollectionThreshold() {
+		return packedCollectionThreshold;
+	}
+
+	/**
+	 * Set the size from which primitive arrays and collections of strings,
+	 * numbers, booleans and characters registered at depth 1 with the
+	 * converters enabled are stored packed in a single reference set, see
+	 * {@link #registerPacked(Object, ReferenceContext)}. A threshold of 0,
+	 * the default, disables packing on registration.
+	 */
+	public void setPackedCollectionThreshold(int packedCollectionThreshold) {
+		if (packedCollectionThreshold < 0)
+			throw new IllegalArgumentException(
+					"Packed collection threshold must not be negative");
+		this.packedCollectionThreshold = packedCollectionThreshold;
+	}
+
+	public synchronized int getRenderingThreads() {
+		return renderingThreads;
+	}
+
+	/**
+	 * Set how many threads convert the leaves of a list rendered by
+	 * {@link #renderIdentifier(T2Reference, Class, ReferenceContext)
+	 * renderIdentifier}. With more than one the leaves are converted on a
+	 * shared pool of that size, so the stream to value converters must be
+	 * thread safe. The default of 1 converts them on the calling thread.
+	 */
+	public synchronized void setRenderingThreads(int renderingThreads) {
+		if (renderingThreads < 1)
+			throw new IllegalArgumentException(
+					"Rendering threads must be at least 1");
+		this.renderingThreads = renderingThreads;
+		if (renderingExecutor != null) {
+			renderingExecutor.shutdown();
+			renderingExecutor = null;
+		}
+	}
+
+	private synchronized ExecutorService getRenderingExecutor() {
+		if (renderingThreads < 2)
+			return null;
+		if (renderingExecutor == null)
+			renderingExecutor = newFixedThreadPool(renderingThreads,
+					new ThreadFactory() {
+						@Override
+						public Thread newThread(Runnable r) {
+							Thread thread = new Thread(r, "Reference rendering");
+							thread.setDaemon(true);
+							return thread;
+						}
+					});
+		return renderingExecutor;
+	}
 
 	/**
 	 * The top level registration method is used to register either as yet
@@ -97,6 +171,12 @@ public class ReferenceServiceImpl extends AbstractReferenceServiceImpl
 	 * turn until one succeeds or all fail, which may result in the creation of
 	 * ExternalReferenceSPI instances. As these can be registered such objects
 	 * will not cause an exception to be thrown.
+	 * <p>
+	 * If a {@link #setPackedCollectionThreshold(int) packed collection
+	 * threshold} has been set, primitive arrays and collections of simple
+	 * values at least that large registered at depth 1 with the converters
+	 * enabled are stored as by
+	 * {@link #registerPacked(Object, ReferenceContext) registerPacked}.
 	 * 
 	 * @param o
 	 *            the object to register with the reference system, must comply
@@ -170,6 +250,14 @@ public class ReferenceServiceImpl extends AbstractReferenceServiceImpl
 		if (o instanceof T2Reference)
 			return (T2Reference) o;
 
+		/*
+		 * Large primitive arrays and collections of simple values, which the
+		 * converters would otherwise register one item at a time, are packed
+		 * into a single reference set instead if packing has been enabled
+		 */
+		if (useConverterSPI && currentDepth == 1 && shouldPack(o, context))
+			return registerPackedValues(PackedValuesReference.pack(o), context);
+
 		if (o.getClass().isArray()) {
 			Class<?> elementType = o.getClass().getComponentType();
 			if (elementType.getCanonicalName().equals("char")) {
@@ -342,6 +430,62 @@ public class ReferenceServiceImpl extends AbstractReferenceServiceImpl
 						+ " world, check the code!");
 	}
 
+	private boolean shouldPack(Object o, ReferenceContext context) {
+		if (packedCollectionThreshold < 1)
+			return false;
+		Object sample;
+		if (o instanceof Collection) {
+			Collection<?> c = (Collection<?>) o;
+			if (c.size() < packedCollectionThreshold
+					|| !PackedValuesReference.canPack(c))
+				return false;
+			sample = c.iterator().next();
+		} else if (PackedValuesReference.canPack(o)
+				&& Array.getLength(o) >= packedCollectionThreshold)
+			sample = Array.get(o, 0);
+		else
+			return false;
+		// Only bypass the converters if they would have accepted the values
+		for (ValueToReferenceConverterSPI converter : converters)
+			if (converter.canConvert(sample, context))
+				return true;
+		return false;
+	}
+
+	@Override
+	public T2Reference registerPacked(Object values, ReferenceContext context)
+			throws ReferenceServiceException {
+		checkServices();
+		if (context == null)
+			context = new EmptyReferenceContext();
+		if (!PackedValuesReference.canPack(values))
+			throw new ReferenceServiceException("Can't register " + values
+					+ " as packed values, only primitive arrays and"
+					+ " collections of strings, numbers, booleans"
+					+ " and characters can be packed");
+		return registerPackedValues(PackedValuesReference.pack(values),
+				context);
+	}
+
+	private T2Reference registerPackedValues(PackedValuesReference packed,
+			ReferenceContext context) throws ReferenceServiceException {
+		try {
+			if (packed.size() == 0)
+				return listService.registerEmptyList(1, context).getId();
+			Set<ExternalReferenceSPI> references = new HashSet<>();
+			references.add(packed);
+			ReferenceSet rs = referenceSetService.registerReferenceSet(
+					references, context);
+			return listService.registerList(
+					new PackedT2ReferenceList(getAsImpl(rs.getId()),
+							packed.size()), context).getId();
+		} catch (ReferenceSetServiceException rsse) {
+			throw new ReferenceServiceException(rsse);
+		} catch (ListServiceException lse) {
+			throw new ReferenceServiceException(lse);
+		}
+	}
+
 	/**
 	 * Perform recursive identifier resolution, building a collection structure
 	 * of Identified objects, any collection elements being IdentifiedLists of
@@ -468,63 +612,16 @@ public class ReferenceServiceImpl extends AbstractReferenceServiceImpl
 
 		switch (id.getReferenceType()) {
 		case IdentifiedList:
-			try {
-				IdentifiedList<T2Reference> idList = listService.getList(id);
-				if (idList == null)
-					throw new ReferenceServiceException(
-							"Could not find IdentifiedList " + id);
-				List<Object> result = new ArrayList<>();
-				for (T2Reference child : idList)
-					result.add(renderIdentifierInner(child, leafClass, context,
-							converter));
-				return result;
-			} catch (ListServiceException lse) {
-				throw new ReferenceServiceException(lse);
-			}
+			return renderList(id, leafClass, context, converter);
 
 		case ReferenceSet:
+			ReferenceSet rs;
 			try {
-				ReferenceSet rs = referenceSetService.getReferenceSet(id);
-				if (rs == null)
-					throw new ReferenceServiceException(
-							"Could not find ReferenceSet " + id);
-				// Check that there are references in the set
-				if (rs.getExternalReferences().isEmpty())
-					throw new ReferenceServiceException(
-							"Can't render an empty reference set to a POJO");
-				/*
-				 * If we can't directly map to an appropriate value keep track
-				 * of the cheapest reference from which to try to build the pojo
-				 * from a stream
-				 */
-				ExternalReferenceSPI cheapestReference = null;
-				float cheapestReferenceCost = MAX_VALUE;
-				for (ExternalReferenceSPI ers : rs.getExternalReferences()) {
-					if (ers instanceof ValueCarryingExternalReference<?>) {
-						ValueCarryingExternalReference<?> vcer = (ValueCarryingExternalReference<?>) ers;
-						if (leafClass.isAssignableFrom(vcer.getValueType()))
-							return vcer.getValue();
-					}
-					// Got here so this wasn't an appropriate value type
-					if (cheapestReference == null
-							|| ers.getResolutionCost() < cheapestReferenceCost) {
-						cheapestReference = ers;
-						cheapestReferenceCost = ers.getResolutionCost();
-					}
-				}
-				if (converter != null && cheapestReference != null)
-					try (InputStream stream = cheapestReference
-							.openStream(context)) {
-						return converter.renderFrom(stream,
-								cheapestReference.getDataNature(),
-								cheapestReference.getCharset());
-					}
-			} catch (Exception e) {
-				throw new ReferenceServiceException(e);
+				rs = referenceSetService.getReferenceSet(id);
+			} catch (ReferenceSetServiceException rsse) {
+				throw new ReferenceServiceException(rsse);
 			}
-			throw new ReferenceServiceException(
-					"No converter found, and reference set didn't contain"
-							+ " an appropriate value carrying reference, cannot render to POJO");
+			return renderReferenceSet(id, rs, leafClass, context, converter);
 
 		default:
 			throw new ReferenceServiceException("Unsupported ID type : "
@@ -532,6 +629,192 @@ public class ReferenceServiceImpl extends AbstractReferenceServiceImpl
 		}
 	}
 
+	/**
+	 * Render one list, and everything below it, level by level. The lists and
+	 * the reference sets found at each depth are fetched with a single bulk
+	 * call each, and the leaves are converted straight into their positions
+	 * in the result, so the result has the order of the original list.
+	 */
+	private List<Object> renderList(T2Reference id, Class<?> leafClass,
+			ReferenceContext context, StreamToValueConverterSPI<?> converter)
+			throws ReferenceServiceException {
+		List<Object> root = new ArrayList<>(nCopies(1, null));
+		List<T2Reference> refs = singletonList(id);
+		List<Slot> slots = singletonList(new Slot(root, 0));
+		while (!refs.isEmpty()) {
+			List<T2Reference> listIds = new ArrayList<>();
+			List<Slot> listSlots = new ArrayList<>();
+			List<T2Reference> setIds = new ArrayList<>();
+			List<Slot> setSlots = new ArrayList<>();
+			for (int i = 0; i < refs.size(); i++) {
+				T2Reference ref = refs.get(i);
+				switch (ref.getReferenceType()) {
+				case IdentifiedList:
+					listIds.add(ref);
+					listSlots.add(slots.get(i));
+					break;
+				case ReferenceSet:
+					setIds.add(ref);
+					setSlots.add(slots.get(i));
+					break;
+				default:
+					slots.get(i).set(
+							renderIdentifierInner(ref, leafClass, context,
+									converter));
+				}
+			}
+
+			if (!setIds.isEmpty())
+				renderReferenceSets(setIds, setSlots, leafClass, context,
+						converter);
+
+			List<IdentifiedList<T2Reference>> lists;
+			try {
+				lists = listIds.isEmpty() ? null : listService
+						.getLists(listIds);
+			} catch (ListServiceException lse) {
+				throw new ReferenceServiceException(lse);
+			}
+			refs = new ArrayList<>();
+			slots = new ArrayList<>();
+			for (int i = 0; i < listIds.size(); i++) {
+				IdentifiedList<T2Reference> idList = lists.get(i);
+				if (idList == null)
+					throw new ReferenceServiceException(
+							"Could not find IdentifiedList " + listIds.get(i));
+				List<Object> result = new ArrayList<>(nCopies(idList.size(),
+						null));
+				listSlots.get(i).set(result);
+				for (int j = 0; j < idList.size(); j++) {
+					refs.add(idList.get(j));
+					slots.add(new Slot(result, j));
+				}
+			}
+		}
+		@SuppressWarnings("unchecked")
+		List<Object> result = (List<Object>) root.get(0);
+		return result;
+	}
+
+	/**
+	 * Fetch the reference sets in one bulk call and render each into its slot,
+	 * on the {@link #setRenderingThreads(int) rendering threads} if there are
+	 * several.
+	 */
+	private void renderReferenceSets(final List<T2Reference> ids,
+			final List<Slot> slots, final Class<?> leafClass,
+			final ReferenceContext context,
+			final StreamToValueConverterSPI<?> converter)
+			throws ReferenceServiceException {
+		final List<ReferenceSet> sets;
+		try {
+			sets = referenceSetService.getReferenceSets(ids);
+		} catch (ReferenceSetServiceException rsse) {
+			throw new ReferenceServiceException(rsse);
+		}
+		ExecutorService executor = getRenderingExecutor();
+		if (executor == null || ids.size() < 2) {
+			for (int i = 0; i < ids.size(); i++)
+				slots.get(i).set(
+						renderReferenceSet(ids.get(i), sets.get(i), leafClass,
+								context, converter));
+			return;
+		}
+
+		int threads = getRenderingThreads();
+		int chunk = (ids.size() + threads - 1) / threads;
+		List<Callable<Void>> tasks = new ArrayList<>();
+		for (int start = 0; start < ids.size(); start += chunk) {
+			final int from = start;
+			final int to = Math.min(start + chunk, ids.size());
+			tasks.add(new Callable<Void>() {
+				@Override
+				public Void call() throws ReferenceServiceException {
+					for (int i = from; i < to; i++)
+						slots.get(i).set(
+								renderReferenceSet(ids.get(i), sets.get(i),
+										leafClass, context, converter));
+					return null;
+				}
+			});
+		}
+		try {
+			for (Future<Void> future : executor.invokeAll(tasks))
+				future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ReferenceServiceException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof ReferenceServiceException)
+				throw (ReferenceServiceException) e.getCause();
+			throw new ReferenceServiceException(e.getCause());
+		}
+	}
+
+	private Object renderReferenceSet(T2Reference id, ReferenceSet rs,
+			Class<?> leafClass, ReferenceContext context,
+			StreamToValueConverterSPI<?> converter)
+			throws ReferenceServiceException {
+		try {
+			if (rs == null)
+				throw new ReferenceServiceException(
+						"Could not find ReferenceSet " + id);
+			// Check that there are references in the set
+			if (rs.getExternalReferences().isEmpty())
+				throw new ReferenceServiceException(
+						"Can't render an empty reference set to a POJO");
+			/*
+			 * If we can't directly map to an appropriate value keep track
+			 * of the cheapest reference from which to try to build the pojo
+			 * from a stream
+			 */
+			ExternalReferenceSPI cheapestReference = null;
+			float cheapestReferenceCost = MAX_VALUE;
+			for (ExternalReferenceSPI ers : rs.getExternalReferences()) {
+				if (ers instanceof ValueCarryingExternalReference<?>) {
+					ValueCarryingExternalReference<?> vcer = (ValueCarryingExternalReference<?>) ers;
+					if (leafClass.isAssignableFrom(vcer.getValueType()))
+						return vcer.getValue();
+				}
+				// Got here so this wasn't an appropriate value type
+				if (cheapestReference == null
+						|| ers.getResolutionCost() < cheapestReferenceCost) {
+					cheapestReference = ers;
+					cheapestReferenceCost = ers.getResolutionCost();
+				}
+			}
+			if (converter != null && cheapestReference != null)
+				try (InputStream stream = cheapestReference
+						.openStream(context)) {
+					return converter.renderFrom(stream,
+							cheapestReference.getDataNature(),
+							cheapestReference.getCharset());
+				}
+		} catch (Exception e) {
+			throw new ReferenceServiceException(e);
+		}
+		throw new ReferenceServiceException(
+				"No converter found, and reference set didn't contain"
+						+ " an appropriate value carrying reference, cannot render to POJO");
+	}
+
+	/**
+	 * A position in a list being rendered
+	 */
+	private static class Slot {
+		private final List<Object> list;
+		private final int index;
+
+		Slot(List<Object> list, int index) {
+			this.list = list;
+			this.index = index;
+		}
+
+		void set(Object value) {
+			list.set(index, value);
+		}
+	}
+
 	/**
 	 * Initiates a traversal of the specified t2reference, traversing to
 	 * whatever level of depth is required such that all identifiers returned
@@ -539,6 +822,10 @@ public class ReferenceServiceImpl extends AbstractReferenceServiceImpl
 	 * path from the originally specified reference to each reference within the
 	 * iteration) is included through use of the ContextualizedT2Reference
 	 * wrapper class
+	 * <p>
+	 * The traversal is depth first and lazy: each list is fetched when the
+	 * iterator reaches it, so references are returned in index order without
+	 * the whole collection being loaded first.
 	 * 
 	 * @param source
 	 *            the T2Reference from which to traverse. In general this is the
@@ -560,57 +847,7 @@ public class ReferenceServiceImpl extends AbstractReferenceServiceImpl
 		if (desiredDepth < 0)
 			throw new ReferenceServiceException(
 					"Cannot traverse to a negative depth");
-		List<ContextualizedT2Reference> workingSet = new ArrayList<>();
-		workingSet.add(new ContextualizedT2ReferenceImpl(source, new int[0]));
-		int currentDepth = source.getDepth();
-		while (currentDepth > desiredDepth) {
-			List<ContextualizedT2Reference> newSet = new ArrayList<>();
-			for (ContextualizedT2Reference ci : workingSet) {
-				T2ReferenceImpl ref = (T2ReferenceImpl) ci.getReference();
-				switch (ref.getReferenceType()) {
-				case IdentifiedList:
-					try {
-						int position = 0;
-						for (T2Reference child : getListService().getList(ref))
-							newSet.add(new ContextualizedT2ReferenceImpl(child,
-									addIndex(ci.getIndex(), position++)));
-					} catch (ListServiceException lse) {
-						throw new ReferenceServiceException(lse);
-					}
-					break;
-				case ReferenceSet:
-					throw new ReferenceServiceException(
-							"Should never be trying to drill inside a data document identifier");
-				case ErrorDocument:
-					newSet.add(new ContextualizedT2ReferenceImpl(ref
-							.getDeeperErrorReference(), addIndex(ci.getIndex(),
-							0)));
-					break;
-				default:
-					throw new ReferenceServiceException(
-							"Fallen off end of case statement, unknown reference type!");
-				}
-			}
-			currentDepth--;
-			workingSet = newSet;
-		}
-		return workingSet.iterator();
-	}
-
-	/**
-	 * Append to an int[]
-	 * 
-	 * @param current
-	 *            current int[]
-	 * @param head
-	 *            new int item to append to the current array
-	 * @return new array of int with the head added
-	 */
-	private static int[] addIndex(int[] current, int head) {
-		int[] result = new int[current.length + 1];
-		System.arraycopy(current, 0, result, 0, current.length);
-		result[current.length] = head;
-		return result;
+		return new ReferenceTraversal(getListService(), source, desiredDepth);
 	}
 
 	/**
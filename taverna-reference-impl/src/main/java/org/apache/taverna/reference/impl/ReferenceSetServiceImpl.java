@@ -22,7 +22,10 @@ package org.apache.taverna.reference.impl;
 import static org.apache.taverna.reference.impl.T2ReferenceImpl.getAsImpl;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.WeakHashMap;
@@ -51,12 +54,76 @@ public class ReferenceSetServiceImpl extends AbstractReferenceSetServiceImpl
 			throws ReferenceSetServiceException {
 		checkDao();
 		try {
-			return referenceSetDao.get(id);
+			ReferenceSet rs = referenceSetDao.get(id);
+			if (rs == null && PackedT2ReferenceList.isPackedElement(id))
+				rs = getPackedElement(id);
+			return rs;
 		} catch (DaoException de) {
 			throw new ReferenceSetServiceException(de);
 		}
 	}
 
+	@Override
+	public List<ReferenceSet> getReferenceSets(List<T2Reference> ids)
+			throws ReferenceSetServiceException {
+		checkDao();
+		try {
+			List<ReferenceSet> sets = new ArrayList<>(
+					referenceSetDao.getAll(ids));
+			// Elements of the same packed list share one packed values set
+			Map<T2Reference, ReferenceSet> packedSets = null;
+			for (int i = 0; i < sets.size(); i++) {
+				T2Reference id = ids.get(i);
+				if (sets.get(i) != null
+						|| !PackedT2ReferenceList.isPackedElement(id))
+					continue;
+				if (packedSets == null)
+					packedSets = new HashMap<>();
+				T2Reference packedId = PackedT2ReferenceList
+						.getPackedValuesId(id);
+				ReferenceSet packed = packedSets.get(packedId);
+				if (packed == null && !packedSets.containsKey(packedId)) {
+					packed = referenceSetDao.get(packedId);
+					packedSets.put(packedId, packed);
+				}
+				sets.set(i, getPackedElement(id, packed));
+			}
+			return sets;
+		} catch (DaoException de) {
+			throw new ReferenceSetServiceException(de);
+		}
+	}
+
+	private ReferenceSet getPackedElement(T2Reference id) throws DaoException {
+		return getPackedElement(id, referenceSetDao.get(PackedT2ReferenceList
+				.getPackedValuesId(id)));
+	}
+
+	/**
+	 * Elements of packed lists aren't stored individually, build a reference
+	 * set for the element from the packed values it refers to.
+	 */
+	private ReferenceSet getPackedElement(T2Reference id, ReferenceSet packed) {
+		if (packed == null)
+			return null;
+		int index;
+		try {
+			index = PackedT2ReferenceList.getElementIndex(id);
+		} catch (NumberFormatException nfe) {
+			return null;
+		}
+		for (ExternalReferenceSPI ref : packed.getExternalReferences())
+			if (ref instanceof PackedValuesReference) {
+				PackedValuesReference values = (PackedValuesReference) ref;
+				if (index < 0 || index >= values.size())
+					return null;
+				Set<ExternalReferenceSPI> references = new HashSet<>();
+				references.add(new PackedValueReference(values, index));
+				return new ReferenceSetImpl(references, getAsImpl(id));
+			}
+		return null;
+	}
+
 	private Map<URI,Object> locks = new WeakHashMap<>();
 
 	private Object getLock(T2Reference id) {
@@ -0,0 +1,138 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.reference.impl;
+
+import static java.util.Arrays.copyOf;
+import static java.util.Collections.singletonList;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+import org.apache.taverna.reference.ContextualizedT2Reference;
+import org.apache.taverna.reference.ListService;
+import org.apache.taverna.reference.ListServiceException;
+import org.apache.taverna.reference.ReferenceServiceException;
+import org.apache.taverna.reference.T2Reference;
+
+/**
+ * Depth first iterator behind
+ * {@link ReferenceServiceImpl#traverseFrom(T2Reference, int)}. Each list is
+ * fetched from the list service only when the traversal reaches it, and only
+ * the lists on the path to the current position are held, so the first
+ * reference is available as soon as one path down the collection has been
+ * resolved.
+ */
+class ReferenceTraversal implements Iterator<ContextualizedT2Reference> {
+	private final ListService listService;
+	/** Number of list levels between the source and the desired depth */
+	private final int levels;
+	/** The children of each list on the current path, outermost first */
+	private final List<?>[] frames;
+	/** Index path to the current position, reused between elements */
+	private final int[] positions;
+	private int openFrames;
+	private ContextualizedT2Reference next;
+
+	ReferenceTraversal(ListService listService, T2Reference source,
+			int desiredDepth) {
+		this.listService = listService;
+		levels = Math.max(source.getDepth() - desiredDepth, 0);
+		frames = new List<?>[levels];
+		positions = new int[levels];
+		if (levels == 0)
+			next = new ContextualizedT2ReferenceImpl(source, new int[0]);
+		else {
+			frames[0] = childrenOf(source);
+			openFrames = 1;
+		}
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null)
+			next = advance();
+		return next != null;
+	}
+
+	@Override
+	public ContextualizedT2Reference next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		ContextualizedT2Reference result = next;
+		next = null;
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private ContextualizedT2Reference advance() {
+		while (openFrames > 0) {
+			int level = openFrames - 1;
+			List<?> children = frames[level];
+			if (positions[level] >= children.size()) {
+				// Finished this list, carry on with its next sibling
+				frames[level] = null;
+				if (--openFrames > 0)
+					positions[openFrames - 1]++;
+				continue;
+			}
+			T2Reference child = (T2Reference) children.get(positions[level]);
+			if (level == levels - 1) {
+				int[] index = copyOf(positions, levels);
+				positions[level]++;
+				return new ContextualizedT2ReferenceImpl(child, index);
+			}
+			frames[level + 1] = childrenOf(child);
+			positions[level + 1] = 0;
+			openFrames++;
+		}
+		return null;
+	}
+
+	private List<T2Reference> childrenOf(T2Reference ref) {
+		switch (ref.getReferenceType()) {
+		case IdentifiedList:
+			List<T2Reference> list;
+			try {
+				list = listService.getList(ref);
+			} catch (ListServiceException lse) {
+				throw new ReferenceServiceException(lse);
+			}
+			if (list == null)
+				throw new ReferenceServiceException("Unable to find list "
+						+ ref);
+			return list;
+		case ReferenceSet:
+			throw new ReferenceServiceException(
+					"Should never be trying to drill inside a data document identifier");
+		case ErrorDocument:
+			return singletonList((T2Reference) ((T2ReferenceImpl) ref)
+					.getDeeperErrorReference());
+		default:
+			throw new ReferenceServiceException(
+					"Fallen off end of case statement, unknown reference type!");
+		}
+	}
+}
@@ -19,8 +19,8 @@
 
 package org.apache.taverna.reference.impl;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.taverna.reference.Identified;
 import org.apache.taverna.reference.ReferenceServiceCacheProvider;
@@ -31,13 +31,14 @@ import org.apache.log4j.Logger;
 /**
  * Completely naive cache provider that just stores everything in a map. This
  * <em>will</em> run out of memory as it makes no attempt to evict old items,
- * it's really just here as a test!
+ * it's really just here as a test! See {@link BoundedCacheProviderImpl} for a
+ * cache that can be used in production.
  * 
  * @author Tom Oinn
  */
 public class SimpleCacheProviderImpl implements ReferenceServiceCacheProvider {
 	private final Logger log = Logger.getLogger(SimpleCacheProviderImpl.class);
-	private Map<T2Reference, Identified> cache = new HashMap<>();
+	private Map<T2Reference, Identified> cache = new ConcurrentHashMap<>();
 
 	@Override
 	public Identified get(T2Reference id) {
@@ -53,4 +54,16 @@ public class SimpleCacheProviderImpl implements ReferenceServiceCacheProvider {
 			log.debug("Put " + i.getId().toString());
 		cache.put(i.getId(), i);
 	}
+
+	@Override
+	public void remove(T2Reference id) {
+		cache.remove(id);
+	}
+
+	@Override
+	public void removeForWorkflowRun(String workflowRunId) {
+		for (T2Reference id : cache.keySet())
+			if (id.getNamespacePart().equals(workflowRunId))
+				cache.remove(id);
+	}
 }
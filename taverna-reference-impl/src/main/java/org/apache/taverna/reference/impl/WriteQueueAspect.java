@@ -17,44 +17,129 @@
 * under the License.
 */
 
+
 package org.apache.taverna.reference.impl;
 
-import static java.util.concurrent.TimeUnit.SECONDS;
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
 
 import java.lang.ref.SoftReference;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.Executors;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
 
 import org.apache.taverna.reference.DaoException;
 import org.apache.taverna.reference.Identified;
 import org.apache.taverna.reference.T2Reference;
 
+import org.apache.log4j.Logger;
 import org.aspectj.lang.ProceedingJoinPoint;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallbackWithoutResult;
+import org.springframework.transaction.support.TransactionTemplate;
 
 /**
  * An aspect used to intercept calls to the various data access objects and
- * execute data writes on a thread limited executer with an unbounded blocking
- * queue.
+ * execute data writes behind the caller, in batches.
+ * <p>
+ * Writes are queued and made by a single writer thread, either when
+ * {@link #getBatchSize() batchSize} writes are pending, when the oldest
+ * pending write has waited for {@link #getFlushInterval() flushInterval}
+ * milliseconds or when {@link #flush()} is called. If a transaction manager
+ * is set each batch is written in one transaction, so the DAOs can batch their
+ * statements. A write of an object that is already waiting to be written is
+ * coalesced with the pending write. Callers are blocked while
+ * {@link #getMaxBacklog() maxBacklog} writes are pending.
  * 
  * @author David Withers
  */
 public class WriteQueueAspect {
-	private Map<T2Reference, Identified> store = new ConcurrentHashMap<>();
+	public static final int DEFAULT_MAX_BACKLOG = 10000;
+	public static final long DEFAULT_FLUSH_INTERVAL = 100;
+	public static final int DEFAULT_BATCH_SIZE = 500;
+
+	private static Logger logger = Logger.getLogger(WriteQueueAspect.class);
+
 	private Map<T2Reference, SoftReference<Identified>> cache = new ConcurrentHashMap<>();
-	private ThreadPoolExecutor executer;
+	private final ReentrantLock lock = new ReentrantLock();
+	private final Condition pendingAdded = lock.newCondition();
+	private final Condition batchWritten = lock.newCondition();
+	/** Writes in order, guarded by lock */
+	private final Deque<PendingWrite> pending = new ArrayDeque<>();
+	/** Pending writes by reference, guarded by lock */
+	private final Map<T2Reference, PendingWrite> pendingById = new HashMap<>();
+	/** Writes in the batch being written, guarded by lock */
+	private int writing = 0;
+	private long queuedSequence = 0;
+	private long writtenSequence = 0;
+	private long flushRequestedSequence = 0;
+	private boolean shutdown = false;
+
+	private final int maxBacklog;
+	private final long flushInterval;
+	private final int batchSize;
+	private TransactionTemplate transactionTemplate;
+	private final Thread writer;
+
+	private volatile long flushCount = 0;
+	private volatile long coalescedCount = 0;
+	private volatile long lastFlushLatency = 0;
+	private volatile long maxFlushLatency = 0;
 
 	public WriteQueueAspect() {
-		this(5);
+		this(DEFAULT_MAX_BACKLOG, DEFAULT_FLUSH_INTERVAL, DEFAULT_BATCH_SIZE);
 	}
 
+	/**
+	 * @deprecated writes are made by a single batching writer thread, the
+	 *             number of threads is ignored
+	 */
+	@Deprecated
 	public WriteQueueAspect(int threads) {
-		executer = new ThreadPoolExecutor(threads, threads, 60, SECONDS,
-				new LinkedBlockingQueue<Runnable>(),
-				Executors.defaultThreadFactory(),
-				new ThreadPoolExecutor.CallerRunsPolicy());
+		this();
+	}
+
+	/**
+	 * @param maxBacklog
+	 *            number of pending writes at which callers are blocked
+	 * @param flushInterval
+	 *            milliseconds a write may wait before its batch is written
+	 * @param batchSize
+	 *            maximum number of writes in one batch
+	 */
+	public WriteQueueAspect(int maxBacklog, long flushInterval, int batchSize) {
+		if (maxBacklog < 1 || batchSize < 1 || flushInterval < 0)
+			throw new IllegalArgumentException("Invalid write queue settings");
+		this.maxBacklog = maxBacklog;
+		this.flushInterval = flushInterval;
+		this.batchSize = batchSize;
+		writer = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				writeBatches();
+			}
+		}, "Reference write-behind queue");
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	/**
+	 * Set the transaction manager used to write each batch in a single
+	 * transaction. If not set each write runs in whatever transaction the dao
+	 * method creates.
+	 */
+	public void setTransactionManager(
+			PlatformTransactionManager transactionManager) {
+		transactionTemplate = transactionManager == null ? null
+				: new TransactionTemplate(transactionManager);
 	}
 
 	/**
@@ -80,7 +165,7 @@ public class WriteQueueAspect {
 				result = ref.get();
 			if (result == null)
 				// not in the cache, check if it's still in the write queue
-				result = store.get(id);
+				result = pendingObject(id);
 		}
 		// If we miss the cache then call the method as usual
 		if (result == null)
@@ -99,10 +184,20 @@ public class WriteQueueAspect {
 		return result;
 	}
 
+	private Identified pendingObject(T2Reference id) {
+		lock.lock();
+		try {
+			PendingWrite write = pendingById.get(id);
+			return write == null ? null : write.object;
+		} finally {
+			lock.unlock();
+		}
+	}
+
 	/**
-	 * Called around a write or update operation on the backing store, writes
-	 * through to the cache after modifying the state of the backing store and
-	 * before returning from the dao method
+	 * Called around a write or update operation on the backing store, queues
+	 * the write and writes through to the cache before returning. Blocks while
+	 * the backlog of pending writes is full.
 	 * 
 	 * @param pjp
 	 *            join point representing the ongoing method invocation to cache
@@ -111,31 +206,253 @@ public class WriteQueueAspect {
 	 */
 	public void putObject(final ProceedingJoinPoint pjp) throws DaoException {
 		// Get the Identified being stored by the method we're advising
-		final Identified storedObject = (Identified) pjp.getArgs()[0];
+		Identified storedObject = (Identified) pjp.getArgs()[0];
+		T2Reference id = storedObject.getId();
 
-		Runnable task = new Runnable() {
-			@Override
-			public void run() {
-				try {
-					// Run the store or update method
-					pjp.proceed();
-					store.remove(storedObject.getId());
-				} catch (DaoException e) {
-					throw e;
-				} catch (Throwable e) {
-					throw new DaoException(
-							"Unexpected exception type during aspect "
-									+ "based invocation", e);
+		cache.put(id, new SoftReference<>(storedObject));
+		lock.lock();
+		try {
+			PendingWrite previous = pendingById.get(id);
+			if (previous != null && previous.object == storedObject) {
+				/*
+				 * The pending write will store the current state of the same
+				 * object, so there's nothing more to do
+				 */
+				coalescedCount++;
+				return;
+			}
+			while (pending.size() + writing >= maxBacklog && !shutdown)
+				batchWritten.awaitUninterruptibly();
+			if (shutdown)
+				throw new DaoException("Write queue has been shut down");
+			PendingWrite write = new PendingWrite(pjp, storedObject,
+					++queuedSequence);
+			pending.add(write);
+			pendingById.put(id, write);
+			if (pending.size() == 1 || pending.size() >= batchSize)
+				pendingAdded.signal();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write all writes queued so far, blocking until they have been written
+	 * (or have failed). Call this when a workflow run completes, or before
+	 * reading from the backing store other than through the daos.
+	 * 
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public void flush() throws InterruptedException {
+		lock.lock();
+		try {
+			long target = queuedSequence;
+			if (target > flushRequestedSequence)
+				flushRequestedSequence = target;
+			pendingAdded.signal();
+			while (writtenSequence < target && writer.isAlive())
+				batchWritten.await();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Write all pending writes and stop the writer thread. Writes queued after
+	 * this are rejected.
+	 * 
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public void shutdown() throws InterruptedException {
+		lock.lock();
+		try {
+			shutdown = true;
+			pendingAdded.signal();
+			batchWritten.signalAll();
+		} finally {
+			lock.unlock();
+		}
+		writer.join();
+	}
+
+	private void writeBatches() {
+		List<PendingWrite> batch = new ArrayList<>(batchSize);
+		while (true) {
+			lock.lock();
+			try {
+				if (!awaitBatch())
+					return;
+				while (batch.size() < batchSize && !pending.isEmpty())
+					batch.add(pending.poll());
+				writing = batch.size();
+			} finally {
+				lock.unlock();
+			}
+
+			long start = nanoTime();
+			write(batch);
+			long latency = MILLISECONDS.convert(nanoTime() - start,
+					NANOSECONDS);
+			lastFlushLatency = latency;
+			if (latency > maxFlushLatency)
+				maxFlushLatency = latency;
+			flushCount++;
+
+			lock.lock();
+			try {
+				for (PendingWrite write : batch) {
+					T2Reference id = write.object.getId();
+					if (pendingById.get(id) == write)
+						pendingById.remove(id);
 				}
+				writtenSequence = batch.get(batch.size() - 1).sequence;
+				writing = 0;
+				batchWritten.signalAll();
+			} finally {
+				lock.unlock();
+			}
+			batch.clear();
+		}
+	}
+
+	/**
+	 * Wait, holding the lock, until a batch should be written
+	 * 
+	 * @return <code>false</code> if the writer should stop
+	 */
+	private boolean awaitBatch() {
+		while (true) {
+			if (pending.isEmpty()) {
+				if (shutdown)
+					return false;
+				pendingAdded.awaitUninterruptibly();
+				continue;
 			}
-		};
+			if (shutdown || pending.size() >= batchSize
+					|| flushRequestedSequence > writtenSequence)
+				return true;
+			long waited = MILLISECONDS.convert(nanoTime()
+					- pending.peek().queued, NANOSECONDS);
+			if (waited >= flushInterval)
+				return true;
+			try {
+				pendingAdded.await(flushInterval - waited, MILLISECONDS);
+			} catch (InterruptedException e) {
+				// Only shutdown stops the writer
+			}
+		}
+	}
 
-		cache.put(storedObject.getId(), new SoftReference<>(storedObject));
-		store.put(storedObject.getId(), storedObject);
-		executer.execute(task);
+	private void write(final List<PendingWrite> batch) {
+		if (transactionTemplate != null)
+			try {
+				transactionTemplate
+						.execute(new TransactionCallbackWithoutResult() {
+							@Override
+							protected void doInTransactionWithoutResult(
+									TransactionStatus status) {
+								for (PendingWrite write : batch)
+									write.proceed();
+							}
+						});
+				return;
+			} catch (RuntimeException e) {
+				logger.warn("Could not write batch of " + batch.size()
+						+ " objects, writing them one at a time", e);
+			}
+		for (PendingWrite write : batch)
+			try {
+				write.proceed();
+			} catch (RuntimeException e) {
+				logger.error("Could not write " + write.object.getId(), e);
+			}
+	}
+
+	/**
+	 * The number of writes waiting to be written or being written
+	 */
+	public int getBacklog() {
+		lock.lock();
+		try {
+			return pending.size() + writing;
+		} finally {
+			lock.unlock();
+		}
 	}
 
+	/**
+	 * Same as {@link #getBacklog()}
+	 */
 	public int cacheSize() {
-		return executer.getActiveCount() + executer.getQueue().size();
+		return getBacklog();
+	}
+
+	/**
+	 * The number of batches written
+	 */
+	public long getFlushCount() {
+		return flushCount;
+	}
+
+	/**
+	 * The number of writes that were coalesced with a pending write of the
+	 * same object
+	 */
+	public long getCoalescedCount() {
+		return coalescedCount;
+	}
+
+	/**
+	 * Milliseconds taken to write the last batch
+	 */
+	public long getLastFlushLatency() {
+		return lastFlushLatency;
+	}
+
+	/**
+	 * Milliseconds taken to write the slowest batch
+	 */
+	public long getMaxFlushLatency() {
+		return maxFlushLatency;
+	}
+
+	public int getMaxBacklog() {
+		return maxBacklog;
+	}
+
+	public long getFlushInterval() {
+		return flushInterval;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	private static final class PendingWrite {
+		final ProceedingJoinPoint pjp;
+		final Identified object;
+		final long sequence;
+		final long queued = nanoTime();
+
+		PendingWrite(ProceedingJoinPoint pjp, Identified object, long sequence) {
+			this.pjp = pjp;
+			this.object = object;
+			this.sequence = sequence;
+		}
+
+		void proceed() {
+			try {
+				// Run the store or update method
+				pjp.proceed();
+			} catch (DaoException e) {
+				throw e;
+			} catch (Throwable e) {
+				throw new DaoException(
+						"Unexpected exception type during aspect "
+								+ "based invocation", e);
+			}
+		}
 	}
 }
@@ -0,0 +1,108 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.reference.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.apache.taverna.reference.T2ReferenceType;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BoundedCacheProviderImplTest {
+	private BoundedCacheProviderImpl cache;
+
+	@Before
+	public void setup() throws Exception {
+		cache = new BoundedCacheProviderImpl(16 * 2);
+	}
+
+	@Test
+	public void testPutGet() throws Exception {
+		T2ReferenceListImpl list = list("run0", "list0");
+		cache.put(list);
+		assertSame(list, cache.get(list.getId()));
+		assertNull(cache.get(list("run0", "list1").getId()));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getSize());
+		assertEquals(1, cache.getWeight());
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		for (int i = 0; i < 1000; i++)
+			cache.put(list("run0", "list" + i));
+		assertEquals(true, cache.getWeight() <= cache.getMaximumWeight());
+		assertEquals(1000 - cache.getSize(), cache.getEvictionCount());
+	}
+
+	@Test
+	public void testRecentlyUsedKept() throws Exception {
+		T2ReferenceListImpl first = list("run0", "first");
+		cache.put(first);
+		for (int i = 0; i < 1000; i++) {
+			cache.put(list("run0", "list" + i));
+			assertSame(first, cache.get(first.getId()));
+		}
+	}
+
+	@Test
+	public void testRemove() throws Exception {
+		T2ReferenceListImpl list = list("run0", "list0");
+		cache.put(list);
+		cache.remove(list.getId());
+		assertNull(cache.get(list.getId()));
+		assertEquals(0, cache.getWeight());
+	}
+
+	@Test
+	public void testRemoveForWorkflowRun() throws Exception {
+		for (int i = 0; i < 10; i++) {
+			cache.put(list("run0", "list" + i));
+			cache.put(list("run1", "list" + i));
+		}
+		cache.removeForWorkflowRun("run0");
+		assertEquals(10, cache.getSize());
+		assertNull(cache.get(list("run0", "list3").getId()));
+		assertEquals("run1", cache.get(list("run1", "list3").getId()).getId()
+				.getNamespacePart());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testMaximumWeightMustBePositive() throws Exception {
+		cache.setMaximumWeight(0);
+	}
+
+	private T2ReferenceListImpl list(String namespace, String local) {
+		T2ReferenceImpl r = new T2ReferenceImpl();
+		r.setNamespacePart(namespace);
+		r.setLocalPart(local);
+		r.setReferenceType(T2ReferenceType.IdentifiedList);
+		r.setDepth(1);
+		r.setContainsErrors(false);
+		T2ReferenceListImpl newList = new T2ReferenceListImpl();
+		newList.setTypedId(r);
+		return newList;
+	}
+}
@@ -0,0 +1,226 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.reference.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.taverna.reference.AbstractExternalReference;
+import org.apache.taverna.reference.ExternalReferenceSPI;
+import org.apache.taverna.reference.IdentifiedList;
+import org.apache.taverna.reference.ReferenceContext;
+import org.apache.taverna.reference.ReferenceServiceException;
+import org.apache.taverna.reference.ReferenceSet;
+import org.apache.taverna.reference.T2Reference;
+import org.apache.taverna.reference.ValueCarryingExternalReference;
+import org.apache.taverna.reference.ValueToReferenceConverterSPI;
+import org.apache.taverna.reference.WorkflowRunIdEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PackedRegistrationTest {
+	private ReferenceServiceImpl service;
+	private ListServiceImpl listService;
+	private ReferenceSetServiceImpl referenceSetService;
+	private ReferenceContextImpl context;
+
+	@Before
+	public void setup() {
+		SimpleT2ReferenceGenerator generator = new SimpleT2ReferenceGenerator();
+		listService = new ListServiceImpl();
+		listService.setListDao(new InMemoryListDao());
+		listService.setT2ReferenceGenerator(generator);
+		referenceSetService = new ReferenceSetServiceImpl();
+		referenceSetService.setReferenceSetDao(new InMemoryReferenceSetDao());
+		referenceSetService.setT2ReferenceGenerator(generator);
+		ErrorDocumentServiceImpl errorService = new ErrorDocumentServiceImpl();
+		errorService.setErrorDao(new InMemoryErrorDocumentDao());
+		errorService.setT2ReferenceGenerator(generator);
+		service = new ReferenceServiceImpl();
+		service.setListService(listService);
+		service.setReferenceSetService(referenceSetService);
+		service.setErrorDocumentService(errorService);
+		service.setConverters(Collections
+				.<ValueToReferenceConverterSPI> singletonList(new StringConverter()));
+		context = new ReferenceContextImpl();
+		context.addEntity(new WorkflowRunIdEntity("packedTest"));
+	}
+
+	@Test
+	public void packingIsOffByDefault() throws Exception {
+		assertEquals(0, service.getPackedCollectionThreshold());
+		T2Reference ref = service.register(new int[] { 7, 42 }, 1, true,
+				context);
+		assertFalse(listService.getList(ref) instanceof PackedT2ReferenceList);
+		List<String> values = new ArrayList<>();
+		for (int i = 0; i < 2000; i++)
+			values.add("v" + i);
+		ref = service.register(values, 1, true, context);
+		assertFalse(listService.getList(ref) instanceof PackedT2ReferenceList);
+		assertEquals(values,
+				service.renderIdentifier(ref, String.class, context));
+	}
+
+	@Test
+	public void primitiveArrayIsPacked() throws Exception {
+		service.setPackedCollectionThreshold(1);
+		double[] values = { 1.5, -2.0, Double.NaN, 1e300 };
+		T2Reference ref = service.register(values, 1, true, context);
+		assertEquals(1, ref.getDepth());
+		IdentifiedList<T2Reference> list = listService.getList(ref);
+		assertTrue(list instanceof PackedT2ReferenceList);
+		assertEquals(values.length, list.size());
+		List<?> rendered = (List<?>) service.renderIdentifier(ref,
+				String.class, context);
+		List<String> expected = new ArrayList<>();
+		for (double d : values)
+			expected.add(Double.toString(d));
+		assertEquals(expected, rendered);
+	}
+
+	@Test
+	public void elementsResolveToValueReferences() throws Exception {
+		T2Reference ref = service.registerPacked(new int[] { 7, 42 }, context);
+		T2Reference element = listService.getList(ref).get(1);
+		assertEquals(0, element.getDepth());
+		assertFalse(element.containsErrors());
+		ReferenceSet rs = referenceSetService.getReferenceSet(element);
+		assertNotNull(rs);
+		assertEquals(element, rs.getId());
+		ExternalReferenceSPI er = rs.getExternalReferences().iterator().next();
+		assertEquals("42", ((PackedValueReference) er).getValue());
+		assertEquals("UTF-8", er.getCharset());
+		assertEquals(element, service.resolveIdentifier(element, null, context)
+				.getId());
+	}
+
+	@Test
+	public void elementOutOfRangeIsNotFound() throws Exception {
+		T2Reference ref = service.registerPacked(new int[] { 7 }, context);
+		PackedT2ReferenceList list = (PackedT2ReferenceList) listService
+				.getList(ref);
+		T2ReferenceImpl element = T2ReferenceImpl.getAsImpl(list.get(0));
+		element.setLocalPart(list.getPackedValuesId().getLocalPart()
+				+ PackedT2ReferenceList.ELEMENT_SEPARATOR + "1");
+		assertNull(referenceSetService.getReferenceSet(element));
+	}
+
+	@Test
+	public void smallCollectionsUseConverters() throws Exception {
+		service.setPackedCollectionThreshold(3);
+		T2Reference ref = service.register(Arrays.asList("a", "b"), 1, true,
+				context);
+		assertFalse(listService.getList(ref) instanceof PackedT2ReferenceList);
+	}
+
+	@Test
+	public void largeCollectionsArePacked() throws Exception {
+		service.setPackedCollectionThreshold(3);
+		List<Object> values = Arrays.<Object> asList("caf\u00e9", 3, true,
+				'x', "\u4e2d\u6587");
+		T2Reference ref = service.register(values, 1, true, context);
+		assertTrue(listService.getList(ref) instanceof PackedT2ReferenceList);
+		assertEquals(Arrays.asList("caf\u00e9", "3", "true", "x",
+				"\u4e2d\u6587"), service.renderIdentifier(ref, String.class,
+				context));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void negativeThresholdIsRejected() throws Exception {
+		service.setPackedCollectionThreshold(-1);
+	}
+
+	@Test
+	public void emptyArrayRegistersEmptyList() throws Exception {
+		T2Reference ref = service.registerPacked(new long[0], context);
+		assertEquals(1, ref.getDepth());
+		assertTrue(listService.getList(ref).isEmpty());
+	}
+
+	@Test(expected = ReferenceServiceException.class)
+	public void unpackableValuesAreRejected() throws Exception {
+		service.registerPacked(Arrays.asList("a", new Object()), context);
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void packedListIsImmutable() throws Exception {
+		T2Reference ref = service.registerPacked(new char[] { 'a' }, context);
+		listService.getList(ref).remove(0);
+	}
+
+	static class StringConverter implements
+			ValueToReferenceConverterSPI {
+		@Override
+		public boolean canConvert(Object o, ReferenceContext context) {
+			return o instanceof String || o instanceof Number
+					|| o instanceof Boolean || o instanceof Character;
+		}
+
+		@Override
+		public ExternalReferenceSPI convert(Object o, ReferenceContext context) {
+			return new StringReference(o.toString());
+		}
+	}
+
+	static class StringReference extends AbstractExternalReference
+			implements ValueCarryingExternalReference<String> {
+		private final String value;
+
+		StringReference(String value) {
+			this.value = value;
+		}
+
+		@Override
+		public InputStream openStream(ReferenceContext context) {
+			return new ByteArrayInputStream(value.getBytes());
+		}
+
+		@Override
+		public Long getApproximateSizeInBytes() {
+			return Long.valueOf(value.length());
+		}
+
+		@Override
+		public String getValue() {
+			return value;
+		}
+
+		@Override
+		public Class<String> getValueType() {
+			return String.class;
+		}
+
+		@Override
+		public StringReference clone() {
+			return new StringReference(value);
+		}
+	}
+}
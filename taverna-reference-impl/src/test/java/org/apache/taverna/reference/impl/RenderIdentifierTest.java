@@ -0,0 +1,106 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.reference.impl;
+
+import static java.util.Arrays.asList;
+import static org.apache.taverna.reference.T2ReferenceType.IdentifiedList;
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.taverna.reference.ReferenceServiceException;
+import org.apache.taverna.reference.T2Reference;
+import org.apache.taverna.reference.ValueToReferenceConverterSPI;
+import org.apache.taverna.reference.WorkflowRunIdEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RenderIdentifierTest {
+	private ReferenceServiceImpl service;
+	private ListServiceImpl listService;
+	private ReferenceContextImpl context;
+
+	@Before
+	public void setup() {
+		SimpleT2ReferenceGenerator generator = new SimpleT2ReferenceGenerator();
+		listService = new ListServiceImpl();
+		listService.setListDao(new InMemoryListDao());
+		listService.setT2ReferenceGenerator(generator);
+		ReferenceSetServiceImpl referenceSetService = new ReferenceSetServiceImpl();
+		referenceSetService.setReferenceSetDao(new InMemoryReferenceSetDao());
+		referenceSetService.setT2ReferenceGenerator(generator);
+		ErrorDocumentServiceImpl errorService = new ErrorDocumentServiceImpl();
+		errorService.setErrorDao(new InMemoryErrorDocumentDao());
+		errorService.setT2ReferenceGenerator(generator);
+		service = new ReferenceServiceImpl();
+		service.setListService(listService);
+		service.setReferenceSetService(referenceSetService);
+		service.setErrorDocumentService(errorService);
+		ValueToReferenceConverterSPI converter = new PackedRegistrationTest.StringConverter();
+		service.setConverters(Collections.singletonList(converter));
+		context = new ReferenceContextImpl();
+		context.addEntity(new WorkflowRunIdEntity("renderTest"));
+	}
+
+	@Test
+	public void nestedListKeepsOrder() {
+		List<List<String>> value = asList(asList("a", "b"),
+				Collections.<String> emptyList(), asList("c"));
+		T2Reference ref = service.register(value, 2, true, context);
+		assertEquals(value, service.renderIdentifier(ref, String.class, context));
+	}
+
+	@Test
+	public void parallelRenderingKeepsOrder() {
+		List<List<String>> value = new ArrayList<>();
+		for (int i = 0; i < 20; i++) {
+			List<String> inner = new ArrayList<>();
+			for (int j = 0; j < 50; j++)
+				inner.add(i + "." + j);
+			value.add(inner);
+		}
+		T2Reference ref = service.register(value, 2, true, context);
+		service.setRenderingThreads(4);
+		assertEquals(value, service.renderIdentifier(ref, String.class, context));
+	}
+
+	@Test
+	public void packedElementsInNestedList() {
+		List<T2Reference> packed = new ArrayList<>();
+		packed.add(service.registerPacked(new int[] { 1, 2, 3 }, context));
+		packed.add(service.registerPacked(new int[] { 4 }, context));
+		T2Reference ref = listService.registerList(packed, context).getId();
+		assertEquals(asList(asList("1", "2", "3"), asList("4")),
+				service.renderIdentifier(ref, String.class, context));
+	}
+
+	@Test(expected = ReferenceServiceException.class)
+	public void missingList() {
+		T2ReferenceImpl ref = new T2ReferenceImpl();
+		ref.setNamespacePart("renderTest");
+		ref.setLocalPart("missing");
+		ref.setReferenceType(IdentifiedList);
+		ref.setDepth(1);
+		service.renderIdentifier(ref, String.class, context);
+	}
+}
@@ -0,0 +1,162 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.reference.impl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+import org.apache.taverna.reference.ContextualizedT2Reference;
+import org.apache.taverna.reference.DaoException;
+import org.apache.taverna.reference.IdentifiedList;
+import org.apache.taverna.reference.T2Reference;
+import org.apache.taverna.reference.T2ReferenceType;
+import org.apache.taverna.reference.WorkflowRunIdEntity;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TraverseFromTest {
+	private ReferenceServiceImpl service;
+	private ListServiceImpl listService;
+	private ErrorDocumentServiceImpl errorService;
+	private ReferenceContextImpl context;
+	private int listFetches;
+
+	@Before
+	public void setup() {
+		SimpleT2ReferenceGenerator generator = new SimpleT2ReferenceGenerator();
+		listService = new ListServiceImpl();
+		listService.setListDao(new InMemoryListDao() {
+			@Override
+			public synchronized IdentifiedList<T2Reference> get(
+					T2Reference reference) throws DaoException {
+				listFetches++;
+				return super.get(reference);
+			}
+		});
+		listService.setT2ReferenceGenerator(generator);
+		errorService = new ErrorDocumentServiceImpl();
+		errorService.setErrorDao(new InMemoryErrorDocumentDao());
+		errorService.setT2ReferenceGenerator(generator);
+		ReferenceSetServiceImpl referenceSetService = new ReferenceSetServiceImpl();
+		referenceSetService.setReferenceSetDao(new InMemoryReferenceSetDao());
+		referenceSetService.setT2ReferenceGenerator(generator);
+		service = new ReferenceServiceImpl();
+		service.setListService(listService);
+		service.setReferenceSetService(referenceSetService);
+		service.setErrorDocumentService(errorService);
+		context = new ReferenceContextImpl();
+		context.addEntity(new WorkflowRunIdEntity("traverseTest"));
+	}
+
+	@Test
+	public void leavesInIndexOrder() {
+		T2Reference a = leaf("a"), b = leaf("b"), c = leaf("c");
+		T2Reference root = list(list(a, b), emptyList(), list(c));
+
+		List<ContextualizedT2Reference> leaves = toList(service.traverseFrom(
+				root, 0));
+		assertEquals(3, leaves.size());
+		assertArrayEquals(new int[] { 0, 0 }, leaves.get(0).getIndex());
+		assertEquals(a, leaves.get(0).getReference());
+		assertArrayEquals(new int[] { 0, 1 }, leaves.get(1).getIndex());
+		assertEquals(b, leaves.get(1).getReference());
+		assertArrayEquals(new int[] { 2, 0 }, leaves.get(2).getIndex());
+		assertEquals(c, leaves.get(2).getReference());
+	}
+
+	@Test
+	public void intermediateDepth() {
+		T2Reference inner = list(leaf("a"));
+		T2Reference root = list(inner, inner);
+		List<ContextualizedT2Reference> lists = toList(service.traverseFrom(
+				root, 1));
+		assertEquals(2, lists.size());
+		assertArrayEquals(new int[] { 1 }, lists.get(1).getIndex());
+		assertEquals(inner, lists.get(1).getReference());
+	}
+
+	@Test
+	public void sourceAtDesiredDepth() {
+		T2Reference root = list(leaf("a"));
+		List<ContextualizedT2Reference> refs = toList(service.traverseFrom(
+				root, 1));
+		assertEquals(1, refs.size());
+		assertEquals(0, refs.get(0).getIndex().length);
+		assertEquals(root, refs.get(0).getReference());
+	}
+
+	@Test
+	public void errorDocumentsAreDeepened() {
+		T2Reference error = errorService.registerError("failed", 2, context)
+				.getId();
+		List<ContextualizedT2Reference> refs = toList(service.traverseFrom(
+				error, 0));
+		assertEquals(1, refs.size());
+		assertArrayEquals(new int[] { 0, 0 }, refs.get(0).getIndex());
+		assertEquals(T2ReferenceType.ErrorDocument, refs.get(0).getReference()
+				.getReferenceType());
+		assertEquals(0, refs.get(0).getReference().getDepth());
+	}
+
+	@Test
+	public void listsAreFetchedOnDemand() {
+		T2Reference root = list(list(leaf("a")), list(leaf("b")),
+				list(leaf("c")));
+		listFetches = 0;
+		Iterator<ContextualizedT2Reference> leaves = service.traverseFrom(
+				root, 0);
+		assertTrue(leaves.hasNext());
+		assertEquals(2, listFetches);
+		leaves.next();
+		leaves.next();
+		assertEquals(3, listFetches);
+		leaves.next();
+		assertFalse(leaves.hasNext());
+		assertEquals(4, listFetches);
+	}
+
+	private T2Reference leaf(String message) {
+		return errorService.registerError(message, 0, context).getId();
+	}
+
+	private T2Reference list(T2Reference... items) {
+		return listService.registerList(Arrays.asList(items), context).getId();
+	}
+
+	private T2Reference emptyList() {
+		return listService.registerEmptyList(1, context).getId();
+	}
+
+	private static List<ContextualizedT2Reference> toList(
+			Iterator<ContextualizedT2Reference> iterator) {
+		List<ContextualizedT2Reference> result = new ArrayList<>();
+		while (iterator.hasNext())
+			result.add(iterator.next());
+		return result;
+	}
+}
@@ -0,0 +1,167 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.reference.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.taverna.reference.Identified;
+import org.apache.taverna.reference.T2ReferenceType;
+
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.junit.After;
+import org.junit.Test;
+
+public class WriteQueueAspectTest {
+	private List<Identified> written = Collections
+			.synchronizedList(new ArrayList<Identified>());
+	private CountDownLatch writeAllowed = new CountDownLatch(0);
+	private WriteQueueAspect aspect;
+
+	@After
+	public void shutdown() throws Exception {
+		writeAllowed.countDown();
+		if (aspect != null)
+			aspect.shutdown();
+	}
+
+	@Test
+	public void testFlushWritesAll() throws Exception {
+		aspect = new WriteQueueAspect(1000, 60000, 10);
+		for (int i = 0; i < 25; i++)
+			aspect.putObject(store(list("list" + i)));
+		aspect.flush();
+		assertEquals(25, written.size());
+		assertEquals(0, aspect.getBacklog());
+		assertEquals(true, aspect.getFlushCount() >= 3);
+	}
+
+	@Test
+	public void testWritesInOrder() throws Exception {
+		aspect = new WriteQueueAspect(1000, 0, 3);
+		List<Identified> stored = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			stored.add(list("list" + i));
+			aspect.putObject(store(stored.get(i)));
+		}
+		aspect.flush();
+		assertEquals(stored, written);
+	}
+
+	@Test
+	public void testCoalescesPendingWrites() throws Exception {
+		writeAllowed = new CountDownLatch(1);
+		aspect = new WriteQueueAspect(1000, 0, 1);
+		T2ReferenceListImpl blocking = list("blocking");
+		T2ReferenceListImpl list = list("list");
+		aspect.putObject(store(blocking));
+		aspect.putObject(store(list));
+		aspect.putObject(store(list));
+		assertEquals(1, aspect.getCoalescedCount());
+		assertSame(list, aspect.getObject(get(list)));
+		writeAllowed.countDown();
+		aspect.flush();
+		assertEquals(2, written.size());
+	}
+
+	@Test
+	public void testBackPressure() throws Exception {
+		writeAllowed = new CountDownLatch(1);
+		aspect = new WriteQueueAspect(2, 0, 1);
+		aspect.putObject(store(list("list0")));
+		aspect.putObject(store(list("list1")));
+		final CountDownLatch queued = new CountDownLatch(1);
+		new Thread() {
+			@Override
+			public void run() {
+				aspect.putObject(store(list("list2")));
+				queued.countDown();
+			}
+		}.start();
+		assertEquals(false, queued.await(200, TimeUnit.MILLISECONDS));
+		writeAllowed.countDown();
+		assertEquals(true, queued.await(5, TimeUnit.SECONDS));
+		aspect.flush();
+		assertEquals(3, written.size());
+	}
+
+	private T2ReferenceListImpl list(String local) {
+		T2ReferenceImpl r = new T2ReferenceImpl();
+		r.setNamespacePart("testNamespace");
+		r.setLocalPart(local);
+		r.setReferenceType(T2ReferenceType.IdentifiedList);
+		r.setDepth(1);
+		r.setContainsErrors(false);
+		T2ReferenceListImpl newList = new T2ReferenceListImpl();
+		newList.setTypedId(r);
+		return newList;
+	}
+
+	/**
+	 * A join point for a dao store method, which waits until writes are
+	 * allowed before recording the write
+	 */
+	private ProceedingJoinPoint store(final Identified object) {
+		return joinPoint(object, true);
+	}
+
+	/**
+	 * A join point for a dao get method, which finds nothing
+	 */
+	private ProceedingJoinPoint get(final Identified object) {
+		return joinPoint(object.getId(), false);
+	}
+
+	private ProceedingJoinPoint joinPoint(final Object argument,
+			final boolean store) {
+		return (ProceedingJoinPoint) Proxy.newProxyInstance(getClass()
+				.getClassLoader(),
+				new Class<?>[] { ProceedingJoinPoint.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(Object proxy, Method method,
+							Object[] args) throws Throwable {
+						switch (method.getName()) {
+						case "getArgs":
+							return new Object[] { argument };
+						case "proceed":
+							if (store) {
+								writeAllowed.await();
+								written.add((Identified) argument);
+							}
+							return null;
+						default:
+							throw new UnsupportedOperationException(method
+									.getName());
+						}
+					}
+				});
+	}
+}
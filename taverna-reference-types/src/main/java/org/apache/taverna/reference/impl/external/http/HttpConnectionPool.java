@@ -0,0 +1,96 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.reference.impl.external.http;
+
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.params.HttpClientParams;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.commons.httpclient.util.IdleConnectionTimeoutThread;
+
+/**
+ * A shared pool of keep-alive HTTP connections, so that repeated requests to
+ * the same host reuse a connection (and, for HTTPS, its SSL session) instead
+ * of connecting afresh each time.
+ * <p>
+ * The {@link HttpClient} is thread safe; callers must release the connection
+ * of every method they execute with it.
+ */
+public final class HttpConnectionPool {
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 8;
+	public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 64;
+	/** How long a connection may sit idle in the pool, in milliseconds */
+	public static final long IDLE_TIMEOUT = 60 * 1000;
+	/** How long to wait for a free connection in the pool, in milliseconds */
+	public static final long CONNECTION_MANAGER_TIMEOUT = 60 * 1000;
+	/** How long to wait for a connection to be made, in milliseconds */
+	public static final int CONNECTION_TIMEOUT = 30 * 1000;
+	/** How long to wait for data on a connection, in milliseconds */
+	public static final int SO_TIMEOUT = 5 * 60 * 1000;
+
+	private static final MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+	private static final HttpClient httpClient;
+	static {
+		HttpConnectionManagerParams params = connectionManager.getParams();
+		params.setDefaultMaxConnectionsPerHost(DEFAULT_MAX_CONNECTIONS_PER_HOST);
+		params.setMaxTotalConnections(DEFAULT_MAX_TOTAL_CONNECTIONS);
+		// So that hung requests can't hold on to a host's connections forever
+		params.setConnectionTimeout(CONNECTION_TIMEOUT);
+		params.setSoTimeout(SO_TIMEOUT);
+		HttpClientParams clientParams = new HttpClientParams();
+		clientParams.setConnectionManagerTimeout(CONNECTION_MANAGER_TIMEOUT);
+		httpClient = new HttpClient(clientParams, connectionManager);
+
+		IdleConnectionTimeoutThread idleConnectionCloser = new IdleConnectionTimeoutThread();
+		idleConnectionCloser.setName("HTTP idle connection closer");
+		idleConnectionCloser.setConnectionTimeout(IDLE_TIMEOUT);
+		idleConnectionCloser.setTimeoutInterval(IDLE_TIMEOUT / 2);
+		idleConnectionCloser.addConnectionManager(connectionManager);
+		idleConnectionCloser.start();
+	}
+
+	private HttpConnectionPool() {
+	}
+
+	/**
+	 * Returns the shared client.
+	 */
+	public static HttpClient getHttpClient() {
+		return httpClient;
+	}
+
+	/**
+	 * Returns the number of connections held by the pool, both idle and in
+	 * use.
+	 */
+	public static int getConnectionsInPool() {
+		return connectionManager.getConnectionsInPool();
+	}
+
+	public static void setMaxConnectionsPerHost(int maxConnectionsPerHost) {
+		connectionManager.getParams().setDefaultMaxConnectionsPerHost(
+				maxConnectionsPerHost);
+	}
+
+	public static void setMaxTotalConnections(int maxTotalConnections) {
+		connectionManager.getParams().setMaxTotalConnections(
+				maxTotalConnections);
+	}
+}
@@ -34,7 +34,6 @@ import org.apache.taverna.reference.ExternalReferenceSPI;
 import org.apache.taverna.reference.ExternalReferenceValidationException;
 import org.apache.taverna.reference.ReferenceContext;
 
-import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.methods.HeadMethod;
 
@@ -87,9 +86,8 @@ public class HttpReference extends AbstractExternalReference implements
 			return null;
 		}
 		HeadMethod method = new HeadMethod(httpUrl.toExternalForm());
-		HttpClient httpClient = new HttpClient();
 		try {
-			httpClient.executeMethod(method);
+			HttpConnectionPool.getHttpClient().executeMethod(method);
 			charsetName = method.getResponseCharSet();
 			return charsetName;
 		} catch (HttpException e) {
@@ -171,6 +169,10 @@ public class HttpReference extends AbstractExternalReference implements
 		if (cachedLength != null && cacheTime != null
 				&& cacheTime.getTime() + CACHE_TIMEOUT > now)
 			return cachedLength;
+		/*
+		 * Not through the HttpConnectionPool, so that the JVM's Authenticator
+		 * and proxy settings apply
+		 */
 		try {
 			HttpURLConnection c = (HttpURLConnection) httpUrl.openConnection();
 			c.setRequestMethod("HEAD");
@@ -44,5 +44,6 @@ public class ActivityReport extends StatusReport<Activity, ProcessorReport> {
 
 	public void setNestedWorkflowReport(WorkflowReport nestedWorkflowReport) {
 		this.nestedWorkflowReport = nestedWorkflowReport;
+		modified();
 	}
 }
@@ -25,7 +25,7 @@ import java.util.Map;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentSkipListSet;
 
 import org.apache.taverna.scufl2.api.port.Port;
 
@@ -41,6 +41,8 @@ import com.fasterxml.jackson.annotation.JsonPropertyOrder;
 @JsonPropertyOrder({"id","parent", "name",  "index", "state", "startedDate", "completedDate", "inputs", "outputs"})
 public class Invocation implements Comparable<Invocation> {
 	private final String name;
+	/** Worked out once, as invocations are compared by it */
+	private final String id;
 	private final int[] index;
 	private final Invocation parent;
 	private State state;
@@ -53,13 +55,14 @@ public class Invocation implements Comparable<Invocation> {
      * Internal constructor for comparison use.
      *
      * Only use with {@link #compareTo(Invocation)} use when looking
-     * up from {@link StatusReport#getInvocation(String)}. All fields except
-     * {@link #getName()} are <code>null</code>.
+     * up from {@link StatusReport#getInvocations(String, int)}. All fields except
+     * {@link #getName()} and {@link #getId()} are <code>null</code>.
      *
      * @param name The name of the invocation to compare with
      **/
 	Invocation(String name) {
 	    this.name = name;
+	    this.id = name;
 	    this.report = null;
 	    this.parent = null;
 	    this.invocations = null;
@@ -75,8 +78,13 @@ public class Invocation implements Comparable<Invocation> {
 		this.index = index;
 		this.parent = parent;
 		this.report = report;
+		String parentId = parent == null ? null : parent.getId();
+		if (parentId != null && !parentId.isEmpty())
+			id = parentId + "/" + name;
+		else
+			id = name;
 
-		invocations = new TreeSet<>();
+		invocations = new ConcurrentSkipListSet<>();
 
 		inputs = new TreeMap<>();
 		for (Port port : report.getSubject().getInputPorts())
@@ -115,12 +123,7 @@ public class Invocation implements Comparable<Invocation> {
 	 */
 	@JsonProperty("id")
 	public String getId() {
-		if (parent != null) {
-			String parentId = parent.getId();
-			if (parentId != null && !parentId.isEmpty())
-				return parent.getId() + "/" + name;
-		}
-		return name;
+		return id;
 	}
 
 	@JsonIgnore
@@ -179,6 +182,7 @@ public class Invocation implements Comparable<Invocation> {
 	 */
 	public void setInputs(Map<String, Path> inputs) {
 		this.inputs.putAll(inputs);
+		report.modified();
 	}
 
 	/**
@@ -189,6 +193,7 @@ public class Invocation implements Comparable<Invocation> {
 	 */
 	public void setInput(String port, Path value) {
 		inputs.put(port, value);
+		report.modified();
 	}
 
 	/**
@@ -211,6 +216,7 @@ public class Invocation implements Comparable<Invocation> {
 	 */
 	public void setOutputs(Map<String, Path> outputs) {
 		this.outputs.putAll(outputs);
+		report.modified();
 	}
 
 	/**
@@ -221,6 +227,7 @@ public class Invocation implements Comparable<Invocation> {
 	 */
 	public void setOutput(String port, Path value) {
 		outputs.put(port, value);
+		report.modified();
 	}
 
 	/**
@@ -253,7 +260,10 @@ public class Invocation implements Comparable<Invocation> {
 	 */
 	public void setStartedDate(Date startedDate) {
 		this.startedDate = startedDate;
+		State oldState = state;
 		state = State.RUNNING;
+		report.invocationStateChanged(this, oldState);
+		report.modified();
 	}
 
 	/**
@@ -275,7 +285,10 @@ public class Invocation implements Comparable<Invocation> {
 	 */
 	public void setCompletedDate(Date completedDate) {
 		this.completedDate = completedDate;
+		State oldState = state;
 		state = State.COMPLETED;
+		report.invocationStateChanged(this, oldState);
+		report.modified();
 	}
 
 	@Override
@@ -60,6 +60,7 @@ public class ProcessorReport extends StatusReport<Processor, WorkflowReport> {
 
     public void addActivityReport(ActivityReport activityReport) {
 		activityReports.add(activityReport);
+		modified();
 	}
 
     public Set<ActivityReport> getActivityReports() {
@@ -118,6 +119,7 @@ public class ProcessorReport extends StatusReport<Processor, WorkflowReport> {
      */
     public void setJobsCompleted(int jobsCompleted) {
         this.jobsCompleted = jobsCompleted;
+        modified();
     }
 
 	/**
@@ -127,6 +129,7 @@ public class ProcessorReport extends StatusReport<Processor, WorkflowReport> {
      */
     public void setJobsCompletedWithErrors(int jobsCompletedWithErrors) {
         this.jobsCompletedWithErrors = jobsCompletedWithErrors;
+        modified();
     }
 
 	/**
@@ -136,6 +139,7 @@ public class ProcessorReport extends StatusReport<Processor, WorkflowReport> {
      */
     public void setJobsQueued(int jobsQueued) {
         this.jobsQueued = jobsQueued;
+        modified();
     }
 
 	/**
@@ -145,6 +149,7 @@ public class ProcessorReport extends StatusReport<Processor, WorkflowReport> {
      */
     public void setJobsStarted(int jobsStarted) {
         this.jobsStarted = jobsStarted;
+        modified();
     }
 
     /**
@@ -159,5 +164,6 @@ public class ProcessorReport extends StatusReport<Processor, WorkflowReport> {
 			properties.put(key, value);
 			// }
 		}
+		modified();
 	}
 }
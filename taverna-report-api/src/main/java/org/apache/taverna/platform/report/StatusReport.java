@@ -19,14 +19,19 @@
 
 package org.apache.taverna.platform.report;
 
+import static java.util.Collections.unmodifiableNavigableSet;
+
 import java.net.URI;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.NavigableSet;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.taverna.scufl2.api.common.Ported;
 import org.apache.taverna.scufl2.api.common.URITools;
@@ -51,12 +56,21 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 	private final SUBJECT subject;
 	private PARENT parentReport;
 	private State state;
-	private NavigableSet<Invocation> invocations = new TreeSet<>();
+	private final NavigableSet<Invocation> invocations = new ConcurrentSkipListSet<>();
+	private final ConcurrentMap<String, Invocation> invocationsById = new ConcurrentHashMap<>();
+	/** Invocation counts and durations, kept up to date as invocations change */
+	private final AtomicInteger invocationsRunning = new AtomicInteger(),
+			invocationsCompleted = new AtomicInteger();
+	private final AtomicLong invocationTimeTotal = new AtomicLong(),
+			invocationTimeMin = new AtomicLong(Long.MAX_VALUE),
+			invocationTimeMax = new AtomicLong(Long.MIN_VALUE);
 	private Date createdDate, startedDate, pausedDate, resumedDate, cancelledDate, completedDate,
 			failedDate;
 	private final List<Date> pausedDates = new ArrayList<>(),
 			resumedDates = new ArrayList<>();
 	private List<ReportListener> reportListeners = new ArrayList<>();
+	/** Changes to this report, its invocations and the reports below it */
+	private final AtomicLong modifications = new AtomicLong();
 
 	/**
 	 * Constructs a new <code>StatusReport</code> for the subject and sets the created date to the
@@ -125,6 +139,7 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 			if (this.state != state) {
 				State oldState = this.state;
 				this.state = state;
+				modified();
 				for (ReportListener reportListener : reportListeners)
 					reportListener.stateChanged(oldState, state);
 			}
@@ -149,6 +164,7 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 	public void setCreatedDate(Date createdDate) {
 		this.createdDate = createdDate;
 		setState(State.CREATED);
+		modified();
 	}
 
 	/**
@@ -172,6 +188,7 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 		if (this.startedDate == null)
 			this.startedDate = startedDate;
 		setState(State.RUNNING);
+		modified();
 	}
 
 	/**
@@ -195,6 +212,7 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 		this.pausedDate = pausedDate;
 		pausedDates.add(pausedDate);
 		setState(State.PAUSED);
+		modified();
 	}
 
 	/**
@@ -218,6 +236,7 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 		this.resumedDate = resumedDate;
 		resumedDates.add(resumedDate);
 		setState(State.RUNNING);
+		modified();
 	}
 
 	/**
@@ -240,6 +259,7 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 	public void setCancelledDate(Date cancelledDate) {
 		this.cancelledDate = cancelledDate;
 		setState(State.CANCELLED);
+		modified();
 	}
 
 	/**
@@ -262,6 +282,7 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 	public void setCompletedDate(Date completedDate) {
 		this.completedDate = completedDate;
 		setState(State.COMPLETED);
+		modified();
 	}
 
 	/**
@@ -283,6 +304,7 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 	public void setFailedDate(Date failedDate) {
 		this.failedDate = failedDate;
 		setState(State.FAILED);
+		modified();
 	}
 
 	/**
@@ -309,18 +331,129 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 
 	/**
 	 * Returns the invocations.
+	 * <p>
+	 * The set is a read-only view of the invocations, which reflects
+	 * invocations added while iterating it.
 	 *
 	 * @return the invocations
 	 */
 	public NavigableSet<Invocation> getInvocations() {
-		synchronized (invocations) {
-			return new TreeSet<>(invocations);
+		return unmodifiableNavigableSet(invocations);
+	}
+
+	/**
+	 * Returns a page of the invocations, in the order of
+	 * {@link #getInvocations()}.
+	 *
+	 * @param afterId
+	 *            the identifier of the last invocation of the previous page,
+	 *            or <code>null</code> for the first page
+	 * @param limit
+	 *            the most invocations to return
+	 * @return up to <code>limit</code> invocations following
+	 *         <code>afterId</code>
+	 */
+	public List<Invocation> getInvocations(String afterId, int limit) {
+		NavigableSet<Invocation> page = invocations;
+		if (afterId != null)
+			page = invocations.tailSet(new Invocation(afterId), false);
+		List<Invocation> result = new ArrayList<>();
+		for (Invocation invocation : page) {
+			if (result.size() >= limit)
+				break;
+			result.add(invocation);
 		}
+		return result;
 	}
 
 	public void addInvocation(Invocation invocation) {
-		synchronized (invocations) {
-			invocations.add(invocation);
+		invocations.add(invocation);
+		invocationsById.put(invocation.getId(), invocation);
+		modified();
+	}
+
+	/**
+	 * Returns the number of invocations that are running.
+	 *
+	 * @return the number of invocations that are running
+	 */
+	@JsonIgnore
+	public int getInvocationsRunning() {
+		return invocationsRunning.get();
+	}
+
+	/**
+	 * Returns the number of invocations that have completed.
+	 *
+	 * @return the number of invocations that have completed
+	 */
+	@JsonIgnore
+	public int getInvocationsCompleted() {
+		return invocationsCompleted.get();
+	}
+
+	/**
+	 * Returns the shortest time in milliseconds a completed invocation took,
+	 * or 0 if no invocation has completed.
+	 *
+	 * @return the shortest invocation time
+	 */
+	@JsonIgnore
+	public long getMinInvocationTime() {
+		return invocationsCompleted.get() == 0 ? 0 : invocationTimeMin.get();
+	}
+
+	/**
+	 * Returns the average time in milliseconds completed invocations took, or
+	 * 0 if no invocation has completed.
+	 *
+	 * @return the average invocation time
+	 */
+	@JsonIgnore
+	public long getAverageInvocationTime() {
+		int completed = invocationsCompleted.get();
+		return completed == 0 ? 0 : invocationTimeTotal.get() / completed;
+	}
+
+	/**
+	 * Returns the longest time in milliseconds a completed invocation took, or
+	 * 0 if no invocation has completed.
+	 *
+	 * @return the longest invocation time
+	 */
+	@JsonIgnore
+	public long getMaxInvocationTime() {
+		return invocationsCompleted.get() == 0 ? 0 : invocationTimeMax.get();
+	}
+
+	/**
+	 * Updates the invocation counts and times for an invocation of this report
+	 * changing state.
+	 */
+	void invocationStateChanged(Invocation invocation, State oldState) {
+		State newState = invocation.getState();
+		if (oldState == newState)
+			return;
+		if (oldState == State.RUNNING)
+			invocationsRunning.decrementAndGet();
+		else if (oldState == State.COMPLETED)
+			invocationsCompleted.decrementAndGet();
+		if (newState == State.RUNNING)
+			invocationsRunning.incrementAndGet();
+		else if (newState == State.COMPLETED) {
+			Date started = invocation.getStartedDate();
+			Date completed = invocation.getCompletedDate();
+			if (started != null && completed != null) {
+				long time = completed.getTime() - started.getTime();
+				invocationTimeTotal.addAndGet(time);
+				long min = invocationTimeMin.get();
+				while (time < min && !invocationTimeMin.compareAndSet(min, time))
+					min = invocationTimeMin.get();
+				long max = invocationTimeMax.get();
+				while (time > max && !invocationTimeMax.compareAndSet(max, time))
+					max = invocationTimeMax.get();
+			}
+			invocationsCompleted.incrementAndGet();
 		}
 	}
 
@@ -338,12 +471,36 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 	 *            the position of the value
 	 */
 	public void outputAdded(Path path, String portName, int[] index) {
+		modified();
 		synchronized (reportListeners) {
 			for (ReportListener reportListener : reportListeners)
 				reportListener.outputAdded(path, portName, index);
 		}
 	}
 
+	/**
+	 * Returns a count of the changes made to this report, its invocations and
+	 * the reports below it.
+	 * <p>
+	 * Something saving the report can compare the count with the count when it
+	 * last saved to tell whether the report needs saving again.
+	 *
+	 * @return the number of changes made so far
+	 */
+	@JsonIgnore
+	public long getModificationCount() {
+		return modifications.get();
+	}
+
+	/**
+	 * Records a change to this report, or to an invocation or report below it.
+	 */
+	void modified() {
+		modifications.incrementAndGet();
+		if (parentReport != null)
+			parentReport.modified();
+	}
+
 	public void addReportListener(ReportListener reportListener) {
 		synchronized (reportListeners) {
 			reportListeners.add(reportListener);
@@ -357,16 +514,11 @@ public class StatusReport<SUBJECT extends Ported, PARENT extends StatusReport<?,
 	}
 
 	/**
-	 * Get an invocation with a given name.
-	 * @param invocationName
-	 * @return
+	 * Get an invocation with a given identifier.
+	 * @param invocationId the {@link Invocation#getId() identifier} of the invocation
+	 * @return the invocation, or <code>null</code> if there is none with that identifier
 	 */
-    public Invocation getInvocation(String invocationName) {
-        NavigableSet<Invocation> invocs = getInvocations();
-        // A Comparable Invocation with the desired name
-        SortedSet<Invocation> tailSet = invocs.tailSet(new Invocation(invocationName));
-        if (!tailSet.isEmpty())
-        	return tailSet.first();
-        return null;
+    public Invocation getInvocation(String invocationId) {
+        return invocationsById.get(invocationId);
     }
 }
\ No newline at end of file
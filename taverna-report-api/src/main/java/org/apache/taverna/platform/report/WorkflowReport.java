@@ -54,6 +54,7 @@ public class WorkflowReport extends StatusReport<Workflow, ActivityReport> {
 
 	public void addProcessorReport(ProcessorReport processorReport) {
 		processorReports.add(processorReport);
+		modified();
 	}
 
 	@JsonIgnore
@@ -26,6 +26,7 @@ import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Date;
+import java.util.List;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -241,4 +242,71 @@ public class StatusReportTest {
 		assertTrue(statusReport.getResumedDates().isEmpty());
 	}
 
+	/**
+	 * Test method for {@link org.apache.taverna.platform.report.StatusReport#getModificationCount()}.
+	 */
+	@Test
+	public void testGetModificationCount() {
+		long count = statusReport.getModificationCount();
+		assertEquals(count, statusReport.getModificationCount());
+		statusReport.setStartedDate(new Date());
+		assertTrue(statusReport.getModificationCount() > count);
+
+		StatusReport<Workflow, StatusReport<?, ?>> childReport = new StatusReport<Workflow, StatusReport<?, ?>>(
+				subject);
+		childReport.setParentReport(statusReport);
+		count = statusReport.getModificationCount();
+		childReport.setCompletedDate(new Date());
+		assertTrue("changes should count towards the parent report",
+				statusReport.getModificationCount() > count);
+	}
+
+	/**
+	 * Test method for {@link org.apache.taverna.platform.report.StatusReport#getInvocation(String)}.
+	 */
+	@Test
+	public void testGetInvocation() {
+		Invocation parent = new Invocation("invocation1", null, statusReport);
+		Invocation child = new Invocation("invocation2", parent, statusReport);
+		assertEquals(parent, statusReport.getInvocation("invocation1"));
+		assertEquals(child, statusReport.getInvocation("invocation1/invocation2"));
+		assertNull(statusReport.getInvocation("invocation2"));
+	}
+
+	/**
+	 * Test method for {@link org.apache.taverna.platform.report.StatusReport#getInvocations(String, int)}.
+	 */
+	@Test
+	public void testGetInvocationsPage() {
+		for (int i = 1; i <= 12; i++)
+			new Invocation("invocation" + i, null, statusReport);
+		List<Invocation> page = statusReport.getInvocations(null, 5);
+		assertEquals(5, page.size());
+		assertEquals("invocation1", page.get(0).getId());
+		assertEquals("invocation5", page.get(4).getId());
+		page = statusReport.getInvocations("invocation10", 5);
+		assertEquals(2, page.size());
+		assertEquals("invocation11", page.get(0).getId());
+	}
+
+	/**
+	 * Test method for {@link org.apache.taverna.platform.report.StatusReport#getAverageInvocationTime()}.
+	 */
+	@Test
+	public void testInvocationCounts() {
+		assertEquals(0, statusReport.getAverageInvocationTime());
+		Invocation first = new Invocation("invocation1", null, statusReport);
+		Invocation second = new Invocation("invocation2", null, statusReport);
+		assertEquals(2, statusReport.getInvocationsRunning());
+		first.setStartedDate(new Date(1000));
+		first.setCompletedDate(new Date(3000));
+		second.setStartedDate(new Date(1000));
+		second.setCompletedDate(new Date(7000));
+		assertEquals(0, statusReport.getInvocationsRunning());
+		assertEquals(2, statusReport.getInvocationsCompleted());
+		assertEquals(2000, statusReport.getMinInvocationTime());
+		assertEquals(4000, statusReport.getAverageInvocationTime());
+		assertEquals(6000, statusReport.getMaxInvocationTime());
+	}
+
 }
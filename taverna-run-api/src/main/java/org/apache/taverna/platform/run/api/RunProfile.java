@@ -22,6 +22,7 @@ package org.apache.taverna.platform.run.api;
 import org.apache.taverna.robundle.Bundle;
 
 import org.apache.taverna.platform.execution.api.ExecutionEnvironment;
+import org.apache.taverna.platform.execution.api.IntermediatePersistence;
 import org.apache.taverna.scufl2.api.container.WorkflowBundle;
 
 /**
@@ -35,6 +36,9 @@ public class RunProfile {
 	private Bundle dataBundle;
 	private String workflowName;
 	private String profileName;
+	private IntermediatePersistence intermediatePersistence = IntermediatePersistence.ALWAYS;
+	private String user;
+	private int priority;
 
 	/**
 	 * Constructs a <code>RunProfile</code> that specifies the parameters
@@ -211,4 +215,66 @@ public class RunProfile {
 			ExecutionEnvironment executionEnvironment) {
 		this.executionEnvironment = executionEnvironment;
 	}
+
+	/**
+	 * Returns which intermediate values are persisted in the data bundle. The
+	 * default is {@link IntermediatePersistence#ALWAYS}.
+	 * 
+	 * @return which intermediate values are persisted in the data bundle
+	 */
+	public IntermediatePersistence getIntermediatePersistence() {
+		return intermediatePersistence;
+	}
+
+	/**
+	 * Sets which intermediate values are persisted in the data bundle.
+	 * 
+	 * @param intermediatePersistence
+	 *            which intermediate values are persisted in the data bundle
+	 */
+	public void setIntermediatePersistence(
+			IntermediatePersistence intermediatePersistence) {
+		this.intermediatePersistence = intermediatePersistence;
+	}
+
+	/**
+	 * Returns the user the run is for, or <code>null</code> if the run isn't
+	 * for any particular user.
+	 * 
+	 * @return the user the run is for
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Sets the user the run is for. Runs for the same user count against that
+	 * user's quota of concurrent runs.
+	 * 
+	 * @param user
+	 *            the user the run is for
+	 */
+	public void setUser(String user) {
+		this.user = user;
+	}
+
+	/**
+	 * Returns the priority of the run. The default is 0.
+	 * 
+	 * @return the priority of the run
+	 */
+	public int getPriority() {
+		return priority;
+	}
+
+	/**
+	 * Sets the priority of the run. When runs are waiting to start, runs with
+	 * a higher priority are started first.
+	 * 
+	 * @param priority
+	 *            the priority of the run
+	 */
+	public void setPriority(int priority) {
+		this.priority = priority;
+	}
 }
@@ -155,6 +155,9 @@ public interface RunService {
 
 	/**
 	 * Starts a run.
+	 * <p>
+	 * If the service is already running as many runs as it allows, or as the
+	 * run's user is allowed, the run is queued and started once it can be.
 	 * 
 	 * @param runID
 	 *            the ID of the run
@@ -250,4 +253,38 @@ public interface RunService {
 	Profile getProfile(String runID) throws InvalidRunIdException;
 
 	String getRunName(String runID) throws InvalidRunIdException;
+
+	/**
+	 * Returns the runs that have been started but are waiting to run, highest
+	 * priority first.
+	 * <p>
+	 * If there are no runs waiting this method returns an empty list.
+	 * 
+	 * @return the runs waiting to run
+	 */
+	List<String> getQueuedRuns();
+
+	/**
+	 * Returns how long the run waited to run after it was started, or has
+	 * waited so far if it's still queued.
+	 * 
+	 * @param runID
+	 *            the ID of the run
+	 * @return the time waited in milliseconds
+	 * @throws InvalidRunIdException
+	 *             if the run ID is not valid
+	 */
+	long getQueueTime(String runID) throws InvalidRunIdException;
+
+	/**
+	 * Returns how long the run ran for, or has run so far if it hasn't
+	 * finished. A run that hasn't started has run for 0 milliseconds.
+	 * 
+	 * @param runID
+	 *            the ID of the run
+	 * @return the run time in milliseconds
+	 * @throws InvalidRunIdException
+	 *             if the run ID is not valid
+	 */
+	long getRunTime(String runID) throws InvalidRunIdException;
 }
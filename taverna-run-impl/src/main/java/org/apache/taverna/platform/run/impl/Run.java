@@ -19,6 +19,10 @@
 
 package org.apache.taverna.platform.run.impl;
 
+import static java.lang.System.currentTimeMillis;
+import static java.util.concurrent.Executors.newSingleThreadScheduledExecutor;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.logging.Level.FINE;
 import static java.util.logging.Level.WARNING;
 import static org.apache.taverna.platform.report.State.CANCELLED;
 import static org.apache.taverna.platform.report.State.COMPLETED;
@@ -28,9 +32,12 @@ import static org.apache.taverna.platform.report.State.PAUSED;
 import static org.apache.taverna.platform.report.State.RUNNING;
 
 import java.io.IOException;
+import java.nio.file.ClosedFileSystemException;
 import java.text.ParseException;
 import java.util.Date;
 import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 import org.apache.taverna.robundle.Bundle;
@@ -58,6 +65,19 @@ import org.apache.taverna.scufl2.api.profiles.Profile;
 public class Run {
 	private static final WorkflowReportJSON workflowReportJson = new WorkflowReportJSON();
 	private static final Logger logger = Logger.getLogger(Run.class.getName());
+	/**
+	 * Shortest time in milliseconds between saves of the report of a running
+	 * run; changes made meanwhile are saved in the background
+	 */
+	private static final long REPORT_SAVE_INTERVAL = 1000;
+	private static final ScheduledExecutorService reportSaver = newSingleThreadScheduledExecutor(new ThreadFactory() {
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread thread = new Thread(r, "Workflow report saver");
+			thread.setDaemon(true);
+			return thread;
+		}
+	});
 
 	private final String ID, executionID;
 	private final ExecutionEnvironment executionEnvironment;
@@ -66,6 +86,12 @@ public class Run {
 	private final Bundle dataBundle;
 	private final Workflow workflow;
 	private final Profile profile;
+	private final String user;
+	private final int priority;
+	/** The report's modification count when it was last saved */
+	private long savedModifications = -1;
+	private long lastSaved;
+	private boolean saveScheduled;
 
 	/**
 	 * Constructs a <code>Run</code> from the specified <code>RunProfile</code>.
@@ -130,11 +156,14 @@ public class Run {
 			throw new RunProfileException(message);
 		}
 		executionEnvironment = runProfile.getExecutionEnvironment();
+		user = runProfile.getUser();
+		priority = runProfile.getPriority();
 
 		ID = UUID.randomUUID().toString();
 		executionID = executionEnvironment.getExecutionService()
 				.createExecution(executionEnvironment, workflowBundle,
-						workflow, profile, dataBundle);
+						workflow, profile, dataBundle,
+						runProfile.getIntermediatePersistence());
 		try {
 			workflowReport = executionEnvironment.getExecutionService()
 					.getWorkflowReport(executionID);
@@ -156,6 +185,8 @@ public class Run {
 		dataBundle = bundle;
 		workflow = workflowBundle.getMainWorkflow();
 		profile = workflowBundle.getMainProfile();
+		user = null;
+		priority = 0;
 	}
 
 	/**
@@ -182,15 +213,64 @@ public class Run {
 	/**
 	 * Returns the <code>Bundle</code> containing the data values of the run.
 	 * <p>
+	 * The workflow report and manifest in the bundle are saved if the report
+	 * has changed since they were last saved. While the run is running they're
+	 * saved at most once every {@value #REPORT_SAVE_INTERVAL} milliseconds, so
+	 * may be that much behind the report.
 	 * 
 	 * @return the <code>Bundle</code> containing the data values for the
 	 *         <code>Workflow</code>
 	 */
 	public Bundle getDataBundle() {
-		if (getWorkflowReport() != null)
+		saveReport(false);
+		return dataBundle;
+	}
+
+	/**
+	 * Returns the <code>Bundle</code> containing the data values of the run,
+	 * after saving the workflow report and manifest whether or not the report
+	 * has changed.
+	 * 
+	 * @return the <code>Bundle</code> containing the data values for the
+	 *         <code>Workflow</code>
+	 */
+	public Bundle flushDataBundle() {
+		saveReport(true);
+		return dataBundle;
+	}
+
+	private synchronized void saveReport(boolean force) {
+		long modifications = workflowReport == null ? 0 : workflowReport
+				.getModificationCount();
+		if (!force && modifications == savedModifications)
+			return;
+		long now = currentTimeMillis();
+		long wait = lastSaved + REPORT_SAVE_INTERVAL - now;
+		if (!force && wait > 0 && workflowReport != null
+				&& workflowReport.getState() == RUNNING) {
+			if (!saveScheduled) {
+				saveScheduled = true;
+				reportSaver.schedule(new Runnable() {
+					@Override
+					public void run() {
+						synchronized (Run.this) {
+							saveScheduled = false;
+						}
+						try {
+							saveReport(false);
+						} catch (ClosedFileSystemException e) {
+							logger.log(FINE, "Data bundle closed before saving report", e);
+						}
+					}
+				}, wait, MILLISECONDS);
+			}
+			return;
+		}
+
+		if (workflowReport != null)
 			// Save the workflow report
 			try {
-				workflowReportJson.save(getWorkflowReport(), dataBundle);
+				workflowReportJson.save(workflowReport, dataBundle);
 			} catch (IOException e) {
 				logger.log(WARNING,
 						"Can't save workflow report to data bundle", e);
@@ -203,7 +283,8 @@ public class Run {
 		} catch (IOException e) {
 			logger.log(WARNING, "Can't add manifest to data bundle", e);
 		}
-		return dataBundle;
+		savedModifications = modifications;
+		lastSaved = now;
 	}
 
 	/**
@@ -223,6 +304,25 @@ public class Run {
 		return profile;
 	}
 
+	/**
+	 * Returns the user the run is for, or <code>null</code> if the run isn't
+	 * for any particular user.
+	 * 
+	 * @return the user the run is for
+	 */
+	public String getUser() {
+		return user;
+	}
+
+	/**
+	 * Returns the priority of the run when waiting to start.
+	 * 
+	 * @return the priority of the run
+	 */
+	public int getPriority() {
+		return priority;
+	}
+
 	/**
 	 * Deletes a run.
 	 * 
@@ -0,0 +1,215 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.platform.run.impl;
+
+import static java.lang.System.currentTimeMillis;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.taverna.platform.run.api.RunStateException;
+
+/**
+ * Decides when started runs may run, limiting how many run at once in total
+ * and for each user. Runs that can't run yet wait in a queue: runs with a
+ * higher priority go first, then among runs of the same priority the run of
+ * the user with fewest runs running, then the run that has waited longest.
+ * <p>
+ * A limit of 0 or less means no limit.
+ */
+class RunScheduler {
+	private int maxRuns;
+	private int maxRunsPerUser;
+	private long sequence;
+	/** Queued runs by ID, in the order they were queued */
+	private final Map<String, Queued> queue = new LinkedHashMap<>();
+	/** Running runs' users by run ID */
+	private final Map<String, String> running = new HashMap<>();
+	private final Map<String, Integer> runningPerUser = new HashMap<>();
+	/** How long runs that are no longer queued waited */
+	private final Map<String, Long> queueTimes = new HashMap<>();
+
+	private static class Queued {
+		final Run run;
+		final long sequence;
+		final long queuedAt = currentTimeMillis();
+
+		Queued(Run run, long sequence) {
+			this.run = run;
+			this.sequence = sequence;
+		}
+	}
+
+	private static final Comparator<Queued> QUEUE_ORDER = new Comparator<Queued>() {
+		@Override
+		public int compare(Queued a, Queued b) {
+			if (a.run.getPriority() != b.run.getPriority())
+				return a.run.getPriority() > b.run.getPriority() ? -1 : 1;
+			return Long.compare(a.sequence, b.sequence);
+		}
+	};
+
+	/**
+	 * Sets the maximum number of runs running at once.
+	 * 
+	 * @return the queued runs that may now run
+	 */
+	synchronized List<Run> setMaxRuns(int maxRuns) {
+		this.maxRuns = maxRuns;
+		return admit();
+	}
+
+	/**
+	 * Sets the maximum number of runs running at once for any one user.
+	 * 
+	 * @return the queued runs that may now run
+	 */
+	synchronized List<Run> setMaxRunsPerUser(int maxRunsPerUser) {
+		this.maxRunsPerUser = maxRunsPerUser;
+		return admit();
+	}
+
+	/**
+	 * Queues a run to be run.
+	 * 
+	 * @return the queued runs that may now run, which may include this run
+	 * @throws RunStateException
+	 *             if the run has already been started
+	 */
+	synchronized List<Run> submit(Run run) throws RunStateException {
+		String id = run.getID();
+		if (queue.containsKey(id) || running.containsKey(id))
+			throw new RunStateException("Run " + id + " is already started");
+		queue.put(id, new Queued(run, sequence++));
+		return admit();
+	}
+
+	/**
+	 * Removes a run from the queue without running it.
+	 * 
+	 * @return whether the run was queued
+	 */
+	synchronized boolean dequeue(String runID) {
+		Queued queued = queue.remove(runID);
+		if (queued == null)
+			return false;
+		queueTimes.put(runID, currentTimeMillis() - queued.queuedAt);
+		return true;
+	}
+
+	/**
+	 * Records that a run has stopped running, freeing its place.
+	 * 
+	 * @return the queued runs that may now run
+	 */
+	synchronized List<Run> finished(String runID) {
+		dequeue(runID);
+		if (running.containsKey(runID)) {
+			String user = running.remove(runID);
+			int count = runningPerUser.get(user) - 1;
+			if (count == 0)
+				runningPerUser.remove(user);
+			else
+				runningPerUser.put(user, count);
+		}
+		return admit();
+	}
+
+	/**
+	 * Forgets everything about a run that is going away.
+	 * 
+	 * @return the queued runs that may now run
+	 */
+	synchronized List<Run> remove(String runID) {
+		List<Run> admitted = finished(runID);
+		queueTimes.remove(runID);
+		return admitted;
+	}
+
+	/**
+	 * @return the IDs of the queued runs, highest priority first
+	 */
+	synchronized List<String> getQueuedRuns() {
+		List<Queued> queued = new ArrayList<>(queue.values());
+		Collections.sort(queued, QUEUE_ORDER);
+		List<String> ids = new ArrayList<>(queued.size());
+		for (Queued q : queued)
+			ids.add(q.run.getID());
+		return ids;
+	}
+
+	/**
+	 * @return how long in milliseconds the run waited, or has waited so far
+	 */
+	synchronized long getQueueTime(String runID) {
+		Queued queued = queue.get(runID);
+		if (queued != null)
+			return currentTimeMillis() - queued.queuedAt;
+		Long waited = queueTimes.get(runID);
+		return waited == null ? 0 : waited;
+	}
+
+	private int runningFor(String user) {
+		Integer count = runningPerUser.get(user);
+		return count == null ? 0 : count;
+	}
+
+	private boolean mayRun(String user) {
+		return user == null || maxRunsPerUser <= 0
+				|| runningFor(user) < maxRunsPerUser;
+	}
+
+	private boolean runsBefore(Queued a, Queued b) {
+		if (a.run.getPriority() != b.run.getPriority())
+			return a.run.getPriority() > b.run.getPriority();
+		int aRunning = runningFor(a.run.getUser());
+		int bRunning = runningFor(b.run.getUser());
+		if (aRunning != bRunning)
+			return aRunning < bRunning;
+		return a.sequence < b.sequence;
+	}
+
+	private List<Run> admit() {
+		List<Run> admitted = new ArrayList<>();
+		long now = currentTimeMillis();
+		while (maxRuns <= 0 || running.size() < maxRuns) {
+			Queued next = null;
+			for (Queued queued : queue.values())
+				if (mayRun(queued.run.getUser())
+						&& (next == null || runsBefore(queued, next)))
+					next = queued;
+			if (next == null)
+				break;
+			String id = next.run.getID();
+			String user = next.run.getUser();
+			queue.remove(id);
+			queueTimes.put(id, now - next.queuedAt);
+			running.put(id, user);
+			runningPerUser.put(user, runningFor(user) + 1);
+			admitted.add(next.run);
+		}
+		return admitted;
+	}
+}
@@ -26,11 +26,15 @@ import java.nio.file.Path;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -58,6 +62,10 @@ import org.osgi.service.event.EventAdmin;
 
 /**
  * Implementation of the <code>RunService</code>.
+ * <p>
+ * Started runs go through a {@link RunScheduler}, so that no more than
+ * {@link #setMaxConcurrentRuns(int) a set number} of runs, and of runs for any
+ * one user, are running at once. By default there is no limit.
  *
  */
 public class RunServiceImpl implements RunService {
@@ -65,11 +73,22 @@ public class RunServiceImpl implements RunService {
 	private static SimpleDateFormat ISO_8601 = new SimpleDateFormat("yyyy-MM-dd_HHmmss");
 
 	private final Map<String, Run> runMap;
+	private final RunScheduler scheduler = new RunScheduler();
+	/** Starts queued runs once they may run */
+	private final ExecutorService queuedRunStarter = Executors
+			.newSingleThreadExecutor(new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Queued run starter");
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
 	private ExecutionEnvironmentService executionEnvironmentService;
 	private EventAdmin eventAdmin;
 
 	public RunServiceImpl() {
-		runMap = new TreeMap<>();
+		runMap = new ConcurrentSkipListMap<>();
 	}
 
 	@Override
@@ -111,7 +130,9 @@ public class RunServiceImpl implements RunService {
 			if (!runMap.containsKey(runID)) {
 				Bundle bundle = DataBundles.openBundle(runFile);
 				Run run = new Run(runID, bundle);
-				runMap.put(run.getID(), run);
+				if (runMap.putIfAbsent(run.getID(), run) != null)
+					// Opened concurrently
+					DataBundles.closeBundle(bundle);
 			}
 			postEvent(RUN_OPENED, runID);
 			return runID;
@@ -124,19 +145,20 @@ public class RunServiceImpl implements RunService {
 	public void close(String runID) throws InvalidRunIdException, InvalidExecutionIdException {
 		Run run = getRun(runID);
 		try {
-			Bundle dataBundle = run.getDataBundle();
+			Bundle dataBundle = run.flushDataBundle();
 			DataBundles.closeBundle(dataBundle);
 		} catch (IOException | ClosedFileSystemException e) {
 			logger.log(Level.WARNING, "Error closing data bundle for run " + runID, e);
 		}
 		runMap.remove(runID);
+		startQueuedRuns(scheduler.remove(runID));
 		postEvent(RUN_CLOSED, runID);
 	}
 
 	@Override
 	public void save(String runID, Path runFile) throws InvalidRunIdException, IOException {
 		Run run = getRun(runID);
-		Bundle dataBundle = run.getDataBundle();
+		Bundle dataBundle = run.flushDataBundle();
 		try {
 			DataBundles.closeAndSaveBundle(dataBundle, runFile);
 		} catch (InvalidPathException e) {
@@ -155,13 +177,56 @@ public class RunServiceImpl implements RunService {
 			logger.log(Level.WARNING, "Error closing data bundle for run " + runID, e);
 		}
 		runMap.remove(runID);
+		startQueuedRuns(scheduler.remove(runID));
 		postEvent(RUN_DELETED, runID);
 	}
 
 	@Override
 	public void start(String runID) throws InvalidRunIdException, RunStateException, InvalidExecutionIdException {
-		getRun(runID).start();
-		postEvent(RUN_STARTED, runID);
+		Run run = getRun(runID);
+		State state = run.getState();
+		if (!state.equals(State.CREATED))
+			throw new RunStateException("Cannot start a " + state + " run.");
+		List<Run> admitted = scheduler.submit(run);
+		if (admitted.remove(run))
+			try {
+				startRun(run);
+			} finally {
+				startQueuedRuns(admitted);
+			}
+		else
+			startQueuedRuns(admitted);
+	}
+
+	private void startRun(Run run) throws RunStateException,
+			InvalidExecutionIdException {
+		try {
+			run.start();
+		} catch (RunStateException | InvalidExecutionIdException
+				| RuntimeException e) {
+			// Let another run have its place
+			startQueuedRuns(scheduler.finished(run.getID()));
+			throw e;
+		}
+		postEvent(RUN_STARTED, run.getID());
+	}
+
+	private void startQueuedRuns(final List<Run> runs) {
+		if (runs.isEmpty())
+			return;
+		queuedRunStarter.execute(new Runnable() {
+			@Override
+			public void run() {
+				for (Run run : runs)
+					try {
+						startRun(run);
+					} catch (RunStateException | InvalidExecutionIdException
+							| RuntimeException e) {
+						logger.log(Level.WARNING,
+								"Could not start queued run " + run.getID(), e);
+					}
+			}
+		});
 	}
 
 	@Override
@@ -178,7 +243,12 @@ public class RunServiceImpl implements RunService {
 
 	@Override
 	public void cancel(String runID) throws InvalidRunIdException, RunStateException, InvalidExecutionIdException {
-		getRun(runID).cancel();
+		Run run = getRun(runID);
+		if (scheduler.dequeue(runID))
+			// Never ran, so there's no execution to cancel
+			run.getWorkflowReport().setCancelledDate(new Date());
+		else
+			run.cancel();
 		postEvent(RUN_STOPPED, runID);
 	}
 
@@ -213,6 +283,33 @@ public class RunServiceImpl implements RunService {
 		return workflowReport.getSubject().getName() + "_" + ISO_8601.format(workflowReport.getCreatedDate());
 	}
 
+	@Override
+	public List<String> getQueuedRuns() {
+		return scheduler.getQueuedRuns();
+	}
+
+	@Override
+	public long getQueueTime(String runID) throws InvalidRunIdException {
+		getRun(runID);
+		return scheduler.getQueueTime(runID);
+	}
+
+	@Override
+	public long getRunTime(String runID) throws InvalidRunIdException {
+		WorkflowReport report = getWorkflowReport(runID);
+		Date started = report.getStartedDate();
+		if (started == null)
+			return 0;
+		Date stopped = report.getCompletedDate();
+		if (stopped == null)
+			stopped = report.getFailedDate();
+		if (stopped == null)
+			stopped = report.getCancelledDate();
+		long end = stopped == null ? System.currentTimeMillis() : stopped
+				.getTime();
+		return end - started.getTime();
+	}
+
 	private Run getRun(String runID) throws InvalidRunIdException {
 		Run run = runMap.get(runID);
 		if (run == null)
@@ -235,6 +332,22 @@ public class RunServiceImpl implements RunService {
 		this.eventAdmin = eventAdmin;
 	}
 
+	/**
+	 * Sets the maximum number of runs running at once; further runs wait
+	 * until one finishes. 0 or less, the default, means no limit.
+	 */
+	public void setMaxConcurrentRuns(int maxConcurrentRuns) {
+		startQueuedRuns(scheduler.setMaxRuns(maxConcurrentRuns));
+	}
+
+	/**
+	 * Sets the maximum number of runs for any one user running at once. 0 or
+	 * less, the default, means no limit.
+	 */
+	public void setMaxConcurrentRunsPerUser(int maxConcurrentRunsPerUser) {
+		startQueuedRuns(scheduler.setMaxRunsPerUser(maxConcurrentRunsPerUser));
+	}
+
 	public void setWorkflowBundleIO(WorkflowBundleIO workflowBundleIO) {
 		DataBundles.setWfBundleIO(workflowBundleIO);
 	}
@@ -256,6 +369,11 @@ public class RunServiceImpl implements RunService {
 			case COMPLETED:
 			case FAILED:
 				postEvent(RUN_STOPPED, runId);
+				startQueuedRuns(scheduler.finished(runId));
+				break;
+			case CANCELLED:
+				startQueuedRuns(scheduler.finished(runId));
+				break;
 			default:
 				break;
 			}
@@ -71,6 +71,7 @@ import org.apache.taverna.scufl2.api.io.ReaderException;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.util.StdDateFormat;
@@ -78,12 +79,15 @@ import com.fasterxml.jackson.databind.util.StdDateFormat;
 public class WorkflowReportJSON {
 	private static URITools uriTools = new URITools();
 	private static final StdDateFormat STD_DATE_FORMAT = new StdDateFormat();
+	/** Configured once, as reports are saved whenever a run's bundle is asked for */
+	private static final ObjectWriter SAVE_WRITER = makeObjectMapperForSave()
+			.writer();
+	private static final ObjectMapper LOAD_MAPPER = makeObjectMapperForLoad();
 
 	public void save(WorkflowReport wfReport, Path path) throws IOException {
-		ObjectMapper om = makeObjectMapperForSave();
 		try (Writer w = newBufferedWriter(path, Charset.forName("UTF-8"),
 				WRITE, CREATE, TRUNCATE_EXISTING)) {
-			om.writeValue(w, wfReport);
+			SAVE_WRITER.writeValue(w, wfReport);
 		}
 	}
 
@@ -339,9 +343,8 @@ public class WorkflowReportJSON {
 
 	protected JsonNode loadWorkflowReportJson(Path path) throws IOException,
 			JsonProcessingException {
-		ObjectMapper om = makeObjectMapperForLoad();
 		try (InputStream stream = Files.newInputStream(path)) {
-			return om.readTree(stream);
+			return LOAD_MAPPER.readTree(stream);
 		}
 	}
 }
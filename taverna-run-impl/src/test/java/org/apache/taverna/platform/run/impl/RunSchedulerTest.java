@@ -0,0 +1,227 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.platform.run.impl;
+
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.apache.taverna.platform.run.api.RunStateException;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RunSchedulerTest {
+	private RunScheduler scheduler;
+
+	@Before
+	public void createScheduler() {
+		scheduler = new RunScheduler();
+	}
+
+	private static Run run(String id, String user, int priority) {
+		Run run = mock(Run.class);
+		when(run.getID()).thenReturn(id);
+		when(run.getUser()).thenReturn(user);
+		when(run.getPriority()).thenReturn(priority);
+		return run;
+	}
+
+	private static Run run(String id, String user) {
+		return run(id, user, 0);
+	}
+
+	@Test
+	public void admitsEveryRunWithoutLimits() throws Exception {
+		Run a = run("a", "alice");
+		Run b = run("b", "alice");
+		assertEquals(asList(a), scheduler.submit(a));
+		assertEquals(asList(b), scheduler.submit(b));
+		assertEquals(emptyList(), scheduler.getQueuedRuns());
+	}
+
+	@Test
+	public void queuesRunsBeyondTheLimit() throws Exception {
+		scheduler.setMaxRuns(2);
+		Run a = run("a", "alice");
+		Run b = run("b", "bob");
+		Run c = run("c", "carol");
+		assertEquals(asList(a), scheduler.submit(a));
+		assertEquals(asList(b), scheduler.submit(b));
+		assertEquals(emptyList(), scheduler.submit(c));
+		assertEquals(asList("c"), scheduler.getQueuedRuns());
+	}
+
+	@Test
+	public void finishingARunReleasesItsSlot() throws Exception {
+		scheduler.setMaxRuns(1);
+		Run a = run("a", "alice");
+		Run b = run("b", "bob");
+		scheduler.submit(a);
+		scheduler.submit(b);
+		assertEquals(asList(b), scheduler.finished("a"));
+		assertEquals(emptyList(), scheduler.getQueuedRuns());
+		assertEquals(emptyList(), scheduler.finished("a"));
+		assertEquals(emptyList(), scheduler.finished("b"));
+	}
+
+	@Test
+	public void removingARunReleasesItsSlot() throws Exception {
+		scheduler.setMaxRuns(1);
+		Run a = run("a", "alice");
+		Run b = run("b", "bob");
+		scheduler.submit(a);
+		scheduler.submit(b);
+		assertEquals(asList(b), scheduler.remove("a"));
+		assertEquals(0, scheduler.getQueueTime("a"));
+	}
+
+	@Test
+	public void limitsRunsPerUser() throws Exception {
+		scheduler.setMaxRunsPerUser(1);
+		Run a = run("a", "alice");
+		Run b = run("b", "alice");
+		Run c = run("c", "bob");
+		assertEquals(asList(a), scheduler.submit(a));
+		assertEquals(emptyList(), scheduler.submit(b));
+		assertEquals(asList(c), scheduler.submit(c));
+		assertEquals(asList("b"), scheduler.getQueuedRuns());
+		assertEquals(emptyList(), scheduler.finished("c"));
+		assertEquals(asList(b), scheduler.finished("a"));
+	}
+
+	@Test
+	public void runsWithoutAUserAreNotLimitedPerUser() throws Exception {
+		scheduler.setMaxRunsPerUser(1);
+		Run a = run("a", null);
+		Run b = run("b", null);
+		assertEquals(asList(a), scheduler.submit(a));
+		assertEquals(asList(b), scheduler.submit(b));
+	}
+
+	@Test
+	public void raisingTheLimitAdmitsQueuedRuns() throws Exception {
+		scheduler.setMaxRuns(1);
+		Run a = run("a", "alice");
+		Run b = run("b", "bob");
+		Run c = run("c", "carol");
+		scheduler.submit(a);
+		scheduler.submit(b);
+		scheduler.submit(c);
+		assertEquals(asList(b), scheduler.setMaxRuns(2));
+		assertEquals(asList(c), scheduler.setMaxRuns(0));
+	}
+
+	@Test
+	public void higherPriorityRunsFirst() throws Exception {
+		scheduler.setMaxRuns(1);
+		scheduler.submit(run("a", "alice"));
+		Run low = run("low", "bob", 0);
+		Run high = run("high", "carol", 5);
+		scheduler.submit(low);
+		scheduler.submit(high);
+		assertEquals(asList("high", "low"), scheduler.getQueuedRuns());
+		assertEquals(asList(high), scheduler.finished("a"));
+		assertEquals(asList(low), scheduler.finished("high"));
+	}
+
+	@Test
+	public void userWithFewestRunningRunsFirst() throws Exception {
+		scheduler.setMaxRuns(2);
+		scheduler.submit(run("a1", "alice"));
+		scheduler.submit(run("a2", "alice"));
+		Run alice = run("a3", "alice");
+		Run bob = run("b1", "bob");
+		scheduler.submit(alice);
+		scheduler.submit(bob);
+		// Alice still has a run running and Bob has none
+		assertEquals(asList(bob), scheduler.finished("a1"));
+		assertEquals(asList(alice), scheduler.finished("a2"));
+	}
+
+	@Test
+	public void longestWaitingRunFirstOtherwise() throws Exception {
+		scheduler.setMaxRuns(1);
+		scheduler.submit(run("a", "alice"));
+		Run b = run("b", "bob");
+		Run c = run("c", "carol");
+		scheduler.submit(b);
+		scheduler.submit(c);
+		assertEquals(asList("b", "c"), scheduler.getQueuedRuns());
+		assertEquals(asList(b), scheduler.finished("a"));
+	}
+
+	@Test
+	public void dequeuedRunIsNotAdmitted() throws Exception {
+		scheduler.setMaxRuns(1);
+		scheduler.submit(run("a", "alice"));
+		scheduler.submit(run("b", "bob"));
+		assertTrue(scheduler.dequeue("b"));
+		assertFalse(scheduler.dequeue("b"));
+		assertFalse(scheduler.dequeue("a"));
+		assertEquals(emptyList(), scheduler.finished("a"));
+	}
+
+	@Test(expected = RunStateException.class)
+	public void submittingARunningRunFails() throws Exception {
+		Run a = run("a", "alice");
+		scheduler.submit(a);
+		scheduler.submit(a);
+	}
+
+	@Test(expected = RunStateException.class)
+	public void submittingAQueuedRunFails() throws Exception {
+		scheduler.setMaxRuns(1);
+		scheduler.submit(run("a", "alice"));
+		Run b = run("b", "bob");
+		scheduler.submit(b);
+		scheduler.submit(b);
+	}
+
+	@Test
+	public void queueTimeIsKeptAfterAdmission() throws Exception {
+		scheduler.setMaxRuns(1);
+		scheduler.submit(run("a", "alice"));
+		scheduler.submit(run("b", "bob"));
+		Thread.sleep(20);
+		scheduler.finished("a");
+		long waited = scheduler.getQueueTime("b");
+		assertTrue(waited >= 20);
+		Thread.sleep(20);
+		assertEquals(waited, scheduler.getQueueTime("b"));
+	}
+
+	@Test
+	public void admittedRunsAreReturnedInOrder() throws Exception {
+		scheduler.setMaxRuns(1);
+		scheduler.submit(run("a", "alice"));
+		Run b = run("b", "bob");
+		Run c = run("c", "carol");
+		scheduler.submit(b);
+		scheduler.submit(c);
+		List<Run> admitted = scheduler.setMaxRuns(3);
+		assertEquals(asList(b, c), admitted);
+	}
+}
@@ -46,6 +46,14 @@ public class Completion extends IterationInternalEvent<Completion> {
 		super(owningProcess, completionIndex, context);
 	}
 
+	/**
+	 * As above, for a completion owned by a {@link ProcessPath}
+	 */
+	public Completion(ProcessPath owningProcess, int[] completionIndex,
+			InvocationContext context) {
+		super(owningProcess, completionIndex, context);
+	}
+
 	/**
 	 * Construct a new final completion event, equivalent to calling new
 	 * Completion(owningProcess, new int[0]);
@@ -56,6 +64,13 @@ public class Completion extends IterationInternalEvent<Completion> {
 		super(owningProcess, new int[0], context);
 	}
 
+	/**
+	 * As above, for a completion owned by a {@link ProcessPath}
+	 */
+	public Completion(ProcessPath owningProcess, InvocationContext context) {
+		super(owningProcess, new int[0], context);
+	}
+
 	@Override
 	public String toString() {
 		StringBuffer sb = new StringBuffer();
@@ -79,7 +94,8 @@ public class Completion extends IterationInternalEvent<Completion> {
 	 */
 	@Override
 	public Completion pushIndex() {
-		return new Completion(getPushedOwningProcess(), new int[] {}, context);
+		return new Completion(getPushedOwningProcessPath(), new int[] {},
+				context);
 	}
 
 	/**
@@ -88,19 +104,19 @@ public class Completion extends IterationInternalEvent<Completion> {
 	 */
 	@Override
 	public Completion popIndex() {
-		return new Completion(owner.substring(0, owner.lastIndexOf(':')),
+		return new Completion(getPoppedOwningProcessPath(),
 				getPoppedIndex(), context);
 	}
 
 	@Override
 	public Completion popOwningProcess() throws ProcessIdentifierException {
-		return new Completion(popOwner(), index, context);
+		return new Completion(popOwnerPath(), index, context);
 	}
 
 	@Override
 	public Completion pushOwningProcess(String localProcessName)
 			throws ProcessIdentifierException {
-		return new Completion(pushOwner(localProcessName), index, context);
+		return new Completion(pushOwnerPath(localProcessName), index, context);
 	}
 
 }
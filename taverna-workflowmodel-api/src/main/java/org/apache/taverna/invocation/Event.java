@@ -33,6 +33,12 @@ public abstract class Event<EventType extends Event<?>> {
 	protected String owner;
 	protected InvocationContext context;
 	protected int[] index;
+	private volatile ProcessPath ownerPath;
+
+	protected Event(ProcessPath owner, int[] index, InvocationContext context) {
+		this(owner == null ? null : owner.toString(), index, context);
+		this.ownerPath = owner;
+	}
 
 	protected Event(String owner, int[] index, InvocationContext context) {
 		this.owner = owner;
@@ -67,6 +73,19 @@ public abstract class Event<EventType extends Event<?>> {
 		return this.owner;
 	}
 
+	/**
+	 * The owning process in structured form, see {@link ProcessPath}. Events
+	 * created by pushing or popping the owning process carry this already,
+	 * otherwise it is parsed from {@link #getOwningProcess()} when first asked
+	 * for.
+	 */
+	public final ProcessPath getOwningProcessPath() {
+		ProcessPath path = ownerPath;
+		if (path == null)
+			ownerPath = path = ProcessPath.valueOf(owner);
+		return path;
+	}
+
 	public final InvocationContext getContext() {
 		return this.context;
 	}
@@ -117,14 +136,19 @@ public abstract class Event<EventType extends Event<?>> {
 	 * @throws ProcessIdentifierException
 	 */
 	protected final String popOwner() throws ProcessIdentifierException {
+		return popOwnerPath().toString();
+	}
+
+	/**
+	 * As {@link #popOwner()} but returning the structured form
+	 */
+	protected final ProcessPath popOwnerPath()
+			throws ProcessIdentifierException {
 		// Empty string already, can't pop from here, throw exception
 		if (owner.isEmpty())
 			throw new ProcessIdentifierException(
 					"Attempt to pop a null owning process (empty string)");
-		// A single ID with no colon in, return the empty string
-		if (owner.lastIndexOf(':') < 0)
-			return "";
-		return owner.substring(0, owner.lastIndexOf(':'));
+		return getOwningProcessPath().getParent();
 	}
 
 	/**
@@ -140,14 +164,15 @@ public abstract class Event<EventType extends Event<?>> {
 	 */
 	protected final String pushOwner(String newLocalProcess)
 			throws ProcessIdentifierException {
-		if (newLocalProcess.contains(":"))
-			throw new ProcessIdentifierException("Can't push '"
-					+ newLocalProcess + "' as it contains a ':' character");
-		if (owner.isEmpty())
-			// If the owner was the empty string we don't need to append the
-			// colon
-			return newLocalProcess;
-		return owner + ":" + newLocalProcess;
+		return pushOwnerPath(newLocalProcess).toString();
+	}
+
+	/**
+	 * As {@link #pushOwner(String)} but returning the structured form
+	 */
+	protected final ProcessPath pushOwnerPath(String newLocalProcess)
+			throws ProcessIdentifierException {
+		return getOwningProcessPath().child(newLocalProcess);
 	}
 
 	@Override
@@ -47,6 +47,11 @@ public abstract class IterationInternalEvent<EventType extends IterationInternal
 		super(owner, index, context);
 	}
 
+	protected IterationInternalEvent(ProcessPath owner, int[] index,
+			InvocationContext context) {
+		super(owner, index, context);
+	}
+
 	/**
 	 * Pop a previously pushed index array off the process name and append the
 	 * current index array to create the new index array. This is applied to a
@@ -70,13 +75,28 @@ public abstract class IterationInternalEvent<EventType extends IterationInternal
 	 * @return
 	 */
 	protected final String getPushedOwningProcess() {
-		StringBuilder sb = new StringBuilder(owner).append(":");
+		return getPushedOwningProcessPath().toString();
+	}
+
+	/**
+	 * As {@link #getPushedOwningProcess()} but returning the structured form
+	 */
+	protected final ProcessPath getPushedOwningProcessPath() {
+		StringBuilder sb = new StringBuilder();
 		String sep = "";
 		for (int idx : index) {
 			sb.append(sep).append(idx);
 			sep = ",";
 		}
-		return sb.toString();
+		return getOwningProcessPath().child(sb.toString());
+	}
+
+	/**
+	 * Helper method for the popIndex operation, returns the owning process
+	 * with the pushed index array removed
+	 */
+	protected final ProcessPath getPoppedOwningProcessPath() {
+		return getOwningProcessPath().getParent();
 	}
 
 	/**
@@ -89,8 +109,7 @@ public abstract class IterationInternalEvent<EventType extends IterationInternal
 	 * @return
 	 */
 	protected final int[] getPoppedIndex() {
-		int lastLocation = owner.lastIndexOf(':');
-		String indexArrayAsString = owner.substring(lastLocation + 1);
+		String indexArrayAsString = getOwningProcessPath().getLocalName();
 		String[] parts = indexArrayAsString.split(",");
 		int[] newIndexArray = new int[index.length + parts.length];
 		int pos = 0;
@@ -0,0 +1,225 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.invocation;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Structured form of an owning process identifier, the colon separated list of
+ * process names carried by every {@link Event}. Paths are interned, so there
+ * is exactly one instance for each identifier in use and they can be compared
+ * by identity; the hash code and the colon separated string form are computed
+ * once per path rather than once per event.
+ * <p>
+ * Moving to the parent is a field access and moving to a named child is a
+ * lookup by that name alone. Children are held weakly, so paths no longer
+ * used by any event are reclaimed.
+ */
+public final class ProcessPath {
+	/**
+	 * The empty path, parent of every top level process
+	 */
+	public static final ProcessPath ROOT = new ProcessPath(null, "");
+
+	private static final int INITIAL_PURGE_THRESHOLD = 64;
+
+	private final ProcessPath parent;
+	private final String name;
+	private final int depth;
+	private final int hash;
+	private volatile String identifier;
+	private volatile ConcurrentMap<String, WeakReference<ProcessPath>> children;
+	private int purgeThreshold = INITIAL_PURGE_THRESHOLD;
+
+	private ProcessPath(ProcessPath parent, String name) {
+		this.parent = parent;
+		this.name = name;
+		if (parent == null) {
+			depth = 0;
+			hash = 0;
+			identifier = "";
+		} else {
+			depth = parent.depth + 1;
+			hash = 31 * parent.hash + name.hashCode();
+		}
+	}
+
+	/**
+	 * The path for the given colon separated process identifier
+	 */
+	public static ProcessPath valueOf(String identifier) {
+		ProcessPath path = ROOT;
+		if (identifier.isEmpty())
+			return path;
+		int start = 0;
+		int end;
+		while ((end = identifier.indexOf(':', start)) >= 0) {
+			path = path.child(identifier.substring(start, end));
+			start = end + 1;
+		}
+		path = path.child(identifier.substring(start));
+		if (path.identifier == null)
+			// Reuse the caller's string rather than building an equal one
+			path.identifier = identifier;
+		return path;
+	}
+
+	/**
+	 * The path of the named process within this one
+	 * 
+	 * @throws ProcessIdentifierException
+	 *             if the name contains the ':' character
+	 */
+	public ProcessPath child(String localName) {
+		if (localName.indexOf(':') >= 0)
+			throw new ProcessIdentifierException("Can't push '" + localName
+					+ "' as it contains a ':' character");
+		ConcurrentMap<String, WeakReference<ProcessPath>> map = getChildren();
+		while (true) {
+			WeakReference<ProcessPath> ref = map.get(localName);
+			ProcessPath child = ref == null ? null : ref.get();
+			if (child != null)
+				return child;
+			child = new ProcessPath(this, localName);
+			WeakReference<ProcessPath> newRef = new WeakReference<>(child);
+			if (ref == null ? map.putIfAbsent(localName, newRef) == null : map
+					.replace(localName, ref, newRef)) {
+				if (ref == null)
+					purgeIfNeeded(map);
+				return child;
+			}
+		}
+	}
+
+	private ConcurrentMap<String, WeakReference<ProcessPath>> getChildren() {
+		ConcurrentMap<String, WeakReference<ProcessPath>> map = children;
+		if (map == null)
+			synchronized (this) {
+				map = children;
+				if (map == null)
+					children = map = new ConcurrentHashMap<>();
+			}
+		return map;
+	}
+
+	/**
+	 * Drop entries for reclaimed children whenever the map has doubled since
+	 * the last purge, keeping the cost amortised over insertions.
+	 */
+	private void purgeIfNeeded(
+			ConcurrentMap<String, WeakReference<ProcessPath>> map) {
+		if (map.size() < purgeThreshold)
+			return;
+		synchronized (this) {
+			if (map.size() < purgeThreshold)
+				return;
+			for (Iterator<WeakReference<ProcessPath>> i = map.values()
+					.iterator(); i.hasNext();)
+				if (i.next().get() == null)
+					i.remove();
+			purgeThreshold = Math.max(INITIAL_PURGE_THRESHOLD,
+					map.size() * 2);
+		}
+	}
+
+	/**
+	 * The enclosing path, or <code>null</code> for {@link #ROOT}
+	 */
+	public ProcessPath getParent() {
+		return parent;
+	}
+
+	/**
+	 * The last process name in the path, the empty string for {@link #ROOT}
+	 */
+	public String getLocalName() {
+		return name;
+	}
+
+	/**
+	 * The number of process names in the path
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+	public boolean isRoot() {
+		return parent == null;
+	}
+
+	/**
+	 * The process names in the path, outermost first
+	 */
+	public String[] getNames() {
+		String[] names = new String[depth];
+		ProcessPath path = this;
+		for (int i = depth - 1; i >= 0; i--) {
+			names[i] = path.name;
+			path = path.parent;
+		}
+		return names;
+	}
+
+	/**
+	 * The colon separated process identifier, the same instance each time
+	 */
+	@Override
+	public String toString() {
+		String s = identifier;
+		if (s == null) {
+			s = parent.isRoot() ? name : parent.toString() + ":" + name;
+			identifier = s;
+		}
+		return s;
+	}
+
+	/**
+	 * Paths are equal if they have the same process names. As paths are
+	 * interned this is normally decided by identity, comparing the names only
+	 * for a path that is no longer the interned one.
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (!(obj instanceof ProcessPath))
+			return false;
+		ProcessPath other = (ProcessPath) obj;
+		if (hash != other.hash || depth != other.depth)
+			return false;
+		ProcessPath path = this;
+		while (path != other) {
+			if (!path.name.equals(other.name))
+				return false;
+			path = path.parent;
+			other = other.parent;
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+}
@@ -0,0 +1,247 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.invocation;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * State held by a workflow component, such as a dispatch layer, an iteration
+ * strategy node or a crystalizer, for each owning process it's working on.
+ * <p>
+ * Entries are grouped by workflow run, that is by the first name in their
+ * {@link ProcessPath process path}, which is shared by the nested workflows
+ * of a run. When the run completes or is cancelled {@link #releaseRun(String)}
+ * drops its group from every map in one go, so state left behind by processes
+ * that never finished, or by components that never clean up, doesn't outlive
+ * the run. Components should still {@link #remove(String) remove} their state
+ * as soon as they're finished with a process.
+ * <p>
+ * State put for a run after it was released, by events arriving late, isn't
+ * kept, as nothing would release it again. The most recently released
+ * {@value #RELEASED_RUNS} runs are remembered for this.
+ * <p>
+ * Maps are safe for concurrent use; compound actions need either
+ * {@link #putIfAbsent(String, Object)} or the caller's own locking. The state
+ * itself isn't serialized, a deserialized map starts out empty.
+ * 
+ * @param <V>
+ *            type of the state held for each process
+ */
+public class ProcessStateMap<V> implements Serializable {
+	private static final long serialVersionUID = 1L;
+
+	/** All maps, held weakly as they live as long as their component */
+	private static final Set<ProcessStateMap<?>> maps = Collections
+			.newSetFromMap(new WeakHashMap<ProcessStateMap<?>, Boolean>());
+
+	/** Number of released runs remembered, oldest are forgotten first */
+	static final int RELEASED_RUNS = 1000;
+
+	/** Released runs, guarded by itself */
+	private static final Set<String> releasedRuns = Collections
+			.newSetFromMap(new LinkedHashMap<String, Boolean>() {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<String, Boolean> eldest) {
+					return size() > RELEASED_RUNS;
+				}
+			});
+
+	private transient ConcurrentMap<String, ConcurrentMap<String, V>> runs;
+
+	public ProcessStateMap() {
+		init();
+	}
+
+	private void init() {
+		runs = new ConcurrentHashMap<>();
+		synchronized (maps) {
+			maps.add(this);
+		}
+	}
+
+	private void readObject(ObjectInputStream in) throws IOException,
+			ClassNotFoundException {
+		in.defaultReadObject();
+		init();
+	}
+
+	/**
+	 * The name of the top level process of the owning process, identifying
+	 * its workflow run
+	 */
+	private static String runOf(String owningProcess) {
+		int colon = owningProcess.indexOf(':');
+		return colon < 0 ? owningProcess : owningProcess.substring(0, colon);
+	}
+
+	private static boolean isReleased(String run) {
+		synchronized (releasedRuns) {
+			return releasedRuns.contains(run);
+		}
+	}
+
+	/**
+	 * @return the state of the owning process's run, or <code>null</code> if
+	 *         there is none and either it mustn't be created or the run has
+	 *         been released
+	 */
+	private ConcurrentMap<String, V> run(String owningProcess, boolean create) {
+		String run = runOf(owningProcess);
+		ConcurrentMap<String, V> processes = runs.get(run);
+		if (processes == null && create && !isReleased(run)) {
+			ConcurrentMap<String, V> created = new ConcurrentHashMap<>();
+			processes = runs.putIfAbsent(run, created);
+			if (processes == null) {
+				processes = created;
+				// Lost a race with releaseRun, which may have missed it
+				if (isReleased(run)) {
+					release(run);
+					return null;
+				}
+			}
+		}
+		return processes;
+	}
+
+	public V get(String owningProcess) {
+		ConcurrentMap<String, V> processes = run(owningProcess, false);
+		return processes == null ? null : processes.get(owningProcess);
+	}
+
+	public boolean containsKey(String owningProcess) {
+		ConcurrentMap<String, V> processes = run(owningProcess, false);
+		return processes != null && processes.containsKey(owningProcess);
+	}
+
+	/**
+	 * @return <code>true</code> if state has been held for any process of the
+	 *         owning process's workflow run since the run was last released
+	 */
+	public boolean containsRun(String owningProcess) {
+		return runs.containsKey(runOf(owningProcess));
+	}
+
+	/**
+	 * @return the state previously held for the owning process, or
+	 *         <code>null</code> if there was none or the run has been released,
+	 *         in which case the state isn't kept
+	 */
+	public V put(String owningProcess, V state) {
+		ConcurrentMap<String, V> processes = run(owningProcess, true);
+		return processes == null ? null : processes.put(owningProcess, state);
+	}
+
+	/**
+	 * @return the state already held for the owning process, or
+	 *         <code>null</code> if the given state was added or the run has
+	 *         been released, in which case the state isn't kept
+	 */
+	public V putIfAbsent(String owningProcess, V state) {
+		ConcurrentMap<String, V> processes = run(owningProcess, true);
+		return processes == null ? null : processes.putIfAbsent(owningProcess,
+				state);
+	}
+
+	public V remove(String owningProcess) {
+		ConcurrentMap<String, V> processes = run(owningProcess, false);
+		return processes == null ? null : processes.remove(owningProcess);
+	}
+
+	/**
+	 * @return the number of processes state is held for
+	 */
+	public int size() {
+		int size = 0;
+		for (ConcurrentMap<String, V> processes : runs.values())
+			size += processes.size();
+		return size;
+	}
+
+	private static List<ProcessStateMap<?>> allMaps() {
+		synchronized (maps) {
+			return new ArrayList<ProcessStateMap<?>>(maps);
+		}
+	}
+
+	/**
+	 * Called with the state dropped by {@link #releaseRun(String)}. Override to
+	 * free resources held outside of memory, such as temporary files.
+	 * 
+	 * @param states
+	 *            the released state by owning process
+	 */
+	protected void released(Map<String, V> states) {
+	}
+
+	private void release(String run) {
+		ConcurrentMap<String, V> processes = runs.remove(run);
+		if (processes != null)
+			released(processes);
+	}
+
+	/**
+	 * Drop the state of all processes of a workflow run from every map, and
+	 * stop keeping any state put for it from now on.
+	 * 
+	 * @param owningProcess
+	 *            the top level process of the run, or any process within it
+	 */
+	public static void releaseRun(String owningProcess) {
+		String run = runOf(owningProcess);
+		synchronized (releasedRuns) {
+			releasedRuns.add(run);
+		}
+		for (ProcessStateMap<?> map : allMaps())
+			map.release(run);
+	}
+
+	/**
+	 * Gauge of the memory held for a workflow run.
+	 * 
+	 * @param owningProcess
+	 *            the top level process of the run, or any process within it
+	 * @return the number of processes of the run state is held for, summed
+	 *         over every map
+	 */
+	public static int getStateCount(String owningProcess) {
+		String run = runOf(owningProcess);
+		int count = 0;
+		for (ProcessStateMap<?> map : allMaps()) {
+			ConcurrentMap<String, ?> processes = map.runs.get(run);
+			if (processes != null)
+				count += processes.size();
+		}
+		return count;
+	}
+}
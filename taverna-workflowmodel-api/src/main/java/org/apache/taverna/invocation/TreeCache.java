@@ -17,79 +17,121 @@
 * under the License.
 */
 
+
 package org.apache.taverna.invocation;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.apache.taverna.workflowmodel.processor.activity.Job;
 
 /**
  * Tree cache for jobs waiting to be combined and dispatched down the iteration
  * system
+ * <p>
+ * Each level of the tree is a plain array indexed directly by the
+ * corresponding element of the job index, so lookups walk the index array by
+ * offset without copying it. Lookups share a read lock, insertions and cuts
+ * take the write lock.
  * 
  * @author Tom Oinn
  */
 public class TreeCache {
+	private static final int INITIAL_CHILDREN = 4;
+	private static final NamedNode[] NO_CHILDREN = new NamedNode[0];
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	private final Lock readLock = lock.readLock();
+	private final Lock writeLock = lock.writeLock();
 	private NamedNode root = null;
-	private int indexDepth = -1;
+	private volatile int indexDepth = -1;
 
 	/**
 	 * Show the tree structure, printing each node recursively
 	 */
 	@Override
-	public synchronized String toString() {
-		if (root == null)
-			return "No root node defined.";
-		StringBuilder sb = new StringBuilder();
-		printNode(root, sb, "");
-		return sb.toString();
+	public String toString() {
+		readLock.lock();
+		try {
+			if (root == null)
+				return "No root node defined.";
+			StringBuilder sb = new StringBuilder();
+			printNode(root, sb, "");
+			return sb.toString();
+		} finally {
+			readLock.unlock();
+		}
 	}
-	
-	private synchronized void printNode(NamedNode node, StringBuilder sb, String indent) {
+
+	private void printNode(NamedNode node, StringBuilder sb, String indent) {
 		sb.append(indent).append("Node (").append(node.contents).append(")\n");
 		String newIndent = indent + "  ";
-		for (NamedNode child : node.children)
-			if (child == null)
+		for (int i = 0; i < node.childCount; i++)
+			if (node.children[i] == null)
 				sb.append(newIndent).append("null\n");
 			else
-				printNode(child, sb, newIndent);
+				printNode(node.children[i], sb, newIndent);
 	}
-	
+
 	public class NamedNode {
 		public Job contents = null;
-		public List<NamedNode> children = new ArrayList<>();
+		private NamedNode[] children = NO_CHILDREN;
+		/** One more than the highest child position ever set */
+		private int childCount = 0;
 
 		public void insertJob(Job j) {
-			insertJobAt(j, j.getIndex());
+			insertJobAt(j, j.getIndex(), 0);
 		}
 
-		private void insertJobAt(Job j, int[] position) {
-			if (position.length == 0) {
-				this.contents = j;
-				return;
-			}
-			int firstIndex = position[0];
-			if (firstIndex >= children.size())
-				// Pad with blank NamedNode objects
-				for (int i = children.size(); i <= firstIndex; i++)
-					children.add(null);
-			NamedNode child = children.get(firstIndex);
-			if (child == null) {
-				child = new NamedNode();
-				children.set(firstIndex, child);
+		private void insertJobAt(Job j, int[] position, int offset) {
+			NamedNode node = this;
+			for (int i = offset; i < position.length; i++) {
+				int childIndex = position[i];
+				NamedNode child = node.childAt(childIndex);
+				if (child == null) {
+					child = new NamedNode();
+					node.setChild(childIndex, child);
+				}
+				node = child;
 			}
+			node.contents = j;
+		}
 
-			int[] newTarget = new int[position.length - 1];
-			for (int i = 1; i < position.length; i++)
-				newTarget[i - 1] = position[i];
-			child.insertJobAt(j, newTarget);
+		private void setChild(int i, NamedNode child) {
+			if (i >= children.length)
+				children = Arrays.copyOf(children,
+						Math.max(i + 1, Math.max(INITIAL_CHILDREN,
+								children.length * 2)));
+			children[i] = child;
+			if (i >= childCount)
+				childCount = i + 1;
 		}
 
 		public NamedNode childAt(int i) {
-			if (i >= children.size())
+			if (i >= childCount)
 				return null;
-			return children.get(i);
+			return children[i];
+		}
+
+		/**
+		 * The number of child positions of this node, one more than the
+		 * highest position a child has been inserted at. Positions below that
+		 * may hold <code>null</code>.
+		 */
+		public int getChildCount() {
+			return childCount;
+		}
+
+		/**
+		 * Remove all children of this node
+		 */
+		public void clearChildren() {
+			children = NO_CHILDREN;
+			childCount = 0;
 		}
 	}
 
@@ -111,20 +153,35 @@ public class TreeCache {
 	 * 
 	 * @param j
 	 */
-	public synchronized void insertJob(Job j) {
-		if (root == null)
-			root = new NamedNode();
-		indexDepth = j.getIndex().length;
-		root.insertJob(j);
+	public void insertJob(Job j) {
+		writeLock.lock();
+		try {
+			if (root == null)
+				root = new NamedNode();
+			indexDepth = j.getIndex().length;
+			root.insertJob(j);
+		} finally {
+			writeLock.unlock();
+		}
 	}
 
-	protected synchronized NamedNode nodeAt(int[] position) {
-		if (root == null)
-			return null;
+	protected NamedNode nodeAt(int[] position) {
+		readLock.lock();
+		try {
+			return nodeAt(position, position.length);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Find the node at the first <code>length</code> elements of the position,
+	 * the caller must hold a lock.
+	 */
+	private NamedNode nodeAt(int[] position, int length) {
 		NamedNode result = root;
-		int index = 0;
-		while (index < position.length && result != null)
-			result = result.childAt(position[index++]);
+		for (int index = 0; index < length && result != null; index++)
+			result = result.childAt(position[index]);
 		return result;
 	}
 
@@ -133,13 +190,21 @@ public class TreeCache {
 	 * 
 	 * @param indexArray
 	 */
-	public synchronized void cut(int[] indexArray) {
+	public void cut(int[] indexArray) {
+		writeLock.lock();
+		try {
+			cutAt(indexArray);
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private void cutAt(int[] indexArray) {
 		if (indexArray.length > 0) {
-			int[] newIndex = tail(indexArray);
-			NamedNode node = nodeAt(newIndex);
-			if (node != null
-					&& node.children.size() >= indexArray[indexArray.length - 1])
-				node.children.set(indexArray[indexArray.length - 1], null);
+			NamedNode node = nodeAt(indexArray, indexArray.length - 1);
+			int last = indexArray[indexArray.length - 1];
+			if (node != null && last < node.childCount)
+				node.children[last] = null;
 		}
 	}
 
@@ -147,20 +212,46 @@ public class TreeCache {
 	 * Recursively fetch contents of all nodes under the specified index array,
 	 * used by the prefix matching iteration strategy
 	 */
-	public synchronized List<Job> jobsWithPrefix(int[] prefix) {
+	public List<Job> jobsWithPrefix(int[] prefix) {
+		readLock.lock();
+		try {
+			return jobsUnder(prefix);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	/**
+	 * Fetch contents of all nodes under the specified index array as in
+	 * {@link #jobsWithPrefix(int[])} and {@link #cut(int[]) cut} the cache
+	 * there, as one atomic operation.
+	 */
+	public List<Job> removeJobsWithPrefix(int[] prefix) {
+		writeLock.lock();
+		try {
+			List<Job> jobs = jobsUnder(prefix);
+			cutAt(prefix);
+			return jobs;
+		} finally {
+			writeLock.unlock();
+		}
+	}
+
+	private List<Job> jobsUnder(int[] prefix) {
 		List<Job> jobs = new ArrayList<>();
-		NamedNode prefixNode = nodeAt(prefix);
+		NamedNode prefixNode = nodeAt(prefix, prefix.length);
 		if (prefixNode != null)
 			getJobsUnder(prefixNode, jobs);
 		return jobs;
 	}
 
-	private synchronized void getJobsUnder(NamedNode node, List<Job> jobs) {
+	private void getJobsUnder(NamedNode node, List<Job> jobs) {
 		if (node.contents != null)
 			jobs.add(node.contents);
 		else
-			for (NamedNode child : node.children)
-				getJobsUnder(child, jobs);
+			for (int i = 0; i < node.childCount; i++)
+				if (node.children[i] != null)
+					getJobsUnder(node.children[i], jobs);
 	}
 
 	/**
@@ -169,7 +260,7 @@ public class TreeCache {
 	 * @param location
 	 * @return whether the contents of the location are non null
 	 */
-	public synchronized boolean containsLocation(int[] location) {
+	public boolean containsLocation(int[] location) {
 		return (get(location) != null);
 	}
 
@@ -179,21 +270,13 @@ public class TreeCache {
 	 * @param location
 	 * @return Job at the specified location or null if no such job was found
 	 */
-	public synchronized Job get(int[] location) {
-		NamedNode n = nodeAt(location);
-		return (n == null ? null : n.contents);
-	}
-
-	/**
-	 * Chop the last index off an int[]
-	 * 
-	 * @param arg
-	 * @return
-	 */
-	private static int[] tail(int[] arg) {
-		int result[] = new int[arg.length - 1];
-		for (int i = 0; i < arg.length - 1; i++)
-			result[i] = arg[i];
-		return result;
+	public Job get(int[] location) {
+		readLock.lock();
+		try {
+			NamedNode n = nodeAt(location, location.length);
+			return (n == null ? null : n.contents);
+		} finally {
+			readLock.unlock();
+		}
 	}
 }
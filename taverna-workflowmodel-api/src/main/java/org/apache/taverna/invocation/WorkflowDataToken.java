@@ -45,16 +45,25 @@ public class WorkflowDataToken extends Event<WorkflowDataToken> {
 		this.dataRef = dataRef;
 	}
 
+	/**
+	 * As above, for a token owned by a {@link ProcessPath}
+	 */
+	public WorkflowDataToken(ProcessPath owningProcess, int[] index,
+			T2Reference dataRef, InvocationContext context) {
+		super(owningProcess, index, context);
+		this.dataRef = dataRef;
+	}
+
 	@Override
 	public WorkflowDataToken popOwningProcess()
 			throws ProcessIdentifierException {
-		return new WorkflowDataToken(popOwner(), index, dataRef, context);
+		return new WorkflowDataToken(popOwnerPath(), index, dataRef, context);
 	}
 
 	@Override
 	public WorkflowDataToken pushOwningProcess(String localProcessName)
 			throws ProcessIdentifierException {
-		return new WorkflowDataToken(pushOwner(localProcessName), index,
+		return new WorkflowDataToken(pushOwnerPath(localProcessName), index,
 				dataRef, context);
 	}
 
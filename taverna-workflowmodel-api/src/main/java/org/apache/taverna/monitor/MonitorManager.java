@@ -23,6 +23,8 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 
+import org.apache.taverna.lang.observer.AsynchronousMultiCaster;
+import org.apache.taverna.lang.observer.AsynchronousMultiCaster.OverflowPolicy;
 import org.apache.taverna.lang.observer.MultiCaster;
 import org.apache.taverna.lang.observer.Observable;
 import org.apache.taverna.lang.observer.Observer;
@@ -43,10 +45,24 @@ import org.apache.taverna.monitor.MonitorManager.MonitorMessage;
  * methods and variants.
  * <p>
  * To register a monitor, use {@link #addObserver(Observer)}.
+ * <p>
+ * Monitors are notified synchronously on the thread registering or
+ * deregistering the node, unless the system property
+ * {@value #ASYNCHRONOUS_PROPERTY} is <code>true</code>, in which case each
+ * monitor is notified in order on a background thread through an
+ * {@link AsynchronousMultiCaster}. The size of each monitor's queue, the
+ * number of messages delivered at a time and whether senders wait or messages
+ * are dropped when a queue is full are set by the {@value #CAPACITY_PROPERTY},
+ * {@value #BATCH_SIZE_PROPERTY} and {@value #OVERFLOW_PROPERTY} properties.
  * 
  * @author Stian Soiland-Reyes
  */
 public class MonitorManager implements Observable<MonitorMessage> {
+	public static final String ASYNCHRONOUS_PROPERTY = "taverna.monitor.asynchronous";
+	public static final String CAPACITY_PROPERTY = "taverna.monitor.capacity";
+	public static final String BATCH_SIZE_PROPERTY = "taverna.monitor.batchsize";
+	public static final String OVERFLOW_PROPERTY = "taverna.monitor.overflow";
+
 	private static MonitorManager instance;
 
 	/**
@@ -72,7 +88,18 @@ public class MonitorManager implements Observable<MonitorMessage> {
 		MonitorManager.instance = instance;
 	}
 
-	protected MultiCaster<MonitorMessage> multiCaster = new MultiCaster<>(this);
+	protected MultiCaster<MonitorMessage> multiCaster = createMultiCaster();
+
+	private MultiCaster<MonitorMessage> createMultiCaster() {
+		if (!Boolean.getBoolean(ASYNCHRONOUS_PROPERTY))
+			return new MultiCaster<>(this);
+		return new AsynchronousMultiCaster<>(this, Integer.getInteger(
+				CAPACITY_PROPERTY, AsynchronousMultiCaster.DEFAULT_CAPACITY),
+				Integer.getInteger(BATCH_SIZE_PROPERTY,
+						AsynchronousMultiCaster.DEFAULT_BATCH_SIZE),
+				OverflowPolicy.valueOf(System.getProperty(OVERFLOW_PROPERTY,
+						OverflowPolicy.BLOCK.name())));
+	}
 
 	/**
 	 * Protected constructor, use singleton access
@@ -90,6 +117,15 @@ public class MonitorManager implements Observable<MonitorMessage> {
 		multiCaster.addObserver(observer);
 	}
 
+	/**
+	 * Wait until all monitors have been notified of the messages sent so far.
+	 * Returns immediately if monitors are notified synchronously.
+	 */
+	public void flush() {
+		if (multiCaster instanceof AsynchronousMultiCaster)
+			((AsynchronousMultiCaster<MonitorMessage>) multiCaster).flush();
+	}
+
 	/**
 	 * Push new property get / set methods into the specified node. This is used
 	 * for monitor-able activities where we have to create the node in the state
@@ -125,7 +161,7 @@ public class MonitorManager implements Observable<MonitorMessage> {
 	 *            the identifier of the node to remove as a :-separated string
 	 */
 	public void deregisterNode(String owningProcessIdentifier) {
-		deregisterNode(owningProcessIdentifier.split(":"));
+		multiCaster.notify(new DeregisterNodeMessage(owningProcessIdentifier));
 	}
 
 	/**
@@ -183,7 +219,7 @@ public class MonitorManager implements Observable<MonitorMessage> {
 	 */
 	public void registerNode(Object workflowObject,
 			String owningProcessIdentifier) {
-		registerNode(workflowObject, owningProcessIdentifier.split(":"), null);
+		registerNode(workflowObject, owningProcessIdentifier, null);
 	}
 
 	/**
@@ -220,8 +256,10 @@ public class MonitorManager implements Observable<MonitorMessage> {
 	public void registerNode(Object workflowObject,
 			String owningProcessIdentifier,
 			Set<MonitorableProperty<?>> properties) {
-		registerNode(workflowObject, owningProcessIdentifier.split(":"),
-				properties);
+		if (properties == null)
+			properties = new HashSet<>();
+		multiCaster.notify(new RegisterNodeMessage(workflowObject,
+				owningProcessIdentifier, properties));
 	}
 
 	/**
@@ -330,23 +368,46 @@ public class MonitorManager implements Observable<MonitorMessage> {
 		public DeregisterNodeMessage(String[] owningProcess) {
 			super(owningProcess);
 		}
+
+		public DeregisterNodeMessage(String owningProcessIdentifier) {
+			super(owningProcessIdentifier);
+		}
 	}
 
 	/**
 	 * Common abstract superclass for all monitor messages. Identifies the
 	 * {@link #getOwningProcess() owning process}.
-	 * 
+	 * <p>
+	 * The owning process can be given either split or as a :-separated
+	 * identifier, and is converted to the other form only if asked for, once
+	 * per message however many monitors ask.
 	 */
 	public abstract class MonitorMessage {
-		private final String[] owningProcess;
+		private volatile String[] owningProcess;
+		private volatile String owningProcessIdentifier;
 
 		public MonitorMessage(String[] owningProcess) {
 			this.owningProcess = owningProcess;
 		}
 
+		public MonitorMessage(String owningProcessIdentifier) {
+			this.owningProcessIdentifier = owningProcessIdentifier;
+		}
+
 		public String[] getOwningProcess() {
+			if (owningProcess == null)
+				owningProcess = owningProcessIdentifier.split(":");
 			return owningProcess;
 		}
+
+		/**
+		 * The owning process as a :-separated identifier
+		 */
+		public String getOwningProcessIdentifier() {
+			if (owningProcessIdentifier == null)
+				owningProcessIdentifier = String.join(":", owningProcess);
+			return owningProcessIdentifier;
+		}
 	}
 
 	/**
@@ -366,6 +427,14 @@ public class MonitorManager implements Observable<MonitorMessage> {
 			this.properties = properties;
 		}
 
+		public RegisterNodeMessage(Object workflowObject,
+				String owningProcessIdentifier,
+				Set<MonitorableProperty<?>> properties) {
+			super(owningProcessIdentifier);
+			this.workflowObject = workflowObject;
+			this.properties = properties;
+		}
+
 		public Set<MonitorableProperty<?>> getProperties() {
 			return properties;
 		}
@@ -34,6 +34,7 @@ import static org.apache.taverna.workflowmodel.health.HealthCheck.NO_PROBLEM;
 import static org.apache.taverna.workflowmodel.health.HealthCheck.TIME_OUT;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.lang.ref.WeakReference;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
@@ -61,6 +62,8 @@ public abstract class RemoteHealthChecker implements HealthChecker<Object> {
 	public static final long ENDPOINT_EXPIRY_MILLIS = 30 * 1000; // 30 seconds
 	private static final Logger logger = Logger.getLogger(RemoteHealthChecker.class);
 	private static int timeout = 10000; // TODO Manage via bean?
+	/** Larger responses are closed rather than read to keep the connection */
+	private static final int MAX_DRAIN_BYTES = 64 * 1024;
 	private static long endpointExpiryMillis = ENDPOINT_EXPIRY_MILLIS;
 
 	public static int getTimeoutInSeconds() {
@@ -146,14 +149,7 @@ public abstract class RemoteHealthChecker implements HealthChecker<Object> {
 				httpConnection.connect();
 				responseCode = httpConnection.getResponseCode();
 				if (responseCode != HTTP_OK) {
-					try {
-						if ((connection != null)
-								&& (connection.getInputStream() != null))
-							connection.getInputStream().close();
-					} catch (IOException e) {
-						logger.info(
-								"Unable to close connection to " + endpoint, e);
-					}
+					release(httpConnection, endpoint);
 					connection = url.openConnection();
 					connection.setReadTimeout(timeout);
 					connection.setConnectTimeout(timeout);
@@ -202,13 +198,16 @@ public abstract class RemoteHealthChecker implements HealthChecker<Object> {
 			resultId = IO_PROBLEM;
 			ex = e;
 		} finally {
-			try {
-				if ((connection != null)
-						&& (connection.getInputStream() != null))
-					connection.getInputStream().close();
-			} catch (IOException e) {
-				logger.info("Unable to close connection to " + endpoint, e);
-			}
+			if (connection instanceof HttpURLConnection)
+				release((HttpURLConnection) connection, endpoint);
+			else
+				try {
+					if ((connection != null)
+							&& (connection.getInputStream() != null))
+						connection.getInputStream().close();
+				} catch (IOException e) {
+					logger.info("Unable to close connection to " + endpoint, e);
+				}
 		}
 		
 		VisitReport vr = new VisitReport(HealthCheck.getInstance(), activity, message,
@@ -224,6 +223,35 @@ public abstract class RemoteHealthChecker implements HealthChecker<Object> {
 		return vr;
 	}
 
+	/**
+	 * Reads what is left of a response, up to {@link #MAX_DRAIN_BYTES}, and
+	 * closes it. A connection is only returned to the JVM's keep-alive cache
+	 * (so the next check of the same host can skip connecting and the SSL
+	 * handshake) if its response, or error response, has been read to the
+	 * end.
+	 */
+	private static void release(HttpURLConnection connection, String endpoint) {
+		InputStream stream;
+		try {
+			stream = connection.getInputStream();
+		} catch (IOException e) {
+			stream = connection.getErrorStream();
+		}
+		if (stream == null)
+			return;
+		try {
+			byte[] buffer = new byte[4096];
+			int drained = 0;
+			int read;
+			while (drained < MAX_DRAIN_BYTES
+					&& (read = stream.read(buffer)) >= 0)
+				drained += read;
+			stream.close();
+		} catch (IOException e) {
+			logger.info("Unable to close connection to " + endpoint, e);
+		}
+	}
+
 	/**
 	 * A remote health-check is time consuming as it tries to contact an
 	 * external resource.
@@ -0,0 +1,84 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.workflowmodel.processor.activity;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs the work handed to {@link AsynchronousActivityCallback#requestRun(Runnable)}.
+ * <p>
+ * An executor placed as an entity in the
+ * {@link org.apache.taverna.invocation.InvocationContext InvocationContext} of a
+ * workflow run is used for all activity invocations of that run, so that a
+ * run submits tasks to a shared pool rather than spawning a thread per
+ * invocation. Implementations may route tasks to different pools depending on
+ * the activity being invoked.
+ */
+public interface ActivityExecutor {
+	/**
+	 * Submit a task on behalf of the given activity. The task is run with the
+	 * class loader of the activity as its context class loader.
+	 * 
+	 * @param activity
+	 *            the activity the task belongs to, or <code>null</code> if
+	 *            the task is not run on behalf of a particular activity
+	 * @param taskName
+	 *            a descriptive name for the task, typically used to name the
+	 *            thread while the task is running
+	 * @param task
+	 *            the task to run
+	 * @throws RejectedExecutionException
+	 *             if the executor has been shut down
+	 */
+	void execute(Activity<?> activity, String taskName, Runnable task)
+			throws RejectedExecutionException;
+
+	/**
+	 * Return the number of tasks submitted but not yet started.
+	 */
+	int getQueueDepth();
+
+	/**
+	 * Return the number of tasks currently running.
+	 */
+	int getActiveCount();
+
+	/**
+	 * Return the number of tasks submitted since this executor was created.
+	 */
+	long getSubmittedCount();
+
+	/**
+	 * Return the number of tasks that have finished running, successfully or
+	 * not.
+	 */
+	long getCompletedCount();
+
+	/**
+	 * Stop accepting new tasks. Tasks already submitted will still be run.
+	 */
+	void shutdown();
+
+	/**
+	 * Return <code>true</code> if {@link #shutdown()} has been called.
+	 */
+	boolean isShutdown();
+}
@@ -24,6 +24,7 @@ import java.util.Map;
 import org.apache.taverna.invocation.InvocationContext;
 import org.apache.taverna.invocation.IterationInternalEvent;
 import org.apache.taverna.invocation.ProcessIdentifierException;
+import org.apache.taverna.invocation.ProcessPath;
 import org.apache.taverna.reference.T2Reference;
 
 /**
@@ -49,7 +50,8 @@ public class Job extends IterationInternalEvent<Job> {
 	 */
 	@Override
 	public Job pushIndex() {
-		return new Job(getPushedOwningProcess(), new int[] {}, dataMap, context);
+		return new Job(getPushedOwningProcessPath(), new int[] {}, dataMap,
+				context);
 	}
 
 	/**
@@ -58,7 +60,7 @@ public class Job extends IterationInternalEvent<Job> {
 	 */
 	@Override
 	public Job popIndex() {
-		return new Job(owner.substring(0, owner.lastIndexOf(':')),
+		return new Job(getPoppedOwningProcessPath(),
 				getPoppedIndex(), dataMap, context);
 	}
 
@@ -89,6 +91,15 @@ public class Job extends IterationInternalEvent<Job> {
 		this.dataMap = data;
 	}
 
+	/**
+	 * As above, for a job owned by a {@link ProcessPath}
+	 */
+	public Job(ProcessPath owner, int[] index, Map<String, T2Reference> data,
+			InvocationContext context) {
+		super(owner, index, context);
+		this.dataMap = data;
+	}
+
 	/**
 	 * Show the owner, index array and data map in textual form for debugging
 	 * and any other purpose. Jobs appear in the form :
@@ -118,12 +129,13 @@ public class Job extends IterationInternalEvent<Job> {
 
 	@Override
 	public Job popOwningProcess() throws ProcessIdentifierException {
-		return new Job(popOwner(), index, dataMap, context);
+		return new Job(popOwnerPath(), index, dataMap, context);
 	}
 
 	@Override
 	public Job pushOwningProcess(String localProcessName)
 			throws ProcessIdentifierException {
-		return new Job(pushOwner(localProcessName), index, dataMap, context);
+		return new Job(pushOwnerPath(localProcessName), index, dataMap,
+				context);
 	}
 }
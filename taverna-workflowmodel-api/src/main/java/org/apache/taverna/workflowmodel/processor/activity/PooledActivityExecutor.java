@@ -0,0 +1,415 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.workflowmodel.processor.activity;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.taverna.invocation.InvocationContext;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Default {@link ActivityExecutor}, running activity tasks on virtual threads
+ * where the JVM supports them, or else on a bounded pool of platform threads.
+ * The queue of the pool is bounded too; once it is full, further tasks are run
+ * by the thread submitting them, which slows down the submitter rather than
+ * letting the queue grow without limit.
+ * <p>
+ * The number of concurrent tasks of a particular activity type can be limited
+ * with {@link #setActivityTypeLimit(Class, int)}, in which case tasks of that
+ * type are run on their own bounded pool.
+ * <p>
+ * The mode and pool size used by {@link #PooledActivityExecutor(String)} can
+ * be set with the system properties {@value #MODE_PROPERTY} (
+ * <code>virtual</code> or <code>pooled</code>), {@value #THREADS_PROPERTY} and
+ * {@value #QUEUE_PROPERTY}.
+ */
+public class PooledActivityExecutor implements ActivityExecutor {
+	public static final String MODE_PROPERTY = "taverna.activity.executor";
+	public static final String THREADS_PROPERTY = "taverna.activity.executor.threads";
+	public static final String QUEUE_PROPERTY = "taverna.activity.executor.queue";
+	public static final int DEFAULT_THREADS = Math.max(32, 8 * Runtime
+			.getRuntime().availableProcessors());
+	public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+	private static final long KEEP_ALIVE_SECONDS = 60;
+	private static Logger logger = Logger
+			.getLogger(PooledActivityExecutor.class);
+	private static PooledActivityExecutor sharedInstance;
+
+	public enum Mode {
+		/** One virtual thread per task, requires Java 21 or later */
+		VIRTUAL,
+		/** A bounded pool of platform threads */
+		POOLED
+	}
+
+	/**
+	 * Get the JVM-wide executor used for activity invocations that have no
+	 * executor in their invocation context.
+	 */
+	public static synchronized PooledActivityExecutor getSharedInstance() {
+		if (sharedInstance == null)
+			sharedInstance = new PooledActivityExecutor("activity",
+					getDefaultMode(), getDefaultThreads(), true);
+		return sharedInstance;
+	}
+
+	/**
+	 * Find the executor to use within the given invocation context, which is
+	 * the first {@link ActivityExecutor} entity of the context that has not
+	 * been shut down, or the {@link #getSharedInstance() shared executor}.
+	 * Runs whose caller doesn't provide an executor thus share one, so that
+	 * neither idle threads nor queued tasks pile up per run.
+	 */
+	public static ActivityExecutor getExecutor(InvocationContext context) {
+		if (context != null) {
+			List<ActivityExecutor> executors = context
+					.getEntities(ActivityExecutor.class);
+			for (ActivityExecutor executor : executors)
+				if (!executor.isShutdown())
+					return executor;
+		}
+		return getSharedInstance();
+	}
+
+	public static Mode getDefaultMode() {
+		String mode = System.getProperty(MODE_PROPERTY);
+		if (mode == null || mode.isEmpty())
+			return Mode.VIRTUAL;
+		try {
+			return Mode.valueOf(mode.trim().toUpperCase());
+		} catch (IllegalArgumentException e) {
+			logger.warn("Unknown activity executor mode " + mode
+					+ ", using " + Mode.POOLED);
+			return Mode.POOLED;
+		}
+	}
+
+	public static int getDefaultThreads() {
+		Integer threads = Integer.getInteger(THREADS_PROPERTY);
+		if (threads == null || threads < 1)
+			return DEFAULT_THREADS;
+		return threads;
+	}
+
+	public static int getDefaultQueueCapacity() {
+		Integer capacity = Integer.getInteger(QUEUE_PROPERTY);
+		if (capacity == null || capacity < 1)
+			return DEFAULT_QUEUE_CAPACITY;
+		return capacity;
+	}
+
+	private final String name;
+	private final int maxThreads;
+	private final int queueCapacity;
+	private final boolean daemon;
+	private final Mode mode;
+	private final ExecutorService defaultPool;
+	private final Map<String, Integer> activityTypeLimits = new ConcurrentHashMap<>();
+	private final ConcurrentMap<String, ExecutorService> activityTypePools = new ConcurrentHashMap<>();
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong started = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private volatile boolean shutdown = false;
+
+	/**
+	 * Create an executor using the default mode, number of threads and queue
+	 * capacity, with daemon threads.
+	 * 
+	 * @param name
+	 *            the name of the executor, used as a prefix for thread names
+	 */
+	public PooledActivityExecutor(String name) {
+		this(name, getDefaultMode(), getDefaultThreads(), true);
+	}
+
+	/**
+	 * Create an executor using the default queue capacity.
+	 * 
+	 * @see #PooledActivityExecutor(String, Mode, int, int, boolean)
+	 */
+	public PooledActivityExecutor(String name, Mode mode, int maxThreads,
+			boolean daemon) {
+		this(name, mode, maxThreads, getDefaultQueueCapacity(), daemon);
+	}
+
+	/**
+	 * Create an executor.
+	 * 
+	 * @param name
+	 *            the name of the executor, used as a prefix for thread names
+	 * @param mode
+	 *            the preferred mode, {@link Mode#VIRTUAL} falls back to
+	 *            {@link Mode#POOLED} if virtual threads are not available
+	 * @param maxThreads
+	 *            the maximum number of platform threads in
+	 *            {@link Mode#POOLED} mode
+	 * @param queueCapacity
+	 *            the maximum number of tasks waiting for a platform thread,
+	 *            further tasks are run by the submitting thread
+	 * @param daemon
+	 *            whether platform threads should be daemon threads
+	 */
+	public PooledActivityExecutor(String name, Mode mode, int maxThreads,
+			int queueCapacity, boolean daemon) {
+		if (maxThreads < 1)
+			throw new IllegalArgumentException(
+					"Maximum number of threads must be positive, not "
+							+ maxThreads);
+		if (queueCapacity < 1)
+			throw new IllegalArgumentException(
+					"Queue capacity must be positive, not " + queueCapacity);
+		this.name = name;
+		this.maxThreads = maxThreads;
+		this.queueCapacity = queueCapacity;
+		this.daemon = daemon;
+		ExecutorService pool = null;
+		if (mode == Mode.VIRTUAL)
+			pool = createVirtualThreadPool(name);
+		if (pool == null) {
+			mode = Mode.POOLED;
+			pool = createPlatformThreadPool(name, maxThreads);
+		}
+		this.mode = mode;
+		this.defaultPool = pool;
+	}
+
+	/**
+	 * Return the mode in use, which is {@link Mode#POOLED} if virtual threads
+	 * were requested but are not available.
+	 */
+	public Mode getMode() {
+		return mode;
+	}
+
+	public int getMaxThreads() {
+		return maxThreads;
+	}
+
+	public int getQueueCapacity() {
+		return queueCapacity;
+	}
+
+	/**
+	 * Limit the number of concurrently running tasks of activities of the given
+	 * type. Tasks of that type are run on a separate pool of at most
+	 * <code>maxThreads</code> platform threads. This should be set before any
+	 * task of that activity type is submitted.
+	 */
+	@SuppressWarnings("rawtypes")
+	public void setActivityTypeLimit(Class<? extends Activity> activityType,
+			int maxThreads) {
+		if (maxThreads < 1)
+			throw new IllegalArgumentException(
+					"Maximum number of threads must be positive, not "
+							+ maxThreads);
+		activityTypeLimits.put(activityType.getName(), maxThreads);
+	}
+
+	@Override
+	public void execute(Activity<?> activity, String taskName, Runnable task)
+			throws RejectedExecutionException {
+		if (shutdown)
+			throw new RejectedExecutionException("Activity executor " + name
+					+ " has been shut down");
+		ExecutorService pool = getPool(activity);
+		submitted.incrementAndGet();
+		try {
+			pool.execute(new ActivityTask(activity, taskName, task));
+		} catch (RejectedExecutionException e) {
+			submitted.decrementAndGet();
+			throw e;
+		}
+	}
+
+	private ExecutorService getPool(Activity<?> activity) {
+		if (activity == null || activityTypeLimits.isEmpty())
+			return defaultPool;
+		String activityType = activity.getClass().getName();
+		Integer limit = activityTypeLimits.get(activityType);
+		if (limit == null)
+			return defaultPool;
+		ExecutorService pool = activityTypePools.get(activityType);
+		if (pool == null) {
+			ExecutorService newPool = createPlatformThreadPool(name + "-"
+					+ activity.getClass().getSimpleName(), limit);
+			pool = activityTypePools.putIfAbsent(activityType, newPool);
+			if (pool == null)
+				pool = newPool;
+			else
+				newPool.shutdown();
+		}
+		return pool;
+	}
+
+	@Override
+	public int getQueueDepth() {
+		return (int) (submitted.get() - started.get());
+	}
+
+	@Override
+	public int getActiveCount() {
+		return (int) (started.get() - completed.get());
+	}
+
+	@Override
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+	@Override
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+		defaultPool.shutdown();
+		for (ExecutorService pool : activityTypePools.values())
+			pool.shutdown();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public String toString() {
+		return getClass().getSimpleName() + " " + name + " (" + mode
+				+ ", queued=" + getQueueDepth() + ", active="
+				+ getActiveCount() + ", completed=" + getCompletedCount()
+				+ ")";
+	}
+
+	private ExecutorService createPlatformThreadPool(final String poolName,
+			int threads) {
+		ThreadFactory threadFactory = new ThreadFactory() {
+			private final AtomicInteger threadCount = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, poolName + "-"
+						+ threadCount.incrementAndGet());
+				thread.setDaemon(daemon);
+				return thread;
+			}
+		};
+		ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads,
+				KEEP_ALIVE_SECONDS, SECONDS, new LinkedBlockingQueue<Runnable>(
+						queueCapacity), threadFactory, new RunOnCaller());
+		pool.allowCoreThreadTimeOut(true);
+		return pool;
+	}
+
+	/**
+	 * Create a thread-per-task executor of virtual threads through reflection,
+	 * as the API is not available to the Java version we compile against.
+	 * 
+	 * @return the executor, or <code>null</code> if virtual threads are not
+	 *         supported by this JVM
+	 */
+	private static ExecutorService createVirtualThreadPool(String poolName) {
+		try {
+			Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+			Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+			builder = builderClass.getMethod("name", String.class, long.class)
+					.invoke(builder, poolName + "-", 1L);
+			ThreadFactory threadFactory = (ThreadFactory) builderClass
+					.getMethod("factory").invoke(builder);
+			return (ExecutorService) Executors.class.getMethod(
+					"newThreadPerTaskExecutor", ThreadFactory.class).invoke(
+					null, threadFactory);
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			logger.debug("Virtual threads not available, using thread pool for "
+					+ poolName);
+			return null;
+		}
+	}
+
+	/**
+	 * Runs a task that did not fit in the queue on the submitting thread,
+	 * unless the pool has been shut down.
+	 */
+	private static class RunOnCaller implements RejectedExecutionHandler {
+		@Override
+		public void rejectedExecution(Runnable task, ThreadPoolExecutor pool) {
+			if (pool.isShutdown())
+				throw new RejectedExecutionException("Pool has been shut down");
+			task.run();
+		}
+	}
+
+	/**
+	 * Runs the task with the class loader of its activity as the context class
+	 * loader, renaming the thread for the duration of the task.
+	 */
+	private class ActivityTask implements Runnable {
+		private final Activity<?> activity;
+		private final String taskName;
+		private final Runnable task;
+
+		public ActivityTask(Activity<?> activity, String taskName,
+				Runnable task) {
+			this.activity = activity;
+			this.taskName = taskName;
+			this.task = task;
+		}
+
+		@Override
+		public void run() {
+			started.incrementAndGet();
+			Thread thread = Thread.currentThread();
+			String threadName = thread.getName();
+			ClassLoader contextClassLoader = thread.getContextClassLoader();
+			try {
+				if (taskName != null)
+					thread.setName(taskName);
+				if (activity != null)
+					thread.setContextClassLoader(activity.getClass()
+							.getClassLoader());
+				task.run();
+			} catch (RuntimeException e) {
+				logger.warn("Uncaught exception in activity task " + taskName,
+						e);
+			} finally {
+				thread.setContextClassLoader(contextClassLoader);
+				thread.setName(threadName);
+				completed.incrementAndGet();
+			}
+		}
+	}
+}
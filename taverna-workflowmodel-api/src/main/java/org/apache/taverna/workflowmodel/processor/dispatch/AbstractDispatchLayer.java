@@ -35,8 +35,16 @@ import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchResult
  */
 public abstract class AbstractDispatchLayer<ConfigurationType> implements
 		DispatchLayer<ConfigurationType> {
+	/**
+	 * @deprecated Hold per process state in a
+	 *             {@link org.apache.taverna.invocation.ProcessStateMap} and
+	 *             remove it in {@link #finishedWith(String)}; the state of
+	 *             processes that never finish is released with their run.
+	 */
+	@Deprecated
 	protected static Timer cleanupTimer = new Timer(
 			"Dispatch stack state cleanup", true);
+	@Deprecated
 	protected static final int CLEANUP_DELAY_MS = 1000;
 
 	@Override
@@ -22,12 +22,11 @@ package org.apache.taverna.workflowmodel.processor.dispatch;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.log4j.Logger;
 
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchCompletionEvent;
 import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchErrorEvent;
 import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchJobEvent;
@@ -63,16 +62,15 @@ public abstract class AbstractErrorHandlerLayer<ConfigurationType> extends
 	}
 
 	/**
-	 * Map of process name -> list of state models. Note that all access to this
-	 * map must be synchronized on the stateMap, and access to the lists inside
-	 * it must be synchronized on the list.
+	 * Map of process name -> list of state models. Note that access to the
+	 * lists inside it must be synchronized on the list.
 	 * 
 	 * @see #addJobToStateList(DispatchJobEvent)
 	 * @see #removeJob(String, JobState)
 	 * @see #getJobsDefault(String)
 	 * @see #getJobsCopy(String)
 	 */
-	private Map<String, List<JobState>> stateMap = new HashMap<>();
+	private ProcessStateMap<List<JobState>> stateMap = new ProcessStateMap<>();
 
 	protected AbstractErrorHandlerLayer() {
 		super();
@@ -84,9 +82,7 @@ public abstract class AbstractErrorHandlerLayer<ConfigurationType> extends
 	 */
 	@Override
 	public void finishedWith(String owningProcess) {
-		synchronized (stateMap) {
-			stateMap.remove(owningProcess);
-		}
+		stateMap.remove(owningProcess);
 	}
 
 	/**
@@ -182,10 +178,7 @@ public abstract class AbstractErrorHandlerLayer<ConfigurationType> extends
 	 *         owning process,
 	 */
 	protected List<JobState> getJobsCopy(String owningProcess) {
-		List<JobState> activeJobs;
-		synchronized (stateMap) {
-			activeJobs = stateMap.get(owningProcess);
-		}
+		List<JobState> activeJobs = stateMap.get(owningProcess);
 		if (activeJobs == null) {
 			logger.warn("Could not find any active jobs for " + owningProcess);
 			return Collections.emptyList();
@@ -216,13 +209,12 @@ public abstract class AbstractErrorHandlerLayer<ConfigurationType> extends
 	 * @return List of {@link JobState}s for the owning process
 	 */
 	protected List<JobState> getJobsDefault(String owningProcess) {
-		List<JobState> stateList;
-		synchronized (stateMap) {
-			stateList = stateMap.get(owningProcess);
-			if (stateList == null) {
-				stateList = new ArrayList<>();
-				stateMap.put(owningProcess, stateList);
-			}
+		List<JobState> stateList = stateMap.get(owningProcess);
+		if (stateList == null) {
+			List<JobState> newList = new ArrayList<>();
+			stateList = stateMap.putIfAbsent(owningProcess, newList);
+			if (stateList == null)
+				stateList = newList;
 		}
 		return stateList;
 	}
@@ -236,10 +228,7 @@ public abstract class AbstractErrorHandlerLayer<ConfigurationType> extends
 	protected abstract JobState getStateObject(DispatchJobEvent jobEvent);
 
 	protected void removeJob(String owningProcess, JobState jobState) {
-		List<JobState> activeJobs;
-		synchronized (stateMap) {
-			activeJobs = stateMap.get(owningProcess);
-		}
+		List<JobState> activeJobs = stateMap.get(owningProcess);
 		if (activeJobs == null) {
 			logger.error("Could not find active jobs for " + owningProcess);
 			return;
@@ -21,6 +21,7 @@ package org.apache.taverna.workflowmodel.processor.dispatch.events;
 
 import org.apache.taverna.invocation.Event;
 import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.invocation.ProcessPath;
 import org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType;
 
 /**
@@ -35,6 +36,14 @@ public abstract class AbstractDispatchEvent<EventType extends AbstractDispatchEv
 		super(owner, index, context);
 	}
 
+	/**
+	 * As above, for a event owned by a {@link ProcessPath}
+	 */
+	protected AbstractDispatchEvent(ProcessPath owner, int[] index,
+			InvocationContext context) {
+		super(owner, index, context);
+	}
+
 	/**
 	 * Return the DispatchMessageType for this event object
 	 * 
@@ -22,6 +22,7 @@ package org.apache.taverna.workflowmodel.processor.dispatch.events;
 import static org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType.RESULT_COMPLETION;
 import org.apache.taverna.invocation.InvocationContext;
 import org.apache.taverna.invocation.ProcessIdentifierException;
+import org.apache.taverna.invocation.ProcessPath;
 import org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType;
 
 /**
@@ -46,17 +47,25 @@ public class DispatchCompletionEvent extends
 		super(owner, index, context);
 	}
 
+	/**
+	 * As above, for a completion event owned by a {@link ProcessPath}
+	 */
+	public DispatchCompletionEvent(ProcessPath owner, int[] index,
+			InvocationContext context) {
+		super(owner, index, context);
+	}
+
 	@Override
 	public DispatchCompletionEvent popOwningProcess()
 			throws ProcessIdentifierException {
-		return new DispatchCompletionEvent(popOwner(), index, context);
+		return new DispatchCompletionEvent(popOwnerPath(), index, context);
 	}
 
 	@Override
 	public DispatchCompletionEvent pushOwningProcess(String localProcessName)
 			throws ProcessIdentifierException {
-		return new DispatchCompletionEvent(pushOwner(localProcessName), index,
-				context);
+		return new DispatchCompletionEvent(pushOwnerPath(localProcessName),
+				index, context);
 	}
 
 	/**
@@ -22,6 +22,7 @@ package org.apache.taverna.workflowmodel.processor.dispatch.events;
 import static org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType.ERROR;
 import org.apache.taverna.invocation.InvocationContext;
 import org.apache.taverna.invocation.ProcessIdentifierException;
+import org.apache.taverna.invocation.ProcessPath;
 import org.apache.taverna.workflowmodel.processor.activity.Activity;
 import org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType;
 
@@ -60,6 +61,19 @@ public class DispatchErrorEvent extends
 		this.failedActivity = failedActivity;
 	}
 
+	/**
+	 * As above, for a error event owned by a {@link ProcessPath}
+	 */
+	public DispatchErrorEvent(ProcessPath owningProcess, int[] index,
+			InvocationContext context, String errorMessage, Throwable t,
+			DispatchErrorType failureType, Activity<?> failedActivity) {
+		super(owningProcess, index, context);
+		this.message = errorMessage;
+		this.cause = t;
+		this.failureType = failureType;
+		this.failedActivity = failedActivity;
+	}
+
 	/**
 	 * Return the type of failure, this is used by upstream dispatch layers to
 	 * determine whether they can reasonably handle the error message
@@ -97,14 +111,14 @@ public class DispatchErrorEvent extends
 	@Override
 	public DispatchErrorEvent popOwningProcess()
 			throws ProcessIdentifierException {
-		return new DispatchErrorEvent(popOwner(), index, context, message,
+		return new DispatchErrorEvent(popOwnerPath(), index, context, message,
 				cause, failureType, failedActivity);
 	}
 
 	@Override
 	public DispatchErrorEvent pushOwningProcess(String localProcessName)
 			throws ProcessIdentifierException {
-		return new DispatchErrorEvent(pushOwner(localProcessName), index,
+		return new DispatchErrorEvent(pushOwnerPath(localProcessName), index,
 				context, message, cause, failureType, failedActivity);
 	}
 
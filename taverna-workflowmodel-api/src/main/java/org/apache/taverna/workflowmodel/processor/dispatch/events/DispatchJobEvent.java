@@ -26,6 +26,7 @@ import java.util.Map;
 
 import org.apache.taverna.invocation.InvocationContext;
 import org.apache.taverna.invocation.ProcessIdentifierException;
+import org.apache.taverna.invocation.ProcessPath;
 import org.apache.taverna.reference.T2Reference;
 import org.apache.taverna.workflowmodel.processor.activity.Activity;
 import org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType;
@@ -58,6 +59,17 @@ public class DispatchJobEvent extends AbstractDispatchEvent<DispatchJobEvent> {
 		this.activities = activities;
 	}
 
+	/**
+	 * As above, for a job event owned by a {@link ProcessPath}
+	 */
+	public DispatchJobEvent(ProcessPath owningProcess, int[] index,
+			InvocationContext context, Map<String, T2Reference> data,
+			List<? extends Activity<?>> activities) {
+		super(owningProcess, index, context);
+		this.dataMap = data;
+		this.activities = activities;
+	}
+
 	/**
 	 * The actual data carried by this dispatch job event object is in the form
 	 * of a map, where the keys of the map are Strings identifying the named
@@ -84,14 +96,14 @@ public class DispatchJobEvent extends AbstractDispatchEvent<DispatchJobEvent> {
 	@Override
 	public DispatchJobEvent popOwningProcess()
 			throws ProcessIdentifierException {
-		return new DispatchJobEvent(popOwner(), index, context, dataMap,
+		return new DispatchJobEvent(popOwnerPath(), index, context, dataMap,
 				activities);
 	}
 
 	@Override
 	public DispatchJobEvent pushOwningProcess(String localProcessName)
 			throws ProcessIdentifierException {
-		return new DispatchJobEvent(pushOwner(localProcessName), index,
+		return new DispatchJobEvent(pushOwnerPath(localProcessName), index,
 				context, dataMap, activities);
 	}
 
@@ -27,6 +27,7 @@ import java.util.concurrent.BlockingQueue;
 import org.apache.taverna.invocation.InvocationContext;
 import org.apache.taverna.invocation.IterationInternalEvent;
 import org.apache.taverna.invocation.ProcessIdentifierException;
+import org.apache.taverna.invocation.ProcessPath;
 import org.apache.taverna.workflowmodel.processor.activity.Activity;
 import org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType;
 
@@ -62,6 +63,19 @@ public class DispatchJobQueueEvent extends
 		this.activities = activities;
 	}
 
+	/**
+	 * As above, for a job queue event owned by a {@link ProcessPath}
+	 */
+	public DispatchJobQueueEvent(
+			ProcessPath owner,
+			InvocationContext context,
+			BlockingQueue<IterationInternalEvent<? extends IterationInternalEvent<?>>> queue,
+			List<? extends Activity<?>> activities) {
+		super(owner, new int[] {}, context);
+		this.queue = queue;
+		this.activities = activities;
+	}
+
 	public BlockingQueue<IterationInternalEvent<? extends IterationInternalEvent<?>>> getQueue() {
 		return this.queue;
 	}
@@ -73,14 +87,15 @@ public class DispatchJobQueueEvent extends
 	@Override
 	public DispatchJobQueueEvent popOwningProcess()
 			throws ProcessIdentifierException {
-		return new DispatchJobQueueEvent(popOwner(), context, queue, activities);
+		return new DispatchJobQueueEvent(popOwnerPath(), context, queue,
+				activities);
 	}
 
 	@Override
 	public DispatchJobQueueEvent pushOwningProcess(String localProcessName)
 			throws ProcessIdentifierException {
-		return new DispatchJobQueueEvent(pushOwner(localProcessName), context,
-				queue, activities);
+		return new DispatchJobQueueEvent(pushOwnerPath(localProcessName),
+				context, queue, activities);
 	}
 
 	/**
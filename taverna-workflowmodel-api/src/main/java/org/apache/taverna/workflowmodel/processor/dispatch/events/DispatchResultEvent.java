@@ -25,6 +25,7 @@ import java.util.Map;
 
 import org.apache.taverna.invocation.InvocationContext;
 import org.apache.taverna.invocation.ProcessIdentifierException;
+import org.apache.taverna.invocation.ProcessPath;
 import org.apache.taverna.reference.T2Reference;
 import org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType;
 
@@ -62,6 +63,17 @@ public class DispatchResultEvent extends
 		this.streaming = streaming;
 	}
 
+	/**
+	 * As above, for a result event owned by a {@link ProcessPath}
+	 */
+	public DispatchResultEvent(ProcessPath owner, int[] index,
+			InvocationContext context, Map<String, T2Reference> data,
+			boolean streaming) {
+		super(owner, index, context);
+		this.dataMap = data;
+		this.streaming = streaming;
+	}
+
 	/**
 	 * If this result is part of a stream, that is to say multiple result events
 	 * from a single job event, then return true otherwise return false.
@@ -85,14 +97,14 @@ public class DispatchResultEvent extends
 	@Override
 	public DispatchResultEvent popOwningProcess()
 			throws ProcessIdentifierException {
-		return new DispatchResultEvent(popOwner(), index, context, dataMap,
+		return new DispatchResultEvent(popOwnerPath(), index, context, dataMap,
 				streaming);
 	}
 
 	@Override
 	public DispatchResultEvent pushOwningProcess(String localProcessName)
 			throws ProcessIdentifierException {
-		return new DispatchResultEvent(pushOwner(localProcessName), index,
+		return new DispatchResultEvent(pushOwnerPath(localProcessName), index,
 				context, dataMap, streaming);
 	}
 
@@ -19,13 +19,9 @@
 
 package org.apache.taverna.workflowmodel.processor.iteration;
 
-import static java.util.Collections.synchronizedMap;
-
-import java.util.HashMap;
-import java.util.Map;
-
 import org.apache.taverna.invocation.Completion;
 import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.workflowmodel.processor.activity.Job;
 
 /**
@@ -78,7 +74,7 @@ public abstract class CompletionHandlingAbstractIterationStrategyNode extends
 		}
 	}
 
-	private Map<String, CompletionState> ownerToCompletion = synchronizedMap(new HashMap<String, CompletionState>());
+	private ProcessStateMap<CompletionState> ownerToCompletion = new ProcessStateMap<>();
 
 	@Override
 	public final void receiveCompletion(int inputIndex, Completion completion) {
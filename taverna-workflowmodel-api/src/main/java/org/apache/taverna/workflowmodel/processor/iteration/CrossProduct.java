@@ -19,16 +19,12 @@
 
 package org.apache.taverna.workflowmodel.processor.iteration;
 
-import static java.util.Collections.synchronizedMap;
-
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 import org.apache.taverna.invocation.Completion;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.reference.T2Reference;
 import org.apache.taverna.workflowmodel.processor.activity.Job;
 
@@ -37,6 +33,12 @@ import org.apache.taverna.workflowmodel.processor.activity.Job;
  * a new job is received on index 'n' a set of jobs is emited corresponding to
  * the combination of the new job with all other jobs on input indices other
  * than 'n'.
+ * <p>
+ * Only the combinations contributed by the new job are generated, and each is
+ * pushed as soon as it has been built rather than collected first. The jobs
+ * seen on each input are cached as index and reference arrays; if more than
+ * {@link #getMaxCachedJobs()} jobs are cached in memory for an owning process
+ * the largest input cache is spilled to a temporary file.
  * 
  * @author Tom Oinn
  * @author David Withers
@@ -44,7 +46,43 @@ import org.apache.taverna.workflowmodel.processor.activity.Job;
 @SuppressWarnings("serial")
 public class CrossProduct extends
 		CompletionHandlingAbstractIterationStrategyNode {
-	private Map<String, List<Set<Job>>> ownerToCache = synchronizedMap(new HashMap<String, List<Set<Job>>>());
+	/**
+	 * System property giving the default for {@link #setMaxCachedJobs(int)}
+	 */
+	public static final String MAX_CACHED_JOBS_PROPERTY = "taverna.crossproduct.maxcachedjobs";
+	public static final int DEFAULT_MAX_CACHED_JOBS = 100000;
+
+	private ProcessStateMap<CrossProductInputCache[]> ownerToCache = new ProcessStateMap<CrossProductInputCache[]>() {
+		@Override
+		protected void released(Map<String, CrossProductInputCache[]> states) {
+			// Delete any spill files of processes that never completed
+			for (CrossProductInputCache[] caches : states.values())
+				clear(caches);
+		}
+	};
+	private int maxCachedJobs = Integer.getInteger(MAX_CACHED_JOBS_PROPERTY,
+			DEFAULT_MAX_CACHED_JOBS);
+
+	/**
+	 * Return the number of jobs that may be cached in memory for an owning
+	 * process before cached jobs are spilled to disk.
+	 */
+	public int getMaxCachedJobs() {
+		return maxCachedJobs;
+	}
+
+	/**
+	 * Set the number of jobs that may be cached in memory for an owning process
+	 * before cached jobs are spilled to disk, use {@link Integer#MAX_VALUE} to
+	 * never spill.
+	 */
+	public void setMaxCachedJobs(int maxCachedJobs) {
+		if (maxCachedJobs < 1)
+			throw new IllegalArgumentException(
+					"Maximum number of cached jobs must be positive, not "
+							+ maxCachedJobs);
+		this.maxCachedJobs = maxCachedJobs;
+	}
 
 	/**
 	 * Receive a job, emit jobs corresponding to the orthogonal join of the new
@@ -60,67 +98,114 @@ public class CrossProduct extends
 			pushJob(newJob);
 			return;
 		}
-		if (!ownerToCache.containsKey(newJob.getOwningProcess())) {
-			List<Set<Job>> perInputCache = new ArrayList<>();
-			for (int i = 0; i < getChildCount(); i++)
-				perInputCache.add(new HashSet<Job>());
-			ownerToCache.put(newJob.getOwningProcess(), perInputCache);
-		}
-		// Store the new job
-		List<Set<Job>> perInputCache = ownerToCache.get(newJob
+		CrossProductInputCache[] caches = ownerToCache.get(newJob
 				.getOwningProcess());
-		perInputCache.get(inputIndex).add(newJob);
+		if (caches == null) {
+			caches = new CrossProductInputCache[getChildCount()];
+			for (int i = 0; i < caches.length; i++)
+				caches[i] = new CrossProductInputCache();
+			ownerToCache.put(newJob.getOwningProcess(), caches);
+		}
 		/*
 		 * Find all combinations of the new job with all permutations of jobs in
-		 * the other caches. We could make this a lot easier by restricting it
-		 * to a single pair of inputs, this might be a more sane way to go in
-		 * the future...
+		 * the other caches, pushing each one as we go
 		 */
-		Set<Job> workingSet = perInputCache.get(0);
-		if (inputIndex == 0) {
-			workingSet = new HashSet<>();
-			workingSet.add(newJob);
+		CrossProductInputCache.Cursor[] cursors = new CrossProductInputCache.Cursor[caches.length];
+		try {
+			pushCombinations(0, inputIndex, newJob, caches, cursors, new int[0]);
+		} finally {
+			for (CrossProductInputCache.Cursor cursor : cursors)
+				if (cursor != null)
+					cursor.close();
 		}
-		for (int i = 1; i < getChildCount(); i++) {
-			Set<Job> thisSet = perInputCache.get(i);
-			if (i == inputIndex) {
-				/*
-				 * This is the cache for the new job, so we rewrite the set to a
-				 * single element one containing only the newly submitted job
-				 */
-				thisSet = new HashSet<>();
-				thisSet.add(newJob);
-			}
-			workingSet = merge(workingSet, thisSet);
-		}
-		for (Job outputJob : workingSet)
-			pushJob(outputJob);
 		if (canClearCache(inputIndex, newJob.getOwningProcess()))
 			/*
 			 * If we've seen completions for all the other indexes we don't need
 			 * to cache jobs for this index
 			 */
-			perInputCache.get(inputIndex).clear();
+			caches[inputIndex].clear();
+		else {
+			// Store the new job
+			caches[inputIndex].add(newJob);
+			enforceMemoryBudget(caches);
+		}
 	}
 
-	private Set<Job> merge(Set<Job> set1, Set<Job> set2) {
-		Set<Job> newSet = new HashSet<>();
-		for (Job job1 : set1)
-			for (Job job2 : set2) {
-				int[] newIndex = new int[job1.getIndex().length
-						+ job2.getIndex().length];
-				int j = 0;
-				for (int i = 0; i < job1.getIndex().length; i++)
-					newIndex[j++] = job1.getIndex()[i];
-				for (int i = 0; i < job2.getIndex().length; i++)
-					newIndex[j++] = job2.getIndex()[i];
-				Map<String, T2Reference> newDataMap = new HashMap<>();
-				newDataMap.putAll(job1.getData());
-				newDataMap.putAll(job2.getData());
-				newSet.add(new Job(job1.getOwningProcess(), newIndex,
-						newDataMap, job1.getContext()));
+	/**
+	 * Recursively combine the new job with each cached job of each of the
+	 * other inputs, in input order, pushing a job for each complete
+	 * combination.
+	 * 
+	 * @param input
+	 *            the input to combine at this level
+	 * @param index
+	 *            the index array built from the inputs before this one
+	 */
+	private void pushCombinations(int input, int inputIndex, Job newJob,
+			CrossProductInputCache[] caches,
+			CrossProductInputCache.Cursor[] cursors, int[] index) {
+		if (input == caches.length) {
+			pushJob(new Job(newJob.getOwningProcessPath(), index,
+					combinedData(inputIndex, newJob, caches, cursors),
+					newJob.getContext()));
+			return;
+		}
+		if (input == inputIndex) {
+			pushCombinations(input + 1, inputIndex, newJob, caches, cursors,
+					concat(index, newJob.getIndex()));
+			return;
+		}
+		CrossProductInputCache.Cursor cursor = caches[input].cursor(newJob
+				.getContext().getReferenceService());
+		cursors[input] = cursor;
+		while (cursor.next())
+			pushCombinations(input + 1, inputIndex, newJob, caches, cursors,
+					concat(index, cursor.getIndex()));
+		cursors[input] = null;
+	}
+
+	private Map<String, T2Reference> combinedData(int inputIndex,
+			Job newJob, CrossProductInputCache[] caches,
+			CrossProductInputCache.Cursor[] cursors) {
+		Map<String, T2Reference> data = new HashMap<>();
+		for (int input = 0; input < caches.length; input++) {
+			if (input == inputIndex) {
+				data.putAll(newJob.getData());
+				continue;
 			}
-		return newSet;
+			String[] names = caches[input].getNames();
+			T2Reference[] values = cursors[input].getValues();
+			for (int i = 0; i < values.length; i++)
+				if (values[i] != null)
+					data.put(names[i], values[i]);
+		}
+		return data;
+	}
+
+	private static int[] concat(int[] a, int[] b) {
+		int[] result = Arrays.copyOf(a, a.length + b.length);
+		System.arraycopy(b, 0, result, a.length, b.length);
+		return result;
+	}
+
+	/**
+	 * Spill the largest input caches to disk while more than
+	 * {@link #maxCachedJobs} jobs are held in memory.
+	 */
+	private void enforceMemoryBudget(CrossProductInputCache[] caches) {
+		int inMemory = 0;
+		for (CrossProductInputCache cache : caches)
+			inMemory += cache.inMemorySize();
+		while (inMemory > maxCachedJobs) {
+			CrossProductInputCache largest = caches[0];
+			for (CrossProductInputCache cache : caches)
+				if (cache.inMemorySize() > largest.inMemorySize())
+					largest = cache;
+			int largestSize = largest.inMemorySize();
+			if (largestSize == 0 || !largest.spill())
+				return;
+			inMemory -= largestSize;
+		}
 	}
 
 	@Override
@@ -130,7 +215,14 @@ public class CrossProduct extends
 
 	@Override
 	protected final void cleanUp(String owningProcess) {
-		ownerToCache.remove(owningProcess);
+		CrossProductInputCache[] caches = ownerToCache.remove(owningProcess);
+		if (caches != null)
+			clear(caches);
+	}
+
+	private static void clear(CrossProductInputCache[] caches) {
+		for (CrossProductInputCache cache : caches)
+			cache.clear();
 	}
 
 	/**
@@ -0,0 +1,298 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.workflowmodel.processor.iteration;
+
+import static java.io.File.createTempFile;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.apache.taverna.reference.ReferenceService;
+import org.apache.taverna.reference.T2Reference;
+import org.apache.taverna.workflowmodel.processor.activity.Job;
+
+import org.apache.log4j.Logger;
+
+/**
+ * The jobs seen so far on one input of a {@link CrossProduct} for a single
+ * owning process.
+ * <p>
+ * Rather than keeping the {@link Job} objects, the cache keeps the index array
+ * of each job and its data as an array of references aligned with the data
+ * names seen on this input. When asked to, the cache moves the jobs it holds
+ * in memory to a temporary file, from where they are read back, with the
+ * references rebuilt through the {@link ReferenceService}, whenever the cache
+ * is iterated over.
+ * <p>
+ * Instances are not thread safe, the owning {@link CrossProduct} serialises
+ * access to them.
+ */
+final class CrossProductInputCache {
+	private static final int INITIAL_CAPACITY = 16;
+	private static Logger logger = Logger
+			.getLogger(CrossProductInputCache.class);
+
+	/** Data names, references of each job are stored in this order */
+	private String[] names = new String[0];
+	private int[][] indexes = new int[INITIAL_CAPACITY][];
+	private T2Reference[][] values = new T2Reference[INITIAL_CAPACITY][];
+	private int size = 0;
+	private File spillFile;
+	private DataOutputStream spillOut;
+	private int spilled = 0;
+
+	/**
+	 * Add the index and data of a job to the cache
+	 */
+	void add(Job job) {
+		Map<String, T2Reference> data = job.getData();
+		T2Reference[] refs = new T2Reference[data.size()];
+		for (Entry<String, T2Reference> entry : data.entrySet()) {
+			int position = namePosition(entry.getKey());
+			if (position >= refs.length)
+				refs = Arrays.copyOf(refs, position + 1);
+			refs[position] = entry.getValue();
+		}
+		if (size == indexes.length) {
+			indexes = Arrays.copyOf(indexes, size * 2);
+			values = Arrays.copyOf(values, size * 2);
+		}
+		indexes[size] = job.getIndex();
+		values[size] = refs;
+		size++;
+	}
+
+	private int namePosition(String name) {
+		for (int i = 0; i < names.length; i++)
+			if (names[i].equals(name))
+				return i;
+		names = Arrays.copyOf(names, names.length + 1);
+		names[names.length - 1] = name;
+		return names.length - 1;
+	}
+
+	/**
+	 * Return the total number of cached jobs, in memory or spilled
+	 */
+	int size() {
+		return size + spilled;
+	}
+
+	/**
+	 * Return the number of cached jobs held in memory
+	 */
+	int inMemorySize() {
+		return size;
+	}
+
+	String[] getNames() {
+		return names;
+	}
+
+	/**
+	 * Append the jobs held in memory to the spill file of this cache, and
+	 * release them from memory.
+	 * 
+	 * @return <code>true</code> if the jobs could be spilled,
+	 *         <code>false</code> if they were kept in memory
+	 */
+	boolean spill() {
+		if (size == 0)
+			return true;
+		try {
+			if (spillOut == null) {
+				spillFile = createTempFile("taverna-crossproduct", ".cache");
+				spillOut = new DataOutputStream(new BufferedOutputStream(
+						new FileOutputStream(spillFile)));
+			}
+			for (int i = 0; i < size; i++) {
+				spillOut.writeInt(indexes[i].length);
+				for (int indexValue : indexes[i])
+					spillOut.writeInt(indexValue);
+				spillOut.writeInt(values[i].length);
+				for (T2Reference ref : values[i])
+					spillOut.writeUTF(ref == null ? "" : referenceString(ref));
+			}
+			spillOut.flush();
+		} catch (IOException e) {
+			logger.warn("Could not spill cross product cache to disk, "
+					+ "keeping " + size + " jobs in memory", e);
+			return false;
+		}
+		spilled += size;
+		indexes = new int[INITIAL_CAPACITY][];
+		values = new T2Reference[INITIAL_CAPACITY][];
+		size = 0;
+		return true;
+	}
+
+	/**
+	 * The string form of a reference, as parsed by
+	 * {@link ReferenceService#referenceFromString(String)}. This is built from
+	 * the parts of the reference rather than {@link T2Reference#toUri()} so
+	 * that it does not depend on how an implementation renders its URI.
+	 */
+	static String referenceString(T2Reference ref) {
+		StringBuilder sb = new StringBuilder("t2:");
+		switch (ref.getReferenceType()) {
+		case IdentifiedList:
+			sb.append("list//").append(ref.getNamespacePart()).append('?')
+					.append(ref.getLocalPart()).append('/')
+					.append(ref.containsErrors()).append('/')
+					.append(ref.getDepth());
+			break;
+		case ErrorDocument:
+			sb.append("error//").append(ref.getNamespacePart()).append('?')
+					.append(ref.getLocalPart()).append('/')
+					.append(ref.getDepth());
+			break;
+		default:
+			sb.append("ref//").append(ref.getNamespacePart()).append('?')
+					.append(ref.getLocalPart());
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Forget all cached jobs, deleting any spill file
+	 */
+	void clear() {
+		indexes = new int[INITIAL_CAPACITY][];
+		values = new T2Reference[INITIAL_CAPACITY][];
+		size = 0;
+		spilled = 0;
+		if (spillOut != null)
+			try {
+				spillOut.close();
+			} catch (IOException e) {
+				logger.warn("Could not close " + spillFile, e);
+			}
+		spillOut = null;
+		if (spillFile != null && !spillFile.delete())
+			logger.warn("Could not delete " + spillFile);
+		spillFile = null;
+	}
+
+	/**
+	 * Return a cursor over the cached jobs, spilled jobs first.
+	 * 
+	 * @param referenceService
+	 *            used to rebuild references of spilled jobs
+	 */
+	Cursor cursor(ReferenceService referenceService) {
+		return new Cursor(referenceService);
+	}
+
+	/**
+	 * Iterates over the cached jobs without creating a {@link Job} for each.
+	 * The arrays returned are only valid until the next call to
+	 * {@link #next()} and must not be modified.
+	 */
+	final class Cursor {
+		private final ReferenceService referenceService;
+		private final int spilledJobs = spilled;
+		private final int memoryJobs = size;
+		private int position = -1;
+		private DataInputStream in;
+		private int[] index;
+		private T2Reference[] refs;
+
+		private Cursor(ReferenceService referenceService) {
+			this.referenceService = referenceService;
+		}
+
+		/**
+		 * Move to the next cached job
+		 * 
+		 * @return <code>false</code> if there are no more jobs
+		 */
+		boolean next() {
+			position++;
+			if (position < spilledJobs) {
+				readSpilled();
+				return true;
+			}
+			close();
+			int memoryPosition = position - spilledJobs;
+			if (memoryPosition >= memoryJobs)
+				return false;
+			index = indexes[memoryPosition];
+			refs = values[memoryPosition];
+			return true;
+		}
+
+		private void readSpilled() {
+			try {
+				if (in == null)
+					in = new DataInputStream(new BufferedInputStream(
+							new FileInputStream(spillFile)));
+				index = new int[in.readInt()];
+				for (int i = 0; i < index.length; i++)
+					index[i] = in.readInt();
+				refs = new T2Reference[in.readInt()];
+				for (int i = 0; i < refs.length; i++) {
+					String ref = in.readUTF();
+					if (!ref.isEmpty())
+						refs[i] = referenceService.referenceFromString(ref);
+				}
+			} catch (IOException e) {
+				close();
+				throw new IllegalStateException(
+						"Could not read spilled cross product cache "
+								+ spillFile, e);
+			}
+		}
+
+		int[] getIndex() {
+			return index;
+		}
+
+		/**
+		 * References of the current job, in the order of
+		 * {@link CrossProductInputCache#getNames()}. The array may be shorter
+		 * than the names, and may contain <code>null</code> for names the job
+		 * has no data for.
+		 */
+		T2Reference[] getValues() {
+			return refs;
+		}
+
+		void close() {
+			if (in == null)
+				return;
+			try {
+				in.close();
+			} catch (IOException e) {
+				logger.warn("Could not close " + spillFile, e);
+			}
+			in = null;
+		}
+	}
+}
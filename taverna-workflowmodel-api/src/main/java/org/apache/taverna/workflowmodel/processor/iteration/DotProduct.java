@@ -19,12 +19,11 @@
 
 package org.apache.taverna.workflowmodel.processor.iteration;
 
-import static java.util.Collections.synchronizedMap;
-
 import java.util.HashMap;
 import java.util.Map;
 
 import org.apache.taverna.invocation.Completion;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.invocation.TreeCache;
 import org.apache.taverna.reference.T2Reference;
 import org.apache.taverna.workflowmodel.processor.activity.Job;
@@ -38,7 +37,7 @@ import org.apache.taverna.workflowmodel.processor.activity.Job;
  */
 @SuppressWarnings("serial")
 public class DotProduct extends CompletionHandlingAbstractIterationStrategyNode {
-	Map<String, TreeCache[]> ownerToCache = synchronizedMap(new HashMap<String, TreeCache[]>());
+	ProcessStateMap<TreeCache[]> ownerToCache = new ProcessStateMap<>();
 
 	@Override
 	public synchronized void innerReceiveJob(int inputIndex, Job newJob) {
@@ -51,8 +50,9 @@ public class DotProduct extends CompletionHandlingAbstractIterationStrategyNode
 			return;
 		}
 		String owningProcess = newJob.getOwningProcess();
-		if (!ownerToCache.containsKey(owningProcess)) {
-			TreeCache[] caches = new TreeCache[getChildCount()];
+		TreeCache[] caches = ownerToCache.get(owningProcess);
+		if (caches == null) {
+			caches = new TreeCache[getChildCount()];
 			for (int i = 0; i < getChildCount(); i++)
 				caches[i] = new TreeCache();
 			ownerToCache.put(owningProcess, caches);
@@ -62,18 +62,19 @@ public class DotProduct extends CompletionHandlingAbstractIterationStrategyNode
 		 * safe for now - we can make this more efficient by doing the
 		 * comparison first and only storing the job if required
 		 */
-		TreeCache[] caches = ownerToCache.get(owningProcess);
 		caches[inputIndex].insertJob(newJob);
 		int[] indexArray = newJob.getIndex();
 		boolean foundMatch = true;
 		Map<String, T2Reference> newDataMap = new HashMap<>();
-		for (TreeCache cache : caches)
-			if (cache.containsLocation(indexArray))
-				newDataMap.putAll(cache.get(indexArray).getData());
+		for (TreeCache cache : caches) {
+			Job cached = cache.get(indexArray);
+			if (cached != null)
+				newDataMap.putAll(cached.getData());
 			else
 				foundMatch = false;
+		}
 		if (foundMatch) {
-			Job j = new Job(owningProcess, indexArray, newDataMap, newJob
+			Job j = new Job(newJob.getOwningProcessPath(), indexArray, newDataMap, newJob
 					.getContext());
 			/*
 			 * Remove all copies of the job with this index from the cache,
@@ -67,18 +67,16 @@ public class PrefixDotProduct extends DotProduct {
 		 */
 		if (inputIndex == 0) {
 			int[] prefixIndexArray = newJob.getIndex();
-			List<Job> matchingJobs;
-			synchronized (caches[1]) {
-				// Match all jobs and remove them so other calls can't produce
-				// duplicates
-				matchingJobs = caches[1].jobsWithPrefix(prefixIndexArray);
-				caches[1].cut(prefixIndexArray);
-			}
+			// Match all jobs and remove them so other calls can't produce
+			// duplicates
+			List<Job> matchingJobs = caches[1]
+					.removeJobsWithPrefix(prefixIndexArray);
 			for (Job job : matchingJobs) {
 				Map<String, T2Reference> newDataMap = new HashMap<>();
 				newDataMap.putAll(newJob.getData());
 				newDataMap.putAll(job.getData());
-				Job mergedJob = new Job(owningProcess, job.getIndex(),
+				Job mergedJob = new Job(newJob.getOwningProcessPath(),
+						job.getIndex(),
 						newDataMap, newJob.getContext());
 				pushJob(mergedJob);
 			}
@@ -100,7 +98,8 @@ public class PrefixDotProduct extends DotProduct {
 					Map<String, T2Reference> newDataMap = new HashMap<>();
 					newDataMap.putAll(j.getData());
 					newDataMap.putAll(newJob.getData());
-					Job mergedJob = new Job(owningProcess, newJob.getIndex(),
+					Job mergedJob = new Job(newJob.getOwningProcessPath(),
+							newJob.getIndex(),
 							newDataMap, newJob.getContext());
 					pushJob(mergedJob);
 				}
@@ -0,0 +1,117 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.invocation;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.taverna.provenance.reporter.ProvenanceReporter;
+import org.apache.taverna.reference.ReferenceService;
+
+import org.junit.Test;
+
+public class TestProcessPath {
+	private static InvocationContext context = new InvocationContext() {
+		@Override
+		public <T> List<T> getEntities(Class<T> entityType) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void addEntity(Object entity) {
+		}
+
+		@Override
+		public ReferenceService getReferenceService() {
+			return null;
+		}
+
+		@Override
+		public ProvenanceReporter getProvenanceReporter() {
+			return null;
+		}
+	};
+
+	@Test
+	public void root() {
+		assertSame(ProcessPath.ROOT, ProcessPath.valueOf(""));
+		assertTrue(ProcessPath.ROOT.isRoot());
+		assertEquals(0, ProcessPath.ROOT.getDepth());
+		assertNull(ProcessPath.ROOT.getParent());
+		assertEquals("", ProcessPath.ROOT.toString());
+	}
+
+	@Test
+	public void interned() {
+		ProcessPath a = ProcessPath.valueOf("facade0:dataflow:proc");
+		ProcessPath b = ProcessPath.ROOT.child("facade0").child("dataflow")
+				.child("proc");
+		assertSame(a, b);
+		assertSame(a.getParent(), ProcessPath.valueOf("facade0:dataflow"));
+		assertEquals(a.hashCode(), b.hashCode());
+	}
+
+	@Test
+	public void equality() {
+		ProcessPath a = ProcessPath.valueOf("facade0:dataflow:proc");
+		assertEquals(a, ProcessPath.valueOf("facade0:dataflow:proc"));
+		assertFalse(a.equals(a.getParent()));
+		assertFalse(a.equals(ProcessPath.valueOf("facade0:dataflow:other")));
+		assertFalse(a.equals(ProcessPath.valueOf("facade1:dataflow:proc")));
+		assertFalse(a.equals("facade0:dataflow:proc"));
+		assertFalse(ProcessPath.ROOT.equals(null));
+	}
+
+	@Test
+	public void structure() {
+		ProcessPath path = ProcessPath.valueOf("facade0:dataflow:proc");
+		assertEquals("facade0:dataflow:proc", path.toString());
+		assertEquals("proc", path.getLocalName());
+		assertEquals(3, path.getDepth());
+		assertArrayEquals(new String[] { "facade0", "dataflow", "proc" },
+				path.getNames());
+		assertEquals("facade0:dataflow", path.getParent().toString());
+	}
+
+	@Test(expected = ProcessIdentifierException.class)
+	public void childWithColon() {
+		ProcessPath.ROOT.child("a:b");
+	}
+
+	@Test
+	public void pushAndPopOnEvents() {
+		WorkflowDataToken token = new WorkflowDataToken("facade0:dataflow",
+				new int[0], null, context);
+		WorkflowDataToken pushed = token.pushOwningProcess("proc");
+		assertEquals("facade0:dataflow:proc", pushed.getOwningProcess());
+		assertSame(ProcessPath.valueOf("facade0:dataflow:proc"),
+				pushed.getOwningProcessPath());
+		assertSame(token.getOwningProcessPath(), pushed.popOwningProcess()
+				.getOwningProcessPath());
+	}
+}
@@ -0,0 +1,100 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.invocation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TestProcessStateMap {
+	@Test
+	public void putGetRemove() {
+		ProcessStateMap<String> map = new ProcessStateMap<>();
+		assertNull(map.get("testRunA:wf:proc"));
+		assertNull(map.putIfAbsent("testRunA:wf:proc", "first"));
+		assertEquals("first", map.putIfAbsent("testRunA:wf:proc", "second"));
+		assertEquals("first", map.get("testRunA:wf:proc"));
+		assertTrue(map.containsKey("testRunA:wf:proc"));
+		assertEquals(1, map.size());
+		assertEquals("first", map.remove("testRunA:wf:proc"));
+		assertFalse(map.containsKey("testRunA:wf:proc"));
+		assertEquals(0, map.size());
+	}
+
+	@Test
+	public void releaseRun() {
+		ProcessStateMap<String> map = new ProcessStateMap<>();
+		ProcessStateMap<Integer> other = new ProcessStateMap<>();
+		map.put("testRunB:wf:proc", "a");
+		map.put("testRunB:wf:proc:testRunB2:nested:proc", "b");
+		other.put("testRunB:wf:other", 1);
+		map.put("testRunC:wf:proc", "c");
+		assertEquals(3, ProcessStateMap.getStateCount("testRunB"));
+		assertEquals(1, ProcessStateMap.getStateCount("testRunC:wf"));
+
+		ProcessStateMap.releaseRun("testRunB");
+		assertEquals(0, ProcessStateMap.getStateCount("testRunB"));
+		assertFalse(map.containsRun("testRunB:wf:proc"));
+		assertNull(map.get("testRunB:wf:proc:testRunB2:nested:proc"));
+		assertNull(other.get("testRunB:wf:other"));
+		// Other runs are untouched
+		assertEquals("c", map.get("testRunC:wf:proc"));
+		assertTrue(map.containsRun("testRunC"));
+	}
+
+	@Test
+	public void putAfterReleaseRunIsIgnored() {
+		ProcessStateMap<String> map = new ProcessStateMap<>();
+		map.put("testRunE:wf:proc", "a");
+		ProcessStateMap.releaseRun("testRunE");
+		assertNull(map.put("testRunE:wf:proc", "late"));
+		assertNull(map.putIfAbsent("testRunE:wf:other", "late"));
+		assertFalse(map.containsRun("testRunE"));
+		assertNull(map.get("testRunE:wf:proc"));
+		assertEquals(0, ProcessStateMap.getStateCount("testRunE"));
+		// Other runs still keep their state
+		map.put("testRunF:wf:proc", "f");
+		assertEquals("f", map.get("testRunF:wf:proc"));
+	}
+
+	@Test
+	public void releasedHook() {
+		final AtomicInteger released = new AtomicInteger();
+		ProcessStateMap<String> map = new ProcessStateMap<String>() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void released(Map<String, String> states) {
+				released.addAndGet(states.size());
+			}
+		};
+		map.put("testRunD:wf:a", "a");
+		map.put("testRunD:wf:b", "b");
+		map.remove("testRunD:wf:b");
+		ProcessStateMap.releaseRun("testRunD");
+		assertEquals(1, released.get());
+	}
+}
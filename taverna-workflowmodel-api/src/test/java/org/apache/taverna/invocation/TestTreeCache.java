@@ -0,0 +1,142 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.invocation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.apache.taverna.invocation.TreeCache.NamedNode;
+import org.apache.taverna.provenance.reporter.ProvenanceReporter;
+import org.apache.taverna.reference.ReferenceService;
+import org.apache.taverna.reference.T2Reference;
+import org.apache.taverna.workflowmodel.processor.activity.Job;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestTreeCache {
+	private static InvocationContext context = new InvocationContext() {
+		@Override
+		public <T> List<T> getEntities(Class<T> entityType) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void addEntity(Object entity) {
+		}
+
+		@Override
+		public ReferenceService getReferenceService() {
+			return null;
+		}
+
+		@Override
+		public ProvenanceReporter getProvenanceReporter() {
+			return null;
+		}
+	};
+
+	private TreeCache cache;
+
+	@Before
+	public void makeCache() {
+		cache = new TreeCache();
+	}
+
+	@Test
+	public void emptyCache() {
+		assertEquals(-1, cache.getIndexLength());
+		assertNull(cache.get(new int[] { 0 }));
+		assertNull(cache.nodeAt(new int[0]));
+		assertTrue(cache.jobsWithPrefix(new int[0]).isEmpty());
+		cache.cut(new int[] { 0, 1 });
+	}
+
+	@Test
+	public void insertAndGet() {
+		Job a = job(0, 2);
+		Job b = job(3, 1);
+		cache.insertJob(a);
+		cache.insertJob(b);
+		assertEquals(2, cache.getIndexLength());
+		assertSame(a, cache.get(new int[] { 0, 2 }));
+		assertSame(b, cache.get(new int[] { 3, 1 }));
+		assertTrue(cache.containsLocation(new int[] { 3, 1 }));
+		assertFalse(cache.containsLocation(new int[] { 3, 0 }));
+		assertFalse(cache.containsLocation(new int[] { 4, 1 }));
+		assertNull(cache.get(new int[] { 0 }));
+	}
+
+	@Test
+	public void childCountCoversGaps() {
+		cache.insertJob(job(5));
+		NamedNode root = cache.nodeAt(new int[0]);
+		assertEquals(6, root.getChildCount());
+		assertNull(root.childAt(2));
+		assertNull(root.childAt(6));
+		root.clearChildren();
+		assertEquals(0, root.getChildCount());
+		assertNull(cache.get(new int[] { 5 }));
+	}
+
+	@Test
+	public void prefixSkipsGaps() {
+		cache.insertJob(job(1, 0));
+		cache.insertJob(job(1, 3));
+		cache.insertJob(job(2, 0));
+		List<Job> jobs = cache.jobsWithPrefix(new int[] { 1 });
+		assertEquals(2, jobs.size());
+		assertEquals(3, cache.jobsWithPrefix(new int[0]).size());
+	}
+
+	@Test
+	public void cut() {
+		cache.insertJob(job(1, 0));
+		cache.insertJob(job(1, 1));
+		cache.cut(new int[] { 1, 0 });
+		assertNull(cache.get(new int[] { 1, 0 }));
+		assertTrue(cache.containsLocation(new int[] { 1, 1 }));
+		cache.cut(new int[] { 1, 7 });
+		cache.cut(new int[] { 1 });
+		assertFalse(cache.containsLocation(new int[] { 1, 1 }));
+	}
+
+	@Test
+	public void removeJobsWithPrefix() {
+		cache.insertJob(job(0, 0));
+		cache.insertJob(job(0, 1));
+		cache.insertJob(job(1, 0));
+		assertEquals(2, cache.removeJobsWithPrefix(new int[] { 0 }).size());
+		assertTrue(cache.jobsWithPrefix(new int[] { 0 }).isEmpty());
+		assertTrue(cache.containsLocation(new int[] { 1, 0 }));
+	}
+
+	private static Job job(int... index) {
+		return new Job("proc", index,
+				Collections.<String, T2Reference> emptyMap(), context);
+	}
+}
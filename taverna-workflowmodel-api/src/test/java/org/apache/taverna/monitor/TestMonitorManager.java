@@ -125,6 +125,23 @@ public class TestMonitorManager {
 		assertEquals("Another event was received", 1, testMonitor.getCounts());
 	}
 
+	@Test
+	public void owningProcessIdentifier() {
+		TestMonitor testMonitor = new TestMonitor();
+		monitorManager.addObserver(testMonitor);
+		monitorManager.registerNode("workflow object", "dataflow0:process4:7");
+		MonitorMessage lastMessage = testMonitor.lastMessage;
+		assertEquals("dataflow0:process4:7",
+				lastMessage.getOwningProcessIdentifier());
+		assertTrue("Owning process did not match", Arrays.equals(new String[] {
+				"dataflow0", "process4", "7" }, lastMessage.getOwningProcess()));
+
+		monitorManager.deregisterNode(new String[] { "dataflow0", "process4",
+				"7" });
+		assertEquals("dataflow0:process4:7",
+				testMonitor.lastMessage.getOwningProcessIdentifier());
+	}
+
 	public class TestMonitor implements Observer<MonitorManager.MonitorMessage> {
 
 		private int counts = 0;
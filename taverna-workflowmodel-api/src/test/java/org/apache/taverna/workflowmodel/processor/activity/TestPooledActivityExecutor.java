@@ -0,0 +1,222 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.workflowmodel.processor.activity;
+
+import static java.util.concurrent.TimeUnit.SECONDS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.taverna.reference.T2Reference;
+import org.apache.taverna.workflowmodel.processor.activity.PooledActivityExecutor.Mode;
+import org.junit.Test;
+
+public class TestPooledActivityExecutor {
+
+	public static class DummyActivity extends AbstractAsynchronousActivity<String> {
+		@Override
+		public void configure(String conf) {
+		}
+
+		@Override
+		public String getConfiguration() {
+			return null;
+		}
+
+		@Override
+		public void executeAsynch(Map<String, T2Reference> data,
+				AsynchronousActivityCallback callback) {
+		}
+	}
+
+	@Test
+	public void runsTasksOnPool() throws Exception {
+		PooledActivityExecutor executor = new PooledActivityExecutor("test",
+				Mode.POOLED, 2, true);
+		assertEquals(Mode.POOLED, executor.getMode());
+		final CountDownLatch done = new CountDownLatch(10);
+		for (int i = 0; i < 10; i++)
+			executor.execute(new DummyActivity(), "task" + i, new Runnable() {
+				@Override
+				public void run() {
+					done.countDown();
+				}
+			});
+		assertTrue(done.await(5, SECONDS));
+		assertEquals(10, executor.getSubmittedCount());
+		executor.shutdown();
+	}
+
+	@Test
+	public void setsContextClassLoaderAndName() throws Exception {
+		PooledActivityExecutor executor = new PooledActivityExecutor("test",
+				Mode.POOLED, 1, true);
+		final AtomicReference<ClassLoader> classLoader = new AtomicReference<>();
+		final AtomicReference<String> threadName = new AtomicReference<>();
+		final CountDownLatch done = new CountDownLatch(1);
+		executor.execute(new DummyActivity(), "myTask", new Runnable() {
+			@Override
+			public void run() {
+				classLoader.set(Thread.currentThread().getContextClassLoader());
+				threadName.set(Thread.currentThread().getName());
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(5, SECONDS));
+		assertSame(DummyActivity.class.getClassLoader(), classLoader.get());
+		assertEquals("myTask", threadName.get());
+		executor.shutdown();
+	}
+
+	@Test
+	public void queueDepth() throws Exception {
+		PooledActivityExecutor executor = new PooledActivityExecutor("test",
+				Mode.POOLED, 1, true);
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute(new DummyActivity(), "blocking", new Runnable() {
+			@Override
+			public void run() {
+				running.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		assertTrue(running.await(5, SECONDS));
+		final CountDownLatch done = new CountDownLatch(3);
+		for (int i = 0; i < 3; i++)
+			executor.execute(new DummyActivity(), "queued", new Runnable() {
+				@Override
+				public void run() {
+					done.countDown();
+				}
+			});
+		assertEquals(1, executor.getActiveCount());
+		assertEquals(3, executor.getQueueDepth());
+		release.countDown();
+		assertTrue(done.await(5, SECONDS));
+		executor.shutdown();
+	}
+
+	@Test
+	public void runsOnCallerWhenQueueFull() throws Exception {
+		PooledActivityExecutor executor = new PooledActivityExecutor("test",
+				Mode.POOLED, 1, 1, true);
+		assertEquals(1, executor.getQueueCapacity());
+		final CountDownLatch running = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		executor.execute(new DummyActivity(), "blocking", new Runnable() {
+			@Override
+			public void run() {
+				running.countDown();
+				try {
+					release.await();
+				} catch (InterruptedException e) {
+				}
+			}
+		});
+		assertTrue(running.await(5, SECONDS));
+		final CountDownLatch done = new CountDownLatch(2);
+		final AtomicReference<Thread> overflowThread = new AtomicReference<>();
+		executor.execute(new DummyActivity(), "queued", new Runnable() {
+			@Override
+			public void run() {
+				done.countDown();
+			}
+		});
+		executor.execute(new DummyActivity(), "overflow", new Runnable() {
+			@Override
+			public void run() {
+				overflowThread.set(Thread.currentThread());
+				done.countDown();
+			}
+		});
+		assertSame(Thread.currentThread(), overflowThread.get());
+		release.countDown();
+		assertTrue(done.await(5, SECONDS));
+		executor.shutdown();
+	}
+
+	@Test
+	public void defaultsToDaemonThreads() throws Exception {
+		PooledActivityExecutor executor = new PooledActivityExecutor("test");
+		final AtomicReference<Boolean> daemon = new AtomicReference<>();
+		final CountDownLatch done = new CountDownLatch(1);
+		executor.execute(new DummyActivity(), "task", new Runnable() {
+			@Override
+			public void run() {
+				daemon.set(Thread.currentThread().isDaemon());
+				done.countDown();
+			}
+		});
+		assertTrue(done.await(5, SECONDS));
+		assertTrue(daemon.get());
+		executor.shutdown();
+	}
+
+	@Test
+	public void activityTypeLimit() throws Exception {
+		PooledActivityExecutor executor = new PooledActivityExecutor("test",
+				Mode.VIRTUAL, 4, true);
+		executor.setActivityTypeLimit(DummyActivity.class, 1);
+		final AtomicInteger concurrent = new AtomicInteger();
+		final AtomicInteger maxConcurrent = new AtomicInteger();
+		final CountDownLatch done = new CountDownLatch(20);
+		for (int i = 0; i < 20; i++)
+			executor.execute(new DummyActivity(), "limited", new Runnable() {
+				@Override
+				public void run() {
+					int now = concurrent.incrementAndGet();
+					if (now > maxConcurrent.get())
+						maxConcurrent.set(now);
+					Thread.yield();
+					concurrent.decrementAndGet();
+					done.countDown();
+				}
+			});
+		assertTrue(done.await(5, SECONDS));
+		assertEquals(1, maxConcurrent.get());
+		executor.shutdown();
+	}
+
+	@Test(expected = RejectedExecutionException.class)
+	public void rejectsAfterShutdown() throws Exception {
+		PooledActivityExecutor executor = new PooledActivityExecutor("test",
+				Mode.POOLED, 1, true);
+		assertFalse(executor.isShutdown());
+		executor.shutdown();
+		assertTrue(executor.isShutdown());
+		executor.execute(new DummyActivity(), "late", new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+	}
+}
@@ -0,0 +1,235 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.workflowmodel.processor.iteration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.taverna.invocation.Completion;
+import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.provenance.reporter.ProvenanceReporter;
+import org.apache.taverna.reference.ReferenceService;
+import org.apache.taverna.reference.T2Reference;
+import org.apache.taverna.reference.T2ReferenceType;
+import org.apache.taverna.workflowmodel.processor.activity.Job;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test the jobs emitted by {@link CrossProduct}, with and without cached jobs
+ * spilled to disk.
+ */
+public class TestCrossProduct {
+	private static final String PROCESS = "proc";
+
+	private List<Job> jobs;
+	private CrossProduct crossProduct;
+
+	private ReferenceService referenceService = (ReferenceService) Proxy
+			.newProxyInstance(getClass().getClassLoader(),
+					new Class<?>[] { ReferenceService.class },
+					new InvocationHandler() {
+						@Override
+						public Object invoke(Object proxy, Method method,
+								Object[] args) {
+							if (method.getName().equals("referenceFromString"))
+								return new DummyReference(((String) args[0])
+										.split("\\?")[1]);
+							throw new UnsupportedOperationException(method
+									.getName());
+						}
+					});
+
+	private InvocationContext context = new InvocationContext() {
+		@Override
+		public <T> List<T> getEntities(Class<T> entityType) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void addEntity(Object entity) {
+		}
+
+		@Override
+		public ReferenceService getReferenceService() {
+			return referenceService;
+		}
+
+		@Override
+		public ProvenanceReporter getProvenanceReporter() {
+			return null;
+		}
+	};
+
+	@Before
+	public void makeNodes() throws Exception {
+		jobs = new ArrayList<>();
+		crossProduct = new CrossProduct();
+		crossProduct.setParent(new RecordingTerminalNode());
+		crossProduct.insert(new NamedInputPortNode("a", 0));
+		crossProduct.insert(new NamedInputPortNode("b", 0));
+	}
+
+	@Test
+	public void allCombinations() throws Exception {
+		feed();
+		assertCombinations();
+	}
+
+	@Test
+	public void allCombinationsWhenSpilled() throws Exception {
+		crossProduct.setMaxCachedJobs(1);
+		feed();
+		assertCombinations();
+	}
+
+	@Test
+	public void onlyNewCombinationsEmitted() throws Exception {
+		crossProduct.receiveJob(0, job("a", 0));
+		crossProduct.receiveJob(1, job("b", 0));
+		crossProduct.receiveJob(1, job("b", 1));
+		assertEquals(2, jobs.size());
+		crossProduct.receiveJob(0, job("a", 1));
+		assertEquals(4, jobs.size());
+		assertTrue(Arrays.equals(new int[] { 1, 0 }, jobs.get(2).getIndex()));
+		assertTrue(Arrays.equals(new int[] { 1, 1 }, jobs.get(3).getIndex()));
+	}
+
+	@Test
+	public void referenceString() throws Exception {
+		assertEquals("t2:ref//test?a1",
+				CrossProductInputCache.referenceString(reference("a", 1)));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void maxCachedJobsMustBePositive() throws Exception {
+		crossProduct.setMaxCachedJobs(0);
+	}
+
+	private void feed() {
+		for (int i = 0; i < 3; i++) {
+			crossProduct.receiveJob(0, job("a", i));
+			crossProduct.receiveJob(1, job("b", i));
+		}
+	}
+
+	private void assertCombinations() {
+		assertEquals(9, jobs.size());
+		Set<String> seen = new HashSet<>();
+		for (Job job : jobs) {
+			int[] index = job.getIndex();
+			assertEquals(2, index.length);
+			assertEquals(reference("a", index[0]), job.getData().get("a"));
+			assertEquals(reference("b", index[1]), job.getData().get("b"));
+			seen.add(Arrays.toString(index));
+		}
+		assertEquals(9, seen.size());
+	}
+
+	private Job job(String name, int i) {
+		return new Job(PROCESS, new int[] { i }, Collections.singletonMap(
+				name, reference(name, i)), context);
+	}
+
+	private T2Reference reference(String name, int i) {
+		return new DummyReference(name + i);
+	}
+
+	private static final class DummyReference implements T2Reference {
+		private final String localPart;
+
+		DummyReference(String localPart) {
+			this.localPart = localPart;
+		}
+
+		@Override
+		public T2ReferenceType getReferenceType() {
+			return T2ReferenceType.ReferenceSet;
+		}
+
+		@Override
+		public int getDepth() {
+			return 0;
+		}
+
+		@Override
+		public boolean containsErrors() {
+			return false;
+		}
+
+		@Override
+		public String getNamespacePart() {
+			return "test";
+		}
+
+		@Override
+		public String getLocalPart() {
+			return localPart;
+		}
+
+		@Override
+		public URI toUri() {
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			return other instanceof DummyReference
+					&& ((DummyReference) other).localPart.equals(localPart);
+		}
+
+		@Override
+		public int hashCode() {
+			return localPart.hashCode();
+		}
+	}
+
+	@SuppressWarnings("serial")
+	private final class RecordingTerminalNode extends TerminalNode {
+		@Override
+		public int getIterationDepth(Map<String, Integer> inputDepths)
+				throws IterationTypeMismatchException {
+			return 0;
+		}
+
+		@Override
+		public void receiveCompletion(int inputIndex, Completion completion) {
+		}
+
+		@Override
+		public void receiveJob(int inputIndex, Job newJob) {
+			jobs.add(newJob);
+		}
+	}
+}
@@ -29,12 +29,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
-import java.util.TimerTask;
-import java.util.concurrent.ConcurrentHashMap;
 
 import com.fasterxml.jackson.databind.JsonNode;
 
 import org.apache.taverna.invocation.Event;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.monitor.MonitorableProperty;
 import org.apache.taverna.monitor.NoSuchPropertyException;
 import org.apache.taverna.reference.ErrorDocument;
@@ -83,16 +82,19 @@ public class ErrorBounce extends AbstractDispatchLayer<JsonNode> implements
 	 * Track the number of reflected and translated errors handled by this error
 	 * bounce instance
 	 */
-	private Map<String, ErrorBounceState> state = new ConcurrentHashMap<>();
+	private ProcessStateMap<ErrorBounceState> state = new ProcessStateMap<>();
 
 	private int totalTranslatedErrors = 0;
 	private int totalReflectedErrors = 0;
 
-	private synchronized ErrorBounceState getState(String owningProcess) {
-		if (state.containsKey(owningProcess))
-			return state.get(owningProcess);
-		ErrorBounceState ebs = new ErrorBounceState();
-		state.put(owningProcess, ebs);
+	private ErrorBounceState getState(String owningProcess) {
+		ErrorBounceState ebs = state.get(owningProcess);
+		if (ebs == null) {
+			ErrorBounceState newState = new ErrorBounceState();
+			ebs = state.putIfAbsent(owningProcess, newState);
+			if (ebs == null)
+				ebs = newState;
+		}
 		return ebs;
 	}
 
@@ -141,8 +143,7 @@ public class ErrorBounce extends AbstractDispatchLayer<JsonNode> implements
 
 		Processor p = dispatchStack.getProcessor();
 		Map<String, T2Reference> outputDataMap = new HashMap<>();
-		String[] owningProcessArray = event.getOwningProcess().split(":");
-		String processor = owningProcessArray[owningProcessArray.length - 1];
+		String processor = event.getOwningProcessPath().getLocalName();
 		for (OutputPort op : p.getOutputPorts()) {
 			String message = "Processor '" + processor + "' - Port '"
 					+ op.getName() + "'";
@@ -158,7 +159,7 @@ public class ErrorBounce extends AbstractDispatchLayer<JsonNode> implements
 			outputDataMap.put(op.getName(), ed.getId());
 		}
 		DispatchResultEvent dre = new DispatchResultEvent(
-				event.getOwningProcess(), event.getIndex(), event.getContext(),
+				event.getOwningProcessPath(), event.getIndex(), event.getContext(),
 				outputDataMap, false);
 		getAbove().receiveResult(dre);
 	}
@@ -175,16 +176,12 @@ public class ErrorBounce extends AbstractDispatchLayer<JsonNode> implements
 	}
 
 	@Override
-	public void finishedWith(final String owningProcess) {
+	public void finishedWith(String owningProcess) {
 		/*
-		 * Delay the removal of the state to give the monitor a chance to poll
+		 * The monitorable properties hold on to the state themselves, so the
+		 * monitor can still poll the final counts
 		 */
-		cleanupTimer.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				state.remove(owningProcess);
-			}
-		}, CLEANUP_DELAY_MS);
+		state.remove(owningProcess);
 	}
 
 	/**
@@ -196,6 +193,7 @@ public class ErrorBounce extends AbstractDispatchLayer<JsonNode> implements
 	 */
 	@Override
 	public void injectPropertiesFor(final String owningProcess) {
+		final ErrorBounceState ebs = getState(owningProcess);
 		MonitorableProperty<Integer> errorsReflectedProperty = new MonitorableProperty<Integer>() {
 			@Override
 			public Date getLastModified() {
@@ -209,9 +207,6 @@ public class ErrorBounce extends AbstractDispatchLayer<JsonNode> implements
 
 			@Override
 			public Integer getValue() throws NoSuchPropertyException {
-				ErrorBounceState ebs = state.get(owningProcess);
-				if (ebs == null)
-					return 0;
 				return ebs.getErrorsReflected();
 			}
 		};
@@ -231,9 +226,6 @@ public class ErrorBounce extends AbstractDispatchLayer<JsonNode> implements
 
 			@Override
 			public Integer getValue() throws NoSuchPropertyException {
-				ErrorBounceState ebs = state.get(owningProcess);
-				if (ebs == null)
-					return 0;
 				return ebs.getErrorsTranslated();
 			}
 		};
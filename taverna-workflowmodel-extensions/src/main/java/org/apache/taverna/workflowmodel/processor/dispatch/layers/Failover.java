@@ -70,7 +70,7 @@ public class Failover extends AbstractErrorHandlerLayer<JsonNode> {
 		List<Activity<?>> newActivityList = new ArrayList<>();
 		newActivityList.add(jobEvent.getActivities().get(0));
 		getBelow().receiveJob(
-				new DispatchJobEvent(jobEvent.getOwningProcess(), jobEvent
+				new DispatchJobEvent(jobEvent.getOwningProcessPath(), jobEvent
 						.getIndex(), jobEvent.getContext(), jobEvent.getData(),
 						newActivityList));
 	}
@@ -91,7 +91,7 @@ public class Failover extends AbstractErrorHandlerLayer<JsonNode> {
 			newActivityList.add(jobEvent.getActivities().get(
 					currentActivityIndex));
 			getBelow().receiveJob(
-					new DispatchJobEvent(jobEvent.getOwningProcess(), jobEvent
+					new DispatchJobEvent(jobEvent.getOwningProcessPath(), jobEvent
 							.getIndex(), jobEvent.getContext(), jobEvent
 							.getData(), newActivityList));
 			return true;
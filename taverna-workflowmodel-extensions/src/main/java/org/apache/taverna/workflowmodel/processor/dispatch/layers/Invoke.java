@@ -23,15 +23,16 @@ import static org.apache.taverna.workflowmodel.processor.dispatch.description.Di
 import static org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType.RESULT;
 import static org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType.RESULT_COMPLETION;
 
-import java.lang.Thread.UncaughtExceptionHandler;
 import java.sql.Date;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.invocation.ProcessPath;
 import org.apache.taverna.monitor.MonitorManager;
 import org.apache.taverna.monitor.MonitorableProperty;
 import org.apache.taverna.provenance.item.InvocationStartedProvenanceItem;
@@ -45,6 +46,7 @@ import org.apache.taverna.workflowmodel.processor.activity.Activity;
 import org.apache.taverna.workflowmodel.processor.activity.AsynchronousActivity;
 import org.apache.taverna.workflowmodel.processor.activity.AsynchronousActivityCallback;
 import org.apache.taverna.workflowmodel.processor.activity.MonitorableAsynchronousActivity;
+import org.apache.taverna.workflowmodel.processor.activity.PooledActivityExecutor;
 import org.apache.taverna.workflowmodel.processor.dispatch.AbstractDispatchLayer;
 import org.apache.taverna.workflowmodel.processor.dispatch.DispatchLayer;
 import org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchLayerJobReaction;
@@ -127,8 +129,10 @@ public class Invoke extends AbstractDispatchLayer<JsonNode> {
 
 	protected void invoke(final DispatchJobEvent jobEvent, final AsynchronousActivity<?> activity) {
 		// Register with the monitor
-		final String invocationProcessIdentifier = jobEvent.pushOwningProcess(
-				getNextProcessID()).getOwningProcess();
+		final ProcessPath invocationProcessPath = jobEvent.pushOwningProcess(
+				getNextProcessID()).getOwningProcessPath();
+		final String invocationProcessIdentifier = invocationProcessPath
+				.toString();
 		monMan.registerNode(activity, invocationProcessIdentifier,
 				new HashSet<MonitorableProperty<?>>());
 		monMan.registerNode(jobEvent, invocationProcessIdentifier,
@@ -195,7 +199,7 @@ public class Invoke extends AbstractDispatchLayer<JsonNode> {
 			MonitorableAsynchronousActivity<?> maa = (MonitorableAsynchronousActivity<?>) activity;
 			Set<MonitorableProperty<?>> props = maa
 					.executeAsynchWithMonitoring(inputData, callback);
-			monMan.addPropertiesToNode(invocationProcessIdentifier.split(":"), props);
+			monMan.addPropertiesToNode(invocationProcessPath.getNames(), props);
 		} else {
 			/*
 			 * Run the job, passing in the callback we've just created along
@@ -248,7 +252,7 @@ public class Invoke extends AbstractDispatchLayer<JsonNode> {
 			monMan.deregisterNode(
 					invocationProcessIdentifier);
 			getAbove().receiveError(
-					new DispatchErrorEvent(jobEvent.getOwningProcess(),
+					new DispatchErrorEvent(jobEvent.getOwningProcessPath(),
 							jobEvent.getIndex(), jobEvent.getContext(),
 							message, t, errorType, activity));
 		}
@@ -282,7 +286,7 @@ public class Invoke extends AbstractDispatchLayer<JsonNode> {
 						newIndex[i++] = indexValue;
 				}
 				DispatchCompletionEvent c = new DispatchCompletionEvent(
-						jobEvent.getOwningProcess(), newIndex, jobEvent
+						jobEvent.getOwningProcessPath(), newIndex, jobEvent
 								.getContext());
 				getAbove().receiveResultCompletion(c);
 			} else {
@@ -336,7 +340,7 @@ public class Invoke extends AbstractDispatchLayer<JsonNode> {
 					newIndex[i++] = indexValue;
 			}
 			DispatchResultEvent resultEvent = new DispatchResultEvent(jobEvent
-					.getOwningProcess(), newIndex, jobEvent.getContext(),
+					.getOwningProcessPath(), newIndex, jobEvent.getContext(),
 					resultMap, streaming);
 			if (!streaming) {
 				monMan.registerNode(resultEvent, invocationProcessIdentifier,
@@ -351,18 +355,23 @@ public class Invoke extends AbstractDispatchLayer<JsonNode> {
 		}
 
 		@Override
-		public void requestRun(Runnable runMe) {
-			String newThreadName = jobEvent.toString();
-			Thread thread = new Thread(runMe, newThreadName);
-			thread.setContextClassLoader(activity.getClass()
-					.getClassLoader());
-			thread.setUncaughtExceptionHandler(new UncaughtExceptionHandler() {
+		public void requestRun(final Runnable runMe) {
+			Runnable task = new Runnable() {
 				@Override
-				public void uncaughtException(Thread t, Throwable e) {
-					fail("Uncaught exception while invoking " + activity, e);
+				public void run() {
+					try {
+						runMe.run();
+					} catch (RuntimeException | Error e) {
+						fail("Uncaught exception while invoking " + activity, e);
+					}
 				}
-			});
-			thread.start();
+			};
+			try {
+				PooledActivityExecutor.getExecutor(jobEvent.getContext())
+						.execute(activity, jobEvent.toString(), task);
+			} catch (RejectedExecutionException e) {
+				fail("Could not schedule invocation of " + activity, e);
+			}
 		}
 	}
 }
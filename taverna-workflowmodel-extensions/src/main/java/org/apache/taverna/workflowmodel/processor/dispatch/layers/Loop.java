@@ -19,14 +19,15 @@
 
 package org.apache.taverna.workflowmodel.processor.dispatch.layers;
 
-import java.lang.Thread.UncaughtExceptionHandler;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.reference.ReferenceService;
 import org.apache.taverna.reference.T2Reference;
 import org.apache.taverna.workflowmodel.Processor;
@@ -34,6 +35,7 @@ import org.apache.taverna.workflowmodel.processor.activity.AbstractAsynchronousA
 import org.apache.taverna.workflowmodel.processor.activity.Activity;
 import org.apache.taverna.workflowmodel.processor.activity.ActivityInputPort;
 import org.apache.taverna.workflowmodel.processor.activity.AsynchronousActivityCallback;
+import org.apache.taverna.workflowmodel.processor.activity.PooledActivityExecutor;
 import org.apache.taverna.workflowmodel.processor.dispatch.AbstractDispatchLayer;
 import org.apache.taverna.workflowmodel.processor.dispatch.events.AbstractDispatchEvent;
 import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchCompletionEvent;
@@ -91,8 +93,9 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 
 	private JsonNode config = JsonNodeFactory.instance.objectNode();
 
-	protected Map<String, AbstractDispatchEvent> incomingJobs = new HashMap<>();
-	protected Map<String, AbstractDispatchEvent> outgoingJobs = new HashMap<>();
+	/** Jobs by owning process, then by index */
+	protected ProcessStateMap<Map<String, AbstractDispatchEvent>> incomingJobs = new ProcessStateMap<>();
+	protected ProcessStateMap<Map<String, AbstractDispatchEvent>> outgoingJobs = new ProcessStateMap<>();
 
 	@Override
 	public void configure(JsonNode config) {
@@ -101,17 +104,31 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 
 	@Override
 	public void finishedWith(String owningProcess) {
-		String prefix = owningProcess + "[";
-		synchronized (outgoingJobs) {
-			for (String key : new ArrayList<>(outgoingJobs.keySet()))
-				if (key.startsWith(prefix))
-					outgoingJobs.remove(key);
-		}
-		synchronized (incomingJobs) {
-			for (String key : new ArrayList<>(incomingJobs.keySet()))
-				if (key.startsWith(prefix))
-					incomingJobs.remove(key);
+		outgoingJobs.remove(owningProcess);
+		incomingJobs.remove(owningProcess);
+	}
+
+	private static void putJob(
+			ProcessStateMap<Map<String, AbstractDispatchEvent>> jobs,
+			AbstractDispatchEvent event) {
+		String owningProcess = event.getOwningProcess();
+		Map<String, AbstractDispatchEvent> processJobs = jobs
+				.get(owningProcess);
+		if (processJobs == null) {
+			Map<String, AbstractDispatchEvent> newJobs = new ConcurrentHashMap<>();
+			processJobs = jobs.putIfAbsent(owningProcess, newJobs);
+			if (processJobs == null)
+				processJobs = newJobs;
 		}
+		processJobs.put(indexKey(event), event);
+	}
+
+	private static AbstractDispatchEvent getJob(
+			ProcessStateMap<Map<String, AbstractDispatchEvent>> jobs,
+			String owningProcess, String indexKey) {
+		Map<String, AbstractDispatchEvent> processJobs = jobs
+				.get(owningProcess);
+		return processJobs == null ? null : processJobs.get(indexKey);
 	}
 
 	@Override
@@ -121,9 +138,7 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 
 	@Override
 	public void receiveJob(DispatchJobEvent jobEvent) {
-		synchronized (incomingJobs) {
-			incomingJobs.put(jobIdentifier(jobEvent), jobEvent);
-		}
+		putJob(incomingJobs, jobEvent);
 		if (config.get("runFirst").asBoolean()) {
 			// We'll do the conditional in receiveResult instead
 			super.receiveJob(jobEvent);
@@ -134,9 +149,7 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 
 	@Override
 	public void receiveJobQueue(DispatchJobQueueEvent jobQueueEvent) {
-		synchronized (incomingJobs) {
-			incomingJobs.put(jobIdentifier(jobQueueEvent), jobQueueEvent);
-		}
+		putJob(incomingJobs, jobQueueEvent);
 		if (config.get("runFirst").asBoolean()) {
 			// We'll do the conditional in receiveResult instead
 			super.receiveJobQueue(jobQueueEvent);
@@ -157,9 +170,7 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 			super.receiveResult(resultEvent);
 			return;
 		}
-		synchronized (outgoingJobs) {
-			outgoingJobs.put(jobIdentifier(resultEvent), resultEvent);
-		}
+		putJob(outgoingJobs, resultEvent);
 		checkCondition(resultEvent);
 	}
 
@@ -170,16 +181,14 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 			super.receiveResultCompletion(completionEvent);
 			return;
 		}
-		synchronized (outgoingJobs) {
-			outgoingJobs.put(jobIdentifier(completionEvent), completionEvent);
-		}
+		putJob(outgoingJobs, completionEvent);
 		checkCondition(completionEvent);
 	}
 
 	private void checkCondition(AbstractDispatchEvent event) {
 		Activity<?> condition = getCondition();
 		if (condition == null) {
-			super.receiveError(new DispatchErrorEvent(event.getOwningProcess(),
+			super.receiveError(new DispatchErrorEvent(event.getOwningProcessPath(),
 					event.getIndex(), event.getContext(),
 					"Can't invoke condition service: null", null,
 					DispatchErrorType.INVOCATION, condition));
@@ -187,7 +196,7 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 		}
 		if (!(condition instanceof AbstractAsynchronousActivity)) {
 			DispatchErrorEvent errorEvent = new DispatchErrorEvent(
-					event.getOwningProcess(),
+					event.getOwningProcessPath(),
 					event.getIndex(),
 					event.getContext(),
 					"Can't invoke condition service "
@@ -198,19 +207,21 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 			return;
 		}
 		AbstractAsynchronousActivity asyncCondition = (AbstractAsynchronousActivity) condition;
-		String jobIdentifier = jobIdentifier(event);
+		String owningProcess = event.getOwningProcess();
+		String indexKey = indexKey(event);
 		Map<String, T2Reference> inputs = prepareInputs(asyncCondition,
-				jobIdentifier);
+				owningProcess, indexKey);
 		AsynchronousActivityCallback callback = new ConditionCallBack(
-				jobIdentifier);
+				owningProcess, indexKey);
 		asyncCondition.executeAsynch(inputs, callback);
 	}
 
 	private Map<String, T2Reference> prepareInputs(
-			AbstractAsynchronousActivity asyncCondition, String jobIdentifier) {
+			AbstractAsynchronousActivity asyncCondition, String owningProcess,
+			String indexKey) {
 		Map<String, T2Reference> inputs = new HashMap<>();
-		Map<String, T2Reference> inData = getInData(jobIdentifier);
-		Map<String, T2Reference> outData = getOutData(jobIdentifier);
+		Map<String, T2Reference> inData = getInData(owningProcess, indexKey);
+		Map<String, T2Reference> outData = getOutData(owningProcess, indexKey);
 
 		Set<ActivityInputPort> inputPorts = asyncCondition.getInputPorts();
 		for (ActivityInputPort conditionIn : inputPorts) {
@@ -225,47 +236,45 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 		return inputs;
 	}
 
-	private Map<String, T2Reference> getInData(String jobIdentifier) {
-		AbstractDispatchEvent inEvent;
-		synchronized (incomingJobs) {
-			inEvent = incomingJobs.get(jobIdentifier);
-		}
+	private Map<String, T2Reference> getInData(String owningProcess,
+			String indexKey) {
+		AbstractDispatchEvent inEvent = getJob(incomingJobs, owningProcess,
+				indexKey);
 		Map<String, T2Reference> inData = new HashMap<>();
 		if (inEvent instanceof DispatchJobEvent)
 			inData = ((DispatchJobEvent) inEvent).getData();
 		return inData;
 	}
 
-	private Map<String, T2Reference> getOutData(String jobIdentifier) {
-		AbstractDispatchEvent outEvent;
-		synchronized (outgoingJobs) {
-			outEvent = outgoingJobs.get(jobIdentifier);
-		}
+	private Map<String, T2Reference> getOutData(String owningProcess,
+			String indexKey) {
+		AbstractDispatchEvent outEvent = getJob(outgoingJobs, owningProcess,
+				indexKey);
 		Map<String, T2Reference> outData = new HashMap<>();
 		if (outEvent instanceof DispatchResultEvent)
 			outData = ((DispatchResultEvent) outEvent).getData();
 		return outData;
 	}
 
-	private String jobIdentifier(AbstractDispatchEvent event) {
-		String jobId = event.getOwningProcess()
-				+ Arrays.toString(event.getIndex());
-		return jobId;
+	private static String indexKey(AbstractDispatchEvent event) {
+		return Arrays.toString(event.getIndex());
 	}
 
 	public static final String LOOP_PORT = "loop";
 
 	public class ConditionCallBack implements AsynchronousActivityCallback {
 		private InvocationContext context;
+		private final String owningProcess;
+		private final String indexKey;
 		private final String jobIdentifier;
 		private String processId;
 
-		public ConditionCallBack(String jobIdentifier) {
-			this.jobIdentifier = jobIdentifier;
-			AbstractDispatchEvent originalEvent;
-			synchronized (incomingJobs) {
-				originalEvent = incomingJobs.get(jobIdentifier);
-			}
+		public ConditionCallBack(String owningProcess, String indexKey) {
+			this.owningProcess = owningProcess;
+			this.indexKey = indexKey;
+			this.jobIdentifier = owningProcess + indexKey;
+			AbstractDispatchEvent originalEvent = getJob(incomingJobs,
+					owningProcess, indexKey);
 			context = originalEvent.getContext();
 			processId = originalEvent.getOwningProcess() + ":condition";
 		}
@@ -286,12 +295,10 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 			logger.warn("Failed (" + errorType + ") invoking condition service "
 					+ jobIdentifier + ":" + message, t);
 
-			AbstractDispatchEvent originalEvent;
-			synchronized (incomingJobs) {
-				originalEvent = incomingJobs.get(jobIdentifier);
-			}
+			AbstractDispatchEvent originalEvent = getJob(incomingJobs,
+					owningProcess, indexKey);
 			receiveError(new DispatchErrorEvent(originalEvent
-					.getOwningProcess(), originalEvent.getIndex(),
+					.getOwningProcessPath(), originalEvent.getIndex(),
 					originalEvent.getContext(),
 					"Can't invoke condition service ", t,
 					DispatchErrorType.INVOCATION, null));
@@ -337,10 +344,8 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 
 			if (Boolean.parseBoolean(loop)) {
 				// Push it down again
-				AbstractDispatchEvent dispatchEvent;
-				synchronized (incomingJobs) {
-					dispatchEvent = incomingJobs.get(jobIdentifier);
-				}
+				AbstractDispatchEvent dispatchEvent = getJob(incomingJobs,
+						owningProcess, indexKey);
 				if (dispatchEvent == null) {
 					fail("Unknown job identifier " + jobIdentifier);
 				}
@@ -359,10 +364,8 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 			} else {
 				// We'll push it up, end of loop for now
 
-				AbstractDispatchEvent outgoingEvent;
-				synchronized (outgoingJobs) {
-					outgoingEvent = outgoingJobs.get(jobIdentifier);
-				}
+				AbstractDispatchEvent outgoingEvent = getJob(outgoingJobs,
+						owningProcess, indexKey);
 				if (outgoingEvent == null && !config.get("runFirst").asBoolean()) {
 					fail("Initial loop condition failed");
 				}
@@ -387,7 +390,7 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 					dispatchJobEvent.getData());
 			newInputs.putAll(data);
 			DispatchJobEvent newJobEvent = new DispatchJobEvent(dispatchEvent
-					.getOwningProcess(), dispatchEvent.getIndex(),
+					.getOwningProcessPath(), dispatchEvent.getIndex(),
 					dispatchEvent.getContext(), newInputs,
 					((DispatchJobEvent) dispatchEvent).getActivities());
 			/*
@@ -399,18 +402,26 @@ public class Loop extends AbstractDispatchLayer<JsonNode> {
 		}
 
 		@Override
-		public void requestRun(Runnable runMe) {
-			String newThreadName = "Condition service "
+		public void requestRun(final Runnable runMe) {
+			String taskName = "Condition service "
 					+ getParentProcessIdentifier();
-			Thread thread = new Thread(runMe, newThreadName);
-			thread.setUncaughtExceptionHandler(new UncaughtExceptionHandler() {
+			Runnable task = new Runnable() {
 				@Override
-				public void uncaughtException(Thread t, Throwable e) {
-					fail("Uncaught exception while invoking " + jobIdentifier,
-							e);
+				public void run() {
+					try {
+						runMe.run();
+					} catch (RuntimeException | Error e) {
+						fail("Uncaught exception while invoking "
+								+ jobIdentifier, e);
+					}
 				}
-			});
-			thread.start();
+			};
+			try {
+				PooledActivityExecutor.getExecutor(context).execute(null,
+						taskName, task);
+			} catch (RejectedExecutionException e) {
+				fail("Could not schedule condition for " + jobIdentifier, e);
+			}
 		}
 	}
 
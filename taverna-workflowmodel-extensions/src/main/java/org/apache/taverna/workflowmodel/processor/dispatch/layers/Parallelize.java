@@ -25,17 +25,17 @@ import static org.apache.taverna.workflowmodel.processor.dispatch.description.Di
 import static org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType.JOB;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.TimerTask;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.taverna.invocation.Completion;
 import org.apache.taverna.invocation.IterationInternalEvent;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.monitor.MonitorManager;
 import org.apache.taverna.monitor.MonitorableProperty;
 import org.apache.taverna.monitor.NoSuchPropertyException;
@@ -86,10 +86,10 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 	public static final String URI = "http://ns.taverna.org.uk/2010/scufl2/taverna/dispatchlayer/Parallelize";
 	private static Logger logger = Logger.getLogger(Parallelize.class);
 
-	private Map<String, StateModel> stateMap = new HashMap<>();
+	private ProcessStateMap<StateModel> stateMap = new ProcessStateMap<>();
 	private JsonNode config = JsonNodeFactory.instance.objectNode();
-	int sentJobsCount = 0;
-	int completedJobsCount = 0;
+	final AtomicInteger sentJobsCount = new AtomicInteger();
+	final AtomicInteger completedJobsCount = new AtomicInteger();
 
 	public Parallelize() {
 		super();
@@ -108,29 +108,28 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 
 	@Override
 	public void eventAdded(String owningProcess) {
-		StateModel stateModel;
-		synchronized (stateMap) {
-			stateModel = stateMap.get(owningProcess);
-		}
-		if (stateModel == null)
+		StateModel stateModel = stateMap.get(owningProcess);
+		if (stateModel == null) {
+			if (!stateMap.containsRun(owningProcess)) {
+				// Run has been released, e.g. after being cancelled
+				logger.debug("Job added for released process " + owningProcess);
+				return;
+			}
 			/*
 			 * Should never see this here, it means we've had duplicate
 			 * completion events from upstream
 			 */
 			throw new WorkflowStructureException(
 					"Unknown owning process " + owningProcess);
-		synchronized (stateModel) {
-			stateModel.fillFromQueue();
 		}
+		stateModel.fillFromQueue();
 	}
 
 	@Override
 	public void receiveJobQueue(DispatchJobQueueEvent queueEvent) {
 		StateModel model = new StateModel(queueEvent,
 				config.has("maxJobs") ? config.get("maxJobs").intValue() : 1);
-		synchronized (stateMap) {
-			stateMap.put(queueEvent.getOwningProcess(), model);
-		}
+		stateMap.put(queueEvent.getOwningProcess(), model);
 		model.fillFromQueue();
 	}
 
@@ -141,28 +140,22 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 
 	@Override
 	public void receiveError(DispatchErrorEvent errorEvent) {
-		StateModel model;
 		String owningProcess = errorEvent.getOwningProcess();
-		synchronized(stateMap) {
-			model = stateMap.get(owningProcess);
-		}
+		StateModel model = stateMap.get(owningProcess);
 		if (model == null) {
-			logger.warn("Error received for unknown owning process: " + owningProcess);
+			unknownProcess("Error", owningProcess);
 			return;
 		}
-		model.finishWith(errorEvent.getIndex());
 		getAbove().receiveError(errorEvent);
+		model.finishWith(errorEvent.getIndex());
 	}
 
 	@Override
 	public void receiveResult(DispatchResultEvent resultEvent) {
-		StateModel model;
 		String owningProcess = resultEvent.getOwningProcess();
-		synchronized(stateMap) {
-			model = stateMap.get(owningProcess);
-		}
+		StateModel model = stateMap.get(owningProcess);
 		if (model == null) {
-			logger.warn("Error received for unknown owning process: " + owningProcess);
+			unknownProcess("Result", owningProcess);
 			return;
 		}
 		if (!resultEvent.isStreamingEvent()) {
@@ -170,8 +163,12 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 					owningProcess,
 					new HashSet<MonitorableProperty<?>>());
 		}
-		model.finishWith(resultEvent.getIndex());
+		/*
+		 * Pass the result up before finishing the job, so that completions
+		 * waiting on this job are not sent ahead of it
+		 */
 		getAbove().receiveResult(resultEvent);
+		model.finishWith(resultEvent.getIndex());
 	}
 
 	/**
@@ -181,30 +178,37 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 	 */
 	@Override
 	public void receiveResultCompletion(DispatchCompletionEvent completionEvent) {
-		StateModel model;
 		String owningProcess = completionEvent.getOwningProcess();
-		synchronized(stateMap) {
-			model = stateMap.get(owningProcess);
-		}
+		StateModel model = stateMap.get(owningProcess);
 		if (model == null) {
-			logger.warn("Error received for unknown owning process: " + owningProcess);
+			unknownProcess("Completion", owningProcess);
 			return;
 		}
-		model.finishWith(completionEvent.getIndex());
 		getAbove().receiveResultCompletion(completionEvent);
+		model.finishWith(completionEvent.getIndex());
+	}
+
+	/**
+	 * Log an event for a process we hold no state for. Once the process's run
+	 * has been released, e.g. after being cancelled, late events are expected
+	 * and only logged at debug level.
+	 */
+	private void unknownProcess(String event, String owningProcess) {
+		if (stateMap.containsRun(owningProcess))
+			logger.warn(event + " received for unknown owning process: "
+					+ owningProcess);
+		else
+			logger.debug(event + " received for released process "
+					+ owningProcess);
 	}
 
 	@Override
-	public void finishedWith(final String owningProcess) {
-		// Delay the removal of the state to give the monitor a chance to poll
-		cleanupTimer.schedule(new TimerTask() {
-			@Override
-			public void run() {
-				synchronized(stateMap) {
-					stateMap.remove(owningProcess);
-				}
-			}
-		}, CLEANUP_DELAY_MS);
+	public void finishedWith(String owningProcess) {
+		/*
+		 * The queue has been drained, so a monitor polling after this would
+		 * only see an empty queue; -1 tells it just as well that we're done
+		 */
+		stateMap.remove(owningProcess);
 	}
 
 	@Override
@@ -247,10 +251,7 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 
 			@Override
 			public Integer getValue() throws NoSuchPropertyException {
-				StateModel model;
-				synchronized(stateMap) {
-					model = stateMap.get(owningProcess);
-				}
+				StateModel model = stateMap.get(owningProcess);
 				if (model == null)
 					return -1;
 				return model.queueSize();
@@ -272,7 +273,7 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 
 			@Override
 			public Integer getValue() throws NoSuchPropertyException {
-				return sentJobsCount;
+				return sentJobsCount.get();
 			}
 		};
 		dispatchStack.receiveMonitorableProperty(sentJobsProperty,
@@ -292,7 +293,7 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 
 			@Override
 			public Integer getValue() throws NoSuchPropertyException {
-				return completedJobsCount;
+				return completedJobsCount.get();
 			}
 		};
 		dispatchStack.receiveMonitorableProperty(completedJobsProperty,
@@ -300,7 +301,15 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 	}
 
 	/**
-	 * Holds the state for a given owning process
+	 * Holds the state for a given owning process.
+	 * <p>
+	 * Events taken from the queue are kept in arrival order, with jobs indexed
+	 * by their iteration index so that a job can be matched and removed in
+	 * constant time when its result, error or completion comes back up. The
+	 * lock on the model is only held while updating this index; jobs are sent
+	 * down and completions sent up outside the lock by whichever thread is
+	 * currently draining the model, so completions keep their order without
+	 * needing a thread of their own.
 	 *
 	 * @author Tom Oinn
 	 *
@@ -310,8 +319,14 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 	@SuppressWarnings("rawtypes")
 	class StateModel {
 		private DispatchJobQueueEvent queueEvent;
-		private BlockingQueue<IterationInternalEvent> pendingEvents = new LinkedBlockingQueue<>();
-		private int activeJobs = 0;
+		/**
+		 * Jobs (keyed by {@link JobIndex}) and completions (keyed by
+		 * themselves) in the order they were taken from the queue
+		 */
+		private final LinkedHashMap<Object, IterationInternalEvent> pendingEvents = new LinkedHashMap<>();
+		private final AtomicInteger activeJobs = new AtomicInteger();
+		/** Number of threads that have asked for the model to be drained */
+		private final AtomicInteger drainRequests = new AtomicInteger();
 		private int maximumJobs;
 
 		/**
@@ -338,6 +353,10 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 			return queueEvent.getQueue().size();
 		}
 
+		int activeJobs() {
+			return activeJobs.get();
+		}
+
 		/**
 		 * Poll the queue repeatedly until either the queue is empty or we have
 		 * enough jobs pulled from it. The semantics for this are:
@@ -351,50 +370,74 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 		 * list is not empty then add the Completion to the end of the pending
 		 * jobs list and return
 		 * </ul>
+		 * If another thread (or an outer call on this thread) is already
+		 * draining the model, this call just asks it to go round once more,
+		 * which keeps synchronous activities from recursing through the stack
+		 * once per job.
 		 */
 		protected void fillFromQueue() {
-			synchronized (this) {
-				while (queueEvent.getQueue().peek() != null
-						&& activeJobs < maximumJobs) {
-					final IterationInternalEvent e = queueEvent.getQueue()
-							.remove();
-
-					if (e instanceof Completion && pendingEvents.peek() == null) {
-						new Thread(new Runnable() {
-							@Override
-							public void run() {
-								getAbove().receiveResultCompletion(
-										new DispatchCompletionEvent(e
-												.getOwningProcess(), e
-												.getIndex(), e.getContext()));
-							}
-						}, "Parallelize " + e.getOwningProcess()).start();
-						// getAbove().receiveResultCompletion((Completion) e);
-					} else {
-						pendingEvents.add(e);
-					}
-					if (e instanceof Job) {
-						synchronized (this) {
-							activeJobs++;
-						}
-						sentJobsCount++;
-
-						DispatchJobEvent dispatchJobEvent = new DispatchJobEvent(e
-								.getOwningProcess(), e
-								.getIndex(), e.getContext(),
-								((Job) e).getData(), queueEvent
-										.getActivities());
-						// Register with the monitor
-						MonitorManager.getInstance().registerNode(dispatchJobEvent,
-								e.getOwningProcess(),
-								new HashSet<MonitorableProperty<?>>());
-
-						getBelow().receiveJob(dispatchJobEvent);
+			if (drainRequests.getAndIncrement() != 0)
+				return;
+			int requests = 1;
+			do {
+				List<IterationInternalEvent> toSend = new ArrayList<>();
+				synchronized (this) {
+					collectCompletions(toSend);
+					while (activeJobs.get() < maximumJobs
+							&& queueEvent.getQueue().peek() != null) {
+						IterationInternalEvent e = queueEvent.getQueue()
+								.remove();
+						if (e instanceof Job) {
+							activeJobs.incrementAndGet();
+							pendingEvents.put(new JobIndex(e.getIndex()), e);
+							toSend.add(e);
+						} else if (pendingEvents.isEmpty())
+							toSend.add(e);
+						else
+							pendingEvents.put(e, e);
 					}
 				}
+				for (IterationInternalEvent e : toSend)
+					if (e instanceof Job)
+						sendJob((Job) e);
+					else
+						getAbove().receiveResultCompletion(
+								new DispatchCompletionEvent(e
+										.getOwningProcessPath(), e.getIndex(), e
+										.getContext()));
+				requests = drainRequests.addAndGet(-requests);
+			} while (requests != 0);
+		}
+
+		/**
+		 * Move any completion events that have reached the head of the pending
+		 * events - this indicates that all the job events which came in before
+		 * them have been processed and we can emit the completions.
+		 */
+		private void collectCompletions(List<IterationInternalEvent> toSend) {
+			Iterator<IterationInternalEvent> pending = pendingEvents.values()
+					.iterator();
+			while (pending.hasNext()) {
+				IterationInternalEvent e = pending.next();
+				if (!(e instanceof Completion))
+					break;
+				pending.remove();
+				toSend.add(e);
 			}
 		}
 
+		private void sendJob(Job job) {
+			sentJobsCount.incrementAndGet();
+			DispatchJobEvent dispatchJobEvent = new DispatchJobEvent(
+					job.getOwningProcessPath(), job.getIndex(), job.getContext(),
+					job.getData(), queueEvent.getActivities());
+			// Register with the monitor
+			MonitorManager.getInstance().registerNode(dispatchJobEvent,
+					job.getOwningProcess(),
+					new HashSet<MonitorableProperty<?>>());
+			getBelow().receiveJob(dispatchJobEvent);
+		}
+
 		/**
 		 * Returns true if the index matched an existing Job exactly, if this
 		 * method returns false then you have a partial completion event which
@@ -405,58 +448,57 @@ public class Parallelize extends AbstractDispatchLayer<JsonNode>
 		 */
 		protected boolean finishWith(int[] index) {
 			synchronized (this) {
-				for (IterationInternalEvent e : new ArrayList<>(pendingEvents)) {
-					if (!(e instanceof Job))
-						continue;
-					Job j = (Job) e;
-					if (!arrayEquals(j.getIndex(), index))
-						continue;
-
-					/*
-					 * Found a job in the pending events list which has the
-					 * same index, remove it and decrement the current count
-					 * of active jobs
-					 */
-					pendingEvents.remove(e);
-					activeJobs--;
-					completedJobsCount++;
-					/*
-					 * Now pull any completion events that have reached the head
-					 * of the queue - this indicates that all the job events
-					 * which came in before them have been processed and we can
-					 * emit the completions
-					 */
-					while (pendingEvents.peek() != null
-							&& pendingEvents.peek() instanceof Completion) {
-						Completion c = (Completion) pendingEvents.remove();
-						getAbove().receiveResultCompletion(
-								new DispatchCompletionEvent(c
-										.getOwningProcess(), c.getIndex(), c
-										.getContext()));
-					}
-					/*
-					 * Refresh from the queue; as we've just decremented the
-					 * active job count there should be a worker available
-					 */
-					fillFromQueue();
-					/*
-					 * Return true to indicate that we removed a job event from
-					 * the queue, that is to say that the index wasn't that of a
-					 * partial completion.
-					 */
-					return true;
-				}
+				/*
+				 * Remove the job in the pending events list which has the same
+				 * index, if any, and decrement the current count of active
+				 * jobs
+				 */
+				if (pendingEvents.remove(new JobIndex(index)) == null)
+					return false;
+				activeJobs.decrementAndGet();
 			}
-			return false;
+			completedJobsCount.incrementAndGet();
+			/*
+			 * Send any completions that are now due and refresh from the
+			 * queue; as we've just decremented the active job count there
+			 * should be a worker available
+			 */
+			fillFromQueue();
+			/*
+			 * Return true to indicate that we removed a job event from the
+			 * queue, that is to say that the index wasn't that of a partial
+			 * completion.
+			 */
+			return true;
+		}
+	}
+
+	/**
+	 * Iteration index of a job, usable as a hash key.
+	 */
+	static final class JobIndex {
+		private final int[] index;
+		private final int hashCode;
+
+		JobIndex(int[] index) {
+			this.index = index;
+			this.hashCode = Arrays.hashCode(index);
 		}
 
-		private boolean arrayEquals(int[] a, int[] b) {
-			if (a.length != b.length)
+		@Override
+		public int hashCode() {
+			return hashCode;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof JobIndex))
 				return false;
-			for (int i = 0; i < a.length; i++)
-				if (a[i] != b[i])
-					return false;
-			return true;
+			JobIndex other = (JobIndex) obj;
+			return hashCode == other.hashCode
+					&& Arrays.equals(index, other.index);
 		}
 	}
 }
@@ -25,13 +25,16 @@ import static org.apache.taverna.workflowmodel.processor.dispatch.description.Di
 import static org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchMessageType.JOB;
 
 import java.util.Iterator;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.reference.WorkflowRunIdEntity;
 import org.apache.taverna.workflowmodel.processor.dispatch.AbstractErrorHandlerLayer;
 import org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchLayerErrorReaction;
 import org.apache.taverna.workflowmodel.processor.dispatch.description.DispatchLayerJobReaction;
@@ -47,7 +50,14 @@ import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchJobEve
  * <li>initialDelay = 1000 (milliseconds)</li>
  * <li>maxDelay = 2000 (milliseconds)</li>
  * <li>backoffFactor = 1.0 (double)</li>
+ * <li>jitter = 0.0 (double, fraction of the delay it may be shortened by)</li>
+ * <li>maxPendingRetries = 0 (int, 0 for no limit)</li>
  * </ul>
+ * <p>
+ * Retries are run by the {@link RetryScheduler}. When this layer already has
+ * <code>maxPendingRetries</code> retries waiting, further failures are passed
+ * up without being retried, so a failing service isn't hit by an ever growing
+ * backlog of retries.
  *
  * @author Tom Oinn
  * @author David Withers
@@ -62,6 +72,8 @@ public class Retry extends AbstractErrorHandlerLayer<JsonNode> {
     private static final String MAX_DELAY = "maxDelay";
     private static final String MAX_RETRIES = "maxRetries";
     private static final String INITIAL_DELAY = "initialDelay";
+    private static final String JITTER = "jitter";
+    private static final String MAX_PENDING_RETRIES = "maxPendingRetries";
     public static final String URI = "http://ns.taverna.org.uk/2010/scufl2/taverna/dispatchlayer/Retry";
 
 	private ObjectNode config;
@@ -69,8 +81,11 @@ public class Retry extends AbstractErrorHandlerLayer<JsonNode> {
     private int initialDelay;
     private int maxDelay;
     private double backoffFactor;
+    private double jitter;
+    private int maxPendingRetries;
 
-	private static Timer retryTimer = new Timer("Retry timer", true);
+	/** Retries of this layer waiting in the {@link RetryScheduler} */
+	private final AtomicInteger pendingRetries = new AtomicInteger();
 
 	public Retry() {
 		super();
@@ -104,22 +119,46 @@ public class Retry extends AbstractErrorHandlerLayer<JsonNode> {
 		 */
 		@Override
 		public boolean handleError() {
-			if (currentRetryCount >= maxRetries)
+			if (currentRetryCount >= maxRetries) {
+				if (maxRetries > 0)
+					RetryScheduler.exhausted();
+				return false;
+			}
+			if (pendingRetries.incrementAndGet() > maxPendingRetries
+					&& maxPendingRetries > 0) {
+				pendingRetries.decrementAndGet();
+				RetryScheduler.exhausted();
 				return false;
-			int delay = (int) (initialDelay * Math.pow(backoffFactor, currentRetryCount));
+			}
+			long delay = (long) (initialDelay * Math.pow(backoffFactor, currentRetryCount));
 			delay = Math.min(delay, maxDelay);
-			TimerTask task = new TimerTask() {
+			if (jitter > 0 && delay > 0)
+				delay -= (long) (delay * jitter * ThreadLocalRandom.current()
+						.nextDouble());
+			Runnable retry = new Runnable() {
 				@Override
 				public void run() {
 					currentRetryCount++;
 					getBelow().receiveJob(jobEvent);
 				}
 			};
-			retryTimer.schedule(task, delay);
+			RetryScheduler.schedule(getWorkflowRunId(jobEvent), retry, delay,
+					pendingRetries);
 			return true;
 		}
 	}
 
+	private static String getWorkflowRunId(DispatchJobEvent jobEvent) {
+		InvocationContext context = jobEvent.getContext();
+		if (context == null)
+			return null;
+		List<WorkflowRunIdEntity> entities = context
+				.getEntities(WorkflowRunIdEntity.class);
+		if (entities == null || entities.isEmpty())
+			return null;
+		return entities.get(0).getWorkflowRunId();
+	}
+
 	@Override
 	protected JobState getStateObject(DispatchJobEvent jobEvent) {
 		return new RetryState(jobEvent);
@@ -134,7 +173,9 @@ public class Retry extends AbstractErrorHandlerLayer<JsonNode> {
         maxRetries = config.get(MAX_RETRIES).intValue();
         initialDelay = config.get(INITIAL_DELAY).intValue();
         maxDelay = config.get(MAX_DELAY).intValue();
-        backoffFactor = config.get(BACKOFF_FACTOR).doubleValue();       
+        backoffFactor = config.get(BACKOFF_FACTOR).doubleValue();
+        jitter = config.get(JITTER).doubleValue();
+        maxPendingRetries = config.get(MAX_PENDING_RETRIES).intValue();
 	}
 
     private void setAllMissingFields(ObjectNode config, ObjectNode defaults) {
@@ -161,6 +202,11 @@ public class Retry extends AbstractErrorHandlerLayer<JsonNode> {
             throw new IllegalArgumentException("maxDelay < initialDelay");
         if (conf.get(BACKOFF_FACTOR).doubleValue() < 0.0)
             throw new IllegalArgumentException("backoffFactor < 0.0");
+        double jitter = conf.get(JITTER).doubleValue();
+        if (jitter < 0.0 || jitter > 1.0)
+            throw new IllegalArgumentException("jitter not within 0.0 and 1.0");
+        if (conf.get(MAX_PENDING_RETRIES).intValue() < 0)
+            throw new IllegalArgumentException("maxPendingRetries < 0");
     }
 
     public static ObjectNode defaultConfig() {
@@ -169,6 +215,8 @@ public class Retry extends AbstractErrorHandlerLayer<JsonNode> {
 	    conf.put(INITIAL_DELAY, 1000);
 	    conf.put(MAX_DELAY, 5000);
 	    conf.put(BACKOFF_FACTOR, 1.0);
+	    conf.put(JITTER, 0.0);
+	    conf.put(MAX_PENDING_RETRIES, 0);
 	    return conf;
     }
 
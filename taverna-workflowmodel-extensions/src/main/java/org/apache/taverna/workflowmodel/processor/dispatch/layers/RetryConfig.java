@@ -28,11 +28,15 @@ public class RetryConfig {
 	private static final int MAX_DELAY = 5000;
 	private static final int INITIAL_DELAY = 1000;
 	private static final int MAX_RETRIES = 0;
+	private static final float JITTER = 0.0f;
+	private static final int MAX_PENDING_RETRIES = 0;
 
 	private float backoffFactor = BACKOFF_FACTOR;
 	private int initialDelay = INITIAL_DELAY;
 	private int maxDelay = MAX_DELAY;
 	private int maxRetries = MAX_RETRIES;
+	private float jitter = JITTER;
+	private int maxPendingRetries = MAX_PENDING_RETRIES;
 
 	/**
 	 * Factor by which the initial delay is multiplied for each retry after the
@@ -74,6 +78,27 @@ public class RetryConfig {
 		return this.maxRetries;
 	}
 
+	/**
+	 * Fraction of the retry delay by which each delay may be randomly
+	 * shortened, so that jobs failing together aren't all retried at the same
+	 * moment
+	 *
+	 * @return
+	 */
+	public float getJitter() {
+		return this.jitter;
+	}
+
+	/**
+	 * Maximum number of retries that may be waiting at once, failures beyond
+	 * this are not retried. 0 means no limit.
+	 *
+	 * @return
+	 */
+	public int getMaxPendingRetries() {
+		return this.maxPendingRetries;
+	}
+
 	@ConfigurationProperty(name = "backoffFactor", label = "Backoff Factor", description = "Factor by which the initial delay is multiplied for each retry after the first retry", required=false)
 	public void setBackoffFactor(float factor) {
 		this.backoffFactor = factor;
@@ -93,4 +118,14 @@ public class RetryConfig {
 	public void setMaxRetries(int max) {
 		this.maxRetries = max;
 	}
+
+	@ConfigurationProperty(name = "jitter", label = "Jitter", description = "Fraction of the retry delay by which each delay may be randomly shortened", required=false)
+	public void setJitter(float jitter) {
+		this.jitter = jitter;
+	}
+
+	@ConfigurationProperty(name = "maxPendingRetries", label = "Maximum Pending Retries", description = "Maximum number of retries waiting at once, 0 for no limit", required=false)
+	public void setMaxPendingRetries(int max) {
+		this.maxPendingRetries = max;
+	}
 }
@@ -0,0 +1,238 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.workflowmodel.processor.dispatch.layers;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Schedules the retries of {@link Retry} layers.
+ * <p>
+ * Retries of all workflow runs share a small pool of daemon threads, so a slow
+ * re-dispatch only holds up retries due on the same thread, and a re-dispatch
+ * that throws is logged rather than stopping the retries after it. Retries
+ * still waiting when their workflow run is {@link Stop#cancelWorkflow(String)
+ * cancelled} are dropped.
+ */
+public final class RetryScheduler {
+	private static final Logger logger = Logger.getLogger(RetryScheduler.class);
+
+	private static final ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(
+			Math.max(2, Runtime.getRuntime().availableProcessors() / 2),
+			new ThreadFactory() {
+				private final AtomicInteger threads = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "Retry scheduler "
+							+ threads.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+	static {
+		executor.setRemoveOnCancelPolicy(true);
+	}
+
+	/**
+	 * Waiting retries by workflow run id. A run's set is only changed, and
+	 * only removed from the map once empty, while holding the set's lock.
+	 */
+	private static final ConcurrentHashMap<String, Set<PendingRetry>> pendingByRun = new ConcurrentHashMap<>();
+
+	private static final AtomicLong scheduled = new AtomicLong(),
+			fired = new AtomicLong(), exhausted = new AtomicLong(),
+			cancelled = new AtomicLong();
+
+	private RetryScheduler() {
+	}
+
+	private static class PendingRetry implements Runnable {
+		private final String workflowRunId;
+		private final Runnable retry;
+		private final AtomicInteger layerPending;
+		private final AtomicBoolean done = new AtomicBoolean();
+		private volatile ScheduledFuture<?> future;
+
+		PendingRetry(String workflowRunId, Runnable retry,
+				AtomicInteger layerPending) {
+			this.workflowRunId = workflowRunId;
+			this.retry = retry;
+			this.layerPending = layerPending;
+		}
+
+		/** @return whether this call finished the retry */
+		private boolean finish() {
+			if (!done.compareAndSet(false, true))
+				return false;
+			layerPending.decrementAndGet();
+			if (workflowRunId != null) {
+				Set<PendingRetry> pending = pendingByRun.get(workflowRunId);
+				if (pending != null)
+					synchronized (pending) {
+						if (pending.remove(this) && pending.isEmpty())
+							pendingByRun.remove(workflowRunId, pending);
+					}
+			}
+			return true;
+		}
+
+		@Override
+		public void run() {
+			if (!finish())
+				return;
+			fired.incrementAndGet();
+			try {
+				retry.run();
+			} catch (RuntimeException e) {
+				logger.error("Could not retry job", e);
+			}
+		}
+
+		void cancel() {
+			if (!finish())
+				return;
+			cancelled.incrementAndGet();
+			ScheduledFuture<?> f = future;
+			if (f != null)
+				f.cancel(false);
+		}
+	}
+
+	/**
+	 * Run a retry after a delay.
+	 * 
+	 * @param workflowRunId
+	 *            the run the retry belongs to, or <code>null</code> if unknown
+	 * @param retry
+	 *            re-dispatches the failed job
+	 * @param delay
+	 *            milliseconds to wait
+	 * @param layerPending
+	 *            count of the layer's waiting retries, which has been
+	 *            incremented for this retry and is decremented once it's run
+	 *            or cancelled
+	 */
+	static void schedule(String workflowRunId, Runnable retry, long delay,
+			AtomicInteger layerPending) {
+		PendingRetry pending = new PendingRetry(workflowRunId, retry,
+				layerPending);
+		if (workflowRunId != null) {
+			addPending(workflowRunId, pending);
+			/*
+			 * The run may have been cancelled before the retry was added, in
+			 * which case cancelWorkflow() didn't see it.
+			 */
+			if (Stop.isCancelled(workflowRunId)) {
+				pending.cancel();
+				return;
+			}
+		}
+		scheduled.incrementAndGet();
+		pending.future = executor.schedule(pending, delay, MILLISECONDS);
+	}
+
+	private static void addPending(String workflowRunId, PendingRetry pending) {
+		while (true) {
+			Set<PendingRetry> runPending = pendingByRun.get(workflowRunId);
+			if (runPending == null) {
+				Set<PendingRetry> created = new HashSet<>();
+				runPending = pendingByRun.putIfAbsent(workflowRunId, created);
+				if (runPending == null)
+					runPending = created;
+			}
+			synchronized (runPending) {
+				// Retry if the set was emptied and removed meanwhile
+				if (pendingByRun.get(workflowRunId) == runPending) {
+					runPending.add(pending);
+					return;
+				}
+			}
+		}
+	}
+
+	/** Record a job that failed after running out of retries */
+	static void exhausted() {
+		exhausted.incrementAndGet();
+	}
+
+	/**
+	 * Drop the waiting retries of a workflow run
+	 * 
+	 * @param workflowRunId
+	 *            the cancelled workflow run
+	 */
+	static void cancelWorkflow(String workflowRunId) {
+		Set<PendingRetry> pending = pendingByRun.remove(workflowRunId);
+		if (pending == null)
+			return;
+		List<PendingRetry> toCancel;
+		synchronized (pending) {
+			toCancel = new ArrayList<>(pending);
+		}
+		for (PendingRetry retry : toCancel)
+			retry.cancel();
+	}
+
+	/** @return the number of retries scheduled so far */
+	public static long getRetriesScheduled() {
+		return scheduled.get();
+	}
+
+	/** @return the number of scheduled retries that have been run */
+	public static long getRetriesFired() {
+		return fired.get();
+	}
+
+	/**
+	 * @return the number of jobs that failed after running out of retries, or
+	 *         that weren't retried because their layer had too many retries
+	 *         waiting
+	 */
+	public static long getRetriesExhausted() {
+		return exhausted.get();
+	}
+
+	/**
+	 * @return the number of scheduled retries dropped because their run was
+	 *         cancelled
+	 */
+	public static long getRetriesCancelled() {
+		return cancelled.get();
+	}
+
+	/** @return the number of retries waiting to run */
+	public static int getRetriesPending() {
+		return executor.getQueue().size();
+	}
+}
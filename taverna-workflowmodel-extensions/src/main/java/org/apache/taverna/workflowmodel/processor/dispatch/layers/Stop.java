@@ -118,9 +118,18 @@ public class Stop extends AbstractDispatchLayer<JsonNode> {
 				cancelledWorkflowRuns);
 		cancelledWorkflowRunsCopy.add(workflowRunId);
 		cancelledWorkflowRuns = cancelledWorkflowRunsCopy;
+		RetryScheduler.cancelWorkflow(workflowRunId);
 		return true;
 	}
 
+	/**
+	 * @return whether the workflow run with the specified id has been
+	 *         cancelled
+	 */
+	static synchronized boolean isCancelled(String workflowRunId) {
+		return cancelledWorkflowRuns.contains(workflowRunId);
+	}
+
 	/**
 	 * Pause the workflow run with the specified id
 	 *
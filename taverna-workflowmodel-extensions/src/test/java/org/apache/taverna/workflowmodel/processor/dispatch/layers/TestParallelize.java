@@ -0,0 +1,288 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+
+package org.apache.taverna.workflowmodel.processor.dispatch.layers;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.taverna.annotation.AbstractAnnotatedThing;
+import org.apache.taverna.invocation.Completion;
+import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.invocation.IterationInternalEvent;
+import org.apache.taverna.invocation.ProcessStateMap;
+import org.apache.taverna.monitor.MonitorableProperty;
+import org.apache.taverna.provenance.reporter.ProvenanceReporter;
+import org.apache.taverna.reference.ReferenceService;
+import org.apache.taverna.reference.T2Reference;
+import org.apache.taverna.workflowmodel.Processor;
+import org.apache.taverna.workflowmodel.WorkflowStructureException;
+import org.apache.taverna.workflowmodel.processor.activity.Activity;
+import org.apache.taverna.workflowmodel.processor.activity.Job;
+import org.apache.taverna.workflowmodel.processor.dispatch.AbstractDispatchLayer;
+import org.apache.taverna.workflowmodel.processor.dispatch.DispatchLayer;
+import org.apache.taverna.workflowmodel.processor.dispatch.DispatchStack;
+import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchCompletionEvent;
+import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchErrorEvent;
+import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchJobEvent;
+import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchJobQueueEvent;
+import org.apache.taverna.workflowmodel.processor.dispatch.events.DispatchResultEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestParallelize {
+
+	private static final AtomicInteger runs = new AtomicInteger();
+
+	/** A run of its own, as released runs don't keep state */
+	private final String process = "testParallelize" + runs.getAndIncrement()
+			+ ":dataflow:processor";
+
+	/** Records events in the order they leave the parallelize layer */
+	private List<String> events;
+	private List<DispatchJobEvent> jobs;
+	private BlockingQueue<IterationInternalEvent<? extends IterationInternalEvent<?>>> queue;
+	private Parallelize parallelize;
+	private InvocationContext context = new InvocationContext() {
+		@Override
+		public <T> List<T> getEntities(Class<T> entityType) {
+			return Collections.emptyList();
+		}
+
+		@Override
+		public void addEntity(Object entity) {
+		}
+
+		@Override
+		public ReferenceService getReferenceService() {
+			return null;
+		}
+
+		@Override
+		public ProvenanceReporter getProvenanceReporter() {
+			return null;
+		}
+	};
+
+	@Before
+	public void createStack() {
+		events = Collections.synchronizedList(new ArrayList<String>());
+		jobs = Collections.synchronizedList(new ArrayList<DispatchJobEvent>());
+		queue = new LinkedBlockingQueue<>();
+		parallelize = new Parallelize(2);
+		new RecordingStack(parallelize);
+	}
+
+	@Test
+	public void limitsActiveJobs() throws Exception {
+		for (int i = 0; i < 5; i++)
+			queue.add(job(i));
+		parallelize.receiveJobQueue(queueEvent());
+		assertEquals(2, jobs.size());
+		parallelize.receiveResult(result(jobs.get(0).getIndex()));
+		assertEquals(3, jobs.size());
+		parallelize.receiveResult(result(jobs.get(2).getIndex()));
+		assertEquals(4, jobs.size());
+		assertArrayEquals(new int[] { 3 }, jobs.get(3).getIndex());
+	}
+
+	@Test
+	public void eventAddedFillsFromQueue() throws Exception {
+		queue.add(job(0));
+		parallelize.receiveJobQueue(queueEvent());
+		assertEquals(1, jobs.size());
+		queue.add(job(1));
+		queue.add(job(2));
+		parallelize.eventAdded(process);
+		assertEquals(2, jobs.size());
+	}
+
+	@Test
+	public void completionFollowsResults() throws Exception {
+		for (int i = 0; i < 2; i++)
+			queue.add(job(i));
+		queue.add(new Completion(process, new int[0], context));
+		parallelize.receiveJobQueue(queueEvent());
+		assertEquals(2, jobs.size());
+		parallelize.receiveResult(result(new int[] { 1 }));
+		parallelize.receiveResult(result(new int[] { 0 }));
+		assertEquals(Arrays.asList("result[1]", "result[0]", "completion[]"),
+				events);
+	}
+
+	@Test
+	public void completionWithoutPendingJobsIsForwarded() throws Exception {
+		queue.add(new Completion(process, new int[0], context));
+		parallelize.receiveJobQueue(queueEvent());
+		// Sent on the calling thread, no need to wait for it
+		assertEquals(Arrays.asList("completion[]"), events);
+	}
+
+	@Test
+	public void partialCompletionPassedThrough() throws Exception {
+		queue.add(job(0));
+		parallelize.receiveJobQueue(queueEvent());
+		parallelize.receiveResultCompletion(new DispatchCompletionEvent(
+				process, new int[] { 0, 3 }, context));
+		assertEquals(Arrays.asList("completion[0, 3]"), events);
+		// Job [0] is still active
+		queue.add(job(1));
+		queue.add(job(2));
+		parallelize.eventAdded(process);
+		assertEquals(2, jobs.size());
+	}
+
+	@Test
+	public void errorFinishesJob() throws Exception {
+		for (int i = 0; i < 3; i++)
+			queue.add(job(i));
+		parallelize.receiveJobQueue(queueEvent());
+		parallelize.receiveError(new DispatchErrorEvent(process,
+				new int[] { 0 }, context, "failed", null, null, null));
+		assertEquals(3, jobs.size());
+		assertTrue(events.contains("error[0]"));
+	}
+
+	@Test
+	public void eventsForReleasedRunAreIgnored() throws Exception {
+		queue.add(job(0));
+		parallelize.receiveJobQueue(queueEvent());
+		ProcessStateMap.releaseRun(process);
+		queue.add(job(1));
+		parallelize.eventAdded(process);
+		parallelize.receiveResult(result(new int[] { 0 }));
+		parallelize.receiveResultCompletion(new DispatchCompletionEvent(
+				process, new int[0], context));
+		parallelize.receiveError(new DispatchErrorEvent(process,
+				new int[] { 0 }, context, "failed", null, null, null));
+		assertEquals(1, jobs.size());
+		assertEquals(Collections.emptyList(), events);
+	}
+
+	@Test(expected = WorkflowStructureException.class)
+	public void eventAddedForUnknownProcessFails() throws Exception {
+		queue.add(job(0));
+		parallelize.receiveJobQueue(queueEvent());
+		parallelize.eventAdded(process + "2");
+	}
+
+	private Job job(int i) {
+		return new Job(process, new int[] { i },
+				Collections.<String, T2Reference> emptyMap(), context);
+	}
+
+	private DispatchResultEvent result(int[] index) {
+		return new DispatchResultEvent(process, index, context,
+				Collections.<String, T2Reference> emptyMap(), false);
+	}
+
+	private DispatchJobQueueEvent queueEvent() {
+		return new DispatchJobQueueEvent(process, context, queue,
+				Collections.<Activity<?>> emptyList());
+	}
+
+	private class RecordingStack extends AbstractAnnotatedThing<DispatchStack>
+			implements DispatchStack {
+		private final DispatchLayer<?> layer;
+
+		private final DispatchLayer<Object> top = new AbstractDispatchLayer<Object>() {
+			@Override
+			public void receiveResult(DispatchResultEvent resultEvent) {
+				events.add("result" + Arrays.toString(resultEvent.getIndex()));
+			}
+
+			@Override
+			public void receiveError(DispatchErrorEvent errorEvent) {
+				events.add("error" + Arrays.toString(errorEvent.getIndex()));
+			}
+
+			@Override
+			public void receiveResultCompletion(
+					DispatchCompletionEvent completionEvent) {
+				events.add("completion"
+						+ Arrays.toString(completionEvent.getIndex()));
+			}
+
+			@Override
+			public void configure(Object config) {
+			}
+
+			@Override
+			public Object getConfiguration() {
+				return null;
+			}
+		};
+
+		private final DispatchLayer<Object> bottom = new AbstractDispatchLayer<Object>() {
+			@Override
+			public void receiveJob(DispatchJobEvent jobEvent) {
+				jobs.add(jobEvent);
+			}
+
+			@Override
+			public void configure(Object config) {
+			}
+
+			@Override
+			public Object getConfiguration() {
+				return null;
+			}
+		};
+
+		public RecordingStack(DispatchLayer<?> layer) {
+			this.layer = layer;
+			layer.setDispatchStack(this);
+		}
+
+		@Override
+		public List<DispatchLayer<?>> getLayers() {
+			return Arrays.<DispatchLayer<?>> asList(layer);
+		}
+
+		@Override
+		public Processor getProcessor() {
+			return null;
+		}
+
+		@Override
+		public DispatchLayer<?> layerAbove(DispatchLayer<?> layer) {
+			return layer == this.layer ? top : null;
+		}
+
+		@Override
+		public DispatchLayer<?> layerBelow(DispatchLayer<?> layer) {
+			return layer == this.layer ? bottom : null;
+		}
+
+		@Override
+		public void receiveMonitorableProperty(MonitorableProperty<?> prop,
+				String processID) {
+		}
+	}
+}
@@ -19,6 +19,10 @@
 
 package org.apache.taverna.workflowmodel.processor.dispatch.layers;
 
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.Test;
 
 import com.fasterxml.jackson.databind.JsonNode;
@@ -104,7 +108,103 @@ public class TestRetry {
         retry.configure(conf);
     }
 
+
+    @Test
+    public void defaultSchedulingConfig() throws Exception {
+        JsonNode configuration = new Retry().getConfiguration();
+        assertEquals(0.0, configuration.get("jitter").doubleValue(), 0.001);
+        assertEquals(0, configuration.get("maxPendingRetries").intValue());
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidJitter() throws Exception {
+        Retry retry = new Retry();
+        ObjectNode conf = JsonNodeFactory.instance.objectNode();
+        conf.put("jitter", 1.5);
+        retry.configure(conf);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void invalidMaxPendingRetries() throws Exception {
+        Retry retry = new Retry();
+        ObjectNode conf = JsonNodeFactory.instance.objectNode();
+        conf.put("maxPendingRetries", -1);
+        retry.configure(conf);
+    }
+
+    @Test
+    public void cancelledRunDropsRetries() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        AtomicInteger pending = new AtomicInteger(2);
+        long cancelled = RetryScheduler.getRetriesCancelled();
+        RetryScheduler.schedule("cancelledRun", retry, 60000, pending);
+        RetryScheduler.schedule("cancelledRun", retry, 60000, pending);
+        RetryScheduler.cancelWorkflow("cancelledRun");
+        assertEquals(0, pending.get());
+        assertEquals(cancelled + 2, RetryScheduler.getRetriesCancelled());
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void scheduledRetryRuns() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        };
+        AtomicInteger pending = new AtomicInteger(1);
+        RetryScheduler.schedule(null, retry, 10, pending);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(0, pending.get());
+    }
     
+    @Test
+    public void retryScheduledAfterCancelIsDropped() throws Exception {
+        final AtomicInteger runs = new AtomicInteger();
+        Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                runs.incrementAndGet();
+            }
+        };
+        Stop.cancelWorkflow("cancelledBeforeRetry");
+        AtomicInteger pending = new AtomicInteger(1);
+        long cancelled = RetryScheduler.getRetriesCancelled();
+        RetryScheduler.schedule("cancelledBeforeRetry", retry, 10, pending);
+        assertEquals(0, pending.get());
+        assertEquals(cancelled + 1, RetryScheduler.getRetriesCancelled());
+        Thread.sleep(50);
+        assertEquals(0, runs.get());
+    }
+
+    @Test
+    public void runCanBeCancelledAfterItsRetriesRan() throws Exception {
+        final CountDownLatch ran = new CountDownLatch(1);
+        Runnable retry = new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        };
+        AtomicInteger pending = new AtomicInteger(1);
+        RetryScheduler.schedule("laterCancelledRun", retry, 10, pending);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        assertEquals(0, pending.get());
+        // The run's emptied set was dropped, so this retry gets a new one
+        pending.incrementAndGet();
+        RetryScheduler.schedule("laterCancelledRun", retry, 60000, pending);
+        RetryScheduler.cancelWorkflow("laterCancelledRun");
+        assertEquals(0, pending.get());
+    }
+
     @Test
     public void invalidConfigureRecovers() throws Exception {
         Retry retry = new Retry(15, 150, 1200, 1.2);
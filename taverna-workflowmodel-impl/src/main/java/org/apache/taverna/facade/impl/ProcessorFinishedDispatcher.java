@@ -0,0 +1,106 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.facade.impl;
+
+import static java.util.Collections.synchronizedMap;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.taverna.lang.observer.Observable;
+import org.apache.taverna.lang.observer.Observer;
+import org.apache.taverna.workflowmodel.Processor;
+import org.apache.taverna.workflowmodel.ProcessorFinishedEvent;
+
+/**
+ * Routes the {@link ProcessorFinishedEvent}s of a processor to the facade
+ * waiting for that owning process, so that a processor has a single observer
+ * however many runs of its workflow are in progress, rather than notifying
+ * every run's observer of every other run's events.
+ */
+final class ProcessorFinishedDispatcher implements
+		Observer<ProcessorFinishedEvent> {
+	private static final Map<Processor, ProcessorFinishedDispatcher> dispatchers = synchronizedMap(new WeakHashMap<Processor, ProcessorFinishedDispatcher>());
+
+	private final ConcurrentMap<String, Observer<ProcessorFinishedEvent>> observers = new ConcurrentHashMap<>();
+
+	private ProcessorFinishedDispatcher() {
+	}
+
+	/**
+	 * Notify the observer once the processor has finished the given owning
+	 * process
+	 */
+	static void register(Processor processor, String owningProcess,
+			Observer<ProcessorFinishedEvent> observer) {
+		ProcessorFinishedDispatcher dispatcher;
+		synchronized (dispatchers) {
+			dispatcher = dispatchers.get(processor);
+			if (dispatcher == null) {
+				dispatcher = new ProcessorFinishedDispatcher();
+				dispatchers.put(processor, dispatcher);
+				processor.addObserver(dispatcher);
+			}
+		}
+		dispatcher.observers.put(owningProcess, observer);
+	}
+
+	/**
+	 * Stop waiting for the processor to finish the given owning process, for
+	 * runs that end without it finishing, such as cancelled runs
+	 */
+	static void unregister(Processor processor, String owningProcess) {
+		ProcessorFinishedDispatcher dispatcher = dispatchers.get(processor);
+		if (dispatcher != null)
+			dispatcher.observers.remove(owningProcess);
+	}
+
+	/**
+	 * Stop waiting for any processor to finish an owning process within the
+	 * given run, including those of nested workflows
+	 * 
+	 * @param runProcess
+	 *            the owning process of the top level facade of the run
+	 */
+	static void releaseRun(String runProcess) {
+		String prefix = runProcess + ":";
+		List<ProcessorFinishedDispatcher> all;
+		synchronized (dispatchers) {
+			all = new ArrayList<>(dispatchers.values());
+		}
+		for (ProcessorFinishedDispatcher dispatcher : all)
+			for (String owningProcess : dispatcher.observers.keySet())
+				if (owningProcess.startsWith(prefix))
+					dispatcher.observers.remove(owningProcess);
+	}
+
+	@Override
+	public void notify(Observable<ProcessorFinishedEvent> sender,
+			ProcessorFinishedEvent message) throws Exception {
+		Observer<ProcessorFinishedEvent> observer = observers.remove(message
+				.getOwningProcess());
+		if (observer != null)
+			observer.notify(sender, message);
+	}
+}
@@ -38,6 +38,7 @@ import org.apache.taverna.facade.ResultListener;
 import org.apache.taverna.facade.WorkflowInstanceFacade;
 import org.apache.taverna.facade.WorkflowRunCancellation;
 import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.invocation.TokenOrderException;
 import org.apache.taverna.invocation.WorkflowDataToken;
 import org.apache.taverna.lang.observer.Observable;
@@ -62,7 +63,6 @@ import org.apache.taverna.workflowmodel.InvalidDataflowException;
 import org.apache.taverna.workflowmodel.Processor;
 import org.apache.taverna.workflowmodel.ProcessorFinishedEvent;
 import org.apache.taverna.workflowmodel.impl.EditsImpl;
-import org.apache.taverna.workflowmodel.impl.ProcessorImpl;
 import org.apache.taverna.workflowmodel.processor.dispatch.DispatchLayer;
 import org.apache.taverna.workflowmodel.processor.dispatch.DispatchStack;
 import org.apache.taverna.workflowmodel.processor.dispatch.layers.ErrorBounce;
@@ -183,7 +183,8 @@ public class WorkflowInstanceFacadeImpl implements WorkflowInstanceFacade {
 					+ dataflow.getLocalName() + ":" + processor.getLocalName();
 			ProcessorFinishedObserver observer = new ProcessorFinishedObserver(
 					workflowItem, expectedProcessId);
-			((ProcessorImpl) processor).addObserver(observer);
+			ProcessorFinishedDispatcher.register(processor, expectedProcessId,
+					observer);
 		}
 	}
 
@@ -207,7 +208,6 @@ public class WorkflowInstanceFacadeImpl implements WorkflowInstanceFacade {
 				try {
 					edits.getAddDispatchLayerEdit(dispatchStack, provenance,
 					        provenancePosition(layers)).doEdit();
-					break;
 				} catch (EditException e) {
 					logger.warn("adding provenance layer to dispatch stack failed "
 									+ e.toString());
@@ -264,6 +264,8 @@ public class WorkflowInstanceFacadeImpl implements WorkflowInstanceFacade {
 		
 		HashSet<MonitorableProperty<?>> properties = new HashSet<>();
 		properties.add(new StateProperty());
+		if (isTopLevel())
+			properties.add(new StateCountProperty());
 		monitorManager.registerNode(this, instanceOwningProcessId.split(":"),				
 				properties);
 		dataflow.fire(instanceOwningProcessId, context);		
@@ -286,6 +288,32 @@ public class WorkflowInstanceFacadeImpl implements WorkflowInstanceFacade {
 		}
 	}
 	
+	/**
+	 * Number of processes of this run, including its nested workflows, that
+	 * per process state is held for
+	 */
+	public final class StateCountProperty implements
+			MonitorableProperty<Integer> {
+		@Override
+		public Date getLastModified() {
+			return new Date();
+		}
+
+		@Override
+		public String[] getName() {
+			return new String[] { "facade", "statecount" };
+		}
+
+		@Override
+		public Integer getValue() throws NoSuchPropertyException {
+			return ProcessStateMap.getStateCount(instanceOwningProcessId);
+		}
+	}
+
+	private boolean isTopLevel() {
+		return instanceOwningProcessId.equals(localName);
+	}
+
 	@Override
 	public Dataflow getDataflow() {
 		return dataflow;
@@ -423,9 +451,11 @@ public class WorkflowInstanceFacadeImpl implements WorkflowInstanceFacade {
 			// De-register the processor node from the monitor as it has finished
 			monitorManager.deregisterNode(message.getOwningProcess());
 			
-			// De-register this observer from the processor
-			message.getProcessor().removeObserver(this);
-			
+			/*
+			 * No need to de-register this observer, the dispatcher only
+			 * notifies it of its own process
+			 */
+
 			// All processors have finished => the workflow run has finished
 			checkWorkflowFinished(WorkflowInstanceFacadeChange.PROCESSOR_DECREMENT);
 		}
@@ -480,6 +510,28 @@ public class WorkflowInstanceFacadeImpl implements WorkflowInstanceFacade {
 		 */
 		monitorManager.deregisterNode(instanceOwningProcessId);
 
+		/*
+		 * Stop waiting for processors that will not finish, as when the run
+		 * was cancelled, so that the dispatchers don't keep this facade
+		 */
+		if (getState().equals(State.cancelled))
+			for (Processor processor : dataflow.getProcessors())
+				ProcessorFinishedDispatcher.unregister(processor,
+						instanceOwningProcessId + ":" + dataflow.getLocalName()
+								+ ":" + processor.getLocalName());
+
+		/*
+		 * Drop the per process state left behind by the run, such as that of
+		 * processes stopped by a cancellation. Nested workflows share the
+		 * top-level process, so this covers them too.
+		 */
+		if (isTopLevel()) {
+			ProcessStateMap.releaseRun(instanceOwningProcessId);
+			if (getState().equals(State.cancelled))
+				// Including the facades of nested workflows cut short
+				ProcessorFinishedDispatcher.releaseRun(instanceOwningProcessId);
+		}
+
 		if (provEnabled) {
 			DataflowRunComplete provItem = new DataflowRunComplete();
 			provItem.setInvocationEnded(new Timestamp(currentTimeMillis()));
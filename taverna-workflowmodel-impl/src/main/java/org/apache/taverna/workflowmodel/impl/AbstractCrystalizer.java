@@ -27,6 +27,7 @@ import java.util.Map;
 import org.apache.taverna.invocation.Completion;
 import org.apache.taverna.invocation.InvocationContext;
 import org.apache.taverna.invocation.IterationInternalEvent;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.invocation.TreeCache;
 import org.apache.taverna.reference.T2Reference;
 import org.apache.taverna.workflowmodel.processor.activity.Job;
@@ -47,7 +48,7 @@ import org.apache.taverna.workflowmodel.processor.activity.Job;
  * @author David Withers
  */
 public abstract class AbstractCrystalizer implements Crystalizer {
-	private Map<String, CompletionAwareTreeCache> cacheMap = new HashMap<>();
+	private ProcessStateMap<CompletionAwareTreeCache> cacheMap = new ProcessStateMap<>();
 
 	public abstract Job getEmptyJob(String owningProcess, int[] index,
 			InvocationContext context);
@@ -131,7 +132,8 @@ public abstract class AbstractCrystalizer implements Crystalizer {
 
 			Map<String, List<T2Reference>> listItems = new HashMap<>();
 			int pos = 0;
-			for (NamedNode child : n.children) {
+			for (int c = 0; c < n.getChildCount(); c++) {
+				NamedNode child = n.childAt(c);
 				/*
 				 * If child doesn't have a defined name map yet then define it.
 				 */
@@ -186,7 +188,7 @@ public abstract class AbstractCrystalizer implements Crystalizer {
 
 			/* Get rid of the children as we've now named this node */
 
-			n.children.clear();
+			n.clearChildren();
 			jobCreated(n.contents);
 		}
 	}
@@ -21,15 +21,13 @@ package org.apache.taverna.workflowmodel.impl;
 
 import static java.lang.Boolean.TRUE;
 
-import java.util.HashMap;
-import java.util.Map;
-
 import org.apache.taverna.annotation.AbstractAnnotatedThing;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.workflowmodel.Condition;
 
 class ConditionImpl extends AbstractAnnotatedThing<Condition> implements Condition {
 	private ProcessorImpl control, target;
-	private Map<String, Boolean> stateMap = new HashMap<>();
+	private ProcessStateMap<Boolean> stateMap = new ProcessStateMap<>();
 
 	protected ConditionImpl(ProcessorImpl control, ProcessorImpl target) {
 		this.control = control;
@@ -48,9 +46,7 @@ class ConditionImpl extends AbstractAnnotatedThing<Condition> implements Conditi
 
 	@Override
 	public boolean isSatisfied(String owningProcess) {
-		if (!stateMap.containsKey(owningProcess))
-			return false;
-		return stateMap.get(owningProcess);
+		return TRUE.equals(stateMap.get(owningProcess));
 	}
 
 	protected void satisfy(String owningProcess) {
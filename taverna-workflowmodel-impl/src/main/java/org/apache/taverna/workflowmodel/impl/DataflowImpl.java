@@ -19,12 +19,16 @@
 
 package org.apache.taverna.workflowmodel.impl;
 
+import static java.lang.System.identityHashCode;
 import static java.util.Collections.unmodifiableList;
 import static org.apache.taverna.workflowmodel.utils.Tools.addDataflowIdentification;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -39,15 +43,22 @@ import org.apache.taverna.workflowmodel.DataflowOutputPort;
 import org.apache.taverna.workflowmodel.DataflowValidationReport;
 import org.apache.taverna.workflowmodel.Datalink;
 import org.apache.taverna.workflowmodel.EditException;
+import org.apache.taverna.workflowmodel.EventForwardingOutputPort;
 import org.apache.taverna.workflowmodel.EventHandlingInputPort;
 import org.apache.taverna.workflowmodel.FailureTransmitter;
 import org.apache.taverna.workflowmodel.InvalidDataflowException;
 import org.apache.taverna.workflowmodel.Merge;
 import org.apache.taverna.workflowmodel.NamedWorkflowEntity;
 import org.apache.taverna.workflowmodel.NamingException;
+import org.apache.taverna.workflowmodel.Port;
 import org.apache.taverna.workflowmodel.Processor;
 import org.apache.taverna.workflowmodel.TokenProcessingEntity;
+import org.apache.taverna.workflowmodel.processor.activity.Activity;
+import org.apache.taverna.workflowmodel.processor.activity.NestedDataflow;
+import org.apache.taverna.workflowmodel.processor.iteration.IterationStrategyNode;
 import org.apache.taverna.workflowmodel.processor.iteration.IterationTypeMismatchException;
+import org.apache.taverna.workflowmodel.processor.iteration.NamedInputPortNode;
+import org.apache.taverna.workflowmodel.processor.iteration.impl.IterationStrategyImpl;
 
 /**
  * Implementation of Dataflow including implementation of the dataflow level
@@ -68,6 +79,8 @@ public class DataflowImpl extends AbstractAnnotatedThing<Dataflow> implements
 	private List<DataflowOutputPortImpl> outputs;
 	protected String internalIdentifier;
 	private DataflowValidationReport validationReport;
+	/** Structure {@link #validationReport} was computed for */
+	private int validatedStructure;
 
     /**
 	 * Protected constructor, assigns a default name. To build an instance of
@@ -475,17 +488,88 @@ public class DataflowImpl extends AbstractAnnotatedThing<Dataflow> implements
 	 * 
 	 * If the workflow has been set immutable with {@link #setImmutable()},
 	 * subsequent calls to this method will return the cached
-	 * DataflowValidationReport.
+	 * DataflowValidationReport. Otherwise the cached report is returned until
+	 * the {@link #structuralHash() structure} of the dataflow changes, so edits
+	 * to other dataflows don't cause this one to be validated again.
 	 * 
 	 */
 	@Override
 	public DataflowValidationReport checkValidity() {
-		if (!immutable)
-			// Don't store it!
-			return checkValidityImpl();
-		if (validationReport == null)
-			validationReport = checkValidityImpl();
-		return validationReport;
+		if (immutable) {
+			if (validationReport == null)
+				validationReport = checkValidityImpl();
+			return validationReport;
+		}
+		synchronized (this) {
+			int structure = structuralHash();
+			if (validationReport == null || structure != validatedStructure) {
+				validationReport = checkValidityImpl();
+				validatedStructure = structure;
+			}
+			return validationReport;
+		}
+	}
+
+	/**
+	 * A hash of everything the type check reads: the entities, their ports
+	 * and depths, the links between them, the iteration strategies of
+	 * processors and any nested dataflows
+	 */
+	synchronized int structuralHash() {
+		int hash = 1;
+		for (DataflowInputPortImpl input : inputs) {
+			hash = 31 * hash + portHash(input);
+			hash = 31 * hash + input.getGranularInputDepth();
+			for (Datalink link : input.getInternalOutputPort()
+					.getOutgoingLinks())
+				hash = 31 * hash + identityHashCode(link);
+		}
+		for (DataflowOutputPortImpl output : outputs) {
+			hash = 31 * hash + output.getName().hashCode();
+			hash = 31 * hash
+					+ identityHashCode(output.getInternalInputPort()
+							.getIncomingLink());
+		}
+		for (TokenProcessingEntity entity : getEntities(TokenProcessingEntity.class)) {
+			hash = 31 * hash + identityHashCode(entity);
+			for (EventHandlingInputPort input : entity.getInputPorts()) {
+				hash = 31 * hash + portHash(input);
+				hash = 31 * hash + identityHashCode(input.getIncomingLink());
+			}
+			for (EventForwardingOutputPort output : entity.getOutputPorts()) {
+				hash = 31 * hash + portHash(output);
+				hash = 31 * hash + output.getGranularDepth();
+			}
+			if (entity instanceof ProcessorImpl)
+				for (IterationStrategyImpl strategy : ((ProcessorImpl) entity)
+						.getIterationStrategy().getStrategies())
+					hash = 31 * hash + nodeHash(strategy.getTerminalNode());
+			if (entity instanceof Processor)
+				for (Activity<?> activity : ((Processor) entity)
+						.getActivityList())
+					if (activity instanceof NestedDataflow) {
+						Dataflow nested = ((NestedDataflow) activity)
+								.getNestedDataflow();
+						hash = 31 * hash
+								+ (nested instanceof DataflowImpl ? ((DataflowImpl) nested)
+										.structuralHash()
+										: identityHashCode(nested));
+					}
+		}
+		return hash;
+	}
+
+	private static int nodeHash(IterationStrategyNode node) {
+		int hash = identityHashCode(node);
+		if (node instanceof NamedInputPortNode)
+			hash = 31 * hash + ((NamedInputPortNode) node).getCardinality();
+		for (IterationStrategyNode child : node.getChildren())
+			hash = 31 * hash + nodeHash(child);
+		return hash;
+	}
+
+	private static int portHash(Port port) {
+		return 31 * port.getName().hashCode() + port.getDepth();
 	}
 
 	/**
@@ -505,18 +589,14 @@ public class DataflowImpl extends AbstractAnnotatedThing<Dataflow> implements
 
 		/*
 		 * ==================================================================
-		 * Now iteratively attempt to resolve everything else.
+		 * Now type check each entity once, in topological order.
 		 * ==================================================================
 		 */
 
-		/*
-		 * Firstly take a copy of the processor list, we'll processors from this
-		 * list as they become either failed or resolved
-		 */
-		List<TokenProcessingEntity> unresolved = new ArrayList<>(
-				getEntities(TokenProcessingEntity.class));
+		List<? extends TokenProcessingEntity> entities = getEntities(TokenProcessingEntity.class);
 
-		// Keep a list of processors that have failed, initially empty
+		// Processors that couldn't be checked or failed, initially empty
+		List<TokenProcessingEntity> unresolved = new ArrayList<>();
 		List<TokenProcessingEntity> failed = new ArrayList<>();
 
 		/**
@@ -526,49 +606,77 @@ public class DataflowImpl extends AbstractAnnotatedThing<Dataflow> implements
 		 * actually check for issues such as unresolved output edges.
 		 */
 
-		// Flag to indicate whether we've finished yet, set to true if no
-		// changes are made in an iteration
-		boolean finished = false;
-
 		Map<TokenProcessingEntity, DataflowValidationReport> invalidDataflows = new HashMap<>();
+
+		/*
+		 * Count the links each entity receives from other entities; an entity
+		 * is ready to check once all the entities feeding it have been.
+		 */
+		Map<EventForwardingOutputPort, TokenProcessingEntity> producers = new IdentityHashMap<>();
+		for (TokenProcessingEntity p : entities)
+			for (EventForwardingOutputPort output : p.getOutputPorts())
+				producers.put(output, p);
+		Map<TokenProcessingEntity, Integer> waitingFor = new IdentityHashMap<>();
+		Map<TokenProcessingEntity, List<TokenProcessingEntity>> consumers = new IdentityHashMap<>();
+		Deque<TokenProcessingEntity> ready = new ArrayDeque<>();
+		for (TokenProcessingEntity p : entities) {
+			int links = 0;
+			for (EventHandlingInputPort input : p.getInputPorts()) {
+				Datalink dl = input.getIncomingLink();
+				TokenProcessingEntity producer = dl == null ? null
+						: producers.get(dl.getSource());
+				if (producer == null)
+					continue;
+				links++;
+				List<TokenProcessingEntity> fed = consumers.get(producer);
+				if (fed == null) {
+					fed = new ArrayList<>();
+					consumers.put(producer, fed);
+				}
+				fed.add(p);
+			}
+			if (links == 0)
+				ready.add(p);
+			else
+				waitingFor.put(p, links);
+		}
+
+		while (!ready.isEmpty()) {
+			TokenProcessingEntity p = ready.removeFirst();
+			if (!typeCheck(p, failed, invalidDataflows) && !failed.contains(p))
+				unresolved.add(p);
+			List<TokenProcessingEntity> fed = consumers.get(p);
+			if (fed != null)
+				for (TokenProcessingEntity consumer : fed) {
+					int links = waitingFor.get(consumer) - 1;
+					if (links == 0) {
+						waitingFor.remove(consumer);
+						ready.add(consumer);
+					} else
+						waitingFor.put(consumer, links);
+				}
+		}
+
+		/*
+		 * Whatever is left is in a cycle or was waiting on something that
+		 * couldn't be checked; give those the old treatment of retrying until
+		 * nothing more resolves.
+		 */
+		for (TokenProcessingEntity p : entities)
+			if (waitingFor.containsKey(p))
+				unresolved.add(p);
+		boolean finished = unresolved.isEmpty();
 		while (!finished) {
-			// We're finished unless something happens later
 			finished = true;
-			// Keep a list of processors to remove from the unresolved list
-			// because they've been resolved properly
-			List<TokenProcessingEntity> removeValidated = new ArrayList<>();
-			// Keep another list of those that have failed
-			List<TokenProcessingEntity> removeFailed = new ArrayList<>();
-
+			List<TokenProcessingEntity> checked = new ArrayList<>();
 			for (TokenProcessingEntity p : unresolved)
-				try {
-					/*
-					 * true = checked and valid, false = can't check, the
-					 * exception means the processor was checked but was invalid
-					 * for some reason
-					 */
-
-					if (p.doTypeCheck()) {
-						removeValidated.add(p);
-						/*
-						 * At least one thing validated; we will need to run the
-						 * check loop at least once more.
-						 */
+				if (typeCheck(p, failed, invalidDataflows)
+						|| failed.contains(p)) {
+					checked.add(p);
+					if (!failed.contains(p))
 						finished = false;
-					}
-				} catch (IterationTypeMismatchException e) {
-					removeFailed.add(p);
-				} catch (InvalidDataflowException e) {
-					invalidDataflows.put(p, e.getDataflowValidationReport());
-					removeFailed.add(p);
 				}
-
-			/*
-			 * Remove validated and failed items from the pending lists.
-			 */
-			unresolved.removeAll(removeValidated);
-			unresolved.removeAll(removeFailed);
-			failed.addAll(removeFailed);
+			unresolved.removeAll(checked);
 		}
 
 		/*
@@ -639,6 +747,30 @@ public class DataflowImpl extends AbstractAnnotatedThing<Dataflow> implements
 				invalidDataflows);
 	}
 
+	/**
+	 * Type check one entity
+	 * 
+	 * @return whether the entity validated; false if it couldn't be checked
+	 *         yet or failed, in which case it's been added to the failures
+	 */
+	private static boolean typeCheck(TokenProcessingEntity p,
+			List<TokenProcessingEntity> failed,
+			Map<TokenProcessingEntity, DataflowValidationReport> invalidDataflows) {
+		try {
+			/*
+			 * true = checked and valid, false = can't check, the exception
+			 * means the processor was checked but was invalid for some reason
+			 */
+			return p.doTypeCheck();
+		} catch (IterationTypeMismatchException e) {
+			failed.add(p);
+		} catch (InvalidDataflowException e) {
+			invalidDataflows.put(p, e.getDataflowValidationReport());
+			failed.add(p);
+		}
+		return false;
+	}
+
 	/**
 	 * Gets all workflow entities of the specified type and returns as an
 	 * unmodifiable list of that type
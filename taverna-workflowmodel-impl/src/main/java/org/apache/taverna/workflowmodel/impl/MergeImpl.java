@@ -23,11 +23,10 @@ import static java.lang.System.arraycopy;
 import static java.util.Collections.nCopies;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 
 import org.apache.taverna.invocation.InvocationContext;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.invocation.WorkflowDataToken;
 import org.apache.taverna.reference.IdentifiedList;
 import org.apache.taverna.reference.ListService;
@@ -55,7 +54,7 @@ class MergeImpl implements Merge {
 	private List<MergeInputPortImpl> inputs = new ArrayList<>();
 	private String name;
 	private BasicEventForwardingOutputPort output;
-	private Map<String, List<T2Reference>> partialOutputsByProcess = new HashMap<>();
+	private ProcessStateMap<List<T2Reference>> partialOutputsByProcess = new ProcessStateMap<>();
 
 	public MergeImpl(String mergeName) {
 		super();
@@ -60,7 +60,7 @@ public class ProcessorCrystalizerImpl extends AbstractCrystalizer {
 	public void jobCreated(Job outputJob) {
 		for (String outputPortName : outputJob.getData().keySet()) {
 			WorkflowDataToken token = new WorkflowDataToken(
-					outputJob.getOwningProcess(), outputJob.getIndex(),
+					outputJob.getOwningProcessPath(), outputJob.getIndex(),
 					outputJob.getData().get(outputPortName),
 					outputJob.getContext());
 			parent.getOutputPortWithName(outputPortName).receiveEvent(token);
@@ -31,6 +31,8 @@ import java.util.Set;
 import org.apache.taverna.annotation.AbstractAnnotatedThing;
 import org.apache.taverna.invocation.InvocationContext;
 import org.apache.taverna.invocation.IterationInternalEvent;
+import org.apache.taverna.invocation.ProcessPath;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.lang.observer.MultiCaster;
 import org.apache.taverna.lang.observer.Observer;
 import org.apache.taverna.monitor.MonitorManager;
@@ -80,7 +82,7 @@ public final class ProcessorImpl extends AbstractAnnotatedThing<Processor>
 	protected IterationStrategyStackImpl iterationStack;
 	protected String name;
 	public transient int resultWrappingDepth = -1;
-	protected transient Map<String, Set<MonitorableProperty<?>>> monitorables = new HashMap<>();
+	protected transient ProcessStateMap<Set<MonitorableProperty<?>>> monitorables = new ProcessStateMap<>();
 	private MultiCaster<ProcessorFinishedEvent> processorFinishedMultiCaster = new MultiCaster<>(
 			this);
 
@@ -296,8 +298,9 @@ public final class ProcessorImpl extends AbstractAnnotatedThing<Processor>
 
 	@Override
 	public void fire(String enclosingProcess, InvocationContext context) {
-		Job newJob = new Job(enclosingProcess + ":" + this.name, new int[0],
-				new HashMap<String, T2Reference>(), context);
+		Job newJob = new Job(ProcessPath.valueOf(enclosingProcess).child(
+				this.name), new int[0], new HashMap<String, T2Reference>(),
+				context);
 		dispatchStack.receiveEvent(newJob);
 	}
 
@@ -22,15 +22,15 @@ package org.apache.taverna.workflowmodel.processor.dispatch.impl;
 import static java.util.Collections.unmodifiableList;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 
 import org.apache.taverna.annotation.AbstractAnnotatedThing;
 import org.apache.taverna.invocation.Completion;
 import org.apache.taverna.invocation.IterationInternalEvent;
+import org.apache.taverna.invocation.ProcessPath;
+import org.apache.taverna.invocation.ProcessStateMap;
 import org.apache.taverna.workflowmodel.processor.activity.Activity;
 import org.apache.taverna.workflowmodel.processor.activity.Job;
 import org.apache.taverna.workflowmodel.processor.dispatch.AbstractDispatchLayer;
@@ -60,7 +60,7 @@ import org.apache.log4j.Logger;
 public abstract class DispatchStackImpl extends
 		AbstractAnnotatedThing<DispatchStack> implements DispatchStack {
 	private static Logger logger = Logger.getLogger(DispatchStackImpl.class);
-	private Map<String, BlockingQueue<IterationInternalEvent<? extends IterationInternalEvent<?>>>> queues = new HashMap<>();
+	private ProcessStateMap<BlockingQueue<IterationInternalEvent<? extends IterationInternalEvent<?>>>> queues = new ProcessStateMap<>();
 	private List<DispatchLayer<?>> dispatchLayers = new ArrayList<>();
 
 	/**
@@ -127,8 +127,8 @@ public abstract class DispatchStackImpl extends
 	public void receiveEvent(IterationInternalEvent event) {
 		BlockingQueue<IterationInternalEvent<? extends IterationInternalEvent<?>>> queue = null;
 		String owningProcess = event.getOwningProcess();
-		String enclosingProcess = owningProcess.substring(0, owningProcess
-				.lastIndexOf(':'));
+		ProcessPath owningProcessPath = event.getOwningProcessPath();
+		String enclosingProcess = owningProcessPath.getParent().toString();
 		synchronized (queues) {
 			queue = queues.get(owningProcess);
 			if (queue == null) {
@@ -142,7 +142,7 @@ public abstract class DispatchStackImpl extends
 				 */
 				if (conditionsSatisfied(enclosingProcess))
 					firstLayer().receiveJobQueue(
-							new DispatchJobQueueEvent(owningProcess, event
+							new DispatchJobQueueEvent(owningProcessPath, event
 									.getContext(), queue, getActivities()));
 			} else {
 				queue.add(event);
@@ -175,7 +175,9 @@ public abstract class DispatchStackImpl extends
 	 */
 	public void satisfyConditions(String enclosingProcess) {
 		if (conditionsSatisfied(enclosingProcess)) {
-			String owningProcess = enclosingProcess + ":" + getProcessName();
+			ProcessPath owningProcessPath = ProcessPath.valueOf(
+					enclosingProcess).child(getProcessName());
+			String owningProcess = owningProcessPath.toString();
 			synchronized (queues) {
 				if (queues.containsKey(owningProcess)) {
 					/*
@@ -184,7 +186,7 @@ public abstract class DispatchStackImpl extends
 					 */
 					firstLayer()
 							.receiveJobQueue(
-									new DispatchJobQueueEvent(owningProcess,
+									new DispatchJobQueueEvent(owningProcessPath,
 											queues.get(owningProcess).peek()
 													.getContext(), queues
 													.get(owningProcess),
@@ -265,7 +267,7 @@ public abstract class DispatchStackImpl extends
 		@Override
 		public void receiveResult(DispatchResultEvent resultEvent) {
 			DispatchStackImpl.this.pushEvent(new Job(resultEvent
-					.getOwningProcess(), resultEvent.getIndex(), resultEvent
+					.getOwningProcessPath(), resultEvent.getIndex(), resultEvent
 					.getData(), resultEvent.getContext()));
 			if (resultEvent.getIndex().length == 0)
 				sendCachePurge(resultEvent.getOwningProcess());
@@ -288,7 +290,7 @@ public abstract class DispatchStackImpl extends
 		@Override
 		public void receiveResultCompletion(
 				DispatchCompletionEvent completionEvent) {
-			Completion c = new Completion(completionEvent.getOwningProcess(),
+			Completion c = new Completion(completionEvent.getOwningProcessPath(),
 					completionEvent.getIndex(), completionEvent.getContext());
 			DispatchStackImpl.this.pushEvent(c);
 			if (c.isFinal())
@@ -0,0 +1,94 @@
+/*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements. See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership. The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License. You may obtain a copy of the License at
+*
+* http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied. See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*/
+
+package org.apache.taverna.facade.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.taverna.lang.observer.Observable;
+import org.apache.taverna.lang.observer.Observer;
+import org.apache.taverna.workflowmodel.Processor;
+import org.apache.taverna.workflowmodel.ProcessorFinishedEvent;
+import org.apache.taverna.workflowmodel.impl.EditsImpl;
+import org.junit.Test;
+
+public class ProcessorFinishedDispatcherTest {
+	private final Processor processor = new EditsImpl()
+			.createProcessor("proc");
+	private final List<String> notified = new ArrayList<>();
+
+	private Observer<ProcessorFinishedEvent> observer(final String name) {
+		return new Observer<ProcessorFinishedEvent>() {
+			@Override
+			public void notify(Observable<ProcessorFinishedEvent> sender,
+					ProcessorFinishedEvent message) {
+				notified.add(name);
+			}
+		};
+	}
+
+	private void finish(String owningProcess) throws Exception {
+		ProcessorFinishedEvent event = new ProcessorFinishedEvent(processor,
+				owningProcess);
+		for (Observer<ProcessorFinishedEvent> o : processor.getObservers())
+			o.notify(processor, event);
+	}
+
+	@Test
+	public void notifiesOnlyTheOwningRunOnce() throws Exception {
+		ProcessorFinishedDispatcher.register(processor, "facade0:df:proc",
+				observer("run0"));
+		ProcessorFinishedDispatcher.register(processor, "facade1:df:proc",
+				observer("run1"));
+		finish("facade1:df:proc");
+		finish("facade1:df:proc");
+		assertEquals(1, processor.getObservers().size());
+		assertEquals(1, notified.size());
+		assertEquals("run1", notified.get(0));
+		ProcessorFinishedDispatcher.unregister(processor, "facade0:df:proc");
+	}
+
+	@Test
+	public void unregisteredObserverIsNotNotified() throws Exception {
+		ProcessorFinishedDispatcher.register(processor, "facade2:df:proc",
+				observer("run2"));
+		ProcessorFinishedDispatcher.unregister(processor, "facade2:df:proc");
+		finish("facade2:df:proc");
+		assertEquals(0, notified.size());
+	}
+
+	@Test
+	public void releaseRunDropsNestedObservers() throws Exception {
+		ProcessorFinishedDispatcher.register(processor, "facade3:df:proc",
+				observer("run3"));
+		ProcessorFinishedDispatcher.register(processor,
+				"facade3:df:nested:df:proc", observer("nested3"));
+		ProcessorFinishedDispatcher.register(processor, "facade30:df:proc",
+				observer("run30"));
+		ProcessorFinishedDispatcher.releaseRun("facade3");
+		finish("facade3:df:proc");
+		finish("facade3:df:nested:df:proc");
+		finish("facade30:df:proc");
+		assertEquals(1, notified.size());
+		assertEquals("run30", notified.get(0));
+	}
+}
@@ -19,9 +19,22 @@
 
 package org.apache.taverna.workflowmodel.impl;
 
+import static java.util.Collections.singletonList;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
+import org.apache.taverna.workflowmodel.DataflowInputPort;
+import org.apache.taverna.workflowmodel.DataflowValidationReport;
+import org.apache.taverna.workflowmodel.Edits;
+import org.apache.taverna.workflowmodel.Processor;
+import org.apache.taverna.workflowmodel.ProcessorInputPort;
+import org.apache.taverna.workflowmodel.processor.iteration.DotProduct;
+import org.apache.taverna.workflowmodel.processor.iteration.NamedInputPortNode;
+import org.apache.taverna.workflowmodel.processor.iteration.impl.IterationStrategyImpl;
 import org.junit.Test;
 
 public class DataflowImplTest {
@@ -39,4 +52,71 @@ public class DataflowImplTest {
 		assertNotNull("the new identifier should not be null",df.getIdentifier());
 		assertFalse("the identifier should have changed",oldId.equals(df.getIdentifier()));
 	}
+
+	@Test
+	public void testValidationReportReusedUntilEdited() throws Exception {
+		Edits edits = new EditsImpl();
+		DataflowValidationReport report = df.checkValidity();
+		assertSame("unchanged dataflow should reuse its report", report,
+				df.checkValidity());
+
+		Processor processor = edits.createProcessor("the_processor");
+		edits.getAddProcessorEdit(df, processor).doEdit();
+		DataflowValidationReport edited = df.checkValidity();
+		assertNotSame(report, edited);
+		assertSame(edited, df.checkValidity());
+	}
+
+	@Test
+	public void testStructuralHashFollowsPorts() throws Exception {
+		int before = df.structuralHash();
+		assertEquals(before, df.structuralHash());
+		new EditsImpl().getCreateDataflowInputPortEdit(df, "in", 1, 1)
+				.doEdit();
+		assertNotEquals(before, df.structuralHash());
+	}
+
+	@Test
+	public void testEntityFailingTypeCheckReportedOnce() throws Exception {
+		Edits edits = new EditsImpl();
+		ProcessorImpl processor = (ProcessorImpl) edits
+				.createProcessor("mismatched");
+		IterationStrategyImpl strategy = processor.getIterationStrategy()
+				.getStrategies().get(0);
+		DotProduct dot = new DotProduct();
+		dot.setParent(strategy.getTerminalNode());
+		// A dot product over inputs of depth 0 and 1 can't type check
+		for (int depth = 0; depth < 2; depth++) {
+			String name = "in" + depth;
+			DataflowInputPort input = edits.createDataflowInputPort(name,
+					depth, depth, df);
+			edits.getAddDataflowInputPortEdit(df, input).doEdit();
+			ProcessorInputPort port = edits.createProcessorInputPort(
+					processor, name, 0);
+			edits.getAddProcessorInputPortEdit(processor, port).doEdit();
+			edits.getConnectDatalinkEdit(
+					edits.createDatalink(input.getInternalOutputPort(), port))
+					.doEdit();
+			NamedInputPortNode node = new NamedInputPortNode(name, 0);
+			strategy.addInput(node);
+			node.setParent(dot);
+		}
+		edits.getAddProcessorEdit(df, processor).doEdit();
+
+		DataflowValidationReport report = df.checkValidity();
+		assertFalse(report.isValid());
+		assertEquals(singletonList(processor), report.getFailedEntities());
+		assertEquals(0, report.getUnsatisfiedEntities().size());
+	}
+
+	@Test
+	public void testStructuralHashFollowsIterationStrategy() throws Exception {
+		ProcessorImpl processor = (ProcessorImpl) new EditsImpl()
+				.createProcessor("the_processor");
+		new EditsImpl().getAddProcessorEdit(df, processor).doEdit();
+		int before = df.structuralHash();
+		new DotProduct().setParent(processor.getIterationStrategy()
+				.getStrategies().get(0).getTerminalNode());
+		assertNotEquals(before, df.structuralHash());
+	}
 }